@@ -0,0 +1,150 @@
+package key.project.shortener.bench;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.core.RandomCodeGenerator;
+import key.project.shortener.repo.*;
+
+/**
+ * Синтетические данные для бенчмарков.
+ * Ссылки пишутся прямо в storage.json потоково, без LinkRepository,
+ * чтобы подготовка миллиона ссылок не стоила миллион перезаписей файла.
+ */
+final class BenchData {
+    static final int OWNERS = 1000;
+    /** Ссылок в одном saveAll при раскладке по шардам */
+    private static final int LOAD_BATCH = 10_000;
+    private static final ObjectMapper MAPPER =
+            new ObjectMapper()
+                    .registerModule(new JavaTimeModule())
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    final String[] owners;
+    final String[] codes;
+    final int[] ownerOf;
+
+    private BenchData(int size) {
+        owners = new String[OWNERS];
+        for (int i = 0; i < OWNERS; i++) owners[i] = String.format("%08x-0000-4000-8000-%012x", i, i);
+        codes = new String[size];
+        ownerOf = new int[size];
+    }
+
+    /** Генерирует size ссылок в file (воспроизводимо, seed фиксирован) */
+    static BenchData generate(Path file, int size) {
+        return generate(file, size, 0, 0);
+    }
+
+    /**
+     * То же, но доля churn ссылок истекает в течение churnWindowMs от текущего момента,
+     * остальные живут 30 дней.
+     */
+    static BenchData generate(Path file, int size, double churn, long churnWindowMs) {
+        BenchData d = new BenchData(size);
+        SplittableRandom rnd = new SplittableRandom(7);
+        RandomCodeGenerator gen = new RandomCodeGenerator(6, 7L);
+        Instant now = Instant.now();
+        try {
+            Files.createDirectories(file.getParent());
+            try (JsonGenerator g = MAPPER.getFactory().createGenerator(file.toFile(), com.fasterxml.jackson.core.JsonEncoding.UTF8)) {
+                g.writeStartArray();
+                for (int i = 0; i < size; i++) {
+                    int o = rnd.nextInt(OWNERS);
+                    Link l = new Link();
+                    l.ownerUuid = d.owners[o];
+                    l.shortCode = gen.next(l.ownerUuid.substring(0, 8));
+                    l.originalUrl = "https://example.com/page/" + i;
+                    l.maxClicks = 0;
+                    l.createdAt = now;
+                    l.expiresAt = churn > 0 && rnd.nextDouble() < churn
+                            ? now.plusMillis(1 + rnd.nextLong(churnWindowMs))
+                            : now.plus(Duration.ofDays(30));
+                    l.status = LinkStatus.ACTIVE;
+                    MAPPER.writeValue(g, l);
+                    d.codes[i] = l.shortCode;
+                    d.ownerOf[i] = o;
+                }
+                g.writeEndArray();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return d;
+    }
+
+    /**
+     * Хранилище нужного типа поверх сгенерированного storage.json в каталоге dir.
+     * Собирается через LinkRepositories, как в приложении: backend — значение app.storage
+     * (file | memory | wal | mmap | columnar | sharded), fsync — os.
+     * mmap получает данные миграцией из JSON, sharded — раскладкой ссылок по шардам через saveAll.
+     */
+    static LinkRepository open(String backend, Path dir) {
+        Path json = dir.resolve("storage.json");
+        AppConfig cfg = new AppConfig();
+        AppConfig.App app = cfg.app;
+        app.storage = backend;
+        app.dataFile = json.toString();
+        app.fsyncPolicy = "os";
+        app.walDir = dir.resolve("wal").toString();
+        app.walSegmentBytes = 64L << 20;
+        app.mmapDir = dir.resolve("mmap").toString();
+        app.shardDir = dir.resolve("shards").toString();
+        try {
+            if (backend.equals("mmap")) JsonToMappedMigration.migrate(json, app.mmapDir);
+            LinkRepository repo = LinkRepositories.create(cfg);
+            if (backend.equals("sharded")) load(json, repo);
+            return repo;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Потоково переносит ссылки из file в repo пачками по LOAD_BATCH */
+    private static void load(Path file, LinkRepository repo) throws IOException {
+        List<Link> batch = new ArrayList<>(LOAD_BATCH);
+        try (JsonParser p = MAPPER.getFactory().createParser(file.toFile())) {
+            if (p.nextToken() != JsonToken.START_ARRAY) throw new IOException("Ожидался массив ссылок: " + file);
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                batch.add(MAPPER.readValue(p, Link.class));
+                if (batch.size() == LOAD_BATCH) {
+                    repo.saveAll(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) repo.saveAll(batch);
+    }
+
+    static Path tempDir() {
+        try {
+            return Files.createTempDirectory("shortener-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void delete(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
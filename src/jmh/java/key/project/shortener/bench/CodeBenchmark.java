@@ -0,0 +1,59 @@
+package key.project.shortener.bench;
+
+import java.util.concurrent.TimeUnit;
+import key.project.shortener.core.CodeGenerator;
+import key.project.shortener.core.RandomCodeGenerator;
+import key.project.shortener.core.SequenceCodeGenerator;
+import key.project.shortener.core.UrlCodeGenerator;
+import key.project.shortener.core.UrlValidator;
+import key.project.shortener.core.Validation;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Генерация кодов и проверка URL.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodeBenchmark {
+    private final CodeGenerator random = new RandomCodeGenerator(6);
+    private final CodeGenerator sequence = new SequenceCodeGenerator(1);
+
+    @Param({"https://example.com/some/long/path?with=query&and=more", "HTTPS://Example.COM:443?q=1"})
+    public String url;
+
+    @Benchmark
+    public String urlCodeGeneratorRandom() {
+        return UrlCodeGenerator.random(6);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String urlCodeGeneratorRandomContended() {
+        return UrlCodeGenerator.random(6);
+    }
+
+    @Benchmark
+    public String randomCodeGenerator() {
+        return random.next("abcd1234");
+    }
+
+    @Benchmark
+    public String sequenceCodeGenerator() {
+        return sequence.next("abcd1234");
+    }
+
+    @Benchmark
+    public String validateUrl() {
+        Validation.requireValidUrl(url);
+        return url;
+    }
+
+    @Benchmark
+    public String normalizeUrl() {
+        return UrlValidator.normalize(url);
+    }
+}
@@ -0,0 +1,376 @@
+package key.project.shortener.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.http.HttpApiServer;
+import key.project.shortener.metrics.LatencyHistogram;
+import key.project.shortener.repo.LinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+
+/**
+ * Сквозной замер под нагрузкой: ShortenerService напрямую или через HttpApiServer.
+ *
+ * Перед замером генерирует size синтетических ссылок (BenchData), открывает их выбранным хранилищем
+ * и гоняет смесь create/open/info из threads потоков. Коды для open/info выбираются по Ципфу,
+ * доля churn ссылок набора истекает во время прогона, поэтому очистка истёкших идёт под нагрузкой.
+ *
+ * При rate > 0 нагрузка открытая: у каждой операции есть плановое время старта, и задержка
+ * считается дважды — от фактического старта (время обслуживания) и от планового.
+ * Вторая гистограмма исправлена на coordinated omission: если система притормозила,
+ * ожидание в очереди входит в задержку, а не выпадает из замера. При rate = 0 потоки
+ * идут без пауз, и обе гистограммы совпадают.
+ *
+ * Параметры передаются как key=value (значения по умолчанию в OPTIONS).
+ * Сводка печатается в консоль и пишется в out в JSON.
+ */
+public final class LoadGenerator {
+    private static final Map<String, String> OPTIONS = new LinkedHashMap<>();
+
+    static {
+        OPTIONS.put("size", "100000"); // ссылок в наборе
+        OPTIONS.put("backend", "memory"); // file | memory | wal | mmap
+        OPTIONS.put("target", "service"); // service | http
+        OPTIONS.put("threads", "8");
+        OPTIONS.put("rate", "0"); // операций в секунду на все потоки, 0 — без ограничения
+        OPTIONS.put("warmup", "5"); // секунд
+        OPTIONS.put("duration", "30"); // секунд
+        OPTIONS.put("mix", "open:90,info:8,create:2");
+        OPTIONS.put("zipf", "0.99"); // показатель Ципфа, 0 — равномерно
+        OPTIONS.put("churn", "0.1"); // доля ссылок набора, истекающих за время прогона
+        OPTIONS.put("dir", ""); // где создать каталог данных, по умолчанию временный
+        OPTIONS.put("out", "target/load-result.json");
+    }
+
+    private enum Op {
+        OPEN,
+        INFO,
+        CREATE
+    }
+
+    /** Гистограммы одного типа операций */
+    private static final class Stats {
+        final LatencyHistogram service = new LatencyHistogram();
+        final LatencyHistogram response = new LatencyHistogram();
+        final LongAdder misses = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    /** То, что нагружается: сервис или HTTP-сервер поверх него */
+    private interface Target extends AutoCloseable {
+        /** @return false если ссылки уже нет (истекла) */
+        boolean open(String code);
+
+        boolean info(String ownerUuid, String code);
+
+        void create(String ownerUuid, String url);
+
+        @Override
+        void close();
+    }
+
+    private final Map<String, String> opts;
+    private final int threads;
+    private final long rate;
+    private final int[] mix = new int[Op.values().length];
+    private final Stats[] stats = new Stats[Op.values().length];
+    private final Stats total = new Stats();
+    private final LongAdder notSent = new LongAdder();
+    private final BenchData data;
+    private final ZipfSampler zipf;
+    private final Target target;
+    private final int mixTotal;
+
+    private LoadGenerator(Map<String, String> opts, BenchData data, Target target) {
+        this.opts = opts;
+        this.threads = Integer.parseInt(opts.get("threads"));
+        this.rate = Long.parseLong(opts.get("rate"));
+        this.data = data;
+        this.zipf = new ZipfSampler(data.codes.length, Double.parseDouble(opts.get("zipf")));
+        this.target = target;
+        for (int i = 0; i < stats.length; i++) stats[i] = new Stats();
+        int sum = 0;
+        for (String part : opts.get("mix").split(",")) {
+            String[] kv = part.split(":");
+            if (kv.length != 2) throw new IllegalArgumentException("Смесь задаётся как op:вес через запятую: " + part);
+            int w = Integer.parseInt(kv[1].trim());
+            if (w < 0) throw new IllegalArgumentException("Вес не может быть отрицательным: " + part);
+            mix[Op.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = w;
+            sum += w;
+        }
+        if (sum == 0) throw new IllegalArgumentException("В смеси нет ни одной операции");
+        this.mixTotal = sum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new LinkedHashMap<>(OPTIONS);
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (eq <= 0 || !OPTIONS.containsKey(a.substring(0, eq))) {
+                throw new IllegalArgumentException("Ожидается key=value, ключи: " + OPTIONS.keySet() + ", получено: " + a);
+            }
+            opts.put(a.substring(0, eq), a.substring(eq + 1));
+        }
+        int size = Integer.parseInt(opts.get("size"));
+        double churn = Double.parseDouble(opts.get("churn"));
+        long runMs = (Long.parseLong(opts.get("warmup")) + Long.parseLong(opts.get("duration"))) * 1000;
+        Path dir = opts.get("dir").isEmpty()
+                ? BenchData.tempDir()
+                : Files.createTempDirectory(Files.createDirectories(Path.of(opts.get("dir"))), "shortener-load");
+        System.out.println("Параметры: " + opts);
+        try {
+            long t0 = System.nanoTime();
+            BenchData data = BenchData.generate(dir.resolve("storage.json"), size, churn, Math.max(1, runMs));
+            long t1 = System.nanoTime();
+            System.out.printf("Набор: %d ссылок, %.1f МБ, %.1f с%n",
+                    size, Files.size(dir.resolve("storage.json")) / 1e6, (t1 - t0) / 1e9);
+
+            AppConfig cfg = new AppConfig();
+            cfg.app.notifyOnLimit = false;
+            cfg.app.notifyOnExpire = false;
+            cfg.app.serverPort = 0;
+            try (LinkRepository repo = BenchData.open(opts.get("backend"), dir);
+                    ShortenerService service = new ShortenerService(repo, cfg, new NotificationService())) {
+                System.out.printf("Старт хранилища и сервиса: %.1f с%n", (System.nanoTime() - t1) / 1e9);
+                Target target = switch (opts.get("target")) {
+                    case "service" -> new ServiceTarget(service);
+                    case "http" -> new HttpTarget(service, cfg);
+                    default -> throw new IllegalArgumentException("Неизвестная цель: " + opts.get("target"));
+                };
+                try (target) {
+                    new LoadGenerator(opts, data, target).run();
+                }
+            }
+        } finally {
+            BenchData.delete(dir);
+        }
+    }
+
+    private void run() throws Exception {
+        long warmup = Long.parseLong(opts.get("warmup")) * 1_000_000_000L;
+        long duration = Long.parseLong(opts.get("duration")) * 1_000_000_000L;
+        long interval = rate > 0 ? Math.max(1, 1_000_000_000L * threads / rate) : 0;
+        long start = System.nanoTime() + 10_000_000L;
+        long measureFrom = start + warmup;
+        long end = measureFrom + duration;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int id = i;
+            workers.add(Thread.ofPlatform().name("load-" + i).start(() -> work(id, start, measureFrom, end, interval)));
+        }
+        for (Thread t : workers) t.join();
+        double elapsed = (System.nanoTime() - measureFrom) / 1e9;
+        report(elapsed);
+    }
+
+    /**
+     * Цикл одного потока. В открытом режиме операции идут по расписанию start + k * interval
+     * со случайным сдвигом потока; отставшие операции выполняются без пауз, пока поток не догонит план.
+     * Если перегрузка не даёт дойти до конца плана за вторую длительность замера, остаток считается неотправленным.
+     */
+    private void work(int id, long start, long measureFrom, long end, long interval) {
+        SplittableRandom rnd = new SplittableRandom(31L * id + 17);
+        long deadline = end + (end - measureFrom);
+        long intended = start + (interval > 0 ? rnd.nextLong(interval) : 0);
+        while (true) {
+            long now = System.nanoTime();
+            if (interval > 0) {
+                if (intended >= end) break;
+                if (now >= deadline) {
+                    if (intended >= measureFrom) notSent.add((end - intended + interval - 1) / interval);
+                    break;
+                }
+                while (now < intended) {
+                    LockSupport.parkNanos(intended - now);
+                    now = System.nanoTime();
+                }
+            } else {
+                if (now >= end) break;
+                intended = now;
+            }
+            Op op = pick(rnd);
+            int i = zipf.next(rnd);
+            boolean hit = true;
+            boolean failed = false;
+            try {
+                switch (op) {
+                    case OPEN -> hit = target.open(data.codes[i]);
+                    case INFO -> hit = target.info(data.owners[data.ownerOf[i]], data.codes[i]);
+                    case CREATE -> target.create(data.owners[data.ownerOf[i]], "https://example.com/load/" + rnd.nextLong());
+                }
+            } catch (RuntimeException e) {
+                failed = true;
+            }
+            long done = System.nanoTime();
+            if (intended >= measureFrom) {
+                record(stats[op.ordinal()], done - now, done - intended, hit, failed);
+                record(total, done - now, done - intended, hit, failed);
+            }
+            intended += interval;
+        }
+    }
+
+    private static void record(Stats s, long service, long response, boolean hit, boolean failed) {
+        s.service.record(service);
+        s.response.record(response);
+        if (!hit) s.misses.increment();
+        if (failed) s.errors.increment();
+    }
+
+    private Op pick(SplittableRandom rnd) {
+        int r = rnd.nextInt(mixTotal);
+        for (Op op : Op.values()) {
+            r -= mix[op.ordinal()];
+            if (r < 0) return op;
+        }
+        throw new IllegalStateException();
+    }
+
+    private void report(double elapsed) throws IOException {
+        System.out.printf("Замер: %.1f с, %.0f оп/с%s%n", elapsed, total.service.count() / elapsed,
+                notSent.sum() > 0 ? ", не отправлено по плану: " + notSent.sum() : "");
+        System.out.printf("%-7s %10s %10s %8s %6s | %9s %9s %9s %9s | %9s %9s %9s %9s%n",
+                "", "count", "ops/s", "miss", "err", "p50 мс", "p99", "p99.9", "max",
+                "план p50", "p99", "p99.9", "max");
+        Map<String, Object> ops = new LinkedHashMap<>();
+        for (Op op : Op.values()) {
+            if (mix[op.ordinal()] > 0) ops.put(op.name().toLowerCase(Locale.ROOT), row(op.name().toLowerCase(Locale.ROOT), stats[op.ordinal()], elapsed));
+        }
+        ops.put("total", row("total", total, elapsed));
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("params", opts);
+        out.put("elapsedSec", elapsed);
+        out.put("notSent", notSent.sum());
+        out.put("ops", ops);
+        Path file = Path.of(opts.get("out"));
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), out);
+        System.out.println("Результат: " + file);
+    }
+
+    private static Map<String, Object> row(String name, Stats s, double elapsed) {
+        long n = s.service.count();
+        System.out.printf("%-7s %10d %10.0f %8d %6d | %9.3f %9.3f %9.3f %9.3f | %9.3f %9.3f %9.3f %9.3f%n",
+                name, n, n / elapsed, s.misses.sum(), s.errors.sum(),
+                ms(s.service.percentile(50)), ms(s.service.percentile(99)), ms(s.service.percentile(99.9)), ms(s.service.maxNanos()),
+                ms(s.response.percentile(50)), ms(s.response.percentile(99)), ms(s.response.percentile(99.9)), ms(s.response.maxNanos()));
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", n);
+        m.put("throughput", n / elapsed);
+        m.put("misses", s.misses.sum());
+        m.put("errors", s.errors.sum());
+        m.put("serviceNanos", percentiles(s.service));
+        m.put("correctedNanos", percentiles(s.response));
+        return m;
+    }
+
+    private static Map<String, Object> percentiles(LatencyHistogram h) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("mean", (long) h.meanNanos());
+        m.put("p50", h.percentile(50));
+        m.put("p99", h.percentile(99));
+        m.put("p999", h.percentile(99.9));
+        m.put("max", h.maxNanos());
+        return m;
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /** Вызовы сервиса в том же процессе */
+    private record ServiceTarget(ShortenerService service) implements Target {
+        @Override
+        public boolean open(String code) {
+            return service.resolve(code).isPresent();
+        }
+
+        @Override
+        public boolean info(String ownerUuid, String code) {
+            return service.info(ownerUuid, code).isPresent();
+        }
+
+        @Override
+        public void create(String ownerUuid, String url) {
+            service.create(ownerUuid, url, null);
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    /** HttpApiServer на свободном порту и HTTP/1.1-клиент с keep-alive */
+    private static final class HttpTarget implements Target {
+        private final HttpApiServer server;
+        private final HttpClient client;
+        private final String base;
+
+        HttpTarget(ShortenerService service, AppConfig cfg) {
+            server = new HttpApiServer(service, cfg);
+            server.start();
+            client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .build();
+            base = "http://localhost:" + server.port();
+        }
+
+        @Override
+        public boolean open(String code) {
+            return expect(send(HttpRequest.newBuilder(URI.create(base + "/" + code)).GET()), 302);
+        }
+
+        @Override
+        public boolean info(String ownerUuid, String code) {
+            return expect(send(HttpRequest.newBuilder(URI.create(base + "/api/links/" + code))
+                    .header("X-User-Uuid", ownerUuid)
+                    .GET()), 200);
+        }
+
+        @Override
+        public void create(String ownerUuid, String url) {
+            expect(send(HttpRequest.newBuilder(URI.create(base + "/api/links"))
+                    .header("X-User-Uuid", ownerUuid)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"url\":\"" + url + "\"}"))), 201);
+        }
+
+        /** @return true при ожидаемом коде, false при 404, иначе исключение */
+        private static boolean expect(int status, int ok) {
+            if (status == ok) return true;
+            if (status == 404) return false;
+            throw new IllegalStateException("HTTP " + status);
+        }
+
+        private int send(HttpRequest.Builder request) {
+            try {
+                return client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            client.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package key.project.shortener.bench;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import key.project.shortener.core.Link;
+import key.project.shortener.repo.LinkRepository;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Горячие операции LinkRepository на наборах из 1k/100k/1M ссылок для всех хранилищ.
+ * Хранилище file перечитывает весь файл на каждый вызов, поэтому на больших наборах
+ * его удобно отсекать: -Djmh.args="RepositoryBenchmark -p backend=memory,wal,mmap".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"file", "memory", "wal", "mmap", "columnar", "sharded"})
+    public String backend;
+
+    private Path dir;
+    private BenchData data;
+    private LinkRepository repo;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dir = BenchData.tempDir();
+        data = BenchData.generate(dir.resolve("storage.json"), size);
+        repo = BenchData.open(backend, dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repo.close();
+        BenchData.delete(dir);
+    }
+
+    private int pick() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+
+    @Benchmark
+    public Optional<Link> findByCode() {
+        int i = pick();
+        return repo.findByCode(data.owners[data.ownerOf[i]], data.codes[i]);
+    }
+
+    @Benchmark
+    public boolean existsCode() {
+        int i = pick();
+        return repo.existsCode(data.owners[data.ownerOf[i]], data.codes[i]);
+    }
+
+    /** Изменение счётчика существующей ссылки: типичная запись на пути редиректа */
+    @Benchmark
+    public void save() {
+        int i = pick();
+        Link l = repo.findByCode(data.owners[data.ownerOf[i]], data.codes[i]).orElseThrow();
+        l.clickCount++;
+        repo.save(l);
+    }
+}
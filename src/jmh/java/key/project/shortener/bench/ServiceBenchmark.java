@@ -0,0 +1,76 @@
+package key.project.shortener.bench;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.repo.LinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * ShortenerService.create/open в одном и в восьми потоках.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+    @Param({"100000"})
+    public int size;
+
+    @Param({"memory", "wal", "mmap", "columnar", "sharded"})
+    public String backend;
+
+    private Path dir;
+    private BenchData data;
+    private LinkRepository repo;
+    private ShortenerService service;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dir = BenchData.tempDir();
+        data = BenchData.generate(dir.resolve("storage.json"), size);
+        repo = BenchData.open(backend, dir);
+        AppConfig cfg = new AppConfig();
+        cfg.app.notifyOnLimit = false;
+        cfg.app.notifyOnExpire = false;
+        service = new ShortenerService(repo, cfg, new NotificationService());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.close();
+        repo.close();
+        BenchData.delete(dir);
+    }
+
+    private String owner() {
+        return data.owners[ThreadLocalRandom.current().nextInt(data.owners.length)];
+    }
+
+    @Benchmark
+    public Object create() {
+        return service.create(owner(), "https://example.com/new", null);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object createContended() {
+        return service.create(owner(), "https://example.com/new", null);
+    }
+
+    @Benchmark
+    public Object open() {
+        return service.resolve(data.codes[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object openContended() {
+        return service.resolve(data.codes[ThreadLocalRandom.current().nextInt(size)]);
+    }
+}
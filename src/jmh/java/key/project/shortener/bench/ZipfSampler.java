@@ -0,0 +1,61 @@
+package key.project.shortener.bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * Выборка рангов по закону Ципфа: P(k) ~ 1 / k^s для k = 1..n.
+ * Метод rejection-inversion (Hörmann, Derflinger): O(1) памяти и в среднем
+ * меньше двух случайных чисел на выборку, поэтому подходит и для 10 млн рангов.
+ * При s = 0 распределение равномерное.
+ */
+final class ZipfSampler {
+    private final int n;
+    private final double s;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double threshold;
+
+    ZipfSampler(int n, double s) {
+        if (n < 1) throw new IllegalArgumentException("n должно быть больше 0");
+        if (s < 0) throw new IllegalArgumentException("Показатель Ципфа не может быть отрицательным");
+        this.n = n;
+        this.s = s;
+        hIntegralX1 = hIntegral(1.5) - 1.0;
+        hIntegralN = hIntegral(n + 0.5);
+        threshold = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /** Ранг от 0 до n-1, 0 — самый популярный */
+    int next(SplittableRandom rnd) {
+        while (true) {
+            double u = hIntegralN + rnd.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) Math.min(n, Math.max(1, x + 0.5));
+            if (k - x <= threshold || u >= hIntegral(k + 0.5) - h(k)) return k - 1;
+        }
+    }
+
+    private double h(double x) {
+        return Math.exp(-s * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return expm1Div((1.0 - s) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = Math.max(-1.0, x * (1.0 - s));
+        return Math.exp(log1pDiv(t) * x);
+    }
+
+    /** log(1 + x) / x без потери точности около нуля */
+    private static double log1pDiv(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    /** (e^x - 1) / x без потери точности около нуля */
+    private static double expm1Div(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+    }
+}
@@ -1,24 +1,69 @@
 package key.project.shortener;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Scanner;
+import key.project.shortener.analytics.ClickAnalytics;
 import key.project.shortener.config.AppConfig;
 import key.project.shortener.core.Link;
 import key.project.shortener.core.UserContext;
-import key.project.shortener.repo.FileLinkRepository;
+import key.project.shortener.http.HttpApiServer;
+import key.project.shortener.metrics.Metrics;
+import key.project.shortener.metrics.MetricsReporter;
+import key.project.shortener.notify.NotificationSinks;
+import key.project.shortener.replication.ReplicationNode;
+import key.project.shortener.service.CsvImporter;
 import key.project.shortener.service.NotificationService;
 import key.project.shortener.service.ShortenerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class App {
 
+    private static final Logger log = LoggerFactory.getLogger(App.class);
     private static final Scanner scanner = new Scanner(System.in); // для меню
 
     public static void main(String[] args) {
+        long t0 = System.nanoTime();
         AppConfig cfg = AppConfig.load();
+        ReplicationNode node = ReplicationNode.create(cfg);
+        long repoReady = System.nanoTime();
+        NotificationService ns =
+                new NotificationService(cfg.app.notifyQueueCapacity, cfg.app.notifyBatchMax, NotificationSinks.create(cfg));
+        ShortenerService service = new ShortenerService(node.repository(), cfg, ns, node.quotaAuthority());
+        node.bind(service);
+        log.info(
+                "Старт: хранилище {} (репликация {}) за {} мс, индексы сервиса за {} мс",
+                cfg.app.storage,
+                cfg.app.replicationRole,
+                (repoReady - t0) / 1_000_000,
+                (System.nanoTime() - repoReady) / 1_000_000);
+        MetricsReporter reporter =
+                cfg.app.metricsLogIntervalMs > 0 ? new MetricsReporter(Metrics.global(), cfg.app.metricsLogIntervalMs) : null;
+
+        if (args.length > 0 && args[0].equals("server")) {
+            runServer(service, ns, node, reporter, cfg);
+            return;
+        }
+
         String uuid = UserContext.ensureUuid();
-        ShortenerService service =
-                new ShortenerService(
-                        new FileLinkRepository(cfg.app.dataFile), cfg, new NotificationService());
+
+        if (args.length > 1 && args[0].equals("import")) {
+            try {
+                importCsv(service, uuid, Path.of(args[1]), cfg.app.baseDomain);
+            } finally {
+                if (reporter != null) reporter.close();
+                service.close();
+                ns.close();
+                node.close();
+            }
+            return;
+        }
 
         boolean running = true;
 
@@ -35,6 +80,7 @@ public class App {
                     case 5 -> setLimit(service, uuid);
                     case 6 -> deleteUrl(service, uuid);
                     case 7 -> cleanup(service);
+                    case 8 -> showStats(service, uuid);
                     case 0 -> {
                         System.out.println("Выход из программы");
                         running = false;
@@ -46,9 +92,50 @@ public class App {
             }
         }
 
+        if (reporter != null) reporter.close();
+        service.close();
+        ns.close();
+        node.close();
         scanner.close();
     }
 
+    /**
+     * Режим HTTP-сервера: работает до завершения процесса,
+     * при остановке сбрасывает счётчики и закрывает хранилище.
+     * @param reporter периодический вывод метрик или null
+     */
+    private static void runServer(
+            ShortenerService service, NotificationService ns, ReplicationNode node, MetricsReporter reporter, AppConfig cfg) {
+        HttpApiServer server = new HttpApiServer(service, cfg);
+        Runtime.getRuntime()
+                .addShutdownHook(
+                        new Thread(
+                                () -> {
+                                    server.close();
+                                    if (reporter != null) reporter.close();
+                                    service.close();
+                                    ns.close();
+                                    node.close();
+                                }));
+        server.start();
+        System.out.println("HTTP-сервер запущен на порту " + server.port());
+    }
+
+    /**
+     * Режим импорта: создаёт ссылки текущего пользователя из CSV-файла пачками
+     * и печатает "короткая ссылка,оригинальный URL" для каждой созданной.
+     */
+    private static void importCsv(ShortenerService service, String uuid, Path file, String baseUrl) {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            CsvImporter.Result r =
+                    new CsvImporter(service, 1000)
+                            .importFrom(in, uuid, l -> System.out.println(baseUrl + l.shortCode + "," + l.originalUrl));
+            System.out.println("Создано ссылок: " + r.created() + ", пропущено строк: " + r.skipped());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private static void printMenu() {
         System.out.println("\n╔══════════════════════════════════════════╗");
         System.out.println("║   СЕРВИС СОКРАЩЕНИЯ ССЫЛОК               ║");
@@ -60,6 +147,7 @@ public class App {
         System.out.println("║ 5.  Изменить лимит переходов             ║");
         System.out.println("║ 6.  Удалить ссылку                       ║");
         System.out.println("║ 7.  Очистить протухшие ссылки            ║");
+        System.out.println("║ 8.  Статистика переходов                 ║");
         System.out.println("║ 0.  Выход                                ║");
         System.out.println("╚══════════════════════════════════════════╝");
     }
@@ -131,6 +219,22 @@ public class App {
         System.out.println("Удалено истёкших ссылок: " + removed);
     }
 
+    private static void showStats(ShortenerService service, String uuid) {
+        System.out.print("Введите короткий код (пусто — все мои ссылки): ");
+        String code = scanner.nextLine().trim();
+        if (!code.isEmpty()) {
+            service.clickStats(uuid, code)
+                    .ifPresentOrElse(
+                            c -> System.out.printf("%s минута=%d час=%d сутки=%d%n", code, c.minute(), c.hour(), c.day()),
+                            () -> System.out.println("Не найдено"));
+            return;
+        }
+        ClickAnalytics.Counts c = service.ownerClickStats(uuid);
+        System.out.printf("Все ссылки: минута=%d час=%d сутки=%d%n", c.minute(), c.hour(), c.day());
+        System.out.println("Самые посещаемые за час:");
+        service.topLinks(10).forEach(h -> System.out.printf("  %s %d%n", h.shortCode(), h.clicks()));
+    }
+
     private static int getIntInput(String prompt) {
         while (true) {
             try {
@@ -0,0 +1,223 @@
+package key.project.shortener.analytics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Аналитика переходов.
+ * record() на пути редиректа только кладёт пару (номер ссылки, время) в ClickEventRing;
+ * фоновый поток разбирает буфер и ведёт окна по минутам и часам для каждой ссылки
+ * и каждого владельца, а также самые горячие ссылки текущего часа:
+ * Count-Min для оценки и список top-K кандидатов.
+ * Если буфер переполнен, события отбрасываются (см. dropped()), переходы при этом
+ * засчитываются как обычно — страдает только статистика.
+ * Номер ссылки, по которой не было переходов сутки, освобождается вместе с её окном
+ * и через час отдаётся новой ссылке, так что реестр не растёт вместе с числом кодов.
+ */
+public final class ClickAnalytics implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ClickAnalytics.class);
+    private static final long HOUR = 3_600_000;
+    private static final int DRAIN_BATCH = 4096;
+
+    /** Переходы за текущую минуту, за последний час и за последние сутки */
+    public record Counts(long minute, long hour, long day) {}
+
+    /**
+     * Горячая ссылка с оценкой числа переходов за текущий час.
+     * Владельца нет: список отдаётся анонимно, а UUID владельца служит ему ключом доступа.
+     */
+    public record HotLink(String shortCode, long clicks) {}
+
+    private record LinkRef(String shortCode, String ownerUuid) {}
+
+    private final ClickEventRing ring;
+    private final int topK;
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<LinkRef> refs = new ArrayList<>();
+    // освобождённые номера, под synchronized (refs): released ждут час, free можно выдавать
+    private final List<Integer> released = new ArrayList<>();
+    private final ArrayDeque<Integer> free = new ArrayDeque<>();
+    private final ScheduledExecutorService drainer;
+
+    // состояние агрегатора, только под synchronized (this)
+    private final Map<Integer, ClickWindow> byLink = new HashMap<>();
+    private final Map<String, ClickWindow> byOwner = new HashMap<>();
+    private final CountMinSketch sketch = new CountMinSketch(4, 4096);
+    private final Map<Integer, Long> top = new HashMap<>();
+    private long sketchHour = -1;
+    private final ClickEventRing.Handler handler = this::aggregate;
+
+    /**
+     * @param ringSize ёмкость буфера событий
+     * @param topK сколько горячих ссылок отслеживать
+     * @param drainIntervalMs период разбора буфера; 0 — только вручную через drain()
+     */
+    public ClickAnalytics(int ringSize, int topK, long drainIntervalMs) {
+        this.ring = new ClickEventRing(ringSize);
+        this.topK = Math.max(1, topK);
+        if (drainIntervalMs > 0) {
+            drainer =
+                    Executors.newSingleThreadScheduledExecutor(
+                            r -> {
+                                Thread t = new Thread(r, "click-analytics");
+                                t.setDaemon(true);
+                                return t;
+                            });
+            drainer.scheduleWithFixedDelay(this::drainQuietly, drainIntervalMs, drainIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            drainer = null;
+        }
+    }
+
+    /** Публикует переход; не блокирует и для уже известной ссылки не выделяет память */
+    public void record(String ownerUuid, String shortCode, long atMs) {
+        Integer id = ids.get(shortCode);
+        if (id == null) id = register(ownerUuid, shortCode);
+        ring.offer(id, atMs);
+    }
+
+    private Integer register(String ownerUuid, String shortCode) {
+        return ids.computeIfAbsent(
+                shortCode,
+                c -> {
+                    synchronized (refs) {
+                        Integer slot = free.poll();
+                        if (slot != null) {
+                            refs.set(slot, new LinkRef(c, ownerUuid));
+                            return slot;
+                        }
+                        refs.add(new LinkRef(c, ownerUuid));
+                        return refs.size() - 1;
+                    }
+                });
+    }
+
+    /** Разбирает всё, что накопилось в буфере */
+    public synchronized void drain() {
+        while (ring.drain(handler, DRAIN_BATCH) == DRAIN_BATCH) {
+            // продолжаем, пока буфер не опустеет
+        }
+    }
+
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            log.error("Ошибка разбора событий переходов", e);
+        }
+    }
+
+    private void aggregate(int id, long atMs) {
+        LinkRef ref;
+        synchronized (refs) {
+            ref = refs.get(id);
+        }
+        Integer current = ids.get(ref.shortCode());
+        if (current == null || current != id) return; // номер уже освобождён, событие запоздало
+        byLink.computeIfAbsent(id, k -> new ClickWindow()).add(atMs);
+        byOwner.computeIfAbsent(ref.ownerUuid(), k -> new ClickWindow()).add(atMs);
+
+        long hour = atMs / HOUR;
+        if (hour > sketchHour) rollHour(hour, atMs);
+        if (hour < sketchHour) return; // запоздавшее событие прошлого часа
+        long estimate = sketch.add(id);
+        if (top.containsKey(id) || top.size() < topK) {
+            top.put(id, estimate);
+            return;
+        }
+        Map.Entry<Integer, Long> min = null;
+        for (Map.Entry<Integer, Long> e : top.entrySet()) {
+            if (min == null || e.getValue() < min.getValue()) min = e;
+        }
+        if (min != null && estimate > min.getValue()) {
+            top.remove(min.getKey());
+            top.put(id, estimate);
+        }
+    }
+
+    /**
+     * Новый час: горячие ссылки считаются заново, окна без переходов за сутки выбрасываются
+     * вместе с номерами ссылок. Номер, освобождённый час назад, становится свободным:
+     * record(), успевший взять его до освобождения, за это время уже положил событие в буфер.
+     */
+    private void rollHour(long hour, long nowMs) {
+        sketchHour = hour;
+        sketch.clear();
+        top.clear();
+        synchronized (refs) {
+            free.addAll(released);
+            released.clear();
+            for (Iterator<Map.Entry<Integer, ClickWindow>> it = byLink.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Integer, ClickWindow> e = it.next();
+                if (!e.getValue().idle(nowMs)) continue;
+                it.remove();
+                ids.remove(refs.get(e.getKey()).shortCode(), e.getKey());
+                released.add(e.getKey());
+            }
+        }
+        for (Iterator<ClickWindow> it = byOwner.values().iterator(); it.hasNext(); ) {
+            if (it.next().idle(nowMs)) it.remove();
+        }
+    }
+
+    /** Переходы по коду */
+    public synchronized Counts byCode(String shortCode, long nowMs) {
+        Integer id = ids.get(shortCode);
+        ClickWindow w = id == null ? null : byLink.get(id);
+        return w == null ? new Counts(0, 0, 0) : w.counts(nowMs);
+    }
+
+    /** Переходы по всем ссылкам владельца */
+    public synchronized Counts byOwner(String ownerUuid, long nowMs) {
+        ClickWindow w = byOwner.get(ownerUuid);
+        return w == null ? new Counts(0, 0, 0) : w.counts(nowMs);
+    }
+
+    /** До n самых горячих ссылок текущего часа по убыванию оценки */
+    public synchronized List<HotLink> top(int n, long nowMs) {
+        List<HotLink> out = new ArrayList<>();
+        if (nowMs / HOUR != sketchHour) return out;
+        synchronized (refs) {
+            for (Map.Entry<Integer, Long> e : top.entrySet()) {
+                LinkRef ref = refs.get(e.getKey());
+                out.add(new HotLink(ref.shortCode(), e.getValue()));
+            }
+        }
+        out.sort(Comparator.comparingLong(HotLink::clicks).reversed().thenComparing(HotLink::shortCode));
+        return out.size() > n ? new ArrayList<>(out.subList(0, n)) : out;
+    }
+
+    /** Сколько ссылок сейчас зарегистрировано */
+    public int trackedLinks() {
+        return ids.size();
+    }
+
+    /** Сколько событий отброшено из-за переполнения буфера */
+    public long dropped() {
+        return ring.dropped();
+    }
+
+    @Override
+    public void close() {
+        if (drainer != null) {
+            drainer.shutdown();
+            try {
+                drainer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();
+    }
+}
@@ -0,0 +1,75 @@
+package key.project.shortener.analytics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кольцевой буфер событий перехода: много писателей, один читатель.
+ * Событие — пара примитивов (номер ссылки, время в мс) в параллельных массивах,
+ * поэтому публикация не выделяет память. Писатель занимает номер через CAS,
+ * пишет поля и публикует ячейку; при заполненном буфере событие отбрасывается.
+ */
+final class ClickEventRing {
+
+    /** Обработчик событий при разборе буфера */
+    interface Handler {
+        void on(int linkId, long atMs);
+    }
+
+    private final int mask;
+    private final int[] ids;
+    private final long[] times;
+    /** Номер события + 1, опубликованного в ячейке; 0 — ячейка ещё не заполнялась */
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long tail;
+
+    /** @param capacity ёмкость, округляется вверх до степени двойки */
+    ClickEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.ids = new int[size];
+        this.times = new long[size];
+        this.published = new AtomicLongArray(size);
+    }
+
+    boolean offer(int linkId, long atMs) {
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail > mask) {
+                dropped.increment();
+                return false;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        int i = (int) (seq & mask);
+        ids[i] = linkId;
+        times[i] = atMs;
+        published.lazySet(i, seq + 1);
+        return true;
+    }
+
+    /**
+     * Передаёт обработчику до max опубликованных событий по порядку.
+     * Вызывается только одним потоком.
+     */
+    int drain(Handler h, int max) {
+        long t = tail;
+        int n = 0;
+        while (n < max) {
+            int i = (int) (t & mask);
+            if (published.get(i) != t + 1) break;
+            h.on(ids[i], times[i]);
+            t++;
+            n++;
+        }
+        tail = t;
+        return n;
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+}
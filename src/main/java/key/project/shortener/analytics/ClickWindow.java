@@ -0,0 +1,68 @@
+package key.project.shortener.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Счётчики переходов одной ссылки или владельца по времени:
+ * 60 минутных и 24 часовых корзины в кольце. Корзина помечена номером своей
+ * минуты (часа) и обнуляется при повторном использовании, поэтому окна
+ * сдвигаются без отдельного таймера. Доступ только под блокировкой ClickAnalytics.
+ */
+final class ClickWindow {
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+
+    private final long[] minuteStamp = new long[60];
+    private final int[] minuteCount = new int[60];
+    private final long[] hourStamp = new long[24];
+    private final int[] hourCount = new int[24];
+    private long lastMs;
+
+    ClickWindow() {
+        Arrays.fill(minuteStamp, -1);
+        Arrays.fill(hourStamp, -1);
+    }
+
+    void add(long atMs) {
+        long m = atMs / MINUTE;
+        int mi = (int) (m % 60);
+        if (minuteStamp[mi] != m) {
+            minuteStamp[mi] = m;
+            minuteCount[mi] = 0;
+        }
+        minuteCount[mi]++;
+        long h = atMs / HOUR;
+        int hi = (int) (h % 24);
+        if (hourStamp[hi] != h) {
+            hourStamp[hi] = h;
+            hourCount[hi] = 0;
+        }
+        hourCount[hi]++;
+        lastMs = Math.max(lastMs, atMs);
+    }
+
+    /** Переходы за текущую минуту, за последние 60 минут и за последние 24 часа */
+    ClickAnalytics.Counts counts(long nowMs) {
+        long m = nowMs / MINUTE;
+        long minute = 0;
+        long hour = 0;
+        for (int i = 0; i < 60; i++) {
+            long age = m - minuteStamp[i];
+            if (minuteStamp[i] < 0 || age < 0 || age >= 60) continue;
+            hour += minuteCount[i];
+            if (age == 0) minute += minuteCount[i];
+        }
+        long h = nowMs / HOUR;
+        long day = 0;
+        for (int i = 0; i < 24; i++) {
+            long age = h - hourStamp[i];
+            if (hourStamp[i] >= 0 && age >= 0 && age < 24) day += hourCount[i];
+        }
+        return new ClickAnalytics.Counts(minute, hour, day);
+    }
+
+    /** Не было переходов дольше суток: окно можно выбросить */
+    boolean idle(long nowMs) {
+        return nowMs - lastMs >= 24 * HOUR;
+    }
+}
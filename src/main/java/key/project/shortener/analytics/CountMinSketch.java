@@ -0,0 +1,50 @@
+package key.project.shortener.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min: приближённые счётчики в фиксированной памяти depth × width.
+ * Оценка никогда не меньше настоящего значения и завышена не больше чем на
+ * e/width от общего числа событий с вероятностью 1 - e^-depth.
+ */
+final class CountMinSketch {
+    private final int depth;
+    private final int mask;
+    private final long[] table;
+
+    /** @param width ширина строки, округляется вверх до степени двойки */
+    CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        int w = Integer.highestOneBit(Math.max(2, width) - 1) << 1;
+        this.mask = w - 1;
+        this.table = new long[depth * w];
+    }
+
+    /** Добавляет событие и возвращает новую оценку */
+    long add(int key) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int i = row * (mask + 1) + index(key, row);
+            min = Math.min(min, ++table[i]);
+        }
+        return min;
+    }
+
+    long estimate(int key) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, table[row * (mask + 1) + index(key, row)]);
+        }
+        return min;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    private int index(int key, int row) {
+        long h = (key + 1L) * (0x9E3779B97F4A7C15L + 2L * row);
+        h ^= h >>> 29;
+        return (int) h & mask;
+    }
+}
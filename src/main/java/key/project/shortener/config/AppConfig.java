@@ -13,8 +13,9 @@ import java.io.UncheckedIOException;
  * время жизни ссылки (TTL),
  * лимит переходов по умолчанию,
  * базовый домен коротких ссылок,
- * путь к файлу-хранилищу,
- * настройки уведомлений.
+ * путь к файлу-хранилищу и тип хранилища,
+ * настройки уведомлений,
+ * порт и очередь подключений HTTP-сервера.
  */
 public class AppConfig {
 
@@ -31,6 +32,138 @@ public class AppConfig {
         /** Путь к JSON для хранения ссылок */
         public String dataFile = "data/storage.json";
 
+        /** Тип хранилища: file (JSON на каждый вызов), memory (индекс в памяти), wal (журнал), mmap (бинарные файлы), columnar (таблица столбцов) или sharded */
+        public String storage = "file";
+
+        /** Период фонового сброса хранилищ memory и columnar на диск, в миллисекундах */
+        public long flushIntervalMs = 1000;
+
+        /** Бинарный снимок рядом с JSON для быстрого старта хранилищ memory и columnar */
+        public boolean binarySnapshot = true;
+
+        /** Повторное сокращение того же URL владельцем возвращает его активную ссылку вместо новой */
+        public boolean dedupUrls = false;
+
+        /** Генератор кодов: random (случайные) или sequence (Snowflake, без коллизий) */
+        public String codeGenerator = "random";
+
+        /** Длина случайной части кода для генератора random, от 1 до 10 */
+        public int codeLength = 6;
+
+        /** Зерно генератора random для воспроизводимых кодов; null — случайное */
+        public Long codeSeed = null;
+
+        /** Номер экземпляра сервиса (0–63) для генератора sequence */
+        public int nodeId = 0;
+
+        /** Ёмкость кэша редиректов (число кодов); 0 — кэш выключен */
+        public int cacheMaxEntries = 100_000;
+
+        /** Период пакетного сброса счётчиков переходов, в миллисекундах; 0 — писать каждый переход */
+        public long clickFlushIntervalMs = 500;
+
+        /** Когда сбрасывать записи file и wal на диск: per-op | interval | os */
+        public String fsyncPolicy = "os";
+
+        /** Окно групповой фиксации для fsyncPolicy interval, в миллисекундах */
+        public long fsyncIntervalMs = 100;
+
+        /** Каталог журнала для хранилища wal */
+        public String walDir = "data/wal";
+
+        /** Размер сегмента журнала, после которого открывается новый, в байтах */
+        public long walSegmentBytes = 16L * 1024 * 1024;
+
+        /** Период снимков и компакции журнала, в миллисекундах */
+        public long walCompactIntervalMs = 60_000;
+
+        /** Каталог бинарного хранилища mmap */
+        public String mmapDir = "data/mmap";
+
+        /** Число шардов для хранилища sharded */
+        public int shardCount = 4;
+
+        /** Движок каждого шарда: file | memory | wal | mmap | columnar */
+        public String shardEngine = "memory";
+
+        /** Каталог шардов */
+        public String shardDir = "data/shards";
+
+        /** Роль узла в репликации: none | leader | follower */
+        public String replicationRole = "none";
+
+        /** Порт, на котором лидер принимает последователей */
+        public int replicationPort = 7070;
+
+        /** Адрес, на котором лидер слушает последователей и запросы аренд; по умолчанию только loopback */
+        public String replicationBind = "127.0.0.1";
+
+        /** Общий секрет узлов: последователь передаёт его при подключении к лидеру и серверу аренд */
+        public String replicationSecret = "";
+
+        /** Адрес лидера host:port для последователя */
+        public String replicationLeader = "localhost:7070";
+
+        /** Сколько последних изменений лидер хранит для догоняющих последователей */
+        public int replicationLogSize = 100_000;
+
+        /** Период HEARTBEAT лидера при отсутствии изменений, в миллисекундах */
+        public long replicationHeartbeatMs = 1000;
+
+        /** Распределённый лимит переходов арендами квот у лидера */
+        public boolean quotaLeases = false;
+
+        /** Сколько переходов последователь арендует за раз */
+        public int quotaLeaseSize = 100;
+
+        /** Срок аренды, после которого остаток возвращается лидеру, в миллисекундах */
+        public long quotaLeaseMs = 5000;
+
+        /** Порт, на котором лидер выдаёт аренды (на адресе replicationBind) */
+        public int quotaPort = 7071;
+
+        /** Адрес сервера аренд лидера host:port для последователя */
+        public String quotaAuthority = "localhost:7071";
+
+        /** Порт HTTP-сервера (режим server) */
+        public int serverPort = 8080;
+
+        /** Длина очереди входящих подключений HTTP-сервера */
+        public int serverBacklog = 1024;
+
+        /** Период фоновой проверки сроков жизни, в миллисекундах; 0 — выключена */
+        public long expiryIntervalMs = 1000;
+
+        /** Сколько истёкших ссылок помечается за одну проверку */
+        public int expiryBatchSize = 256;
+
+        /** Ёмкость буфера событий переходов для аналитики */
+        public int analyticsRingSize = 65_536;
+
+        /** Сколько самых посещаемых ссылок отслеживать */
+        public int analyticsTopK = 100;
+
+        /** Период разбора буфера событий переходов, в миллисекундах */
+        public long analyticsDrainIntervalMs = 100;
+
+        /** Период сводки метрик в лог, в миллисекундах; 0 — выключена */
+        public long metricsLogIntervalMs = 60_000;
+
+        /** Получатели уведомлений через запятую: console, log, file, webhook */
+        public String notifySinks = "console,log";
+
+        /** Файл для получателя file */
+        public String notifyFile = "data/notifications.log";
+
+        /** URL для получателя webhook */
+        public String notifyWebhookUrl;
+
+        /** Ёмкость очереди уведомлений; при переполнении события отбрасываются */
+        public int notifyQueueCapacity = 10_000;
+
+        /** Максимум уведомлений в одной пачке доставки */
+        public int notifyBatchMax = 256;
+
         /** уведомление при истечении срока жизни */
         public boolean notifyOnExpire = true;
 
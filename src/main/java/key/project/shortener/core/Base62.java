@@ -0,0 +1,69 @@
+package key.project.shortener.core;
+
+/**
+ * Кодирование чисел в base-62 и обратно.
+ * Алфавит совпадает с UrlCodeGenerator: цифры, затем A–Z, затем a–z,
+ * поэтому случайная часть короткого кода однозначно упаковывается в long.
+ */
+public final class Base62 {
+    static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private Base62() {}
+
+    /** Значение символа алфавита или -1, если символ не из алфавита */
+    public static int digit(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'A' && c <= 'Z') return c - 'A' + 10;
+        if (c >= 'a' && c <= 'z') return c - 'a' + 36;
+        return -1;
+    }
+
+    /**
+     * Разбирает символы s[from, to) как число в base-62.
+     * @return значение или -1, если встретился чужой символ
+     */
+    public static long decode(CharSequence s, int from, int to) {
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            int d = digit(s.charAt(i));
+            if (d < 0) return -1;
+            v = v * 62 + d;
+        }
+        return v;
+    }
+
+    /** Записывает значение ровно в len символов, с ведущими нулями */
+    public static String encode(long value, int len) {
+        char[] out = new char[len];
+        encode(value, len, out, 0);
+        return new String(out);
+    }
+
+    /** Записывает значение ровно в len символов в out начиная с off, без выделения памяти */
+    public static void encode(long value, int len, char[] out, int off) {
+        for (int i = off + len - 1; i >= off; i--) {
+            out[i] = ALPHABET.charAt((int) (value % 62));
+            value /= 62;
+        }
+    }
+
+    /** 62 в степени len: количество различных кодов длины len */
+    public static long capacity(int len) {
+        long v = 1;
+        for (int i = 0; i < len; i++) v *= 62;
+        return v;
+    }
+
+    /**
+     * Короткий код: префикс, дефис и случайная часть длины len.
+     * Строка собирается в одном массиве, без StringBuilder и промежуточных строк.
+     */
+    public static String code(String prefix, long value, int len) {
+        int p = prefix.length();
+        char[] out = new char[p + 1 + len];
+        prefix.getChars(0, p, out, 0);
+        out[p] = '-';
+        encode(value, len, out, p + 1);
+        return new String(out);
+    }
+}
@@ -0,0 +1,19 @@
+package key.project.shortener.core;
+
+/**
+ * Источник случайной части коротких кодов.
+ * Код представлен числом: next() возвращает значение меньше 62^length(),
+ * в текст его переводит Base62 только при сборке готового кода.
+ */
+public interface CodeGenerator {
+    /** Следующее значение случайной части кода */
+    long next();
+
+    /** Длина случайной части кода в символах base-62 */
+    int length();
+
+    /** Готовый короткий код с префиксом */
+    default String next(String prefix) {
+        return Base62.code(prefix, next(), length());
+    }
+}
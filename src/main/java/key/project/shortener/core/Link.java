@@ -17,10 +17,27 @@ public class Link {
     public Instant createdAt;
     public Instant expiresAt;
     public LinkStatus status;
+    /** Номер изменения: хранилище увеличивает его на 1 при каждой записи, compareAndSave сверяет его */
+    public long version;
 
     public boolean isExpired(Instant now) { return expiresAt != null && now.isAfter(expiresAt); }
     public boolean limitReached() { return maxClicks > 0 && clickCount >= maxClicks; }
 
+    // Копия ссылки, чтобы хранилища в памяти не отдавали наружу свои объекты
+    public Link copy() {
+        Link c = new Link();
+        c.ownerUuid = ownerUuid;
+        c.originalUrl = originalUrl;
+        c.shortCode = shortCode;
+        c.maxClicks = maxClicks;
+        c.clickCount = clickCount;
+        c.createdAt = createdAt;
+        c.expiresAt = expiresAt;
+        c.status = status;
+        c.version = version;
+        return c;
+    }
+
     // Равенство ссылок определяется по владельцу и короткому коду
     @Override public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,47 @@
+package key.project.shortener.core;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Случайные коды без общей блокировки.
+ * По умолчанию каждый поток берёт числа из своего ThreadLocalRandom,
+ * поэтому параллельные create не упираются в синхронизированный SecureRandom.
+ * С заданным seed генератор детерминирован (для тестов и воспроизводимых прогонов),
+ * в этом режиме обращения сериализуются.
+ * Уникальность не гарантируется: совпадения отсекает индекс кодов в ShortenerService.
+ */
+public class RandomCodeGenerator implements CodeGenerator {
+    private final int length;
+    private final long bound;
+    private final SplittableRandom seeded;
+
+    /** Недетерминированный генератор */
+    public RandomCodeGenerator(int length) {
+        this(length, null);
+    }
+
+    /**
+     * @param length длина случайной части, от 1 до 10 символов
+     * @param seed зерно для детерминированного режима или null
+     */
+    public RandomCodeGenerator(int length, Long seed) {
+        if (length < 1 || length > 10) throw new IllegalArgumentException("Длина кода должна быть от 1 до 10: " + length);
+        this.length = length;
+        this.bound = Base62.capacity(length);
+        this.seeded = seed == null ? null : new SplittableRandom(seed);
+    }
+
+    @Override
+    public long next() {
+        if (seeded == null) return ThreadLocalRandom.current().nextLong(bound);
+        synchronized (seeded) {
+            return seeded.nextLong(bound);
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+}
@@ -0,0 +1,59 @@
+package key.project.shortener.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Генератор кодов по схеме Snowflake: время, номер узла и счётчик в одном числе.
+ * 41 бит — миллисекунды от EPOCH (хватает примерно на 69 лет),
+ * 6 бит  — номер узла (до 64 экземпляров сервиса),
+ * 12 бит — счётчик внутри миллисекунды (до 4096 кодов в мс на узел).
+ * Итого 59 бит, что помещается в 10 символов base-62.
+ * Коды одного узла не повторяются, поэтому проверка коллизий не нужна.
+ * Состояние (время и счётчик) хранится в одном AtomicLong и меняется через CAS.
+ */
+public class SequenceCodeGenerator implements CodeGenerator {
+    /** 2025-01-01T00:00:00Z */
+    static final long EPOCH = 1735689600000L;
+    private static final int NODE_BITS = 6;
+    private static final int SEQ_BITS = 12;
+    private static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+    private static final int LENGTH = 10;
+
+    private final long node;
+    private final LongSupplier clock;
+    /** последнее выданное значение без номера узла: (время << SEQ_BITS) | счётчик */
+    private final AtomicLong last = new AtomicLong();
+
+    public SequenceCodeGenerator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    SequenceCodeGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId >= 1 << NODE_BITS) {
+            throw new IllegalArgumentException("Номер узла должен быть от 0 до " + ((1 << NODE_BITS) - 1));
+        }
+        this.node = nodeId;
+        this.clock = clock;
+    }
+
+    @Override
+    public long next() {
+        while (true) {
+            long prev = last.get();
+            long now = (clock.getAsLong() - EPOCH) << SEQ_BITS;
+            // время не идёт назад: при отставании часов продолжаем счётчик от последнего значения
+            long candidate = now > prev ? now : prev + 1;
+            if (last.compareAndSet(prev, candidate)) {
+                long millis = candidate >>> SEQ_BITS;
+                long seq = candidate & SEQ_MASK;
+                return millis << (NODE_BITS + SEQ_BITS) | node << SEQ_BITS | seq;
+            }
+        }
+    }
+
+    @Override
+    public int length() {
+        return LENGTH;
+    }
+}
@@ -1,18 +1,23 @@
 package key.project.shortener.core;
-import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
 /**
  * Генератор коротких кодов для сокращённых ссылок.
  *
  * Каждый короткий код состоит из рандомных символов.
  * (цифры 0–9, буквы A–Z и a–z)
- * Используется при создании новой ссылки
+ * Код произвольной длины собирается из кусков по 10 символов base-62,
+ * случайные числа берутся из ThreadLocalRandom текущего потока без общей блокировки.
+ * ShortenerService использует CodeGenerator, этот класс оставлен для кодов произвольной длины.
  */
 public class UrlCodeGenerator {
-    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
-    private static final SecureRandom RND = new SecureRandom();
+    private static final long CHUNK = Base62.capacity(10);
     public static String random(int len) {
-        StringBuilder sb = new StringBuilder(len);
-        for (int i = 0; i < len; i++) sb.append(ALPHABET.charAt(RND.nextInt(ALPHABET.length())));
-        return sb.toString();
+        char[] out = new char[len];
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        for (int off = 0; off < len; off += 10) {
+            int n = Math.min(10, len - off);
+            Base62.encode(rnd.nextLong(n == 10 ? CHUNK : Base62.capacity(n)), n, out, off);
+        }
+        return new String(out);
     }
 }
@@ -0,0 +1,36 @@
+package key.project.shortener.core;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Общий пул строк URL: одинаковые адреса разных ссылок и владельцев ссылаются на один объект String.
+ * Пул слабый — строка уходит из него, когда на неё не осталось ссылок из хранилищ.
+ * Разделён на части по хэшу, чтобы параллельные вызовы не ждали одну блокировку.
+ */
+public final class UrlInterner {
+    private static final int STRIPES = 16;
+
+    @SuppressWarnings("unchecked")
+    private static final Map<String, WeakReference<String>>[] POOLS = new Map[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) POOLS[i] = new WeakHashMap<>();
+    }
+
+    private UrlInterner() {}
+
+    /** @return строка из пула, равная url (или сам url, если такой ещё не было) */
+    public static String intern(String url) {
+        if (url == null) return null;
+        Map<String, WeakReference<String>> pool = POOLS[(url.hashCode() & 0x7fffffff) % STRIPES];
+        synchronized (pool) {
+            WeakReference<String> ref = pool.get(url);
+            String s = ref == null ? null : ref.get();
+            if (s != null) return s;
+            pool.put(url, new WeakReference<>(url));
+            return url;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package key.project.shortener.core;
+
+import java.net.IDN;
+
+/**
+ * Проверка и нормализация URL за один проход по символам, без java.net.URI и без исключений.
+ * Принимаются абсолютные URL вида scheme://[userinfo@]host[:port][/path][?query][#fragment],
+ * host — доменное имя, IPv4 или IPv6 в скобках; доменное имя не в ASCII проверяется через IDN.
+ * check() работает с CharSequence и для ASCII-адресов ничего не выделяет.
+ * normalize() приводит адрес к канонической форме, чтобы одинаковые цели можно было найти:
+ * схема и хост в нижнем регистре, IDN-хост в punycode, порт по умолчанию убран, пустой путь — "/".
+ * Уже канонический адрес возвращается той же строкой.
+ */
+public final class UrlValidator {
+    private UrlValidator() {}
+
+    /** Результат проверки */
+    public enum Result {
+        OK,
+        EMPTY,
+        BAD_SCHEME,
+        NO_HOST,
+        BAD_HOST,
+        BAD_PORT,
+        BAD_CHAR
+    }
+
+    // позиции, которые parse() отдаёт в normalize()
+    private static final int SCHEME_END = 0;
+    private static final int HOST_START = 1;
+    private static final int HOST_END = 2;
+    private static final int PORT = 3;
+    private static final int AUTH_END = 4;
+    private static final int IDN_HOST = 5;
+
+    public static Result check(CharSequence url) {
+        return url == null ? Result.EMPTY : parse(url, null);
+    }
+
+    public static boolean isValid(CharSequence url) {
+        return check(url) == Result.OK;
+    }
+
+    /**
+     * Каноническая форма URL.
+     * @return нормализованный адрес, тот же объект если он уже канонический, или null если адрес невалиден
+     */
+    public static String normalize(String url) {
+        if (url == null) return null;
+        int[] pos = new int[6];
+        if (parse(url, pos) != Result.OK) return null;
+        int n = url.length();
+        int schemeEnd = pos[SCHEME_END];
+        int hostStart = pos[HOST_START];
+        int hostEnd = pos[HOST_END];
+        int authEnd = pos[AUTH_END];
+        boolean idn = pos[IDN_HOST] != 0;
+        boolean dropPort = pos[PORT] >= 0 && isDefaultPort(url, schemeEnd, pos[PORT] + 1, authEnd);
+        boolean emptyPath = authEnd == n || url.charAt(authEnd) != '/';
+        if (!idn && !dropPort && !emptyPath && !hasUpper(url, 0, schemeEnd) && !hasUpper(url, hostStart, hostEnd)) {
+            return url;
+        }
+
+        StringBuilder sb = new StringBuilder(n + 1);
+        appendLower(sb, url, 0, schemeEnd);
+        sb.append(url, schemeEnd, hostStart);
+        if (idn) {
+            String ascii = toAscii(url.substring(hostStart, hostEnd));
+            if (ascii == null) return null;
+            appendLower(sb, ascii, 0, ascii.length());
+        } else {
+            appendLower(sb, url, hostStart, hostEnd);
+        }
+        if (pos[PORT] >= 0 && !dropPort) sb.append(url, pos[PORT], authEnd);
+        if (emptyPath) sb.append('/');
+        sb.append(url, authEnd, n);
+        return sb.toString();
+    }
+
+    private static Result parse(CharSequence s, int[] pos) {
+        int n = s.length();
+        if (n == 0) return Result.EMPTY;
+
+        // scheme = ALPHA *( ALPHA / DIGIT / "+" / "-" / "." ), затем "://"
+        if (!isAlpha(s.charAt(0))) return Result.BAD_SCHEME;
+        int i = 1;
+        while (i < n && s.charAt(i) != ':') {
+            char c = s.charAt(i);
+            if (!isAlpha(c) && !isDigit(c) && c != '+' && c != '-' && c != '.') return Result.BAD_SCHEME;
+            i++;
+        }
+        if (i == n) return Result.BAD_SCHEME;
+        int schemeEnd = i;
+        if (i + 2 >= n || s.charAt(i + 1) != '/' || s.charAt(i + 2) != '/') return Result.NO_HOST;
+        int authStart = i + 3;
+
+        // граница authority и начало хоста после последнего '@'
+        int authEnd = authStart;
+        int hostStart = authStart;
+        for (; authEnd < n; authEnd++) {
+            char c = s.charAt(authEnd);
+            if (c == '/' || c == '?' || c == '#') break;
+            if (c == '@') hostStart = authEnd + 1;
+        }
+        for (int j = authStart; j < hostStart - 1; j++) {
+            if (!isPathChar(s.charAt(j)) || s.charAt(j) == '@') return Result.BAD_CHAR;
+        }
+
+        // хост
+        int hostEnd;
+        boolean idn = false;
+        if (hostStart < authEnd && s.charAt(hostStart) == '[') {
+            hostEnd = hostStart + 1;
+            while (hostEnd < authEnd && s.charAt(hostEnd) != ']') {
+                char c = s.charAt(hostEnd);
+                if (!isHex(c) && c != ':' && c != '.') return Result.BAD_HOST;
+                hostEnd++;
+            }
+            if (hostEnd == authEnd || hostEnd - hostStart < 3) return Result.BAD_HOST;
+            hostEnd++;
+        } else {
+            hostEnd = hostStart;
+            while (hostEnd < authEnd && s.charAt(hostEnd) != ':') {
+                char c = s.charAt(hostEnd);
+                if (c > 0x7F) idn = true;
+                else if (!isAlpha(c) && !isDigit(c) && c != '-' && c != '.') return Result.BAD_HOST;
+                hostEnd++;
+            }
+            if (hostEnd == hostStart) return Result.NO_HOST;
+            Result host = idn ? checkIdn(s, hostStart, hostEnd) : checkHostname(s, hostStart, hostEnd);
+            if (host != Result.OK) return host;
+        }
+
+        // порт
+        int port = -1;
+        if (hostEnd < authEnd) {
+            if (s.charAt(hostEnd) != ':') return Result.BAD_HOST;
+            port = hostEnd;
+            int value = 0;
+            for (int j = hostEnd + 1; j < authEnd; j++) {
+                char c = s.charAt(j);
+                if (!isDigit(c)) return Result.BAD_PORT;
+                value = value * 10 + (c - '0');
+                if (value > 65535) return Result.BAD_PORT;
+            }
+        }
+
+        // путь, запрос, фрагмент
+        boolean fragment = false;
+        for (int j = authEnd; j < n; j++) {
+            char c = s.charAt(j);
+            if (c == '#') {
+                if (fragment) return Result.BAD_CHAR;
+                fragment = true;
+            } else if (c == '%') {
+                if (j + 2 >= n || !isHex(s.charAt(j + 1)) || !isHex(s.charAt(j + 2))) return Result.BAD_CHAR;
+                j += 2;
+            } else if (!isPathChar(c)) {
+                return Result.BAD_CHAR;
+            }
+        }
+
+        if (pos != null) {
+            pos[SCHEME_END] = schemeEnd;
+            pos[HOST_START] = hostStart;
+            pos[HOST_END] = hostEnd;
+            pos[PORT] = port;
+            pos[AUTH_END] = authEnd;
+            pos[IDN_HOST] = idn ? 1 : 0;
+        }
+        return Result.OK;
+    }
+
+    /**
+     * Доменное имя из меток alnum и '-', разделённых точками (допускается точка в конце),
+     * метка не начинается и не заканчивается на '-'. Если последняя метка начинается с цифры,
+     * хост должен быть адресом IPv4.
+     */
+    private static Result checkHostname(CharSequence s, int from, int to) {
+        if (s.charAt(to - 1) == '.') to--;
+        if (to <= from) return Result.BAD_HOST;
+        int labelStart = from;
+        for (int j = from; j <= to; j++) {
+            if (j < to && s.charAt(j) != '.') continue;
+            if (j == labelStart || s.charAt(labelStart) == '-' || s.charAt(j - 1) == '-') return Result.BAD_HOST;
+            if (j < to) labelStart = j + 1;
+        }
+        if (isDigit(s.charAt(labelStart)) && !isIpv4(s, from, to)) return Result.BAD_HOST;
+        return Result.OK;
+    }
+
+    private static boolean isIpv4(CharSequence s, int from, int to) {
+        int parts = 0;
+        int value = 0;
+        int digits = 0;
+        for (int j = from; j <= to; j++) {
+            if (j == to || s.charAt(j) == '.') {
+                if (digits == 0 || value > 255) return false;
+                parts++;
+                value = 0;
+                digits = 0;
+            } else if (isDigit(s.charAt(j)) && digits < 3) {
+                value = value * 10 + (s.charAt(j) - '0');
+                digits++;
+            } else {
+                return false;
+            }
+        }
+        return parts == 4;
+    }
+
+    /** Медленный путь для доменов не в ASCII: перевод в punycode и проверка результата */
+    private static Result checkIdn(CharSequence s, int from, int to) {
+        String ascii = toAscii(s.subSequence(from, to).toString());
+        return ascii == null ? Result.BAD_HOST : checkHostname(ascii, 0, ascii.length());
+    }
+
+    private static String toAscii(String host) {
+        try {
+            String ascii = IDN.toASCII(host, IDN.ALLOW_UNASSIGNED);
+            return ascii.isEmpty() ? null : ascii;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isDefaultPort(CharSequence s, int schemeEnd, int from, int to) {
+        if (from == to) return true; // пустой порт "host:" равен порту по умолчанию
+        int port = 0;
+        for (int j = from; j < to; j++) port = port * 10 + (s.charAt(j) - '0');
+        return switch (port) {
+            case 80 -> schemeIs(s, schemeEnd, "http") || schemeIs(s, schemeEnd, "ws");
+            case 443 -> schemeIs(s, schemeEnd, "https") || schemeIs(s, schemeEnd, "wss");
+            case 21 -> schemeIs(s, schemeEnd, "ftp");
+            default -> false;
+        };
+    }
+
+    private static boolean schemeIs(CharSequence s, int schemeEnd, String scheme) {
+        if (schemeEnd != scheme.length()) return false;
+        for (int j = 0; j < schemeEnd; j++) {
+            if (lower(s.charAt(j)) != scheme.charAt(j)) return false;
+        }
+        return true;
+    }
+
+    /** Символы, которые java.net.URI допускает в пути, запросе и фрагменте */
+    private static boolean isPathChar(char c) {
+        if (c <= 0x20 || c == 0x7F) return false;
+        return switch (c) {
+            case '<', '>', '"', '{', '}', '|', '\\', '^', '`', '[', ']' -> false;
+            default -> true;
+        };
+    }
+
+    private static boolean hasUpper(CharSequence s, int from, int to) {
+        for (int j = from; j < to; j++) {
+            char c = s.charAt(j);
+            if (c >= 'A' && c <= 'Z') return true;
+        }
+        return false;
+    }
+
+    private static void appendLower(StringBuilder sb, CharSequence s, int from, int to) {
+        for (int j = from; j < to; j++) sb.append(lower(s.charAt(j)));
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHex(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -1,16 +1,26 @@
 package key.project.shortener.core;
-import java.net.URI;
 
 /**
  * класс для проверки ввода
  */
 public class Validation {
+    /**
+     * Проверяет URL однопроходным UrlValidator, без разбора через java.net.URI.
+     * Там, где невалидный URL — обычный случай (импорт), лучше вызывать UrlValidator.check напрямую.
+     */
     public static void requireValidUrl(String url) {
-        try {
-            URI u = new URI(url);
-            if (u.getScheme() == null || u.getHost() == null) throw new IllegalArgumentException();
-        } catch (Exception e) {
+        if (UrlValidator.check(url) != UrlValidator.Result.OK) {
             throw new IllegalArgumentException("Невалидный URL: " + url);
         }
     }
+
+    /**
+     * Лимит переходов должен быть положительным: 0 у счётчика значит «без лимита»,
+     * а отрицательный лимит дал бы статус LIMIT_REACHED, который счётчик не соблюдает.
+     */
+    public static void requireValidLimit(int maxClicks) {
+        if (maxClicks <= 0) {
+            throw new IllegalArgumentException("Лимит переходов должен быть положительным: " + maxClicks);
+        }
+    }
 }
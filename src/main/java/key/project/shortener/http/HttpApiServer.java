@@ -0,0 +1,311 @@
+package key.project.shortener.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import key.project.shortener.analytics.ClickAnalytics;
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.metrics.Metrics;
+import key.project.shortener.metrics.PrometheusFormat;
+import key.project.shortener.repo.LinkJson;
+import key.project.shortener.service.ShortenerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP-сервер редиректов и REST API на встроенном com.sun.net.httpserver.
+ * Каждый запрос обрабатывается в своём виртуальном потоке.
+ *
+ * GET    /{code}                  302 на оригинальный URL (засчитывает переход)
+ * HEAD   /{code}                  302 или 404 без перехода и аналитики
+ * POST   /api/links               создать ссылку: {"url": "...", "maxClicks": 10}
+ * GET    /api/links               ссылки пользователя
+ * POST   /api/links/batch         создать пачку: {"urls": ["..."], "maxClicks": 10}
+ * PUT    /api/links/limit         изменить лимит пачки: {"codes": ["..."], "maxClicks": 10}
+ * POST   /api/links/resolve       редирект пачки кодов: {"codes": ["..."]} → {код: URL}
+ * GET    /api/links/{code}        информация о ссылке
+ * PUT    /api/links/{code}/limit  изменить лимит: {"maxClicks": 10}
+ * DELETE /api/links/{code}        пометить ссылку удалённой
+ * GET    /api/links/{code}/stats  переходы по ссылке за минуту/час/сутки
+ * GET    /api/stats               переходы по всем ссылкам пользователя
+ * GET    /api/stats/top?n=10      самые посещаемые ссылки за текущий час
+ * GET    /api/cache               счётчики кэша редиректов
+ * GET    /metrics                 метрики в текстовом формате Prometheus
+ *
+ * Для /api/links пользователь передаётся заголовком X-User-Uuid (или параметром ?user=),
+ * редирект владельца не требует: он определяется по глобальному индексу кодов.
+ * Все ответы отдаются с Content-Length, поэтому соединения остаются keep-alive.
+ */
+public class HttpApiServer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(HttpApiServer.class);
+    static final String USER_HEADER = "X-User-Uuid";
+
+    private final ShortenerService service;
+    private final AppConfig cfg;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper json = LinkJson.MAPPER;
+
+    public HttpApiServer(ShortenerService service, AppConfig cfg) {
+        this.service = service;
+        this.cfg = cfg;
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(cfg.app.serverPort), cfg.app.serverBacklog);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/links", this::api);
+        server.createContext("/api/cache", ex -> handle(ex, () -> send(ex, 200, service.cacheStats())));
+        server.createContext("/api/stats", this::stats);
+        server.createContext("/metrics", this::metrics);
+        server.createContext("/", this::redirect);
+    }
+
+    public void start() {
+        server.start();
+        log.info("HTTP-сервер слушает порт {}", port());
+    }
+
+    /** Фактический порт (при serverPort = 0 выбирается свободный) */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+    }
+
+    // ---------- обработчики ----------
+
+    private void redirect(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            String code = ex.getRequestURI().getPath().substring(1);
+            if (!"GET".equals(ex.getRequestMethod()) && !"HEAD".equals(ex.getRequestMethod())) {
+                send(ex, 405, Map.of("error", "Метод не поддерживается"));
+                return;
+            }
+            if (code.isEmpty() || code.contains("/")) {
+                send(ex, 404, Map.of("error", "Не найдено"));
+                return;
+            }
+            // HEAD — проверка ссылки (боты превью, валидаторы): переход не засчитывается
+            Optional<String> url = "HEAD".equals(ex.getRequestMethod()) ? service.peek(code) : service.resolve(code);
+            if (url.isEmpty()) {
+                send(ex, 404, Map.of("error", "Ссылка недоступна"));
+                return;
+            }
+            ex.getResponseHeaders().set("Location", url.get());
+            ex.getResponseHeaders().set("Cache-Control", "no-store");
+            ex.sendResponseHeaders(302, -1);
+        });
+    }
+
+    private void stats(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            String path = ex.getRequestURI().getPath();
+            if (!"GET".equals(ex.getRequestMethod())) {
+                send(ex, 405, Map.of("error", "Метод не поддерживается"));
+            } else if (path.equals("/api/stats") || path.equals("/api/stats/")) {
+                send(ex, 200, service.ownerClickStats(user(ex)));
+            } else if (path.equals("/api/stats/top")) {
+                String n = query(ex).getOrDefault("n", "10");
+                try {
+                    send(ex, 200, service.topLinks(Integer.parseInt(n)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Невалидный параметр n: " + n);
+                }
+            } else {
+                send(ex, 404, Map.of("error", "Не найдено"));
+            }
+        });
+    }
+
+    private void metrics(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            byte[] data = PrometheusFormat.format(Metrics.global()).getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            ex.sendResponseHeaders(200, data.length);
+            ex.getResponseBody().write(data);
+        });
+    }
+
+    private void api(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            String user = user(ex);
+            String rest = ex.getRequestURI().getPath().substring("/api/links".length());
+            if (!rest.isEmpty() && !rest.startsWith("/")) {
+                send(ex, 404, Map.of("error", "Не найдено"));
+                return;
+            }
+            String[] parts = rest.isEmpty() || rest.equals("/") ? new String[0] : rest.substring(1).split("/");
+            String method = ex.getRequestMethod();
+
+            if (parts.length == 0 && method.equals("POST")) {
+                JsonNode body = body(ex);
+                JsonNode url = body.get("url");
+                if (url == null || !url.isTextual()) throw new IllegalArgumentException("Поле url обязательно");
+                Integer max = body.hasNonNull("maxClicks") ? maxClicks(body) : null;
+                send(ex, 201, view(service.create(user, url.asText(), max)));
+            } else if (parts.length == 0 && method.equals("GET")) {
+                List<Map<String, Object>> out = new ArrayList<>();
+                for (Link l : service.list(user)) out.add(view(l));
+                send(ex, 200, out);
+            } else if (parts.length == 1 && parts[0].equals("batch") && method.equals("POST")) {
+                JsonNode body = body(ex);
+                Integer max = body.hasNonNull("maxClicks") ? maxClicks(body) : null;
+                List<Map<String, Object>> out = new ArrayList<>();
+                for (Link l : service.createAll(user, strings(body, "urls"), max)) out.add(view(l));
+                send(ex, 201, out);
+            } else if (parts.length == 1 && parts[0].equals("limit") && method.equals("PUT")) {
+                JsonNode body = body(ex);
+                send(ex, 200, Map.of("updated", service.setLimitAll(user, strings(body, "codes"), maxClicks(body))));
+            } else if (parts.length == 1 && parts[0].equals("resolve") && method.equals("POST")) {
+                send(ex, 200, service.resolveAll(strings(body(ex), "codes")));
+            } else if (parts.length == 1 && method.equals("GET")) {
+                Optional<Link> l = service.info(user, parts[0]);
+                if (l.isPresent()) send(ex, 200, view(l.get()));
+                else send(ex, 404, Map.of("error", "Не найдено"));
+            } else if (parts.length == 1 && method.equals("DELETE")) {
+                if (service.delete(user, parts[0])) send(ex, 204, null);
+                else send(ex, 404, Map.of("error", "Не найдено"));
+            } else if (parts.length == 2 && parts[1].equals("stats") && method.equals("GET")) {
+                Optional<ClickAnalytics.Counts> c = service.clickStats(user, parts[0]);
+                if (c.isPresent()) send(ex, 200, c.get());
+                else send(ex, 404, Map.of("error", "Не найдено"));
+            } else if (parts.length == 2 && parts[1].equals("limit") && method.equals("PUT")) {
+                if (service.setLimit(user, parts[0], maxClicks(body(ex)))) send(ex, 200, view(service.info(user, parts[0]).orElseThrow()));
+                else send(ex, 404, Map.of("error", "Не найдено"));
+            } else {
+                send(ex, 404, Map.of("error", "Не найдено"));
+            }
+        });
+    }
+
+    // ---------- вспомогательное ----------
+
+    private interface Action {
+        void run() throws IOException;
+    }
+
+    /** Переводит исключения сервиса в коды ответа и всегда закрывает обмен */
+    private void handle(HttpExchange ex, Action action) throws IOException {
+        try (ex) {
+            try {
+                action.run();
+            } catch (IllegalArgumentException e) {
+                send(ex, 400, Map.of("error", String.valueOf(e.getMessage())));
+            } catch (SecurityException e) {
+                send(ex, 403, Map.of("error", String.valueOf(e.getMessage())));
+            } catch (IllegalStateException e) {
+                // запись на узле-последователе или неразрешившийся конфликт версий
+                send(ex, 409, Map.of("error", String.valueOf(e.getMessage())));
+            } catch (RuntimeException e) {
+                log.error("Ошибка обработки {} {}", ex.getRequestMethod(), ex.getRequestURI(), e);
+                send(ex, 500, Map.of("error", "Внутренняя ошибка"));
+            }
+        }
+    }
+
+    /** UUID пользователя из заголовка или параметра запроса */
+    private static String user(HttpExchange ex) {
+        String u = ex.getRequestHeaders().getFirst(USER_HEADER);
+        if (u == null) u = query(ex).get("user");
+        if (u == null) throw new IllegalArgumentException("Не передан " + USER_HEADER);
+        try {
+            if (UUID.fromString(u).toString().equals(u)) return u;
+        } catch (IllegalArgumentException ignored) {
+        }
+        throw new IllegalArgumentException("Невалидный UUID пользователя: " + u);
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        String q = ex.getRequestURI().getRawQuery();
+        Map<String, String> out = new HashMap<>();
+        if (q == null) return out;
+        for (String pair : q.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                out.put(
+                        URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return out;
+    }
+
+    private JsonNode body(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] data = in.readAllBytes();
+            if (data.length == 0) return json.createObjectNode();
+            try {
+                return json.readTree(data);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Невалидный JSON");
+            }
+        }
+    }
+
+    /** Поле maxClicks: целое положительное число, иначе 400 */
+    private static int maxClicks(JsonNode body) {
+        JsonNode max = body.get("maxClicks");
+        if (max == null || !max.isIntegralNumber() || !max.canConvertToInt() || max.asInt() <= 0) {
+            throw new IllegalArgumentException("Поле maxClicks должно быть целым положительным числом");
+        }
+        return max.asInt();
+    }
+
+    /** Массив строк из поля тела запроса */
+    private static List<String> strings(JsonNode body, String field) {
+        JsonNode arr = body.get(field);
+        if (arr == null || !arr.isArray()) throw new IllegalArgumentException("Поле " + field + " должно быть массивом");
+        List<String> out = new ArrayList<>(arr.size());
+        for (JsonNode n : arr) {
+            if (!n.isTextual()) throw new IllegalArgumentException("Поле " + field + " должно содержать строки");
+            out.add(n.asText());
+        }
+        return out;
+    }
+
+    private Map<String, Object> view(Link l) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("shortCode", l.shortCode);
+        m.put("shortUrl", cfg.app.baseDomain + l.shortCode);
+        m.put("originalUrl", l.originalUrl);
+        m.put("status", l.status);
+        m.put("clickCount", l.clickCount);
+        m.put("maxClicks", l.maxClicks);
+        m.put("createdAt", l.createdAt);
+        m.put("expiresAt", l.expiresAt);
+        return m;
+    }
+
+    private void send(HttpExchange ex, int status, Object body) throws IOException {
+        if (body == null) {
+            ex.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] data = json.writeValueAsBytes(body);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if ("HEAD".equals(ex.getRequestMethod())) {
+            ex.sendResponseHeaders(status, -1);
+            return;
+        }
+        ex.sendResponseHeaders(status, data.length);
+        ex.getResponseBody().write(data);
+    }
+}
@@ -0,0 +1,91 @@
+package key.project.shortener.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма задержек в духе HdrHistogram: лог-линейные корзины в наносекундах.
+ * Каждый интервал [2^k, 2^(k+1)) делится на 32 равные корзины, поэтому относительная
+ * погрешность перцентилей не больше ~3% во всём диапазоне от 1 нс до сотен лет.
+ * Запись — один инкремент в AtomicLongArray и пара атомарных операций:
+ * без блокировок и без выделения памяти.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB + (63 - SUB_BITS) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Записывает одно значение в наносекундах (отрицательные считаются нулём) */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+            // повторяем, пока не обновим максимум
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sumNanos() {
+        return sum.sum();
+    }
+
+    public long maxNanos() {
+        return max.get();
+    }
+
+    public double meanNanos() {
+        long n = count();
+        return n == 0 ? 0 : (double) sumNanos() / n;
+    }
+
+    /**
+     * Значение перцентиля (верхняя граница корзины).
+     * @param percentile от 0 до 100
+     */
+    public long percentile(double percentile) {
+        long total = count();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), maxNanos());
+        }
+        return maxNanos();
+    }
+
+    /** Обнуляет гистограмму (для интервальных сводок); не атомарно относительно параллельной записи */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) - SUB;
+        return SUB + (exp - SUB_BITS) * SUB + sub;
+    }
+
+    static long upperBound(int i) {
+        if (i < SUB) return i;
+        int exp = (i - SUB) / SUB + SUB_BITS;
+        int sub = (i - SUB) % SUB;
+        long width = 1L << (exp - SUB_BITS);
+        return (SUB + sub) * width + width - 1;
+    }
+}
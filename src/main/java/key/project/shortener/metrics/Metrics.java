@@ -0,0 +1,73 @@
+package key.project.shortener.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики горячих путей: счётчики и гистограммы задержек по операциям ShortenerService
+ * и по операциям ввода-вывода хранилищ (чтение, разбор, запись) с объёмом в байтах.
+ * Все структуры создаются заранее, запись не выделяет память и не берёт блокировок.
+ * Общий экземпляр — Metrics.global(); выгрузка — PrometheusFormat и MetricsReporter.
+ */
+public final class Metrics {
+    /** Операции сервиса; *_ALL — пакетные вызовы целиком, переходы внутри RESOLVE_ALL в OPEN не попадают */
+    public enum Op { CREATE, OPEN, INFO, LIST, SET_LIMIT, DELETE, CLEANUP, CREATE_ALL, SET_LIMIT_ALL, RESOLVE_ALL }
+
+    /** Операции хранилища; PARSE — разбор JSON при потоковом чтении, COMMIT — одна групповая фиксация (запись и force) в GroupCommit */
+    public enum IoOp { READ, PARSE, WRITE, COMMIT }
+
+    private static final Metrics GLOBAL = new Metrics();
+
+    private final Map<Op, LatencyHistogram> ops = new EnumMap<>(Op.class);
+    private final Map<Op, LongAdder> errors = new EnumMap<>(Op.class);
+    private final Map<IoOp, LatencyHistogram> io = new EnumMap<>(IoOp.class);
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    public Metrics() {
+        for (Op op : Op.values()) {
+            ops.put(op, new LatencyHistogram());
+            errors.put(op, new LongAdder());
+        }
+        for (IoOp op : IoOp.values()) io.put(op, new LatencyHistogram());
+    }
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    public void record(Op op, long nanos) {
+        ops.get(op).record(nanos);
+    }
+
+    public void error(Op op) {
+        errors.get(op).increment();
+    }
+
+    public void io(IoOp op, long nanos, long bytes) {
+        io.get(op).record(nanos);
+        if (op == IoOp.READ) bytesRead.add(bytes);
+        else if (op == IoOp.WRITE) bytesWritten.add(bytes);
+    }
+
+    public LatencyHistogram histogram(Op op) {
+        return ops.get(op);
+    }
+
+    public long errors(Op op) {
+        return errors.get(op).sum();
+    }
+
+    public LatencyHistogram histogram(IoOp op) {
+        return io.get(op);
+    }
+
+    public long bytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long bytesWritten() {
+        return bytesWritten.sum();
+    }
+}
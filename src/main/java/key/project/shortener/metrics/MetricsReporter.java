@@ -0,0 +1,50 @@
+package key.project.shortener.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Периодическая сводка метрик в лог: число вызовов, p50/p99/max по каждой операции,
+ * у которой были вызовы, и объём ввода-вывода хранилища.
+ */
+public class MetricsReporter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(MetricsReporter.class);
+
+    private final Metrics metrics;
+    private final ScheduledExecutorService timer;
+
+    public MetricsReporter(Metrics metrics, long intervalMs) {
+        this.metrics = metrics;
+        this.timer =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "metrics-reporter");
+                            t.setDaemon(true);
+                            return t;
+                        });
+        timer.scheduleAtFixedRate(this::report, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void report() {
+        StringBuilder sb = new StringBuilder("Метрики:");
+        for (Metrics.Op op : Metrics.Op.values()) line(sb, op.name(), metrics.histogram(op));
+        for (Metrics.IoOp op : Metrics.IoOp.values()) line(sb, "io_" + op.name(), metrics.histogram(op));
+        sb.append(String.format(Locale.ROOT, "%n  bytes read=%d written=%d", metrics.bytesRead(), metrics.bytesWritten()));
+        log.info(sb.toString());
+    }
+
+    private static void line(StringBuilder sb, String name, LatencyHistogram h) {
+        if (h.count() == 0) return;
+        sb.append(String.format(Locale.ROOT, "%n  %-13s n=%d p50=%.1fus p99=%.1fus max=%.1fus",
+                name, h.count(), h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.maxNanos() / 1e3));
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
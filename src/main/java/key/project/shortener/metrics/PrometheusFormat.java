@@ -0,0 +1,57 @@
+package key.project.shortener.metrics;
+
+import java.util.Locale;
+
+/**
+ * Выгрузка Metrics в текстовом формате Prometheus (exposition format 0.0.4).
+ * Задержки отдаются как summary в секундах с квантилями 0.5/0.9/0.99/0.999.
+ */
+public final class PrometheusFormat {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private PrometheusFormat() {}
+
+    public static String format(Metrics m) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("# HELP shortener_operation_seconds Latency of ShortenerService operations.\n");
+        sb.append("# TYPE shortener_operation_seconds summary\n");
+        for (Metrics.Op op : Metrics.Op.values()) {
+            summary(sb, "shortener_operation_seconds", "op", name(op), m.histogram(op));
+        }
+        sb.append("# HELP shortener_operation_errors_total Failed ShortenerService operations.\n");
+        sb.append("# TYPE shortener_operation_errors_total counter\n");
+        for (Metrics.Op op : Metrics.Op.values()) {
+            sb.append("shortener_operation_errors_total{op=\"").append(name(op)).append("\"} ").append(m.errors(op)).append('\n');
+        }
+        sb.append("# HELP shortener_repository_seconds Latency of storage I/O steps.\n");
+        sb.append("# TYPE shortener_repository_seconds summary\n");
+        for (Metrics.IoOp op : Metrics.IoOp.values()) {
+            summary(sb, "shortener_repository_seconds", "op", name(op), m.histogram(op));
+        }
+        sb.append("# HELP shortener_repository_bytes_total Bytes read and written by storage.\n");
+        sb.append("# TYPE shortener_repository_bytes_total counter\n");
+        sb.append("shortener_repository_bytes_total{direction=\"read\"} ").append(m.bytesRead()).append('\n');
+        sb.append("shortener_repository_bytes_total{direction=\"write\"} ").append(m.bytesWritten()).append('\n');
+        return sb.toString();
+    }
+
+    private static void summary(StringBuilder sb, String metric, String label, String value, LatencyHistogram h) {
+        for (double q : QUANTILES) {
+            sb.append(metric).append('{').append(label).append("=\"").append(value)
+                    .append("\",quantile=\"").append(q).append("\"} ")
+                    .append(seconds(h.percentile(q * 100))).append('\n');
+        }
+        sb.append(metric).append("_sum{").append(label).append("=\"").append(value).append("\"} ")
+                .append(seconds(h.sumNanos())).append('\n');
+        sb.append(metric).append("_count{").append(label).append("=\"").append(value).append("\"} ")
+                .append(h.count()).append('\n');
+    }
+
+    private static String name(Enum<?> e) {
+        return e.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,20 @@
+package key.project.shortener.notify;
+
+import java.util.List;
+
+/** Печатает уведомления в консоль, как раньше делал NotificationService */
+public class ConsoleNotificationSink implements NotificationSink {
+    @Override
+    public void deliver(List<Notification> batch) {
+        StringBuilder sb = new StringBuilder();
+        for (Notification n : batch) {
+            sb.append(switch (n.kind()) {
+                        case LIMIT -> "[УВЕДОМЛЕНИЕ] Лимит переходов исчерпан: ";
+                        case EXPIRED -> "[УВЕДОМЛЕНИЕ] Срок жизни истёк: ";
+                    })
+                    .append(n.shortCode())
+                    .append(System.lineSeparator());
+        }
+        System.out.print(sb);
+    }
+}
@@ -0,0 +1,58 @@
+package key.project.shortener.notify;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Дописывает уведомления в текстовый файл, по строке на событие:
+ * время, вид, владелец, код, URL через табуляцию. Файл держится открытым,
+ * сброс на диск — один раз на пачку.
+ */
+public class FileNotificationSink implements NotificationSink {
+    private final BufferedWriter out;
+
+    public FileNotificationSink(String path) {
+        Path file = Paths.get(path);
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            out =
+                    Files.newBufferedWriter(
+                            file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void deliver(List<Notification> batch) {
+        try {
+            for (Notification n : batch) {
+                out.write(Instant.ofEpochMilli(n.atMs()) + "\t" + n.kind() + "\t" + n.ownerUuid() + "\t"
+                        + n.shortCode() + "\t" + n.originalUrl());
+                out.newLine();
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package key.project.shortener.notify;
+
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Пишет уведомления в лог уровнем WARN */
+public class LogNotificationSink implements NotificationSink {
+    private static final Logger log = LoggerFactory.getLogger(LogNotificationSink.class);
+
+    @Override
+    public void deliver(List<Notification> batch) {
+        for (Notification n : batch) {
+            switch (n.kind()) {
+                case LIMIT -> log.warn("Лимит переходов исчерпан для {} ({}).", n.shortCode(), n.originalUrl());
+                case EXPIRED -> log.warn("Ссылка истекла {} ({}).", n.shortCode(), n.originalUrl());
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package key.project.shortener.notify;
+
+import key.project.shortener.core.Link;
+
+/**
+ * Событие для уведомления владельца ссылки.
+ * Хранит только поля, нужные для доставки, а не саму изменяемую Link.
+ */
+public record Notification(Kind kind, String ownerUuid, String shortCode, String originalUrl, long atMs) {
+
+    /** Вид события */
+    public enum Kind {
+        /** лимит переходов исчерпан */
+        LIMIT,
+        /** срок жизни истёк */
+        EXPIRED
+    }
+
+    public static Notification of(Kind kind, Link l, long atMs) {
+        return new Notification(kind, l.ownerUuid, l.shortCode, l.originalUrl, atMs);
+    }
+}
@@ -0,0 +1,15 @@
+package key.project.shortener.notify;
+
+import java.util.List;
+
+/**
+ * Получатель уведомлений. Вызывается только из потока доставки NotificationService,
+ * пачкой уже без повторов; исключение считается неудачной доставкой пачки.
+ */
+public interface NotificationSink extends AutoCloseable {
+
+    void deliver(List<Notification> batch);
+
+    @Override
+    default void close() {}
+}
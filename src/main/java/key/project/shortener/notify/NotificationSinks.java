@@ -0,0 +1,33 @@
+package key.project.shortener.notify;
+
+import java.util.ArrayList;
+import java.util.List;
+import key.project.shortener.config.AppConfig;
+
+/**
+ * Выбор получателей уведомлений по настройке app.notifySinks:
+ * список через запятую из console, log, file (app.notifyFile), webhook (app.notifyWebhookUrl).
+ */
+public final class NotificationSinks {
+    private NotificationSinks() {}
+
+    public static List<NotificationSink> create(AppConfig cfg) {
+        List<NotificationSink> sinks = new ArrayList<>();
+        for (String name : cfg.app.notifySinks.split(",")) {
+            switch (name.trim()) {
+                case "" -> {}
+                case "console" -> sinks.add(new ConsoleNotificationSink());
+                case "log" -> sinks.add(new LogNotificationSink());
+                case "file" -> sinks.add(new FileNotificationSink(cfg.app.notifyFile));
+                case "webhook" -> {
+                    if (cfg.app.notifyWebhookUrl == null || cfg.app.notifyWebhookUrl.isBlank()) {
+                        throw new IllegalArgumentException("Для webhook нужен app.notifyWebhookUrl");
+                    }
+                    sinks.add(new WebhookNotificationSink(cfg.app.notifyWebhookUrl));
+                }
+                default -> throw new IllegalArgumentException("Неизвестный получатель уведомлений: " + name);
+            }
+        }
+        return sinks;
+    }
+}
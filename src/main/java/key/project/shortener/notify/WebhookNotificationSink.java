@@ -0,0 +1,45 @@
+package key.project.shortener.notify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Отправляет пачку уведомлений одним POST-запросом с JSON-массивом на заданный URL.
+ * Рассчитан на локальный приёмник (заглушку вебхука), поэтому без повторов:
+ * ответ не 2xx считается неудачной доставкой.
+ */
+public class WebhookNotificationSink implements NotificationSink {
+    private final URI uri;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    private final ObjectMapper json = new ObjectMapper();
+
+    public WebhookNotificationSink(String url) {
+        this.uri = URI.create(url);
+    }
+
+    @Override
+    public void deliver(List<Notification> batch) {
+        try {
+            HttpRequest req =
+                    HttpRequest.newBuilder(uri)
+                            .timeout(Duration.ofSeconds(5))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(json.writeValueAsBytes(batch)))
+                            .build();
+            int status = client.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status / 100 != 2) throw new IllegalStateException("Вебхук ответил " + status);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Доставка прервана", e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package key.project.shortener.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import key.project.shortener.service.QuotaAuthority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TCP-сервер аренд квот на лидере: принимает запросы RemoteQuotaAuthority
+ * и передаёт их QuotaAuthority сервиса лидера. На каждое подключение — виртуальный поток,
+ * запросы одного подключения обрабатываются по очереди.
+ *
+ * Подключение начинается с HELLO: MAGIC (int), общий секрет (UTF); при неверном секрете
+ * сервер закрывает соединение, не выполнив ни одного запроса.
+ * Запрос:  ACQUIRE (byte), владелец (UTF), код (UTF), want (int) → номер (long), переходы (int), срок (long)
+ *          RELEASE (byte), номер аренды (long), остаток (int)       → 0 (byte)
+ */
+public class QuotaServer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(QuotaServer.class);
+    static final int MAGIC = 0x514C5345; // "QLSE"
+    static final byte ACQUIRE = 1;
+    static final byte RELEASE = 2;
+
+    private final QuotaAuthority authority;
+    private final String secret;
+    private final ServerSocket server;
+    private final Set<Socket> sessions = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Сервер на loopback без секрета.
+     * @param port порт; 0 — любой свободный (см. port())
+     */
+    public QuotaServer(QuotaAuthority authority, int port) {
+        this(authority, "127.0.0.1", port, "");
+    }
+
+    /**
+     * @param bind адрес, на котором принимать последователей
+     * @param port порт; 0 — любой свободный (см. port())
+     * @param secret общий секрет, который клиент передаёт в HELLO
+     */
+    public QuotaServer(QuotaAuthority authority, String bind, int port, String secret) {
+        this.authority = authority;
+        this.secret = secret;
+        try {
+            this.server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(bind, port));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.acceptor = Thread.ofPlatform().name("quota-accept").daemon().start(this::accept);
+        log.info("Сервер аренд квот слушает {}", server.getLocalSocketAddress());
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket s = server.accept();
+                sessions.add(s);
+                Thread.ofVirtual().name("quota-" + s.getRemoteSocketAddress()).start(() -> serve(s));
+            } catch (IOException e) {
+                if (!closed) log.warn("Ошибка приёма подключения к серверу квот", e);
+            }
+        }
+    }
+
+    private void serve(Socket s) {
+        try (s;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(ReplicationProtocol.HELLO_TIMEOUT_MS);
+            if (in.readInt() != MAGIC) throw new IOException("Неизвестный протокол");
+            if (!ReplicationProtocol.secretMatches(secret, in.readUTF())) {
+                log.warn("Клиент квот {} передал неверный секрет", s.getRemoteSocketAddress());
+                return;
+            }
+            s.setSoTimeout(0);
+            while (!closed) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                switch (op) {
+                    case ACQUIRE -> {
+                        QuotaAuthority.Lease lease = authority.acquire(in.readUTF(), in.readUTF(), in.readInt());
+                        out.writeLong(lease.id());
+                        out.writeInt(lease.clicks());
+                        out.writeLong(lease.ttlMs());
+                    }
+                    case RELEASE -> {
+                        authority.release(in.readLong(), in.readInt());
+                        out.writeByte(0);
+                    }
+                    default -> throw new IOException("Неизвестный запрос квоты: " + op);
+                }
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) log.info("Подключение к серверу квот {} закрыто: {}", s.getRemoteSocketAddress(), e.toString());
+        } finally {
+            sessions.remove(s);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+            for (Socket s : sessions) s.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            acceptor.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
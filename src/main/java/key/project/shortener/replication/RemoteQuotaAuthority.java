@@ -0,0 +1,101 @@
+package key.project.shortener.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import key.project.shortener.service.QuotaAuthority;
+
+/**
+ * QuotaAuthority последователя: запросы к QuotaServer лидера по одному TCP-соединению.
+ * Запросы идут по очереди — аренда берётся раз на quotaLeaseSize переходов, поэтому очередь короткая.
+ * При ошибке соединение закрывается и открывается заново при следующем запросе,
+ * а сама ошибка уходит вызывающему как UncheckedIOException. Каждое соединение начинается
+ * с HELLO и общего секрета; неверный секрет сервер встречает закрытием соединения.
+ */
+public class RemoteQuotaAuthority implements QuotaAuthority, AutoCloseable {
+    private static final int TIMEOUT_MS = 5_000;
+
+    private final InetSocketAddress address;
+    private final String secret;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    /** Клиент сервера аренд без секрета */
+    public RemoteQuotaAuthority(String host, int port) {
+        this(host, port, "");
+    }
+
+    public RemoteQuotaAuthority(String host, int port, String secret) {
+        this.address = new InetSocketAddress(host, port);
+        this.secret = secret;
+    }
+
+    @Override
+    public synchronized Lease acquire(String ownerUuid, String code, int want) {
+        try {
+            connect();
+            out.writeByte(QuotaServer.ACQUIRE);
+            out.writeUTF(ownerUuid);
+            out.writeUTF(code);
+            out.writeInt(want);
+            out.flush();
+            return new Lease(in.readLong(), in.readInt(), in.readLong());
+        } catch (IOException e) {
+            disconnect();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void release(long leaseId, int unused) {
+        try {
+            connect();
+            out.writeByte(QuotaServer.RELEASE);
+            out.writeLong(leaseId);
+            out.writeInt(unused);
+            out.flush();
+            in.readByte();
+        } catch (IOException e) {
+            disconnect();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void connect() throws IOException {
+        if (socket != null) return;
+        Socket s = new Socket();
+        try {
+            s.connect(address, TIMEOUT_MS);
+            s.setSoTimeout(TIMEOUT_MS);
+            s.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            out.writeInt(QuotaServer.MAGIC);
+            out.writeUTF(secret);
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        socket = s;
+    }
+
+    private void disconnect() {
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException ignored) {
+            // соединение и так неисправно
+        }
+        socket = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        disconnect();
+    }
+}
@@ -0,0 +1,136 @@
+package key.project.shortener.replication;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.core.UrlInterner;
+import key.project.shortener.repo.LinkRepository;
+
+/**
+ * Хранилище последователя: копия ссылок лидера в памяти, только для чтения.
+ * Наполняется ReplicationFollower: снимок целиком заменяет содержимое,
+ * изменения применяются, только если версия ссылки больше сохранённой.
+ * Версии остаются версиями лидера. Любая запись через LinkRepository отклоняется
+ * IllegalStateException: изменения делаются на лидере и приходят сюда репликацией.
+ */
+public class ReplicaLinkRepository implements LinkRepository {
+    private volatile Map<String, Map<String, Link>> byOwner = new ConcurrentHashMap<>();
+    private volatile Consumer<Link> listener = l -> {};
+
+    /**
+     * Подписывает listener на каждую применённую ссылку (копию)
+     * и сразу передаёт ему все уже загруженные.
+     */
+    public void onApply(Consumer<Link> listener) {
+        this.listener = listener;
+        forEach(listener);
+    }
+
+    /** Применяет состояние ссылки от лидера, если оно новее сохранённого */
+    void apply(Link link) {
+        link.originalUrl = UrlInterner.intern(link.originalUrl);
+        boolean[] changed = new boolean[1];
+        byOwner.computeIfAbsent(link.ownerUuid, k -> new ConcurrentHashMap<>())
+                .compute(
+                        link.shortCode,
+                        (k, old) -> {
+                            if (old != null && old.version >= link.version) return old;
+                            changed[0] = true;
+                            return link;
+                        });
+        if (changed[0]) listener.accept(link.copy());
+    }
+
+    /** Удаляет ссылки, срок которых истёк к now, как это сделал deleteExpired лидера */
+    void expire(Instant now) {
+        for (Map<String, Link> links : byOwner.values()) links.values().removeIf(l -> l.isExpired(now));
+    }
+
+    /** Заменяет содержимое снимком лидера */
+    void load(Collection<Link> links) {
+        Map<String, Map<String, Link>> fresh = new ConcurrentHashMap<>();
+        for (Link l : links) {
+            l.originalUrl = UrlInterner.intern(l.originalUrl);
+            fresh.computeIfAbsent(l.ownerUuid, k -> new ConcurrentHashMap<>()).put(l.shortCode, l);
+        }
+        byOwner = fresh;
+        Consumer<Link> out = listener;
+        for (Link l : links) out.accept(l.copy());
+    }
+
+    /** Число ссылок, включая удалённые */
+    public int size() {
+        int n = 0;
+        for (Map<String, Link> links : byOwner.values()) n += links.size();
+        return n;
+    }
+
+    private static IllegalStateException readOnly() {
+        return new IllegalStateException("Узел-последователь только читает, изменения делаются на лидере");
+    }
+
+    @Override
+    public Optional<Link> findByCode(String ownerUuid, String shortCode) {
+        Map<String, Link> links = byOwner.get(ownerUuid);
+        Link l = links == null ? null : links.get(shortCode);
+        return l == null ? Optional.empty() : Optional.of(l.copy());
+    }
+
+    /** Ссылки владельца, кроме удалённых */
+    @Override
+    public List<Link> findAllByOwner(String ownerUuid) {
+        Map<String, Link> links = byOwner.get(ownerUuid);
+        List<Link> out = new ArrayList<>();
+        if (links == null) return out;
+        for (Link l : links.values()) if (l.status != LinkStatus.DELETED) out.add(l.copy());
+        return out;
+    }
+
+    @Override
+    public boolean existsCode(String ownerUuid, String shortCode) {
+        Map<String, Link> links = byOwner.get(ownerUuid);
+        return links != null && links.containsKey(shortCode);
+    }
+
+    @Override
+    public void forEach(Consumer<Link> action) {
+        for (Map<String, Link> links : byOwner.values()) for (Link l : links.values()) action.accept(l.copy());
+    }
+
+    @Override
+    public void save(Link link) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean compareAndSave(Link link, long expectedVersion) {
+        throw readOnly();
+    }
+
+    @Override
+    public void saveAll(Collection<Link> links) {
+        throw readOnly();
+    }
+
+    @Override
+    public void delete(String ownerUuid, String shortCode) {
+        throw readOnly();
+    }
+
+    @Override
+    public int deleteExpired(Instant now) {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateClicks(String ownerUuid, String shortCode, int clickCount, LinkStatus status) {
+        throw readOnly();
+    }
+}
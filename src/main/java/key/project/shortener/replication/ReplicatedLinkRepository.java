@@ -0,0 +1,145 @@
+package key.project.shortener.replication;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.repo.LinkKey;
+import key.project.shortener.repo.LinkRepository;
+
+/**
+ * Хранилище лидера: обёртка над локальным хранилищем, которая после каждой записи
+ * кладёт новое состояние ссылки в ReplicationLog для отправки последователям.
+ * В журнал идёт состояние целиком с версией (UPSERT), а не разница:
+ * повтор и перестановка записей одной ссылки безопасны, последователь оставляет большую версию.
+ * delete и updateClicks не возвращают ссылку, поэтому её состояние перечитывается после записи.
+ * deleteExpired пишет одну запись EXPIRE со временем, по которому удалять.
+ */
+public class ReplicatedLinkRepository implements LinkRepository {
+    private final LinkRepository delegate;
+    private final ReplicationLog log;
+
+    /**
+     * @param delegate локальное хранилище лидера
+     * @param logSize сколько последних изменений хранить для догоняющих последователей
+     */
+    public ReplicatedLinkRepository(LinkRepository delegate, int logSize) {
+        this.delegate = delegate;
+        this.log = new ReplicationLog(logSize);
+    }
+
+    ReplicationLog log() {
+        return log;
+    }
+
+    /** Номер последнего изменения в журнале репликации */
+    public long lastSeq() {
+        return log.lastSeq();
+    }
+
+    /** Может ли последователь с номером seq продолжить по журналу, без снимка */
+    public boolean covers(long seq) {
+        return log.covers(seq);
+    }
+
+    private void replicate(Link link) {
+        log.append(ReplicationProtocol.UPSERT, link.copy(), 0);
+    }
+
+    @Override
+    public Optional<Link> findByCode(String ownerUuid, String shortCode) {
+        return delegate.findByCode(ownerUuid, shortCode);
+    }
+
+    @Override
+    public List<Link> findAllByOwner(String ownerUuid) {
+        return delegate.findAllByOwner(ownerUuid);
+    }
+
+    @Override
+    public List<Link> findAllByKey(Collection<LinkKey> keys) {
+        return delegate.findAllByKey(keys);
+    }
+
+    @Override
+    public void save(Link link) {
+        delegate.save(link);
+        replicate(link);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(Link link) {
+        return delegate.saveAsync(link).thenRun(() -> replicate(link));
+    }
+
+    @Override
+    public boolean compareAndSave(Link link, long expectedVersion) {
+        if (!delegate.compareAndSave(link, expectedVersion)) return false;
+        replicate(link);
+        return true;
+    }
+
+    @Override
+    public List<Link> compareAndSaveAll(Collection<Link> links) {
+        List<Link> failed = delegate.compareAndSaveAll(links);
+        Set<Link> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        rejected.addAll(failed);
+        for (Link l : links) {
+            if (!rejected.contains(l)) replicate(l);
+        }
+        return failed;
+    }
+
+    @Override
+    public void saveAll(Collection<Link> links) {
+        delegate.saveAll(links);
+        links.forEach(this::replicate);
+    }
+
+    @Override
+    public void delete(String ownerUuid, String shortCode) {
+        delegate.delete(ownerUuid, shortCode);
+        delegate.findByCode(ownerUuid, shortCode).ifPresent(this::replicate);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateClicksAsync(String ownerUuid, String shortCode, int clickCount, LinkStatus status) {
+        return delegate.updateClicksAsync(ownerUuid, shortCode, clickCount, status)
+                .thenRun(() -> delegate.findByCode(ownerUuid, shortCode).ifPresent(this::replicate));
+    }
+
+    @Override
+    public boolean existsCode(String ownerUuid, String shortCode) {
+        return delegate.existsCode(ownerUuid, shortCode);
+    }
+
+    @Override
+    public int deleteExpired(Instant now) {
+        int removed = delegate.deleteExpired(now);
+        if (removed > 0) log.append(ReplicationProtocol.EXPIRE, null, now.toEpochMilli());
+        return removed;
+    }
+
+    @Override
+    public void forEach(Consumer<Link> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public void updateClicks(String ownerUuid, String shortCode, int clickCount, LinkStatus status) {
+        delegate.updateClicks(ownerUuid, shortCode, clickCount, status);
+        delegate.findByCode(ownerUuid, shortCode).ifPresent(this::replicate);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
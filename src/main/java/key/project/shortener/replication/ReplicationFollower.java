@@ -0,0 +1,181 @@
+package key.project.shortener.replication;
+
+import static key.project.shortener.replication.ReplicationProtocol.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import key.project.shortener.core.Link;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Клиент последователя: держит соединение с лидером и применяет поток изменений к ReplicaLinkRepository.
+ * При подключении сообщает эпоху и номер последней применённой записи, лидер продолжает с него
+ * или присылает снимок. Снимок применяется целиком только после SNAPSHOT_END,
+ * до этого чтения видят прежнее состояние. Соединение без кадров дольше трёх heartbeatMs
+ * считается потерянным; переподключение — с растущей паузой до 5 секунд.
+ */
+public class ReplicationFollower implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationFollower.class);
+    private static final long MAX_BACKOFF_MS = 5_000;
+
+    private final ReplicaLinkRepository replica;
+    private final InetSocketAddress leader;
+    private final long heartbeatMs;
+    private final String secret;
+    private final Thread thread;
+    private volatile Socket socket;
+    private volatile boolean closed;
+    private volatile boolean connected;
+    private volatile long epoch;
+    private volatile long lastSeq;
+    private volatile long leaderSeq;
+    private volatile long snapshots;
+
+    /**
+     * Последователь лидера без секрета.
+     * @param host адрес лидера
+     * @param port порт репликации лидера
+     * @param heartbeatMs период HEARTBEAT лидера, в миллисекундах
+     */
+    public ReplicationFollower(ReplicaLinkRepository replica, String host, int port, long heartbeatMs) {
+        this(replica, host, port, heartbeatMs, "");
+    }
+
+    /**
+     * @param host адрес лидера
+     * @param port порт репликации лидера
+     * @param heartbeatMs период HEARTBEAT лидера, в миллисекундах
+     * @param secret общий секрет, который ожидает лидер
+     */
+    public ReplicationFollower(ReplicaLinkRepository replica, String host, int port, long heartbeatMs, String secret) {
+        this.replica = replica;
+        this.leader = new InetSocketAddress(host, port);
+        this.heartbeatMs = Math.max(1, heartbeatMs);
+        this.secret = secret;
+        this.thread = Thread.ofPlatform().name("replication-follower").daemon().start(this::run);
+    }
+
+    /** Номер последней применённой записи лидера */
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    /** На сколько записей последователь отстаёт от последнего известного номера лидера */
+    public long lag() {
+        return Math.max(0, leaderSeq - lastSeq);
+    }
+
+    /** Сколько снимков лидера применено с запуска; переподключение в пределах журнала лидера снимка не требует */
+    public long snapshots() {
+        return snapshots;
+    }
+
+    public boolean connected() {
+        return connected;
+    }
+
+    private void run() {
+        long backoff = 100;
+        while (!closed) {
+            try {
+                session();
+            } catch (IOException e) {
+                if (closed) return;
+                log.warn("Нет связи с лидером {}: {}", leader, e.toString());
+            } finally {
+                if (connected) backoff = 100; // связь была, начинаем паузы сначала
+                connected = false;
+            }
+            if (closed) return;
+            try {
+                TimeUnit.MILLISECONDS.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+        }
+    }
+
+    private void session() throws IOException {
+        try (Socket s = new Socket()) {
+            socket = s;
+            if (closed) return;
+            s.connect(leader, (int) Math.min(Integer.MAX_VALUE, 3 * heartbeatMs));
+            s.setSoTimeout((int) Math.min(Integer.MAX_VALUE, 3 * heartbeatMs));
+            s.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeUTF(secret);
+            out.writeLong(epoch);
+            out.writeLong(lastSeq);
+            out.flush();
+            connected = true;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024));
+            List<Link> snapshot = null;
+            long snapshotEpoch = 0;
+            while (!closed) {
+                byte type = in.readByte();
+                long seq = in.readLong();
+                switch (type) {
+                    case SNAPSHOT_BEGIN -> {
+                        snapshotEpoch = in.readLong();
+                        snapshot = new ArrayList<>();
+                    }
+                    case LINK -> {
+                        if (snapshot == null) throw new IOException("Ссылка снимка вне снимка");
+                        snapshot.add(readLink(in));
+                    }
+                    case SNAPSHOT_END -> {
+                        if (snapshot == null) throw new IOException("Конец снимка без начала");
+                        replica.load(snapshot);
+                        log.info("Снимок лидера применён: {} ссылок, номер {}", snapshot.size(), seq);
+                        snapshot = null;
+                        epoch = snapshotEpoch;
+                        lastSeq = seq;
+                        leaderSeq = seq; // у новой эпохи номера начинаются заново
+                        snapshots++;
+                    }
+                    case UPSERT -> {
+                        replica.apply(readLink(in));
+                        lastSeq = seq;
+                    }
+                    case EXPIRE -> {
+                        replica.expire(Instant.ofEpochMilli(in.readLong()));
+                        lastSeq = seq;
+                    }
+                    case HEARTBEAT -> {}
+                    default -> throw new IOException("Неизвестный кадр репликации: " + type);
+                }
+                leaderSeq = Math.max(leaderSeq, seq);
+            }
+        }
+    }
+
+    /** Разрывает соединение и останавливает поток */
+    @Override
+    public void close() {
+        closed = true;
+        Socket s = socket;
+        try {
+            if (s != null) s.close();
+        } catch (IOException ignored) {
+            // поток всё равно завершится по closed
+        }
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
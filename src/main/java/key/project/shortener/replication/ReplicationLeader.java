@@ -0,0 +1,187 @@
+package key.project.shortener.replication;
+
+import static key.project.shortener.replication.ReplicationProtocol.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import key.project.shortener.core.Link;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TCP-сервер лидера: отдаёт последователям журнал ReplicationLog.
+ * На каждого подключённого последователя — свой виртуальный поток.
+ * Если последователь пришёл из другой эпохи или его номер уже вытеснен из журнала,
+ * ему сначала отправляется снимок всех ссылок (forEach хранилища лидера),
+ * затем записи журнала после номера снимка. Пока записей нет, раз в heartbeatMs идёт HEARTBEAT.
+ * Сервер слушает заданный адрес (по умолчанию loopback) и обслуживает только подключения
+ * с верным общим секретом в HELLO.
+ */
+public class ReplicationLeader implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationLeader.class);
+    private static final int BATCH = 1024;
+    private static final int BUFFER = 64 * 1024;
+
+    private final ReplicatedLinkRepository repo;
+    private final long heartbeatMs;
+    private final String secret;
+    private final ServerSocket server;
+    private final Set<Socket> sessions = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Лидер на loopback без секрета.
+     * @param port порт для последователей; 0 — любой свободный (см. port())
+     * @param heartbeatMs период HEARTBEAT при пустом журнале, в миллисекундах
+     */
+    public ReplicationLeader(ReplicatedLinkRepository repo, int port, long heartbeatMs) {
+        this(repo, "127.0.0.1", port, heartbeatMs, "");
+    }
+
+    /**
+     * @param bind адрес, на котором слушать последователей
+     * @param port порт для последователей; 0 — любой свободный (см. port())
+     * @param heartbeatMs период HEARTBEAT при пустом журнале, в миллисекундах
+     * @param secret общий секрет, который последователь передаёт в HELLO
+     */
+    public ReplicationLeader(ReplicatedLinkRepository repo, String bind, int port, long heartbeatMs, String secret) {
+        this.repo = repo;
+        this.heartbeatMs = Math.max(1, heartbeatMs);
+        this.secret = secret;
+        try {
+            this.server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(bind, port));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.acceptor = Thread.ofPlatform().name("replication-accept").daemon().start(this::accept);
+        log.info("Лидер репликации слушает {}", server.getLocalSocketAddress());
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /** Число подключённых последователей */
+    public int followers() {
+        return sessions.size();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket s = server.accept();
+                sessions.add(s);
+                Thread.ofVirtual().name("replication-" + s.getRemoteSocketAddress()).start(() -> serve(s));
+            } catch (IOException e) {
+                if (!closed) log.warn("Ошибка приёма подключения последователя", e);
+            }
+        }
+    }
+
+    private void serve(Socket s) {
+        ReplicationLog journal = repo.log();
+        try (s;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), BUFFER))) {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(HELLO_TIMEOUT_MS);
+            if (in.readInt() != MAGIC) throw new IOException("Неизвестный протокол");
+            if (!secretMatches(secret, in.readUTF())) {
+                log.warn("Последователь {} передал неверный секрет", s.getRemoteSocketAddress());
+                return;
+            }
+            long epoch = in.readLong();
+            long seq = in.readLong();
+            s.setSoTimeout(0);
+            log.info("Последователь {} подключился с номера {}", s.getRemoteSocketAddress(), seq);
+            if (epoch != journal.epoch() || !journal.covers(seq)) seq = snapshot(out);
+            while (!closed) {
+                List<ReplicationLog.Entry> batch = journal.after(seq, BATCH);
+                if (batch == null) {
+                    seq = snapshot(out);
+                } else if (batch.isEmpty()) {
+                    if (!journal.await(seq, heartbeatMs)) {
+                        out.writeByte(HEARTBEAT);
+                        out.writeLong(seq);
+                        out.flush();
+                    }
+                } else {
+                    for (ReplicationLog.Entry e : batch) write(out, e);
+                    out.flush();
+                    seq = batch.get(batch.size() - 1).seq();
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) log.info("Последователь {} отключился: {}", s.getRemoteSocketAddress(), e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sessions.remove(s);
+        }
+    }
+
+    private static void write(DataOutputStream out, ReplicationLog.Entry e) throws IOException {
+        out.writeByte(e.type());
+        out.writeLong(e.seq());
+        if (e.type() == EXPIRE) out.writeLong(e.atMillis());
+        else writeLink(out, e.link());
+    }
+
+    /**
+     * Отправляет снимок всех ссылок: копирует их из хранилища и только потом пишет в сокет.
+     * Номер берётся до обхода: изменения после него придут ещё и записями журнала,
+     * а последователь отбросит те, что уже вошли в снимок, по версии.
+     * @return номер снимка
+     */
+    private long snapshot(DataOutputStream out) throws IOException {
+        ReplicationLog journal = repo.log();
+        long seq = journal.lastSeq();
+        // forEach хранилища идёт под его блокировкой: сначала копия, сокет — уже без неё,
+        // иначе медленный последователь останавливал бы запись на лидере
+        List<Link> links = new ArrayList<>();
+        repo.forEach(links::add);
+        out.writeByte(SNAPSHOT_BEGIN);
+        out.writeLong(seq);
+        out.writeLong(journal.epoch());
+        for (Link l : links) {
+            out.writeByte(LINK);
+            out.writeLong(seq);
+            writeLink(out, l);
+        }
+        out.writeByte(SNAPSHOT_END);
+        out.writeLong(seq);
+        out.flush();
+        return seq;
+    }
+
+    /** Закрывает сервер и все подключения последователей */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+            for (Socket s : sessions) s.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            acceptor.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
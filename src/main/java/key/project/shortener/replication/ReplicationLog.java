@@ -0,0 +1,77 @@
+package key.project.shortener.replication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import key.project.shortener.core.Link;
+
+/**
+ * Журнал изменений лидера для репликации: кольцо последних capacity записей с номерами 1, 2, ...
+ * Номера растут без пропусков в пределах эпохи — случайного числа, выбранного при старте лидера.
+ * Последователь, чей номер уже вытеснен из кольца или получен в другой эпохе
+ * (лидер перезапускался), догоняет по снимку.
+ */
+final class ReplicationLog {
+
+    /** Запись журнала: UPSERT со ссылкой или EXPIRE со временем atMillis */
+    record Entry(long seq, byte type, Link link, long atMillis) {}
+
+    private final Entry[] ring;
+    private final long epoch;
+    private long lastSeq;
+
+    ReplicationLog(int capacity) {
+        this.ring = new Entry[Math.max(1, capacity)];
+        long e;
+        do {
+            e = ThreadLocalRandom.current().nextLong();
+        } while (e == 0); // 0 — эпоха последователя, ещё не получившего снимок
+        this.epoch = e;
+    }
+
+    long epoch() {
+        return epoch;
+    }
+
+    synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    synchronized long append(byte type, Link link, long atMillis) {
+        long seq = ++lastSeq;
+        ring[(int) (seq % ring.length)] = new Entry(seq, type, link, atMillis);
+        notifyAll();
+        return seq;
+    }
+
+    /** Можно ли продолжить поток с записи seq + 1 без снимка */
+    synchronized boolean covers(long seq) {
+        return seq <= lastSeq && seq >= lastSeq - ring.length;
+    }
+
+    /**
+     * До max записей с номерами больше seq.
+     * @return null, если часть из них уже вытеснена и нужен снимок
+     */
+    synchronized List<Entry> after(long seq, int max) {
+        if (!covers(seq)) return null;
+        int n = (int) Math.min(max, lastSeq - seq);
+        List<Entry> out = new ArrayList<>(n);
+        for (long s = seq + 1; s <= seq + n; s++) out.add(ring[(int) (s % ring.length)]);
+        return out;
+    }
+
+    /**
+     * Ждёт записи с номером больше seq не дольше timeoutMs.
+     * @return true если такая запись есть
+     */
+    synchronized boolean await(long seq, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long left = timeoutMs;
+        while (lastSeq <= seq && left > 0) {
+            wait(left);
+            left = deadline - System.currentTimeMillis();
+        }
+        return lastSeq > seq;
+    }
+}
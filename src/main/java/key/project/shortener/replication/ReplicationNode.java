@@ -0,0 +1,123 @@
+package key.project.shortener.replication;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.repo.LinkRepositories;
+import key.project.shortener.repo.LinkRepository;
+import key.project.shortener.service.QuotaAuthority;
+import key.project.shortener.service.ShortenerService;
+
+/**
+ * Хранилище узла с учётом роли репликации app.replicationRole.
+ * none     — локальное хранилище из LinkRepositories, без репликации;
+ * leader   — локальное хранилище в ReplicatedLinkRepository и ReplicationLeader на replicationBind:replicationPort;
+ * follower — ReplicaLinkRepository в памяти, наполняемый ReplicationFollower с replicationLeader (host:port);
+ *            локальное хранилище не открывается, состояние приходит снимком при каждом старте.
+ * При quotaLeases лидер после bind принимает запросы аренд на quotaPort,
+ * а последователь получает quotaAuthority() — клиента к quotaAuthority (host:port).
+ * Все подключения между узлами проверяют общий секрет replicationSecret;
+ * слушать не loopback-адрес с пустым секретом лидер отказывается.
+ */
+public final class ReplicationNode implements AutoCloseable {
+    private final AppConfig.App app;
+    private final LinkRepository repo;
+    private final ReplicationLeader leader;
+    private final ReplicationFollower follower;
+    private final RemoteQuotaAuthority remoteQuota;
+    private QuotaServer quotaServer;
+
+    private ReplicationNode(
+            AppConfig.App app,
+            LinkRepository repo,
+            ReplicationLeader leader,
+            ReplicationFollower follower,
+            RemoteQuotaAuthority remoteQuota) {
+        this.app = app;
+        this.repo = repo;
+        this.leader = leader;
+        this.follower = follower;
+        this.remoteQuota = remoteQuota;
+    }
+
+    public static ReplicationNode create(AppConfig cfg) {
+        AppConfig.App app = cfg.app;
+        return switch (app.replicationRole) {
+            case "none" -> new ReplicationNode(app, LinkRepositories.create(cfg), null, null, null);
+            case "leader" -> {
+                requireSecret(app);
+                ReplicatedLinkRepository r = new ReplicatedLinkRepository(LinkRepositories.create(cfg), app.replicationLogSize);
+                ReplicationLeader l =
+                        new ReplicationLeader(
+                                r, app.replicationBind, app.replicationPort, app.replicationHeartbeatMs, app.replicationSecret);
+                yield new ReplicationNode(app, r, l, null, null);
+            }
+            case "follower" -> {
+                ReplicaLinkRepository r = new ReplicaLinkRepository();
+                ReplicationFollower f =
+                        new ReplicationFollower(
+                                r,
+                                host(app.replicationLeader),
+                                port(app.replicationLeader),
+                                app.replicationHeartbeatMs,
+                                app.replicationSecret);
+                RemoteQuotaAuthority q =
+                        app.quotaLeases ? new RemoteQuotaAuthority(host(app.quotaAuthority), port(app.quotaAuthority), app.replicationSecret) : null;
+                yield new ReplicationNode(app, r, null, f, q);
+            }
+            default -> throw new IllegalArgumentException("Неизвестная роль репликации: " + app.replicationRole);
+        };
+    }
+
+    /** Порты лидера вне loopback без секрета отдали бы все ссылки с UUID владельцев любому хосту */
+    private static void requireSecret(AppConfig.App app) {
+        if (!app.replicationSecret.isEmpty()) return;
+        try {
+            if (InetAddress.getByName(app.replicationBind).isLoopbackAddress()) return;
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Неизвестный адрес replicationBind: " + app.replicationBind, e);
+        }
+        throw new IllegalArgumentException("replicationBind " + app.replicationBind + " вне loopback требует replicationSecret");
+    }
+
+    private static String host(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("Ожидается host:port: " + hostPort);
+        return hostPort.substring(0, colon);
+    }
+
+    private static int port(String hostPort) {
+        host(hostPort);
+        return Integer.parseInt(hostPort.substring(hostPort.lastIndexOf(':') + 1));
+    }
+
+    public LinkRepository repository() {
+        return repo;
+    }
+
+    /** Лидер аренд для сервиса последователя; null, если аренды выключены или узел не последователь */
+    public QuotaAuthority quotaAuthority() {
+        return remoteQuota;
+    }
+
+    /**
+     * Связывает узел с сервисом: на последователе сервис узнаёт о каждой пришедшей от лидера ссылке,
+     * на лидере с quotaLeases запускается сервер аренд.
+     */
+    public void bind(ShortenerService service) {
+        if (repo instanceof ReplicaLinkRepository replica) replica.onApply(service::onReplicated);
+        if (leader != null && app.quotaLeases) {
+            quotaServer = new QuotaServer(service.quota(), app.replicationBind, app.quotaPort, app.replicationSecret);
+        }
+    }
+
+    /** Останавливает репликацию и аренды, закрывает хранилище */
+    @Override
+    public void close() {
+        if (quotaServer != null) quotaServer.close();
+        if (remoteQuota != null) remoteQuota.close();
+        if (leader != null) leader.close();
+        if (follower != null) follower.close();
+        repo.close();
+    }
+}
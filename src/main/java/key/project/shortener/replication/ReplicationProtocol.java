@@ -0,0 +1,93 @@
+package key.project.shortener.replication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+
+/**
+ * Кадры протокола репликации поверх TCP (DataInput/DataOutput, big-endian).
+ *
+ * Последователь → лидер, один раз после подключения:
+ *   HELLO: MAGIC (int), общий секрет (UTF), эпоха лидера (long), номер последней применённой записи (long).
+ *   При неверном секрете лидер закрывает соединение, ничего не отправив.
+ * Лидер → последователь, поток кадров "тип (byte), номер (long), данные":
+ *   SNAPSHOT_BEGIN — эпоха (long); номер — последняя запись, вошедшая в снимок;
+ *   LINK           — ссылка снимка;
+ *   SNAPSHOT_END   — снимок передан, дальше идут записи журнала;
+ *   UPSERT         — новое состояние ссылки (создание, лимит, удаление, счётчик);
+ *   EXPIRE         — время (long, мс), ссылки с истёкшим к нему сроком удалены;
+ *   HEARTBEAT      — журнал лидера пуст после номера; держит соединение и показывает отставание.
+ */
+final class ReplicationProtocol {
+    static final int MAGIC = 0x524C4E4B; // "RLNK"
+
+    static final byte SNAPSHOT_BEGIN = 1;
+    static final byte LINK = 2;
+    static final byte SNAPSHOT_END = 3;
+    static final byte UPSERT = 4;
+    static final byte EXPIRE = 5;
+    static final byte HEARTBEAT = 6;
+
+    /** Сколько ждать HELLO от нового подключения, в миллисекундах */
+    static final int HELLO_TIMEOUT_MS = 5_000;
+
+    private static final LinkStatus[] STATUSES = LinkStatus.values();
+
+    private ReplicationProtocol() {}
+
+    /** Сравнение секрета за время, не зависящее от места первого расхождения */
+    static boolean secretMatches(String expected, String given) {
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), given.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void writeLink(DataOutputStream out, Link l) throws IOException {
+        out.writeUTF(l.ownerUuid);
+        out.writeUTF(l.shortCode);
+        byte[] url = l.originalUrl == null ? null : l.originalUrl.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(url == null ? -1 : url.length);
+        if (url != null) out.write(url);
+        out.writeByte(l.status == null ? -1 : l.status.ordinal());
+        out.writeInt(l.maxClicks);
+        out.writeInt(l.clickCount);
+        out.writeLong(l.version);
+        writeInstant(out, l.createdAt);
+        writeInstant(out, l.expiresAt);
+    }
+
+    static Link readLink(DataInputStream in) throws IOException {
+        Link l = new Link();
+        l.ownerUuid = in.readUTF();
+        l.shortCode = in.readUTF();
+        int len = in.readInt();
+        if (len >= 0) {
+            byte[] url = new byte[len];
+            in.readFully(url);
+            l.originalUrl = new String(url, StandardCharsets.UTF_8);
+        }
+        byte status = in.readByte();
+        if (status >= STATUSES.length) throw new IOException("Неизвестный статус ссылки: " + status);
+        l.status = status < 0 ? null : STATUSES[status];
+        l.maxClicks = in.readInt();
+        l.clickCount = in.readInt();
+        l.version = in.readLong();
+        l.createdAt = readInstant(in);
+        l.expiresAt = readInstant(in);
+        return l;
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant t) throws IOException {
+        out.writeBoolean(t != null);
+        if (t == null) return;
+        out.writeLong(t.getEpochSecond());
+        out.writeInt(t.getNano());
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+    }
+}
@@ -0,0 +1,613 @@
+package key.project.shortener.repo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import key.project.shortener.core.Base62;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Хранилище в памяти в виде таблицы столбцов (struct of arrays) вместо объектов Link.
+ * Строка таблицы — номер ссылки, поля лежат в примитивных массивах:
+ *   владелец — номер в таблице интернированных UUID (строка UUID хранится один раз),
+ *   случайная часть кода — long в base-62 с длиной в старших битах (префикс берётся из UUID),
+ *   createdAt/expiresAt — миллисекунды, статус — byte, лимит и счётчик — int,
+ *   URL — номер в общей куче байтов, одинаковые URL хранятся один раз, версия — long.
+ * Поиск по (владелец, код) — хэш-таблица с открытой адресацией по номерам строк,
+ * ссылки владельца связаны в список через массив next.
+ * Объекты Link создаются только при выдаче наружу.
+ * На диск данные сбрасываются в storage.json так же, как у InMemoryLinkRepository:
+ * фоновым потоком раз в flushIntervalMs через временный файл, вместе с бинарным снимком LinkSnapshot,
+ * который при старте читается вместо JSON, если цел и не устарел. Под блокировкой чтения
+ * сброс только копирует столбцы (см. Frozen), сериализация идёт уже без неё.
+ * Записи, удалённые deleteExpired, остаются в таблице до перезапуска и пропускаются.
+ */
+public class ColumnarLinkRepository implements LinkRepository {
+    private static final Logger log = LoggerFactory.getLogger(ColumnarLinkRepository.class);
+
+    private static final int PREFIX = 8;
+    private static final int MAX_SUFFIX = 10;
+    private static final byte REMOVED = -1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final LinkStatus[] STATUSES = LinkStatus.values();
+
+    private final Path file;
+    private final Path snapshot; // null, если снимок выключен
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher;
+    private final Thread shutdownHook;
+    private final AtomicLong changes = new AtomicLong();
+    private volatile long flushedVersion;
+    private volatile boolean closed;
+
+    // ---------- столбцы ----------
+    private int rows;
+    private int[] owner = new int[1024];
+    /** длина случайной части в старших 4 битах, значение base-62 в младших 60; 0 — код в otherCodes */
+    private long[] code = new long[1024];
+    private byte[] status = new byte[1024];
+    private int[] maxClicks = new int[1024];
+    private int[] clicks = new int[1024];
+    private long[] created = new long[1024];
+    private long[] expires = new long[1024];
+    private int[] url = new int[1024];
+    private long[] version = new long[1024];
+    private int[] nextOfOwner = new int[1024];
+    private final Map<Integer, String> otherCodes = new HashMap<>();
+
+    // ---------- владельцы ----------
+    private final Map<String, Integer> ownerIds = new HashMap<>();
+    private final List<String> owners = new ArrayList<>();
+    private int[] ownerHead = new int[64];
+    private int[] ownerTail = new int[64];
+
+    // ---------- индекс строк ----------
+    private int[] slots = new int[2048];
+
+    // ---------- куча URL ----------
+    private byte[] arena = new byte[64 * 1024];
+    private int arenaSize;
+    private int urls;
+    private int[] urlOff = new int[1024];
+    private int[] urlLen = new int[1024];
+    private int[] urlHash = new int[1024];
+    private int[] urlSlots = new int[2048];
+
+    /**
+     * @param path путь к JSON-файлу из конфига
+     * @param flushIntervalMs период фонового сброса на диск, в миллисекундах
+     */
+    public ColumnarLinkRepository(String path, long flushIntervalMs) {
+        this(path, flushIntervalMs, true);
+    }
+
+    /**
+     * @param path путь к JSON-файлу из конфига
+     * @param flushIntervalMs период фонового сброса на диск, в миллисекундах
+     * @param binarySnapshot писать и читать бинарный снимок рядом с JSON
+     */
+    public ColumnarLinkRepository(String path, long flushIntervalMs, boolean binarySnapshot) {
+        this.file = Paths.get(path);
+        this.snapshot = binarySnapshot ? LinkSnapshot.pathFor(file) : null;
+        load();
+        this.flusher =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "columnar-flusher");
+                            t.setDaemon(true);
+                            return t;
+                        });
+        long period = Math.max(1, flushIntervalMs);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, period, period, TimeUnit.MILLISECONDS);
+        this.shutdownHook = new Thread(this::flushQuietly, "columnar-flusher-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    private void load() {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            long t0 = System.nanoTime();
+            if (snapshot != null) {
+                int n = LinkSnapshot.read(snapshot, file, l -> put(l, true));
+                if (n >= 0) {
+                    log.info("Загружено ссылок из снимка {}: {} за {} мс", snapshot, n, (System.nanoTime() - t0) / 1_000_000);
+                    return;
+                }
+                clear();
+                if (Files.exists(snapshot)) log.warn("Снимок {} устарел или повреждён, читаем {}", snapshot, file);
+            }
+            boolean ok =
+                    LinkJsonStream.read(
+                            file,
+                            l -> {
+                                put(l, true);
+                                return true;
+                            });
+            if (!ok) {
+                Path backup = file.resolveSibling(file.getFileName() + ".corrupt");
+                Files.move(file, backup, StandardCopyOption.REPLACE_EXISTING);
+                log.warn("Файл {} повреждён, сохранён как {}", file, backup);
+                clear();
+            } else if (rows > 0) {
+                log.info(
+                        "Загружено ссылок из {}: {}, уникальных URL: {}, владельцев: {} за {} мс",
+                        file, rows, urls, owners.size(), (System.nanoTime() - t0) / 1_000_000);
+                if (snapshot != null) LinkSnapshot.write(snapshot, file, this::emitLive);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void clear() {
+        rows = 0;
+        otherCodes.clear();
+        ownerIds.clear();
+        owners.clear();
+        Arrays.fill(slots, 0);
+        arenaSize = 0;
+        urls = 0;
+        Arrays.fill(urlSlots, 0);
+    }
+
+    /** Сбрасывает таблицу на диск, если с прошлого сброса были изменения */
+    public void flush() {
+        synchronized (file) {
+            long v = changes.get();
+            if (v == flushedVersion) return;
+            Frozen table;
+            lock.readLock().lock();
+            try {
+                table = new Frozen(this);
+            } finally {
+                lock.readLock().unlock();
+            }
+            try {
+                LinkJsonStream.write(file, table::emitLive);
+                if (snapshot != null) LinkSnapshot.write(snapshot, file, table::emitLive);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            flushedVersion = v;
+        }
+    }
+
+    private void emitLive(Consumer<Link> out) {
+        for (int r = 0; r < rows; r++) {
+            if (status[r] != REMOVED) out.accept(view(r));
+        }
+    }
+
+    /**
+     * Копия таблицы на момент сброса. Изменяемые столбцы копируются, а куча URL и её смещения
+     * только дописываются, поэтому берутся по ссылке вместе с текущим числом строк.
+     */
+    private static final class Frozen {
+        private final int rows;
+        private final int[] owner;
+        private final long[] code;
+        private final byte[] status;
+        private final int[] maxClicks;
+        private final int[] clicks;
+        private final long[] created;
+        private final long[] expires;
+        private final int[] url;
+        private final long[] version;
+        private final String[] owners;
+        private final Map<Integer, String> otherCodes;
+        private final byte[] arena;
+        private final int[] urlOff;
+        private final int[] urlLen;
+
+        /** Вызывается под блокировкой чтения */
+        Frozen(ColumnarLinkRepository t) {
+            rows = t.rows;
+            owner = Arrays.copyOf(t.owner, rows);
+            code = Arrays.copyOf(t.code, rows);
+            status = Arrays.copyOf(t.status, rows);
+            maxClicks = Arrays.copyOf(t.maxClicks, rows);
+            clicks = Arrays.copyOf(t.clicks, rows);
+            created = Arrays.copyOf(t.created, rows);
+            expires = Arrays.copyOf(t.expires, rows);
+            url = Arrays.copyOf(t.url, rows);
+            version = Arrays.copyOf(t.version, rows);
+            owners = t.owners.toArray(new String[0]);
+            otherCodes = new HashMap<>(t.otherCodes);
+            arena = t.arena;
+            urlOff = t.urlOff;
+            urlLen = t.urlLen;
+        }
+
+        void emitLive(Consumer<Link> out) {
+            for (int r = 0; r < rows; r++) {
+                if (status[r] == REMOVED) continue;
+                String o = owners[owner[r]];
+                String c = code[r] == 0 ? otherCodes.get(r) : packedCode(o, code[r]);
+                int u = url[r];
+                String s = u < 0 ? null : new String(arena, urlOff[u], urlLen[u], StandardCharsets.UTF_8);
+                out.accept(link(o, c, s, status[r], maxClicks[r], clicks[r], created[r], expires[r], version[r]));
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Не удалось сбросить ссылки в {}", file, e);
+        }
+    }
+
+    // ---------- ключи ----------
+
+    private static long suffixKey(String ownerUuid, String shortCode) {
+        int len = shortCode.length() - PREFIX - 1;
+        if (len < 1 || len > MAX_SUFFIX || shortCode.charAt(PREFIX) != '-' || !shortCode.regionMatches(0, ownerUuid, 0, PREFIX)) {
+            return 0;
+        }
+        long v = Base62.decode(shortCode, PREFIX + 1, shortCode.length());
+        return v < 0 ? 0 : (long) len << 60 | v;
+    }
+
+    private static int hash(int ownerId, long key, String other) {
+        long h = key != 0 ? key * 0x9E3779B97F4A7C15L : other.hashCode() * 0xC2B2AE3D27D4EB4FL;
+        h ^= ownerId * 0x165667B19E3779F9L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private String codeOf(int r) {
+        long k = code[r];
+        return k == 0 ? otherCodes.get(r) : packedCode(owners.get(owner[r]), k);
+    }
+
+    private static String packedCode(String ownerUuid, long k) {
+        return Base62.code(ownerUuid.substring(0, PREFIX), k & ((1L << 60) - 1), (int) (k >>> 60));
+    }
+
+    /** Номер живой строки или -1 */
+    private int find(String ownerUuid, String shortCode) {
+        Integer oid = ownerIds.get(ownerUuid);
+        if (oid == null) return -1;
+        long k = suffixKey(ownerUuid, shortCode);
+        int mask = slots.length - 1;
+        for (int i = hash(oid, k, shortCode) & mask; ; i = (i + 1) & mask) {
+            int ref = slots[i];
+            if (ref == 0) return -1;
+            int r = ref - 1;
+            if (owner[r] == oid && code[r] == k && status[r] != REMOVED && (k != 0 || shortCode.equals(otherCodes.get(r)))) {
+                return r;
+            }
+        }
+    }
+
+    private void insertSlot(int r) {
+        int mask = slots.length - 1;
+        int h = hash(owner[r], code[r], code[r] == 0 ? otherCodes.get(r) : null);
+        int i = h & mask;
+        while (slots[i] != 0) i = (i + 1) & mask;
+        slots[i] = r + 1;
+    }
+
+    private int ownerId(String ownerUuid) {
+        Integer id = ownerIds.get(ownerUuid);
+        if (id != null) return id;
+        int oid = owners.size();
+        owners.add(ownerUuid);
+        ownerIds.put(ownerUuid, oid);
+        if (oid == ownerHead.length) {
+            ownerHead = Arrays.copyOf(ownerHead, oid * 2);
+            ownerTail = Arrays.copyOf(ownerTail, oid * 2);
+        }
+        ownerHead[oid] = -1;
+        ownerTail[oid] = -1;
+        return oid;
+    }
+
+    // ---------- куча URL ----------
+
+    private int urlId(String s) {
+        if (s == null) return -1;
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        int h = Arrays.hashCode(b);
+        int mask = urlSlots.length - 1;
+        int i = (h ^ (h >>> 16)) & mask;
+        for (; urlSlots[i] != 0; i = (i + 1) & mask) {
+            int id = urlSlots[i] - 1;
+            if (urlHash[id] == h && Arrays.equals(arena, urlOff[id], urlOff[id] + urlLen[id], b, 0, b.length)) return id;
+        }
+        if (arenaSize + b.length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + b.length));
+        }
+        System.arraycopy(b, 0, arena, arenaSize, b.length);
+        if (urls == urlOff.length) {
+            urlOff = Arrays.copyOf(urlOff, urls * 2);
+            urlLen = Arrays.copyOf(urlLen, urls * 2);
+            urlHash = Arrays.copyOf(urlHash, urls * 2);
+        }
+        int id = urls++;
+        urlOff[id] = arenaSize;
+        urlLen[id] = b.length;
+        urlHash[id] = h;
+        arenaSize += b.length;
+        urlSlots[i] = id + 1;
+        if (urls * 2 > urlSlots.length) growUrlSlots();
+        return id;
+    }
+
+    private void growUrlSlots() {
+        urlSlots = new int[urlSlots.length * 2];
+        int mask = urlSlots.length - 1;
+        for (int id = 0; id < urls; id++) {
+            int i = (urlHash[id] ^ (urlHash[id] >>> 16)) & mask;
+            while (urlSlots[i] != 0) i = (i + 1) & mask;
+            urlSlots[i] = id + 1;
+        }
+    }
+
+    private String urlOf(int r) {
+        int id = url[r];
+        return id < 0 ? null : new String(arena, urlOff[id], urlLen[id], StandardCharsets.UTF_8);
+    }
+
+    // ---------- строки ----------
+
+    private Link view(int r) {
+        return link(owners.get(owner[r]), codeOf(r), urlOf(r), status[r], maxClicks[r], clicks[r], created[r], expires[r], version[r]);
+    }
+
+    private static Link link(
+            String ownerUuid, String shortCode, String originalUrl, byte status, int maxClicks, int clicks,
+            long created, long expires, long version) {
+        Link l = new Link();
+        l.ownerUuid = ownerUuid;
+        l.shortCode = shortCode;
+        l.originalUrl = originalUrl;
+        l.status = STATUSES[status];
+        l.maxClicks = maxClicks;
+        l.clickCount = clicks;
+        l.createdAt = created == NO_TIME ? null : Instant.ofEpochMilli(created);
+        l.expiresAt = expires == NO_TIME ? null : Instant.ofEpochMilli(expires);
+        l.version = version;
+        return l;
+    }
+
+    private void writeFields(int r, Link l) {
+        status[r] = (byte) (l.status == null ? LinkStatus.ACTIVE : l.status).ordinal();
+        maxClicks[r] = l.maxClicks;
+        clicks[r] = l.clickCount;
+        created[r] = l.createdAt == null ? NO_TIME : l.createdAt.toEpochMilli();
+        expires[r] = l.expiresAt == null ? NO_TIME : l.expiresAt.toEpochMilli();
+        url[r] = urlId(l.originalUrl);
+    }
+
+    /**
+     * Вставляет или обновляет строку; вызывается под блокировкой записи.
+     * @param restore загрузка с диска: версия берётся из ссылки, а не увеличивается
+     */
+    private void put(Link l, boolean restore) {
+        int r = find(l.ownerUuid, l.shortCode);
+        if (r >= 0) {
+            writeFields(r, l);
+            if (restore) version[r] = l.version;
+            else l.version = ++version[r];
+            return;
+        }
+        if (rows == owner.length) growRows();
+        r = rows++;
+        int oid = ownerId(l.ownerUuid);
+        owner[r] = oid;
+        long k = suffixKey(l.ownerUuid, l.shortCode);
+        code[r] = k;
+        if (k == 0) otherCodes.put(r, l.shortCode);
+        writeFields(r, l);
+        if (restore) version[r] = l.version;
+        else l.version = version[r] = 1;
+        nextOfOwner[r] = -1;
+        if (ownerTail[oid] < 0) ownerHead[oid] = r;
+        else nextOfOwner[ownerTail[oid]] = r;
+        ownerTail[oid] = r;
+        if (rows * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            for (int i = 0; i < rows; i++) insertSlot(i);
+        } else {
+            insertSlot(r);
+        }
+    }
+
+    private void growRows() {
+        int n = owner.length * 2;
+        owner = Arrays.copyOf(owner, n);
+        code = Arrays.copyOf(code, n);
+        status = Arrays.copyOf(status, n);
+        maxClicks = Arrays.copyOf(maxClicks, n);
+        clicks = Arrays.copyOf(clicks, n);
+        created = Arrays.copyOf(created, n);
+        expires = Arrays.copyOf(expires, n);
+        url = Arrays.copyOf(url, n);
+        version = Arrays.copyOf(version, n);
+        nextOfOwner = Arrays.copyOf(nextOfOwner, n);
+    }
+
+    private void changed() {
+        changes.incrementAndGet();
+    }
+
+    // ---------- LinkRepository ----------
+
+    @Override
+    public Optional<Link> findByCode(String ownerUuid, String shortCode) {
+        lock.readLock().lock();
+        try {
+            int r = find(ownerUuid, shortCode);
+            return r < 0 ? Optional.empty() : Optional.of(view(r));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Link> findAllByOwner(String ownerUuid) {
+        List<Link> out = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Integer oid = ownerIds.get(ownerUuid);
+            if (oid == null) return out;
+            for (int r = ownerHead[oid]; r >= 0; r = nextOfOwner[r]) {
+                if (status[r] != REMOVED && status[r] != LinkStatus.DELETED.ordinal()) out.add(view(r));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return out;
+    }
+
+    @Override
+    public void save(Link link) {
+        lock.writeLock().lock();
+        try {
+            put(link, false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changed();
+    }
+
+    @Override
+    public void saveAll(Collection<Link> links) {
+        lock.writeLock().lock();
+        try {
+            for (Link l : links) put(l, false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changed();
+    }
+
+    @Override
+    public boolean compareAndSave(Link link, long expectedVersion) {
+        lock.writeLock().lock();
+        try {
+            int r = find(link.ownerUuid, link.shortCode);
+            if (r < 0 || version[r] != expectedVersion) return false;
+            put(link, false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changed();
+        return true;
+    }
+
+    /** Меняет счётчик и статус прямо в столбцах, без создания Link */
+    @Override
+    public void updateClicks(String ownerUuid, String shortCode, int clickCount, LinkStatus newStatus) {
+        lock.writeLock().lock();
+        try {
+            int r = find(ownerUuid, shortCode);
+            if (r < 0) return;
+            clicks[r] = clickCount;
+            if (newStatus != null && status[r] == LinkStatus.ACTIVE.ordinal()) status[r] = (byte) newStatus.ordinal();
+            version[r]++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changed();
+    }
+
+    @Override
+    public void delete(String ownerUuid, String shortCode) {
+        lock.writeLock().lock();
+        try {
+            int r = find(ownerUuid, shortCode);
+            if (r < 0) return;
+            status[r] = (byte) LinkStatus.DELETED.ordinal();
+            version[r]++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changed();
+    }
+
+    @Override
+    public boolean existsCode(String ownerUuid, String shortCode) {
+        lock.readLock().lock();
+        try {
+            return find(ownerUuid, shortCode) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int deleteExpired(Instant now) {
+        long nowMs = now.toEpochMilli();
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (int r = 0; r < rows; r++) {
+                if (status[r] != REMOVED && expires[r] != NO_TIME && nowMs > expires[r]) {
+                    status[r] = REMOVED;
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (removed > 0) changed();
+        return removed;
+    }
+
+    @Override
+    public void forEach(Consumer<Link> action) {
+        lock.readLock().lock();
+        try {
+            for (int r = 0; r < rows; r++) {
+                if (status[r] != REMOVED) action.accept(view(r));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Число уникальных URL в куче (для оценки дедупликации) */
+    public int distinctUrls() {
+        lock.readLock().lock();
+        try {
+            return urls;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // JVM уже завершается, хук отработает сам
+        }
+        flush();
+    }
+}
@@ -1,37 +1,59 @@
 package key.project.shortener.repo;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.*;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import key.project.shortener.core.Link;
 import key.project.shortener.core.LinkStatus;
+import key.project.shortener.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 /**
  * Реализация интерфейса LinkRepository, использующая JSON-файл как хранилище ссылок.
  * Хранит все ссылки пользователя в одном JSON-файле data/storage.json,
  * поддерживает операции создание, поиск, обновление, удаление.
  * Автоматически создаёт нужные каталоги.
- * Использует библиотеку Jackson для объектов Link
+ * Использует библиотеку Jackson для объектов Link.
+ * Файл читается и пишется потоково (LinkJsonStream): поиск останавливается на первом совпадении,
+ * изменение переписывает файл по одной ссылке во временный файл с атомарной подменой,
+ * поэтому память не зависит от размера хранилища.
+ * Время обхода и записи файла и объём в байтах пишутся в Metrics.global().
+ * Все изменения (save, compareAndSave, updateClicks, delete, deleteExpired и их пачки) идут через
+ * GroupCommit: изменения из разных потоков, накопившиеся за время предыдущей записи
+ * (или за окно fsyncIntervalMs), применяются в порядке постановки и переписывают файл
+ * одним проходом и одним force. При политике os force не вызывается.
  */
 public class FileLinkRepository implements LinkRepository {
+    private static final Logger log = LoggerFactory.getLogger(FileLinkRepository.class);
 
     private final Path file;
-    private final ObjectMapper m =
-            new ObjectMapper()
-                    .registerModule(new JavaTimeModule())
-                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final Metrics metrics = Metrics.global();
+    private final boolean force;
+    private final GroupCommit<Change> commit;
 
     /**
      * Конструктор.
      * @param path путь к JSON-файлу из конфига
      */
     public FileLinkRepository(String path) {
+        this(path, FsyncPolicy.OS, 0);
+    }
+
+    /**
+     * @param path путь к JSON-файлу
+     * @param fsyncPolicy когда вызывать force для записанного файла
+     * @param fsyncIntervalMs окно сбора сохранений для политики interval, в миллисекундах
+     */
+    public FileLinkRepository(String path, FsyncPolicy fsyncPolicy, long fsyncIntervalMs) {
         this.file = Paths.get(path);
+        this.force = fsyncPolicy != FsyncPolicy.OS;
         try {
             if (file.getParent() != null) {
                 Files.createDirectories(file.getParent());
@@ -42,45 +64,84 @@ public class FileLinkRepository implements LinkRepository {
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+        this.commit = new GroupCommit<>("file-commit", fsyncPolicy, fsyncIntervalMs, (batch, f) -> apply(batch));
     }
     /**
-     * Читает все ссылки из JSON.
-     * Возвращает изменяемый список ArrayList.
-     * Если файл повреждён или пуст, автоматом сбрасывает его в пустой массив.
+     * Потоково обходит ссылки из JSON.
+     * visitor возвращает false, чтобы остановить обход.
+     * Если файл повреждён, он сохраняется как *.corrupt, а на его месте остаются
+     * ссылки, прочитанные до места повреждения.
      */
-    private synchronized List<Link> read() {
+    private synchronized void scan(Predicate<Link> visitor) {
         try {
-            if (!Files.exists(file)) {
-                return new ArrayList<>();
-            }
-            byte[] data = Files.readAllBytes(file);
-            if (data.length == 0) {
-                return new ArrayList<>();
-            }
-            Link[] arr = m.readValue(data, Link[].class);
-            return new ArrayList<>(Arrays.asList(arr)); // изменяемый список
+            long t0 = System.nanoTime();
+            boolean ok = LinkJsonStream.read(file, visitor);
+            metrics.io(Metrics.IoOp.READ, System.nanoTime() - t0, Files.exists(file) ? Files.size(file) : 0);
+            if (!ok) quarantine();
         } catch (IOException e) {
-            // если файл поврежден, сбрасываем его в пустой массив
-            try {
-                Files.writeString(file, "[]");
-            } catch (IOException ex) {
-                throw new UncheckedIOException(ex);
-            }
-            return new ArrayList<>();
+            throw new UncheckedIOException(e);
         }
     }
+
+    private Path backupPath() {
+        return file.resolveSibling(file.getFileName() + ".corrupt");
+    }
+
+    /** Переносит повреждённый файл в *.corrupt и пишет на его место читаемое начало */
+    private void quarantine() throws IOException {
+        Path backup = backupPath();
+        Files.move(file, backup, StandardCopyOption.REPLACE_EXISTING);
+        LinkJsonStream.write(
+                file,
+                out ->
+                        LinkJsonStream.read(
+                                backup,
+                                l -> {
+                                    out.accept(l);
+                                    return true;
+                                }),
+                force);
+        log.warn("Файл {} повреждён, сохранён как {}", file, backup);
+    }
     /**
-     * Записывает весь список ссылок обратно в JSON.
-     * Используется PrettyPrinter для удобства чтения.
+     * Переписывает файл за один проход: каждая ссылка проходит через transform
+     * (null — ссылка выбрасывается), затем дописываются ссылки, которые вернёт append.
+     * Запись компактная, во временный файл с атомарной подменой.
+     * Повреждённый файл перед подменой копируется в *.corrupt.
      */
-    private synchronized void write(List<Link> list) {
+    private synchronized void rewrite(UnaryOperator<Link> transform, Supplier<Collection<Link>> append) {
         try {
-            m.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), list);
+            long t0 = System.nanoTime();
+            long bytes =
+                    LinkJsonStream.write(
+                            file,
+                            out -> {
+                                boolean ok =
+                                        LinkJsonStream.read(
+                                                file,
+                                                l -> {
+                                                    Link t = transform.apply(l);
+                                                    if (t != null) out.accept(t);
+                                                    return true;
+                                                });
+                                if (!ok) {
+                                    // как и в scan: оригинал сохраняется, в новый файл идёт читаемое начало
+                                    Files.copy(file, backupPath(), StandardCopyOption.REPLACE_EXISTING);
+                                    log.warn("Файл {} повреждён, сохранён как {}", file, backupPath());
+                                }
+                                append.get().forEach(out);
+                            },
+                            force);
+            metrics.io(Metrics.IoOp.WRITE, System.nanoTime() - t0, bytes);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    private static boolean matches(Link l, String ownerUuid, String code) {
+        return l.ownerUuid.equals(ownerUuid) && l.shortCode.equals(code);
+    }
+
     /**
      * Поиск ссылки по владельцу и короткому коду.
      *
@@ -90,9 +151,29 @@ public class FileLinkRepository implements LinkRepository {
      */
     @Override
     public Optional<Link> findByCode(String ownerUuid, String code) {
-        return read().stream()
-                .filter(l -> l.ownerUuid.equals(ownerUuid) && l.shortCode.equals(code))
-                .findFirst();
+        Link[] found = new Link[1];
+        scan(
+                l -> {
+                    if (!matches(l, ownerUuid, code)) return true;
+                    found[0] = l;
+                    return false;
+                });
+        return Optional.ofNullable(found[0]);
+    }
+    /**
+     * Ссылки по списку ключей за один проход по файлу; проход останавливается, когда найдены все.
+     */
+    @Override
+    public List<Link> findAllByKey(Collection<LinkKey> keys) {
+        Set<LinkKey> wanted = new HashSet<>(keys);
+        List<Link> out = new ArrayList<>(wanted.size());
+        if (wanted.isEmpty()) return out;
+        scan(
+                l -> {
+                    if (wanted.remove(new LinkKey(l.ownerUuid, l.shortCode))) out.add(l);
+                    return !wanted.isEmpty();
+                });
+        return out;
     }
     /**
      * Возвращает все ссылки пользователя, кроме удалённых.
@@ -102,32 +183,260 @@ public class FileLinkRepository implements LinkRepository {
      */
     @Override
     public List<Link> findAllByOwner(String ownerUuid) {
-        return read().stream()
-                .filter(l -> l.ownerUuid.equals(ownerUuid) && l.status != LinkStatus.DELETED)
-                .collect(Collectors.toList());
+        List<Link> out = new ArrayList<>();
+        forEach(l -> l.ownerUuid.equals(ownerUuid) && l.status != LinkStatus.DELETED, out::add);
+        return out;
+    }
+    /**
+     * Возвращает все ссылки с данным статусом.
+     */
+    public List<Link> findAllByStatus(LinkStatus status) {
+        List<Link> out = new ArrayList<>();
+        forEach(l -> l.status == status, out::add);
+        return out;
     }
+    /**
+     * Потоково передаёт action ссылки, подходящие под filter, не собирая их в список.
+     */
+    public void forEach(Predicate<Link> filter, Consumer<Link> action) {
+        scan(
+                l -> {
+                    if (filter.test(l)) action.accept(l);
+                    return true;
+                });
+    }
+    // ---------- изменения ----------
+
+    /**
+     * Изменение файла, которое применяется в общем проходе группы.
+     * apply получает текущее состояние ссылки (null — её нет) и возвращает новое (null — ссылки нет);
+     * published вызывается только после успешной записи группы.
+     */
+    private abstract static class Change {
+        /** null — изменение касается всех ссылок */
+        final LinkKey key;
+
+        Change(LinkKey key) {
+            this.key = key;
+        }
+
+        abstract Link apply(Link current);
+
+        void published() {}
+    }
+
+    /** save: ссылка вызывающего копируется, новая версия попадает в неё после записи */
+    private static final class Save extends Change {
+        final Link link;
+        long version;
+
+        Save(Link link) {
+            super(new LinkKey(link.ownerUuid, link.shortCode));
+            this.link = link;
+        }
+
+        @Override
+        Link apply(Link current) {
+            Link c = link.copy();
+            c.version = version = current == null ? 1 : current.version + 1;
+            return c;
+        }
+
+        @Override
+        void published() {
+            link.version = version;
+        }
+    }
+
+    /** compareAndSave: замена, только если версия в файле равна expected */
+    private static final class Cas extends Change {
+        final Link link;
+        final long expected;
+        long version;
+        boolean ok;
+
+        Cas(Link link, long expected) {
+            super(new LinkKey(link.ownerUuid, link.shortCode));
+            this.link = link;
+            this.expected = expected;
+        }
+
+        @Override
+        Link apply(Link current) {
+            ok = current != null && current.version == expected;
+            if (!ok) return current;
+            Link c = link.copy();
+            c.version = version = expected + 1;
+            return c;
+        }
+
+        @Override
+        void published() {
+            if (ok) link.version = version;
+        }
+    }
+
+    private static final class UpdateClicks extends Change {
+        final int clickCount;
+        final LinkStatus status;
+
+        UpdateClicks(String ownerUuid, String code, int clickCount, LinkStatus status) {
+            super(new LinkKey(ownerUuid, code));
+            this.clickCount = clickCount;
+            this.status = status;
+        }
+
+        @Override
+        Link apply(Link current) {
+            if (current == null) return null;
+            current.clickCount = clickCount;
+            if (status != null && current.status == LinkStatus.ACTIVE) current.status = status;
+            current.version++;
+            return current;
+        }
+    }
+
+    private static final class Delete extends Change {
+        Delete(String ownerUuid, String code) {
+            super(new LinkKey(ownerUuid, code));
+        }
+
+        @Override
+        Link apply(Link current) {
+            if (current == null) return null;
+            current.status = LinkStatus.DELETED;
+            current.version++;
+            return current;
+        }
+    }
+
+    private static final class Expire extends Change {
+        final Instant now;
+        int removed;
+
+        Expire(Instant now) {
+            super(null);
+            this.now = now;
+        }
+
+        @Override
+        Link apply(Link current) {
+            if (current == null || !current.isExpired(now)) return current;
+            removed++;
+            return null;
+        }
+    }
+
+    /**
+     * Применяет группу изменений за один проход по файлу: к каждой ссылке — её изменения
+     * и изменения всех ссылок в порядке постановки; ссылки, которых не было в файле, дописываются.
+     */
+    private void apply(List<Change> group) {
+        Map<LinkKey, List<Integer>> byKey = new LinkedHashMap<>();
+        List<Integer> global = new ArrayList<>();
+        for (int i = 0; i < group.size(); i++) {
+            LinkKey k = group.get(i).key;
+            if (k == null) global.add(i);
+            else byKey.computeIfAbsent(k, x -> new ArrayList<>()).add(i);
+        }
+        rewrite(
+                l -> play(l, group, byKey.remove(new LinkKey(l.ownerUuid, l.shortCode)), global),
+                () -> {
+                    List<Link> added = new ArrayList<>();
+                    for (List<Integer> own : byKey.values()) {
+                        Link l = play(null, group, own, global);
+                        if (l != null) added.add(l);
+                    }
+                    return added;
+                });
+        for (Change c : group) c.published();
+    }
+
+    /** Проигрывает над ссылкой её изменения own и общие global, слияние по номеру в группе */
+    private static Link play(Link l, List<Change> group, List<Integer> own, List<Integer> global) {
+        if (own == null) {
+            if (global.isEmpty()) return l;
+            own = List.of();
+        }
+        int i = 0;
+        int j = 0;
+        while (i < own.size() || j < global.size()) {
+            boolean mine = j == global.size() || i < own.size() && own.get(i) < global.get(j);
+            l = group.get(mine ? own.get(i++) : global.get(j++)).apply(l);
+        }
+        return l;
+    }
+
     /**
      * Сохраняет ссылку в хранилище.
      * если уже есть запись с таким кодом и владельцем, то заменяет,
      * иначе добавляет новую.
+     * Возвращается после записи группы, в которую попала ссылка.
      */
     @Override
     public void save(Link link) {
-        List<Link> all = read();
-        all.remove(link);
-        all.add(link);
-        write(all);
+        GroupCommit.await(saveAsync(link));
+    }
+    /**
+     * Ставит ссылку в ближайшую группу записи.
+     */
+    @Override
+    public CompletableFuture<Void> saveAsync(Link link) {
+        return commit.submit(new Save(link));
+    }
+    /**
+     * Сохраняет пачку ссылок одной группой: один проход по файлу на всю пачку.
+     * Для ссылки, встретившейся в пачке несколько раз, пишется последняя.
+     * Новые версии попадают в ссылки вызывающего только после успешной записи.
+     */
+    @Override
+    public void saveAll(Collection<Link> links) {
+        Map<LinkKey, Save> last = new LinkedHashMap<>();
+        for (Link l : links) last.put(new LinkKey(l.ownerUuid, l.shortCode), new Save(l));
+        GroupCommit.await(commit.submitAll(last.values()));
+    }
+    /**
+     * Заменяет ссылку, только если версия в файле равна expectedVersion.
+     * Проверка и замена идут в проходе группы по файлу.
+     */
+    @Override
+    public boolean compareAndSave(Link link, long expectedVersion) {
+        Cas c = new Cas(link, expectedVersion);
+        GroupCommit.await(commit.submit(c));
+        return c.ok;
+    }
+    /**
+     * Заменяет ссылки пачки, версия которых в файле совпадает с их link.version, одной группой.
+     */
+    @Override
+    public List<Link> compareAndSaveAll(Collection<Link> links) {
+        List<Cas> changes = new ArrayList<>(links.size());
+        for (Link l : links) changes.add(new Cas(l, l.version));
+        GroupCommit.await(commit.submitAll(changes));
+        List<Link> failed = new ArrayList<>();
+        for (Cas c : changes) {
+            if (!c.ok) failed.add(c.link);
+        }
+        return failed;
+    }
+    /**
+     * Записывает счётчик в проходе ближайшей группы, без отдельного чтения файла.
+     */
+    @Override
+    public void updateClicks(String ownerUuid, String shortCode, int clickCount, LinkStatus status) {
+        GroupCommit.await(updateClicksAsync(ownerUuid, shortCode, clickCount, status));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateClicksAsync(String ownerUuid, String shortCode, int clickCount, LinkStatus status) {
+        return commit.submit(new UpdateClicks(ownerUuid, shortCode, clickCount, status));
     }
     /**
      * Помечает ссылку как удалённую
      */
     @Override
     public void delete(String ownerUuid, String code) {
-        List<Link> all = read();
-        all.stream()
-                .filter(l -> l.ownerUuid.equals(ownerUuid) && l.shortCode.equals(code))
-                .forEach(l -> l.status = LinkStatus.DELETED);
-        write(all);
+        GroupCommit.await(commit.submit(new Delete(ownerUuid, code)));
     }
     /**
      * Проверяет, существование короткого кода у пользователя.
@@ -135,8 +444,14 @@ public class FileLinkRepository implements LinkRepository {
      */
     @Override
     public boolean existsCode(String ownerUuid, String code) {
-        return read().stream()
-                .anyMatch(l -> l.ownerUuid.equals(ownerUuid) && l.shortCode.equals(code));
+        return findByCode(ownerUuid, code).isPresent();
+    }
+    /**
+     * Обходит все ссылки, включая удалённые.
+     */
+    @Override
+    public void forEach(Consumer<Link> action) {
+        forEach(l -> true, action);
     }
     /**
      * Удаляет ссылки у которых истёк срок жизни (TTL)
@@ -146,10 +461,15 @@ public class FileLinkRepository implements LinkRepository {
      */
     @Override
     public int deleteExpired(Instant now) {
-        List<Link> all = read();
-        int before = all.size();
-        all.removeIf(l -> l.isExpired(now));
-        write(all);
-        return before - all.size();
+        Expire e = new Expire(now);
+        GroupCommit.await(commit.submit(e));
+        return e.removed;
+    }
+    /**
+     * Дописывает накопленные изменения и останавливает поток записи.
+     */
+    @Override
+    public void close() {
+        commit.close();
     }
 }
@@ -0,0 +1,22 @@
+package key.project.shortener.repo;
+
+/**
+ * Когда хранилище вызывает FileChannel.force для записанных изменений.
+ * per-op   — после каждой группы записей, собранной GroupCommit; save возвращается после force;
+ * interval — записи копятся fsyncIntervalMs и фиксируются одной записью и одним force;
+ * os       — force не вызывается, сброс на диск остаётся за ОС (как было раньше).
+ */
+public enum FsyncPolicy {
+    PER_OP,
+    INTERVAL,
+    OS;
+
+    public static FsyncPolicy parse(String value) {
+        return switch (value) {
+            case "per-op" -> PER_OP;
+            case "interval" -> INTERVAL;
+            case "os" -> OS;
+            default -> throw new IllegalArgumentException("Неизвестная политика fsync: " + value);
+        };
+    }
+}
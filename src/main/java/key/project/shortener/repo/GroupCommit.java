@@ -0,0 +1,159 @@
+package key.project.shortener.repo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import key.project.shortener.metrics.Metrics;
+
+/**
+ * Групповая фиксация записей.
+ * Потоки кладут элементы в неблокирующую очередь и получают CompletableFuture.
+ * Один поток фиксации забирает всё накопленное и передаёт одной пачкой в Committer:
+ * одна запись на диск и один force на группу вместо одного на каждый вызов.
+ * При политике INTERVAL группа собирается intervalMs, иначе фиксируется сразу,
+ * как только поток фиксации освободился (пока идёт запись, копится следующая группа).
+ * Future завершается после записи (и force, если политика не OS) или с ошибкой записи.
+ * Время каждой группы пишется в Metrics.global() как IoOp.COMMIT.
+ */
+final class GroupCommit<T> implements AutoCloseable {
+
+    /** Пишет группу элементов; force — вызвать FileChannel.force перед возвратом */
+    interface Committer<T> {
+        void commit(List<T> batch, boolean force) throws IOException;
+    }
+
+    private record Pending<T>(T item, CompletableFuture<Void> done) {}
+
+    private final Queue<Pending<T>> queue = new ConcurrentLinkedQueue<>();
+    private final FsyncPolicy policy;
+    private final long intervalNanos;
+    private final Committer<T> committer;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    GroupCommit(String name, FsyncPolicy policy, long intervalMs, Committer<T> committer) {
+        this.policy = policy;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMs));
+        this.committer = committer;
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Ставит элемент в ближайшую группу.
+     * Проверка closed и постановка в очередь идут под одним монитором с close,
+     * поэтому элемент либо попадает в очередь до остановки, либо сразу получает ошибку.
+     */
+    CompletableFuture<Void> submit(T item) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (queue) {
+            if (closed) return CompletableFuture.failedFuture(closedError());
+            queue.offer(new Pending<>(item, done));
+        }
+        if (policy != FsyncPolicy.INTERVAL) LockSupport.unpark(thread);
+        return done;
+    }
+
+    /**
+     * Ставит элементы в одну группу: поток фиксации забирает очередь под тем же монитором,
+     * поэтому пачка не делится между группами и фиксируется (или не фиксируется) целиком.
+     * @return future всей пачки
+     */
+    CompletableFuture<Void> submitAll(Collection<? extends T> items) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (items.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+        synchronized (queue) {
+            if (closed) return CompletableFuture.failedFuture(closedError());
+            for (T item : items) queue.offer(new Pending<>(item, done));
+        }
+        if (policy != FsyncPolicy.INTERVAL) LockSupport.unpark(thread);
+        return done;
+    }
+
+    private static IllegalStateException closedError() {
+        return new IllegalStateException("Хранилище закрыто");
+    }
+
+    /** Ждёт future и пробрасывает ошибку записи как есть */
+    static void await(CompletableFuture<Void> done) {
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private void run() {
+        long deadline = System.nanoTime() + intervalNanos;
+        while (!closed || !queue.isEmpty()) {
+            if (policy == FsyncPolicy.INTERVAL && !closed) {
+                long wait = deadline - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+                deadline = System.nanoTime() + intervalNanos;
+            } else if (queue.isEmpty()) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+            commitOnce();
+        }
+    }
+
+    private void commitOnce() {
+        List<Pending<T>> group = new ArrayList<>();
+        Pending<T> p;
+        synchronized (queue) {
+            while ((p = queue.poll()) != null) group.add(p);
+        }
+        if (group.isEmpty()) return;
+        List<T> items = new ArrayList<>(group.size());
+        for (Pending<T> g : group) items.add(g.item());
+        try {
+            long t0 = System.nanoTime();
+            committer.commit(items, policy != FsyncPolicy.OS);
+            Metrics.global().io(Metrics.IoOp.COMMIT, System.nanoTime() - t0, 0);
+            for (Pending<T> g : group) g.done().complete(null);
+        } catch (IOException e) {
+            UncheckedIOException failure = new UncheckedIOException(e);
+            for (Pending<T> g : group) g.done().completeExceptionally(failure);
+        } catch (RuntimeException e) {
+            for (Pending<T> g : group) g.done().completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Фиксирует всё, что уже в очереди, и останавливает поток.
+     * Если поток не успел за 10 секунд, оставшиеся элементы завершаются ошибкой,
+     * чтобы никто не ждал их вечно.
+     */
+    @Override
+    public void close() {
+        synchronized (queue) {
+            if (closed) return;
+            closed = true;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending<T> p;
+        while ((p = queue.poll()) != null) p.done().completeExceptionally(closedError());
+    }
+}
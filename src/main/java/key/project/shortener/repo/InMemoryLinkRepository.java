@@ -0,0 +1,233 @@
+package key.project.shortener.repo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import key.project.shortener.core.Link;
+import key.project.shortener.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Реализация LinkRepository, которая держит все ссылки в памяти.
+ * Файл data/storage.json читается один раз при старте в LinkIndex,
+ * все операции чтения обслуживаются из индекса.
+ * Изменения сбрасываются на диск фоновым потоком не чаще чем раз в flushIntervalMs
+ * (write-behind), запись идёт через временный файл и атомарное переименование,
+ * поэтому storage.json никогда не остаётся записанным наполовину.
+ * При close() и при завершении JVM выполняется финальный сброс.
+ * Вместе с JSON пишется бинарный снимок LinkSnapshot: при старте он грузится вместо JSON,
+ * если цел и не устарел, иначе хранилище читает storage.json и сразу пишет свежий снимок.
+ */
+public class InMemoryLinkRepository implements LinkRepository {
+    private static final Logger log = LoggerFactory.getLogger(InMemoryLinkRepository.class);
+
+    private final Path file;
+    private final Path snapshot; // null, если снимок выключен
+    private final LinkIndex index = new LinkIndex();
+    private final ScheduledExecutorService flusher;
+    private final Thread shutdownHook;
+
+    /** Номер последнего изменения в индексе */
+    private final AtomicLong version = new AtomicLong();
+    /** Номер изменения, которое уже лежит на диске */
+    private volatile long flushedVersion;
+    private volatile boolean closed;
+
+    /**
+     * Конструктор.
+     * @param path путь к JSON-файлу из конфига
+     * @param flushIntervalMs период фонового сброса на диск, в миллисекундах
+     */
+    public InMemoryLinkRepository(String path, long flushIntervalMs) {
+        this(path, flushIntervalMs, true);
+    }
+
+    /**
+     * @param path путь к JSON-файлу из конфига
+     * @param flushIntervalMs период фонового сброса на диск, в миллисекундах
+     * @param binarySnapshot писать и читать бинарный снимок рядом с JSON
+     */
+    public InMemoryLinkRepository(String path, long flushIntervalMs, boolean binarySnapshot) {
+        this.file = Paths.get(path);
+        this.snapshot = binarySnapshot ? LinkSnapshot.pathFor(file) : null;
+        load();
+        this.flusher =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "link-flusher");
+                            t.setDaemon(true);
+                            return t;
+                        });
+        long period = Math.max(1, flushIntervalMs);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, period, period, TimeUnit.MILLISECONDS);
+        this.shutdownHook = new Thread(this::flushQuietly, "link-flusher-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Загружает снимок или storage.json в индекс.
+     * Повреждённый файл не затирается: он переименовывается в *.corrupt,
+     * а хранилище стартует пустым.
+     */
+    private void load() {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            long t0 = System.nanoTime();
+            if (snapshot != null) {
+                int n = LinkSnapshot.read(snapshot, file, index::restore);
+                if (n >= 0) {
+                    Metrics.global().io(Metrics.IoOp.READ, System.nanoTime() - t0, Files.size(snapshot));
+                    log.info("Загружено ссылок из снимка {}: {} за {} мс", snapshot, n, millisSince(t0));
+                    return;
+                }
+                index.clear();
+                if (Files.exists(snapshot)) log.warn("Снимок {} устарел или повреждён, читаем {}", snapshot, file);
+            }
+            if (!Files.exists(file) || Files.size(file) == 0) {
+                return;
+            }
+            boolean ok =
+                    LinkJsonStream.read(
+                            file,
+                            l -> {
+                                index.restore(l);
+                                return true;
+                            });
+            Metrics.global().io(Metrics.IoOp.READ, System.nanoTime() - t0, Files.size(file));
+            if (ok) {
+                log.info("Загружено ссылок из {}: {} за {} мс", file, index.size(), millisSince(t0));
+                if (snapshot != null) writeSnapshot();
+            } else {
+                index.clear();
+                Path backup = file.resolveSibling(file.getFileName() + ".corrupt");
+                Files.move(file, backup, StandardCopyOption.REPLACE_EXISTING);
+                log.warn("Файл {} повреждён, сохранён как {}", file, backup);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Сбрасывает индекс на диск, если с прошлого сброса были изменения.
+     * Потоково пишет индекс во временный файл и атомарно подменяет storage.json.
+     */
+    public synchronized void flush() {
+        long v = version.get();
+        if (v == flushedVersion) return;
+        try {
+            long t0 = System.nanoTime();
+            long bytes = LinkJsonStream.write(file, index::forEach);
+            Metrics.global().io(Metrics.IoOp.WRITE, System.nanoTime() - t0, bytes);
+            // снимок может захватить изменения новее JSON: при старте он всё равно не старее файла
+            if (snapshot != null) writeSnapshot();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        flushedVersion = v;
+    }
+
+    private void writeSnapshot() throws IOException {
+        long t0 = System.nanoTime();
+        long bytes = LinkSnapshot.write(snapshot, file, index::forEach);
+        Metrics.global().io(Metrics.IoOp.WRITE, System.nanoTime() - t0, bytes);
+    }
+
+    private static long millisSince(long t0) {
+        return (System.nanoTime() - t0) / 1_000_000;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Не удалось сбросить ссылки в {}", file, e);
+        }
+    }
+
+    private void changed() {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public Optional<Link> findByCode(String ownerUuid, String code) {
+        return index.get(ownerUuid, code);
+    }
+
+    @Override
+    public List<Link> findAllByOwner(String ownerUuid) {
+        return index.byOwner(ownerUuid);
+    }
+
+    @Override
+    public void save(Link link) {
+        index.put(link);
+        changed();
+    }
+
+    @Override
+    public void saveAll(Collection<Link> links) {
+        for (Link l : links) index.put(l);
+        changed();
+    }
+
+    @Override
+    public boolean compareAndSave(Link link, long expectedVersion) {
+        if (!index.compareAndPut(link, expectedVersion)) return false;
+        changed();
+        return true;
+    }
+
+    @Override
+    public void delete(String ownerUuid, String code) {
+        if (index.markDeleted(ownerUuid, code)) changed();
+    }
+
+    @Override
+    public boolean existsCode(String ownerUuid, String code) {
+        return index.contains(ownerUuid, code);
+    }
+
+    @Override
+    public int deleteExpired(Instant now) {
+        int removed = index.removeIf(l -> l.isExpired(now)).size();
+        if (removed > 0) changed();
+        return removed;
+    }
+
+    @Override
+    public void forEach(Consumer<Link> action) {
+        index.forEach(action);
+    }
+
+    /**
+     * Останавливает фоновый сброс и выполняет финальную запись на диск.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // JVM уже завершается, хук отработает сам
+        }
+        flush();
+    }
+}
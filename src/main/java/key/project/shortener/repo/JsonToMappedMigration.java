@@ -0,0 +1,46 @@
+package key.project.shortener.repo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import key.project.shortener.core.Link;
+
+/**
+ * Одноразовый перенос ссылок из data/storage.json в бинарное хранилище MappedLinkRepository.
+ * Запуск: java -cp shortener.jar key.project.shortener.repo.JsonToMappedMigration [json] [каталог]
+ * Ссылки с кодами, которые не выдавал ShortenerService, пропускаются и выводятся в отчёт.
+ */
+public final class JsonToMappedMigration {
+    private JsonToMappedMigration() {}
+
+    public static void main(String[] args) throws IOException {
+        String json = args.length > 0 ? args[0] : "data/storage.json";
+        String dir = args.length > 1 ? args[1] : "data/mmap";
+        int[] result = migrate(Paths.get(json), dir);
+        System.out.println("Перенесено ссылок: " + result[0] + ", пропущено: " + result[1]);
+    }
+
+    /**
+     * Переносит ссылки в каталог dir.
+     * @return {перенесено, пропущено}
+     */
+    public static int[] migrate(Path json, String dir) throws IOException {
+        if (!Files.exists(json) || Files.size(json) == 0) return new int[] {0, 0};
+        Link[] arr = LinkJson.MAPPER.readValue(json.toFile(), Link[].class);
+        int moved = 0;
+        int skipped = 0;
+        try (MappedLinkRepository repo = new MappedLinkRepository(dir)) {
+            for (Link l : arr) {
+                try {
+                    repo.save(l);
+                    moved++;
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Пропущена ссылка " + l.shortCode + ": " + e.getMessage());
+                    skipped++;
+                }
+            }
+        }
+        return new int[] {moved, skipped};
+    }
+}
@@ -0,0 +1,139 @@
+package key.project.shortener.repo;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.core.UrlInterner;
+
+/**
+ * Индекс ссылок в памяти.
+ * Основной хэш-индекс по паре (владелец, код) и вторичный индекс владелец → коды.
+ * Хранит собственные копии объектов Link, наружу тоже отдаёт копии,
+ * чтобы изменения вызывающего кода попадали в индекс только через put.
+ * Одинаковые URL в копиях берутся из общего UrlInterner.
+ * put и markDeleted увеличивают версию ссылки атомарно для ключа (compute ConcurrentHashMap),
+ * restore кладёт ссылку с её версией как есть — для загрузки с диска.
+ */
+final class LinkIndex {
+    private final Map<LinkKey, Link> byKey = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byOwner = new ConcurrentHashMap<>();
+
+    Optional<Link> get(String ownerUuid, String code) {
+        Link l = byKey.get(new LinkKey(ownerUuid, code));
+        return l == null ? Optional.empty() : Optional.of(l.copy());
+    }
+
+    boolean contains(String ownerUuid, String code) {
+        return byKey.containsKey(new LinkKey(ownerUuid, code));
+    }
+
+    /** Ссылки владельца, кроме удалённых. */
+    List<Link> byOwner(String ownerUuid) {
+        Set<String> codes = byOwner.get(ownerUuid);
+        if (codes == null) return new ArrayList<>();
+        List<Link> out = new ArrayList<>(codes.size());
+        for (String code : codes) {
+            Link l = byKey.get(new LinkKey(ownerUuid, code));
+            if (l != null && l.status != LinkStatus.DELETED) out.add(l.copy());
+        }
+        return out;
+    }
+
+    /** Сохраняет копию со следующей версией и записывает эту версию в link */
+    void put(Link link) {
+        byKey.compute(
+                new LinkKey(link.ownerUuid, link.shortCode),
+                (k, old) -> {
+                    link.version = old == null ? 1 : old.version + 1;
+                    return stored(link);
+                });
+        byOwner.computeIfAbsent(link.ownerUuid, k -> ConcurrentHashMap.newKeySet()).add(link.shortCode);
+    }
+
+    /**
+     * Сохраняет копию, только если текущая версия равна expectedVersion.
+     * @return false если ссылки нет или версия другая
+     */
+    boolean compareAndPut(Link link, long expectedVersion) {
+        boolean[] ok = new boolean[1];
+        byKey.computeIfPresent(
+                new LinkKey(link.ownerUuid, link.shortCode),
+                (k, old) -> {
+                    if (old.version != expectedVersion) return old;
+                    ok[0] = true;
+                    link.version = expectedVersion + 1;
+                    return stored(link);
+                });
+        return ok[0];
+    }
+
+    /** Кладёт ссылку с её версией, без увеличения */
+    void restore(Link link) {
+        byKey.put(new LinkKey(link.ownerUuid, link.shortCode), stored(link));
+        byOwner.computeIfAbsent(link.ownerUuid, k -> ConcurrentHashMap.newKeySet()).add(link.shortCode);
+    }
+
+    private static Link stored(Link link) {
+        Link c = link.copy();
+        c.originalUrl = UrlInterner.intern(c.originalUrl);
+        return c;
+    }
+
+    /**
+     * Помечает ссылку как удалённую.
+     * @return true если ссылка была в индексе
+     */
+    boolean markDeleted(String ownerUuid, String code) {
+        return byKey.computeIfPresent(
+                        new LinkKey(ownerUuid, code),
+                        (k, l) -> {
+                            Link c = l.copy();
+                            c.status = LinkStatus.DELETED;
+                            c.version++;
+                            return c;
+                        })
+                != null;
+    }
+
+    /**
+     * Удаляет из индекса ссылки, подходящие под условие.
+     * @return удалённые ссылки
+     */
+    List<Link> removeIf(Predicate<Link> filter) {
+        List<Link> removed = new ArrayList<>();
+        for (Iterator<Link> it = byKey.values().iterator(); it.hasNext(); ) {
+            Link l = it.next();
+            if (filter.test(l)) {
+                it.remove();
+                Set<String> codes = byOwner.get(l.ownerUuid);
+                if (codes != null) codes.remove(l.shortCode);
+                removed.add(l);
+            }
+        }
+        return removed;
+    }
+
+    /** Снимок всех ссылок (копии) для записи на диск. */
+    List<Link> snapshot() {
+        List<Link> out = new ArrayList<>(byKey.size());
+        for (Link l : byKey.values()) out.add(l.copy());
+        return out;
+    }
+
+    /** Обходит все ссылки (копии) */
+    void forEach(Consumer<Link> action) {
+        for (Link l : byKey.values()) action.accept(l.copy());
+    }
+
+    int size() {
+        return byKey.size();
+    }
+
+    void clear() {
+        byKey.clear();
+        byOwner.clear();
+    }
+}
@@ -0,0 +1,18 @@
+package key.project.shortener.repo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Общие настройки Jackson для файловых хранилищ ссылок и HTTP API.
+ * Даты пишутся строками ISO-8601, как в исходном data/storage.json.
+ */
+public final class LinkJson {
+    public static final ObjectMapper MAPPER =
+            new ObjectMapper()
+                    .registerModule(new JavaTimeModule())
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private LinkJson() {}
+}
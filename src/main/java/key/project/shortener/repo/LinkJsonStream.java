@@ -0,0 +1,134 @@
+package key.project.shortener.repo;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import key.project.shortener.core.Link;
+import key.project.shortener.metrics.Metrics;
+
+/**
+ * Потоковое чтение и запись JSON-массива ссылок через JsonParser/JsonGenerator.
+ * В памяти одновременно находится одна ссылка, поэтому расход памяти
+ * не зависит от размера файла. Запись идёт компактно (без отступов)
+ * через буферизованный канал во временный файл с атомарной подменой.
+ * С force временный файл сбрасывается на диск до подмены, а каталог — после,
+ * чтобы после сбоя питания на месте file был либо старый, либо новый файл целиком.
+ */
+final class LinkJsonStream {
+    private static final int BUFFER = 64 * 1024;
+    private static final ObjectReader READER = LinkJson.MAPPER.readerFor(Link.class);
+    // без сброса после каждой ссылки, иначе буфер бесполезен
+    private static final ObjectWriter WRITER =
+            LinkJson.MAPPER.writerFor(Link.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    /** Источник ссылок для записи */
+    interface Source {
+        void emit(Consumer<Link> out) throws IOException;
+    }
+
+    private LinkJsonStream() {}
+
+    /**
+     * Обходит ссылки файла по одной.
+     * Время разбора (токены и сборка Link, вместе с подкачкой буфера, без работы visitor)
+     * пишется в Metrics.global() как IoOp.PARSE, одной записью на обход.
+     * @param visitor получает ссылку и возвращает false, чтобы остановить обход
+     * @return false если файл повреждён; ссылки до места повреждения уже переданы visitor
+     */
+    static boolean read(Path file, Predicate<Link> visitor) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) return true;
+        long parse = 0;
+        long t0 = System.nanoTime();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER);
+                JsonParser p = LinkJson.MAPPER.getFactory().createParser(in)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) return false;
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                Link l = READER.readValue(p);
+                long t1 = System.nanoTime();
+                parse += t1 - t0;
+                boolean more = visitor.test(l);
+                t0 = System.nanoTime();
+                if (!more) return true;
+            }
+            return p.currentToken() == JsonToken.END_ARRAY;
+        } catch (JsonProcessingException e) {
+            return false;
+        } finally {
+            Metrics.global().io(Metrics.IoOp.PARSE, parse + System.nanoTime() - t0, 0);
+        }
+    }
+
+    /**
+     * Пишет ссылки источника в file.tmp и атомарно переименовывает его в file.
+     * @return размер записанного файла в байтах
+     */
+    static long write(Path file, Source source) throws IOException {
+        return write(file, source, false);
+    }
+
+    /**
+     * То же, с force: FileChannel.force для file.tmp перед подменой и для каталога после.
+     * @return размер записанного файла в байтах
+     */
+    static long write(Path file, Source source, boolean force) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch =
+                        FileChannel.open(
+                                tmp,
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING);
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(ch), BUFFER);
+                JsonGenerator g = LinkJson.MAPPER.getFactory().createGenerator(out)) {
+            g.writeStartArray();
+            try {
+                source.emit(
+                        l -> {
+                            try {
+                                WRITER.writeValue(g, l);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            g.writeEndArray();
+            if (force) {
+                g.flush();
+                ch.force(false);
+            }
+        }
+        long size = Files.size(tmp);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (force) forceDirectory(file.toAbsolutePath().getParent());
+        return size;
+    }
+
+    /** Сбрасывает на диск запись каталога (созданные и переименованные файлы) */
+    static void forceDirectory(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // не все ОС дают открыть каталог (Windows); там переименование журналирует сама ФС
+        }
+    }
+}
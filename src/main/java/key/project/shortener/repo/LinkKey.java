@@ -0,0 +1,4 @@
+package key.project.shortener.repo;
+
+/** Ключ ссылки в индексах: владелец и короткий код. */
+public record LinkKey(String ownerUuid, String shortCode) {}
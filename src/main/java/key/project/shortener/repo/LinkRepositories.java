@@ -0,0 +1,68 @@
+package key.project.shortener.repo;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import key.project.shortener.config.AppConfig;
+
+/**
+ * Выбор реализации LinkRepository по настройке app.storage.
+ * file   — FileLinkRepository, каждый вызов читает и пишет JSON-файл;
+ * memory — InMemoryLinkRepository, индекс в памяти с фоновым сбросом на диск;
+ * wal    — WalLinkRepository, индекс в памяти и журнал изменений с компакцией;
+ * mmap   — MappedLinkRepository, записи фиксированной длины в отображаемых в память файлах;
+ * columnar — ColumnarLinkRepository, таблица столбцов в памяти с фоновым сбросом на диск;
+ * sharded — ShardedLinkRepository из shardCount шардов движка shardEngine в каталоге shardDir.
+ * file и wal получают политику fsyncPolicy (per-op | interval | os) и окно fsyncIntervalMs.
+ */
+public final class LinkRepositories {
+    private LinkRepositories() {}
+
+    public static LinkRepository create(AppConfig cfg) {
+        AppConfig.App app = cfg.app;
+        return switch (app.storage) {
+            case "sharded" -> sharded(app, Paths.get(app.shardDir), app.shardCount);
+            case "file" -> new FileLinkRepository(app.dataFile, fsync(app), app.fsyncIntervalMs);
+            case "memory" -> new InMemoryLinkRepository(app.dataFile, app.flushIntervalMs, app.binarySnapshot);
+            case "wal" ->
+                    new WalLinkRepository(
+                            app.walDir,
+                            app.dataFile,
+                            app.walSegmentBytes,
+                            app.walCompactIntervalMs,
+                            fsync(app),
+                            app.fsyncIntervalMs);
+            case "mmap" -> new MappedLinkRepository(app.mmapDir);
+            case "columnar" -> new ColumnarLinkRepository(app.dataFile, app.flushIntervalMs, app.binarySnapshot);
+            default -> throw new IllegalArgumentException("Неизвестный тип хранилища: " + app.storage);
+        };
+    }
+
+    /** Шардированное хранилище: каждый шард — свой движок app.shardEngine в каталоге dir/shard-NNN */
+    public static LinkRepository sharded(AppConfig.App app, Path dir, int shardCount) {
+        return new ShardedLinkRepository(
+                dir, shardCount, i -> shard(app, dir.resolve(String.format("shard-%03d", i))));
+    }
+
+    private static LinkRepository shard(AppConfig.App app, Path dir) {
+        String json = dir.resolve("storage.json").toString();
+        return switch (app.shardEngine) {
+            case "file" -> new FileLinkRepository(json, fsync(app), app.fsyncIntervalMs);
+            case "memory" -> new InMemoryLinkRepository(json, app.flushIntervalMs, app.binarySnapshot);
+            case "wal" ->
+                    new WalLinkRepository(
+                            dir.resolve("wal").toString(),
+                            json,
+                            app.walSegmentBytes,
+                            app.walCompactIntervalMs,
+                            fsync(app),
+                            app.fsyncIntervalMs);
+            case "mmap" -> new MappedLinkRepository(dir.resolve("mmap").toString());
+            case "columnar" -> new ColumnarLinkRepository(json, app.flushIntervalMs, app.binarySnapshot);
+            default -> throw new IllegalArgumentException("Неизвестный движок шарда: " + app.shardEngine);
+        };
+    }
+
+    private static FsyncPolicy fsync(AppConfig.App app) {
+        return FsyncPolicy.parse(app.fsyncPolicy);
+    }
+}
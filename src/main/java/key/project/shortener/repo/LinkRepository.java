@@ -1,22 +1,124 @@
 package key.project.shortener.repo;
 
 import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 /**
  * Интерфейс репозитория ссылок.
  * Определяет операции для работы с коллекцией коротких ссылок:
- * поиск,
- * сохранение,
+ * поиск (по одной и по списку ключей),
+ * сохранение (по одной и пачкой),
  * удалениею
  * проверка уникальности,
- * очистка просроченных ссылок.
+ * очистка просроченных ссылок,
+ * обход всех ссылок (для построения индексов в памяти).
+ * close() освобождает ресурсы хранилища (фоновые потоки, файлы).
+ * Каждая запись ссылки (save, saveAll, updateClicks, delete) увеличивает её version на 1,
+ * compareAndSave сохраняет только поверх той версии, которую прочитал вызывающий,
+ * compareAndSaveAll — то же для пачки.
+ * saveAsync отдаёт future записи: ждать его — надёжная запись по политике fsync хранилища,
+ * не ждать — запись без ожидания диска.
  */
-public interface LinkRepository {
+public interface LinkRepository extends AutoCloseable {
+    /** Сколько раз чтение и compareAndSave повторяются при конфликте версий */
+    int CAS_ATTEMPTS = 8;
+
     Optional<Link> findByCode(String ownerUuid, String shortCode);
     List<Link> findAllByOwner(String ownerUuid);
+
+    /**
+     * Ссылки по списку ключей; отсутствующие пропускаются.
+     * Хранилища, которые читают весь файл целиком, переопределяют метод и находят все за один проход.
+     */
+    default List<Link> findAllByKey(Collection<LinkKey> keys) {
+        List<Link> out = new ArrayList<>(keys.size());
+        for (LinkKey k : keys) findByCode(k.ownerUuid(), k.shortCode()).ifPresent(out::add);
+        return out;
+    }
+
+    /** Сохраняет ссылку без проверки версии; link.version получает новую версию */
     void save(Link link);
+
+    /**
+     * Сохраняет ссылку; future завершается, когда запись зафиксирована по политике fsync хранилища.
+     * Хранилища с групповой фиксацией (file, wal) возвращаются сразу, не дожидаясь записи.
+     * По умолчанию — обычный save и уже завершённый future.
+     */
+    default CompletableFuture<Void> saveAsync(Link link) {
+        save(link);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Сохраняет ссылку, только если её версия в хранилище равна expectedVersion.
+     * При успехе версия в хранилище и в link становится expectedVersion + 1.
+     *
+     * @return false если ссылки нет или её уже изменили после чтения
+     */
+    boolean compareAndSave(Link link, long expectedVersion);
+
+    /**
+     * compareAndSave для пачки: каждая ссылка сохраняется, только если её версия в хранилище
+     * равна link.version, то есть той, что прочитал вызывающий. У сохранённых link.version увеличивается.
+     * Хранилища, которые пишут весь файл целиком, переопределяют метод и пишут пачку за одну запись.
+     *
+     * @return ссылки, которые не сохранены: их нет или их изменили после чтения
+     */
+    default List<Link> compareAndSaveAll(Collection<Link> links) {
+        List<Link> failed = new ArrayList<>();
+        for (Link l : links) {
+            if (!compareAndSave(l, l.version)) failed.add(l);
+        }
+        return failed;
+    }
+
+    /**
+     * Сохраняет пачку ссылок.
+     * Хранилища, которые пишут весь файл целиком, переопределяют метод и пишут пачку за одну запись.
+     */
+    default void saveAll(Collection<Link> links) {
+        links.forEach(this::save);
+    }
     void delete(String ownerUuid, String shortCode);
     boolean existsCode(String ownerUuid, String shortCode);
     int deleteExpired(Instant now);
+    void forEach(Consumer<Link> action);
+
+    /**
+     * Записывает счётчик переходов.
+     * Статус меняется, только если он не null и ссылка сейчас ACTIVE.
+     * Хранилища, умеющие обновлять счётчик на месте, переопределяют этот метод.
+     * По умолчанию — чтение и compareAndSave, не больше CAS_ATTEMPTS попыток.
+     *
+     * @throws IllegalStateException если ссылку всё это время меняли параллельно
+     */
+    default void updateClicks(String ownerUuid, String shortCode, int clickCount, LinkStatus status) {
+        for (int attempt = 0; attempt < CAS_ATTEMPTS; attempt++) {
+            Optional<Link> o = findByCode(ownerUuid, shortCode);
+            if (o.isEmpty()) return;
+            Link l = o.get();
+            long version = l.version;
+            l.clickCount = clickCount;
+            if (status != null && l.status == LinkStatus.ACTIVE) l.status = status;
+            if (compareAndSave(l, version)) return;
+            Thread.onSpinWait();
+        }
+        throw new IllegalStateException("Ссылку " + shortCode + " изменяют параллельно, счётчик не записан");
+    }
+
+    /**
+     * updateClicks; future завершается, когда запись зафиксирована по политике fsync хранилища.
+     * Хранилища с групповой фиксацией возвращаются сразу, и счётчики многих ссылок,
+     * поставленные подряд, пишутся одной группой. По умолчанию — обычный updateClicks.
+     */
+    default CompletableFuture<Void> updateClicksAsync(String ownerUuid, String shortCode, int clickCount, LinkStatus status) {
+        updateClicks(ownerUuid, shortCode, clickCount, status);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    default void close() {}
 }
@@ -0,0 +1,214 @@
+package key.project.shortener.repo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+
+/**
+ * Бинарный снимок ссылок рядом с storage.json для быстрого старта хранилищ в памяти.
+ *
+ * Формат: заголовок (MAGIC, VERSION, размер и время изменения storage.json на момент снимка),
+ * затем записи, маркер конца, число записей и CRC32 всего предшествующего содержимого.
+ * Владелец и URL пишутся строкой только при первой встрече, дальше — номером в таблице,
+ * поэтому повторяющиеся UUID и URL занимают 4 байта и при чтении сразу получаются общими строками.
+ * Время хранится как секунды и наносекунды, без потери точности относительно JSON.
+ *
+ * Снимок читается одним отображением файла в память, без Jackson и рефлексии.
+ * Он считается устаревшим, если storage.json с тех пор менялся (другие размер или время изменения):
+ * тогда, как и при несовпадении CRC, вызывающий загружает storage.json.
+ */
+final class LinkSnapshot {
+    private static final int MAGIC = 0x4C4E4B53; // "LNKS"
+    private static final int VERSION = 2; // 2: версия ссылки в записи
+    private static final int BUFFER = 1 << 20;
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+    private static final int NEW = -1;
+    private static final int NULL = -2;
+    private static final byte HAS_CREATED = 1;
+    private static final byte HAS_EXPIRES = 2;
+    private static final LinkStatus[] STATUSES = LinkStatus.values();
+
+    private LinkSnapshot() {}
+
+    /** Путь снимка для storage.json: рядом, с суффиксом .snapshot */
+    static Path pathFor(Path json) {
+        return json.resolveSibling(json.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Пишет снимок ссылок источника во временный файл и атомарно подменяет snapshot.
+     * Вызывается сразу после записи json, чтобы запомнить его размер и время изменения.
+     * @return размер снимка в байтах
+     */
+    static long write(Path snapshot, Path json, LinkJsonStream.Source source) throws IOException {
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (FileChannel ch =
+                FileChannel.open(
+                        tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer w = new Writer(ch);
+            w.buf.putInt(MAGIC).putInt(VERSION).putLong(Files.size(json)).putLong(Files.getLastModifiedTime(json).toMillis());
+            try {
+                source.emit(
+                        l -> {
+                            try {
+                                w.link(l);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            w.finish();
+        }
+        long size = Files.size(tmp);
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * Загружает снимок, если он цел и соответствует текущему json.
+     * @return число загруженных ссылок или -1, если снимка нет, он устарел или повреждён;
+     *         при -1 часть ссылок уже могла быть передана out, вызывающий должен их отбросить
+     */
+    static int read(Path snapshot, Path json, Consumer<Link> out) throws IOException {
+        if (!Files.exists(snapshot) || !Files.exists(json)) return -1;
+        try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 24 + 13 || size > Integer.MAX_VALUE) return -1;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return -1;
+            if (buf.getLong() != Files.size(json) || buf.getLong() != Files.getLastModifiedTime(json).toMillis()) {
+                return -1;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate().position(0).limit((int) size - 8));
+            if (crc.getValue() != buf.getLong((int) size - 8)) return -1;
+            return readRecords(buf, out);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private static int readRecords(ByteBuffer buf, Consumer<Link> out) {
+        List<String> owners = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        int count = 0;
+        while (buf.get() == RECORD) {
+            Link l = new Link();
+            l.ownerUuid = ref(buf, owners);
+            l.shortCode = string(buf, buf.getShort());
+            l.originalUrl = ref(buf, urls);
+            byte status = buf.get();
+            l.status = status < 0 ? null : STATUSES[status];
+            l.maxClicks = buf.getInt();
+            l.clickCount = buf.getInt();
+            l.version = buf.getLong();
+            byte flags = buf.get();
+            if ((flags & HAS_CREATED) != 0) l.createdAt = Instant.ofEpochSecond(buf.getLong(), buf.getInt());
+            if ((flags & HAS_EXPIRES) != 0) l.expiresAt = Instant.ofEpochSecond(buf.getLong(), buf.getInt());
+            out.accept(l);
+            count++;
+        }
+        return buf.getInt() == count ? count : -1;
+    }
+
+    private static String ref(ByteBuffer buf, List<String> table) {
+        int id = buf.getInt();
+        if (id == NULL) return null;
+        if (id != NEW) return table.get(id);
+        String s = string(buf, buf.getInt());
+        table.add(s);
+        return s;
+    }
+
+    private static String string(ByteBuffer buf, int len) {
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Буферизованная запись с подсчётом CRC по мере сброса буфера в канал */
+    private static final class Writer {
+        private final FileChannel ch;
+        private final CRC32 crc = new CRC32();
+        private final Map<String, Integer> owners = new HashMap<>();
+        private final Map<String, Integer> urls = new HashMap<>();
+        private ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+        private int count;
+
+        Writer(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void link(Link l) throws IOException {
+            ensure(1);
+            buf.put(RECORD);
+            ref(l.ownerUuid, owners);
+            byte[] code = l.shortCode.getBytes(StandardCharsets.UTF_8);
+            ensure(2 + code.length);
+            buf.putShort((short) code.length).put(code);
+            ref(l.originalUrl, urls);
+            ensure(1 + 4 + 4 + 8 + 1 + 2 * 12);
+            buf.put(l.status == null ? -1 : (byte) l.status.ordinal());
+            buf.putInt(l.maxClicks).putInt(l.clickCount).putLong(l.version);
+            buf.put((byte) ((l.createdAt != null ? HAS_CREATED : 0) | (l.expiresAt != null ? HAS_EXPIRES : 0)));
+            if (l.createdAt != null) buf.putLong(l.createdAt.getEpochSecond()).putInt(l.createdAt.getNano());
+            if (l.expiresAt != null) buf.putLong(l.expiresAt.getEpochSecond()).putInt(l.expiresAt.getNano());
+            count++;
+        }
+
+        private void ref(String s, Map<String, Integer> table) throws IOException {
+            Integer id = s == null ? Integer.valueOf(NULL) : table.get(s);
+            if (id != null) {
+                ensure(4);
+                buf.putInt(id);
+                return;
+            }
+            table.put(s, table.size());
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            ensure(8 + b.length);
+            buf.putInt(NEW).putInt(b.length).put(b);
+        }
+
+        void finish() throws IOException {
+            ensure(1 + 4 + 8);
+            buf.put(END).putInt(count);
+            drain();
+            buf.putLong(crc.getValue());
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buf.remaining() >= n) return;
+            drain();
+            if (buf.capacity() < n) buf = ByteBuffer.allocate(n);
+        }
+
+        private void drain() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+    }
+}
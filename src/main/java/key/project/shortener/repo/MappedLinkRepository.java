@@ -0,0 +1,516 @@
+package key.project.shortener.repo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import key.project.shortener.core.Base62;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+
+/**
+ * Бинарное хранилище ссылок на отображаемых в память файлах.
+ * links.dat — записи фиксированной длины (RECORD байт):
+ *   UUID владельца (два long), случайная часть кода в base-62 (long) и её длина,
+ *   статус, лимит и счётчик переходов, createdAt/expiresAt в миллисекундах,
+ *   смещение и длина URL в куче строк, версия ссылки (long).
+ * urls.dat  — куча строк, URL в UTF-8 друг за другом.
+ * index.dat — хэш-таблица с открытой адресацией: номер записи + часть хэша.
+ * Переход по ссылке меняет счётчик прямо в отображённой записи, без сериализации JSON,
+ * а кэшированием страниц занимается ОС.
+ * Поддерживаются только коды вида "первые 8 символов UUID владельца" + "-" + до 10 символов base-62,
+ * которые выдаёт ShortenerService; данные из storage.json переносятся JsonToMappedMigration.
+ * Формат 1 (записи без версии) не выпускался, такой links.dat отклоняется при открытии.
+ */
+public class MappedLinkRepository implements LinkRepository {
+    private static final int MAGIC = 0x4C4E4B31; // "LNK1"
+    private static final int FORMAT = 2;
+    private static final int HEADER = 64;
+    static final int RECORD = 72;
+    private static final int MAX_SUFFIX = 10;
+
+    // смещения полей внутри записи
+    private static final int OWNER_MSB = 0;
+    private static final int OWNER_LSB = 8;
+    private static final int CODE = 16;
+    private static final int CODE_LEN = 24;
+    private static final int STATUS = 25;
+    private static final int MAX_CLICKS = 28;
+    private static final int CLICKS = 32;
+    private static final int CREATED = 36;
+    private static final int EXPIRES = 44;
+    private static final int URL_OFF = 52;
+    private static final int URL_LEN = 60;
+    private static final int VERSION = 64;
+
+    /** Статус записи, удалённой deleteExpired; такие записи пропускаются и не переносятся при перестройке */
+    private static final byte REMOVED = -1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final int INDEX_HEADER = 16;
+    private static final int SLOT = 8;
+
+    private final Path dir;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FileChannel recordsCh;
+    private MappedByteBuffer records;
+    private int count;
+
+    private FileChannel urlsCh;
+
+    private FileChannel indexCh;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int used;
+
+    /**
+     * Конструктор. Открывает (или создаёт) файлы хранилища и отображает их в память.
+     * @param dirPath каталог с links.dat, urls.dat, index.dat
+     */
+    public MappedLinkRepository(String dirPath) {
+        this.dir = Paths.get(dirPath);
+        try {
+            Files.createDirectories(dir);
+            openRecords();
+            urlsCh = FileChannel.open(dir.resolve("urls.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            openIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---------- файлы ----------
+
+    private void openRecords() throws IOException {
+        recordsCh =
+                FileChannel.open(dir.resolve("links.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean fresh = recordsCh.size() == 0;
+        mapRecords(Math.max(recordsCh.size(), HEADER + 1024L * RECORD));
+        if (fresh) {
+            records.putInt(0, MAGIC).putInt(4, FORMAT).putInt(8, 0);
+        } else if (records.getInt(0) != MAGIC || records.getInt(4) != FORMAT) {
+            recordsCh.close();
+            throw new IllegalStateException(
+                    "Неподдерживаемый формат " + records.getInt(4) + " файла " + dir.resolve("links.dat")
+                            + ": перенесите storage.json заново через JsonToMappedMigration");
+        }
+        count = records.getInt(8);
+    }
+
+    private void mapRecords(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) throw new IllegalStateException("Превышен максимальный размер links.dat");
+        records = recordsCh.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void openIndex() throws IOException {
+        Path p = dir.resolve("index.dat");
+        boolean rebuild = !Files.exists(p) || Files.size(p) < INDEX_HEADER;
+        indexCh = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!rebuild) {
+            ByteBuffer h = ByteBuffer.allocate(INDEX_HEADER);
+            indexCh.read(h, 0);
+            h.flip();
+            rebuild = h.getInt() != MAGIC || h.getInt() != count;
+            capacity = h.getInt();
+            used = h.getInt();
+            rebuild |= Integer.bitCount(capacity) != 1 || indexCh.size() < INDEX_HEADER + (long) capacity * SLOT;
+        }
+        if (rebuild) {
+            // индекс не соответствует записям (например, сбой между записью и обновлением индекса)
+            rebuildIndex(Math.max(1024, Integer.highestOneBit(Math.max(1, count)) * 4));
+        } else {
+            index = indexCh.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) capacity * SLOT);
+        }
+    }
+
+    /** Перестраивает индекс заданной ёмкости по содержимому links.dat */
+    private void rebuildIndex(int newCapacity) throws IOException {
+        if (index != null) index.force();
+        indexCh.truncate(0);
+        capacity = newCapacity;
+        used = 0;
+        index = indexCh.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) capacity * SLOT);
+        for (int r = 0; r < count; r++) {
+            int base = offset(r);
+            if (records.get(base + STATUS) == REMOVED) continue;
+            insertSlot(hash(records.getLong(base + OWNER_MSB), records.getLong(base + OWNER_LSB), records.getLong(base + CODE)), r);
+        }
+        writeIndexHeader();
+    }
+
+    private void writeIndexHeader() {
+        index.putInt(0, MAGIC).putInt(4, count).putInt(8, capacity).putInt(12, used);
+    }
+
+    private static int offset(int record) {
+        return HEADER + record * RECORD;
+    }
+
+    // ---------- ключи ----------
+
+    /** Упакованный ключ ссылки: UUID владельца и случайная часть кода */
+    private record Key(long msb, long lsb, long code, int codeLen) {}
+
+    private static Key key(String ownerUuid, String shortCode) {
+        UUID owner = UUID.fromString(ownerUuid);
+        if (!owner.toString().equals(ownerUuid)) {
+            throw new IllegalArgumentException("UUID владельца должен быть в каноническом виде: " + ownerUuid);
+        }
+        int dash = 8;
+        int len = shortCode.length() - dash - 1;
+        if (len < 1 || len > MAX_SUFFIX || shortCode.charAt(dash) != '-' || !shortCode.startsWith(ownerUuid.substring(0, 8))) {
+            throw new IllegalArgumentException("Неподдерживаемый формат кода: " + shortCode);
+        }
+        long code = Base62.decode(shortCode, dash + 1, shortCode.length());
+        if (code < 0) throw new IllegalArgumentException("Неподдерживаемый формат кода: " + shortCode);
+        return new Key(owner.getMostSignificantBits(), owner.getLeastSignificantBits(), code, len);
+    }
+
+    /** Ключ без проверки формата: null, если код не может лежать в этом хранилище */
+    private static Key keyOrNull(String ownerUuid, String shortCode) {
+        try {
+            return key(ownerUuid, shortCode);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long hash(long msb, long lsb, long code) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb * 0xC2B2AE3D27D4EB4FL ^ code * 0x165667B19E3779F9L;
+        return h ^ (h >>> 29);
+    }
+
+    // ---------- хэш-таблица ----------
+
+    private void insertSlot(long h, int record) {
+        int mask = capacity - 1;
+        for (int i = (int) h & mask; ; i = (i + 1) & mask) {
+            int pos = INDEX_HEADER + i * SLOT;
+            if (index.getInt(pos) == 0) {
+                index.putInt(pos, record + 1).putInt(pos + 4, (int) (h >>> 32));
+                used++;
+                return;
+            }
+        }
+    }
+
+    /** Номер живой записи с таким ключом или -1 */
+    private int find(Key k) {
+        long h = hash(k.msb, k.lsb, k.code);
+        int tag = (int) (h >>> 32);
+        int mask = capacity - 1;
+        for (int i = (int) h & mask; ; i = (i + 1) & mask) {
+            int pos = INDEX_HEADER + i * SLOT;
+            int ref = index.getInt(pos);
+            if (ref == 0) return -1;
+            if (index.getInt(pos + 4) != tag) continue;
+            int base = offset(ref - 1);
+            if (records.get(base + STATUS) != REMOVED
+                    && records.getLong(base + OWNER_MSB) == k.msb
+                    && records.getLong(base + OWNER_LSB) == k.lsb
+                    && records.getLong(base + CODE) == k.code
+                    && records.get(base + CODE_LEN) == k.codeLen) {
+                return ref - 1;
+            }
+        }
+    }
+
+    // ---------- записи ----------
+
+    private Link readLink(int r) {
+        int base = offset(r);
+        UUID owner = new UUID(records.getLong(base + OWNER_MSB), records.getLong(base + OWNER_LSB));
+        Link l = new Link();
+        l.ownerUuid = owner.toString();
+        l.shortCode = l.ownerUuid.substring(0, 8) + "-" + Base62.encode(records.getLong(base + CODE), records.get(base + CODE_LEN));
+        l.status = LinkStatus.values()[records.get(base + STATUS)];
+        l.maxClicks = records.getInt(base + MAX_CLICKS);
+        l.clickCount = records.getInt(base + CLICKS);
+        l.createdAt = time(records.getLong(base + CREATED));
+        l.expiresAt = time(records.getLong(base + EXPIRES));
+        l.originalUrl = readUrl(records.getLong(base + URL_OFF), records.getInt(base + URL_LEN));
+        l.version = records.getLong(base + VERSION);
+        return l;
+    }
+
+    private String readUrl(long off, int len) {
+        if (len < 0) return null;
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        try {
+            while (buf.hasRemaining()) {
+                if (urlsCh.read(buf, off + buf.position()) < 0) break;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8);
+    }
+
+    private long appendUrl(String url) throws IOException {
+        long off = urlsCh.size();
+        ByteBuffer buf = ByteBuffer.wrap(url.getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) urlsCh.write(buf, off + buf.position());
+        return off;
+    }
+
+    /** Пишет поля ссылки и увеличивает версию записи; новая версия попадает в l.version */
+    private void writeFields(int r, Link l, boolean urlChanged) throws IOException {
+        int base = offset(r);
+        l.version = bumpVersion(base);
+        records.put(base + STATUS, (byte) (l.status == null ? LinkStatus.ACTIVE : l.status).ordinal());
+        records.putInt(base + MAX_CLICKS, l.maxClicks);
+        records.putInt(base + CLICKS, l.clickCount);
+        records.putLong(base + CREATED, millis(l.createdAt));
+        records.putLong(base + EXPIRES, millis(l.expiresAt));
+        if (urlChanged) {
+            if (l.originalUrl == null) {
+                records.putLong(base + URL_OFF, 0).putInt(base + URL_LEN, -1);
+            } else {
+                records.putLong(base + URL_OFF, appendUrl(l.originalUrl))
+                        .putInt(base + URL_LEN, l.originalUrl.getBytes(StandardCharsets.UTF_8).length);
+            }
+        }
+    }
+
+    private int appendRecord(Key k, Link l) throws IOException {
+        if ((long) offset(count + 1) > records.capacity()) {
+            records.force();
+            mapRecords(Math.min(Integer.MAX_VALUE, (long) records.capacity() * 2));
+        }
+        int r = count;
+        int base = offset(r);
+        records.putLong(base + OWNER_MSB, k.msb)
+                .putLong(base + OWNER_LSB, k.lsb)
+                .putLong(base + CODE, k.code)
+                .put(base + CODE_LEN, (byte) k.codeLen)
+                .putLong(base + VERSION, 0);
+        writeFields(r, l, true);
+        count++;
+        records.putInt(8, count);
+        if ((used + 1) * 2 > capacity) {
+            rebuildIndex(capacity * 2);
+        } else {
+            insertSlot(hash(k.msb, k.lsb, k.code), r);
+            writeIndexHeader();
+        }
+        return r;
+    }
+
+    private long bumpVersion(int base) {
+        long v = records.getLong(base + VERSION) + 1;
+        records.putLong(base + VERSION, v);
+        return v;
+    }
+
+    private static long millis(Instant t) {
+        return t == null ? NO_TIME : t.toEpochMilli();
+    }
+
+    private static Instant time(long v) {
+        return v == NO_TIME ? null : Instant.ofEpochMilli(v);
+    }
+
+    // ---------- LinkRepository ----------
+
+    @Override
+    public Optional<Link> findByCode(String ownerUuid, String code) {
+        Key k = keyOrNull(ownerUuid, code);
+        if (k == null) return Optional.empty();
+        lock.readLock().lock();
+        try {
+            int r = find(k);
+            return r < 0 ? Optional.empty() : Optional.of(readLink(r));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ссылки владельца, кроме удалённых.
+     * Последовательный проход по записям: сравниваются только два long UUID.
+     */
+    @Override
+    public List<Link> findAllByOwner(String ownerUuid) {
+        List<Link> out = new ArrayList<>();
+        UUID owner;
+        try {
+            owner = UUID.fromString(ownerUuid);
+        } catch (IllegalArgumentException e) {
+            return out;
+        }
+        long msb = owner.getMostSignificantBits();
+        long lsb = owner.getLeastSignificantBits();
+        lock.readLock().lock();
+        try {
+            for (int r = 0; r < count; r++) {
+                int base = offset(r);
+                byte st = records.get(base + STATUS);
+                if (st == REMOVED || st == LinkStatus.DELETED.ordinal()) continue;
+                if (records.getLong(base + OWNER_MSB) == msb && records.getLong(base + OWNER_LSB) == lsb) {
+                    out.add(readLink(r));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return out;
+    }
+
+    /**
+     * Сохраняет ссылку: существующая запись обновляется на месте,
+     * URL дописывается в кучу только если он изменился.
+     */
+    @Override
+    public void save(Link link) {
+        Key k = key(link.ownerUuid, link.shortCode);
+        lock.writeLock().lock();
+        try {
+            int r = find(k);
+            if (r < 0) {
+                appendRecord(k, link);
+            } else {
+                int base = offset(r);
+                String url = readUrl(records.getLong(base + URL_OFF), records.getInt(base + URL_LEN));
+                writeFields(r, link, !Objects.equals(url, link.originalUrl));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean compareAndSave(Link link, long expectedVersion) {
+        Key k = keyOrNull(link.ownerUuid, link.shortCode);
+        if (k == null) return false;
+        lock.writeLock().lock();
+        try {
+            int r = find(k);
+            if (r < 0) return false;
+            int base = offset(r);
+            if (records.getLong(base + VERSION) != expectedVersion) return false;
+            String url = readUrl(records.getLong(base + URL_OFF), records.getInt(base + URL_LEN));
+            writeFields(r, link, !Objects.equals(url, link.originalUrl));
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Меняет только счётчик переходов и статус прямо в записи,
+     * не читая и не переписывая остальные поля.
+     */
+    @Override
+    public void updateClicks(String ownerUuid, String code, int clickCount, LinkStatus status) {
+        Key k = keyOrNull(ownerUuid, code);
+        if (k == null) return;
+        lock.writeLock().lock();
+        try {
+            int r = find(k);
+            if (r < 0) return;
+            int base = offset(r);
+            records.putInt(base + CLICKS, clickCount);
+            if (status != null && records.get(base + STATUS) == LinkStatus.ACTIVE.ordinal()) {
+                records.put(base + STATUS, (byte) status.ordinal());
+            }
+            bumpVersion(base);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(String ownerUuid, String code) {
+        Key k = keyOrNull(ownerUuid, code);
+        if (k == null) return;
+        lock.writeLock().lock();
+        try {
+            int r = find(k);
+            if (r >= 0) {
+                records.put(offset(r) + STATUS, (byte) LinkStatus.DELETED.ordinal());
+                bumpVersion(offset(r));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsCode(String ownerUuid, String code) {
+        Key k = keyOrNull(ownerUuid, code);
+        if (k == null) return false;
+        lock.readLock().lock();
+        try {
+            return find(k) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Помечает истёкшие записи как REMOVED.
+     * Место в links.dat освобождается при следующей перестройке файла миграцией.
+     */
+    @Override
+    public int deleteExpired(Instant now) {
+        long nowMs = now.toEpochMilli();
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (int r = 0; r < count; r++) {
+                int base = offset(r);
+                long exp = records.getLong(base + EXPIRES);
+                if (records.get(base + STATUS) != REMOVED && exp != NO_TIME && nowMs > exp) {
+                    records.put(base + STATUS, REMOVED);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return removed;
+    }
+
+    @Override
+    public void forEach(Consumer<Link> action) {
+        lock.readLock().lock();
+        try {
+            for (int r = 0; r < count; r++) {
+                if (records.get(offset(r) + STATUS) != REMOVED) action.accept(readLink(r));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Сбрасывает отображённые страницы на диск и закрывает файлы */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            records.force();
+            index.force();
+            urlsCh.force(true);
+            recordsCh.close();
+            indexCh.close();
+            urlsCh.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
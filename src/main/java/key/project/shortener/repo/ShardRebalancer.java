@@ -0,0 +1,67 @@
+package key.project.shortener.repo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+
+/**
+ * Офлайн-перестройка шардированного хранилища на другое число шардов.
+ * Запуск (сервис должен быть остановлен):
+ * java -cp shortener.jar key.project.shortener.repo.ShardRebalancer <новое число шардов>
+ * Каталог и движок шардов берутся из application.yml. Ссылки переносятся в соседний
+ * каталог *.rebalance, затем каталоги меняются местами; старый остаётся как *.bak.
+ */
+public final class ShardRebalancer {
+    private static final int BATCH = 10_000;
+
+    private ShardRebalancer() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Использование: ShardRebalancer <новое число шардов>");
+            return;
+        }
+        AppConfig cfg = AppConfig.load();
+        long moved = rebalance(cfg.app, Paths.get(cfg.app.shardDir), Integer.parseInt(args[0]));
+        System.out.println("Перенесено ссылок: " + moved);
+    }
+
+    /**
+     * Перестраивает каталог dir на newCount шардов.
+     * @return число перенесённых ссылок
+     */
+    public static long rebalance(AppConfig.App app, Path dir, int newCount) throws IOException {
+        int oldCount = ShardedLinkRepository.shardCount(dir);
+        if (oldCount == 0) throw new IllegalStateException("Каталог " + dir + " не содержит шардов");
+        Path target = dir.resolveSibling(dir.getFileName() + ".rebalance");
+        Path backup = dir.resolveSibling(dir.getFileName() + ".bak");
+        if (Files.exists(target) || Files.exists(backup)) {
+            throw new IllegalStateException("Уже существует " + target + " или " + backup + ", удалите их вручную");
+        }
+
+        long[] moved = new long[1];
+        try (LinkRepository from = LinkRepositories.sharded(app, dir, oldCount);
+                LinkRepository to = LinkRepositories.sharded(app, target, newCount)) {
+            List<Link> batch = new ArrayList<>(BATCH);
+            from.forEach(
+                    l -> {
+                        batch.add(l);
+                        if (batch.size() == BATCH) {
+                            to.saveAll(batch);
+                            moved[0] += batch.size();
+                            batch.clear();
+                        }
+                    });
+            to.saveAll(batch);
+            moved[0] += batch.size();
+        }
+        Files.move(dir, backup);
+        Files.move(target, dir);
+        return moved[0];
+    }
+}
@@ -0,0 +1,183 @@
+package key.project.shortener.repo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+
+/**
+ * Хранилище, разбитое на шарды по хэшу UUID владельца.
+ * Все ссылки одного владельца лежат в одном шарде, поэтому операции
+ * владельца обслуживает один шард, а у разных шардов свои файлы, блокировки
+ * и циклы сброса: запись одного владельца не переписывает чужие данные,
+ * а операции разных владельцев идут параллельно.
+ * Число шардов записано в файле shards каталога; открыть каталог с другим
+ * числом нельзя — шарды перестраивает ShardRebalancer.
+ */
+public class ShardedLinkRepository implements LinkRepository {
+    static final String MARKER = "shards";
+
+    private final LinkRepository[] shards;
+
+    /**
+     * @param dir каталог шардов
+     * @param shardCount число шардов
+     * @param shardFactory создаёт хранилище шарда по номеру
+     */
+    public ShardedLinkRepository(Path dir, int shardCount, IntFunction<LinkRepository> shardFactory) {
+        if (shardCount < 1) throw new IllegalArgumentException("Число шардов должно быть положительным: " + shardCount);
+        int existing = shardCount(dir);
+        if (existing > 0 && existing != shardCount) {
+            throw new IllegalStateException(
+                    "Каталог " + dir + " разбит на " + existing + " шардов, а в конфиге " + shardCount
+                            + "; перестройте его через ShardRebalancer");
+        }
+        try {
+            Files.createDirectories(dir);
+            if (existing == 0) Files.writeString(dir.resolve(MARKER), Integer.toString(shardCount));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.shards = new LinkRepository[shardCount];
+        for (int i = 0; i < shardCount; i++) shards[i] = shardFactory.apply(i);
+    }
+
+    /** Число шардов в каталоге или 0, если каталог ещё не размечен */
+    public static int shardCount(Path dir) {
+        Path marker = dir.resolve(MARKER);
+        try {
+            return Files.exists(marker) ? Integer.parseInt(Files.readString(marker).strip()) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Номер шарда владельца */
+    public static int shardOf(String ownerUuid, int shardCount) {
+        int h = ownerUuid.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return Math.floorMod(h, shardCount);
+    }
+
+    private LinkRepository shard(String ownerUuid) {
+        return shards[shardOf(ownerUuid, shards.length)];
+    }
+
+    @Override
+    public Optional<Link> findByCode(String ownerUuid, String shortCode) {
+        return shard(ownerUuid).findByCode(ownerUuid, shortCode);
+    }
+
+    @Override
+    public List<Link> findAllByOwner(String ownerUuid) {
+        return shard(ownerUuid).findAllByOwner(ownerUuid);
+    }
+
+    @Override
+    public void save(Link link) {
+        shard(link.ownerUuid).save(link);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(Link link) {
+        return shard(link.ownerUuid).saveAsync(link);
+    }
+
+    /** Пачка раскладывается по шардам, шарды пишут свои части параллельно */
+    @Override
+    public void saveAll(Collection<Link> links) {
+        List<List<Link>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) parts.add(new ArrayList<>());
+        for (Link l : links) parts.get(shardOf(l.ownerUuid, shards.length)).add(l);
+        IntStream.range(0, shards.length)
+                .parallel()
+                .filter(i -> !parts.get(i).isEmpty())
+                .forEach(i -> shards[i].saveAll(parts.get(i)));
+    }
+
+    @Override
+    public List<Link> findAllByKey(Collection<LinkKey> keys) {
+        List<List<LinkKey>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) parts.add(new ArrayList<>());
+        for (LinkKey k : keys) parts.get(shardOf(k.ownerUuid(), shards.length)).add(k);
+        List<Link> out = new ArrayList<>(keys.size());
+        for (int i = 0; i < shards.length; i++) {
+            if (!parts.get(i).isEmpty()) out.addAll(shards[i].findAllByKey(parts.get(i)));
+        }
+        return out;
+    }
+
+    /** Как saveAll: каждый шард проверяет и пишет свою часть */
+    @Override
+    public List<Link> compareAndSaveAll(Collection<Link> links) {
+        List<List<Link>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) parts.add(new ArrayList<>());
+        for (Link l : links) parts.get(shardOf(l.ownerUuid, shards.length)).add(l);
+        return IntStream.range(0, shards.length)
+                .parallel()
+                .filter(i -> !parts.get(i).isEmpty())
+                .mapToObj(i -> shards[i].compareAndSaveAll(parts.get(i)))
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    @Override
+    public boolean compareAndSave(Link link, long expectedVersion) {
+        return shard(link.ownerUuid).compareAndSave(link, expectedVersion);
+    }
+
+    @Override
+    public void delete(String ownerUuid, String shortCode) {
+        shard(ownerUuid).delete(ownerUuid, shortCode);
+    }
+
+    @Override
+    public boolean existsCode(String ownerUuid, String shortCode) {
+        return shard(ownerUuid).existsCode(ownerUuid, shortCode);
+    }
+
+    @Override
+    public void updateClicks(String ownerUuid, String shortCode, int clickCount, LinkStatus status) {
+        shard(ownerUuid).updateClicks(ownerUuid, shortCode, clickCount, status);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateClicksAsync(String ownerUuid, String shortCode, int clickCount, LinkStatus status) {
+        return shard(ownerUuid).updateClicksAsync(ownerUuid, shortCode, clickCount, status);
+    }
+
+    /** Очистка идёт по всем шардам параллельно */
+    @Override
+    public int deleteExpired(Instant now) {
+        return Arrays.stream(shards).parallel().mapToInt(s -> s.deleteExpired(now)).sum();
+    }
+
+    @Override
+    public void forEach(Consumer<Link> action) {
+        for (LinkRepository s : shards) s.forEach(action);
+    }
+
+    @Override
+    public void close() {
+        RuntimeException first = null;
+        for (LinkRepository s : shards) {
+            try {
+                s.close();
+            } catch (RuntimeException e) {
+                if (first == null) first = e;
+                else first.addSuppressed(e);
+            }
+        }
+        if (first != null) throw first;
+    }
+}
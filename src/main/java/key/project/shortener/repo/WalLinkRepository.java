@@ -0,0 +1,541 @@
+package key.project.shortener.repo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Журнальное (log-structured) хранилище ссылок.
+ * Каждое изменение дописывается компактной записью в конец текущего сегмента
+ * segment-N.log, файл целиком никогда не переписывается.
+ * Формат записи: длина (int), CRC32 (int), тип (byte), данные.
+ * Периодически состояние сохраняется в снимок snapshot-N.json, после чего
+ * сегменты с номером меньше N удаляются (компакция).
+ * При старте загружается последний снимок и проигрываются сегменты после него;
+ * оборванная последняя запись последнего сегмента (сбой посреди записи) отбрасывается.
+ * Битая запись в любом более раннем сегменте — это потеря данных, а не обрыв:
+ * старт прерывается, иначе следующие сегменты проигрались бы поверх дыры.
+ * Если журнала ещё нет, начальное состояние берётся из data/storage.json.
+ * Запись в сегмент идёт сразу под блокировкой, а force — через GroupCommit вне её:
+ * изменения, ждущие надёжности, фиксируются одним force на группу (per-op)
+ * или раз в fsyncIntervalMs (interval). При политике os force вызывается только при закрытии.
+ */
+public class WalLinkRepository implements LinkRepository {
+    private static final Logger log = LoggerFactory.getLogger(WalLinkRepository.class);
+
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    private static final byte CLICK = 3;
+    private static final byte EXPIRE = 4;
+    private static final int HEADER = 4 + 4 + 1;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final LinkIndex index = new LinkIndex();
+    private final ScheduledExecutorService compactor;
+    private final FsyncPolicy fsyncPolicy;
+    /** null при политике os */
+    private final GroupCommit<Void> commit;
+
+    private volatile FileChannel segment;
+    private long segmentId;
+    /** Номер сегмента, с которого начинается журнал после последнего снимка */
+    private long snapshotId;
+    private boolean closed;
+
+    /**
+     * Конструктор.
+     * @param walDir каталог журнала
+     * @param legacyFile JSON-файл, из которого берётся начальное состояние, если журнала нет
+     * @param segmentBytes размер сегмента, после которого открывается новый
+     * @param compactIntervalMs период снимков и компакции, в миллисекундах
+     */
+    public WalLinkRepository(String walDir, String legacyFile, long segmentBytes, long compactIntervalMs) {
+        this(walDir, legacyFile, segmentBytes, compactIntervalMs, FsyncPolicy.OS, 0);
+    }
+
+    /**
+     * @param fsyncPolicy когда вызывать force для сегмента журнала
+     * @param fsyncIntervalMs период force для политики interval, в миллисекундах
+     */
+    public WalLinkRepository(
+            String walDir,
+            String legacyFile,
+            long segmentBytes,
+            long compactIntervalMs,
+            FsyncPolicy fsyncPolicy,
+            long fsyncIntervalMs) {
+        this.dir = Paths.get(walDir);
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        try {
+            Files.createDirectories(dir);
+            recover(Paths.get(legacyFile));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.compactor =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "wal-compactor");
+                            t.setDaemon(true);
+                            return t;
+                        });
+        long period = Math.max(1, compactIntervalMs);
+        compactor.scheduleWithFixedDelay(this::compactQuietly, period, period, TimeUnit.MILLISECONDS);
+        this.commit =
+                fsyncPolicy == FsyncPolicy.OS
+                        ? null
+                        : new GroupCommit<>("wal-commit", fsyncPolicy, fsyncIntervalMs, (batch, force) -> forceSegment());
+    }
+
+    // ---------- восстановление ----------
+
+    private void recover(Path legacyFile) throws IOException {
+        List<Long> snapshots = ids("snapshot-", ".json");
+        List<Long> segments = ids("segment-", ".log");
+        snapshotId = 0;
+        boolean loaded = false;
+        for (int i = snapshots.size() - 1; i >= 0 && !loaded; i--) {
+            long id = snapshots.get(i);
+            try {
+                Link[] arr = LinkJson.MAPPER.readValue(snapshotPath(id).toFile(), Link[].class);
+                for (Link l : arr) index.restore(l);
+                snapshotId = id;
+                loaded = true;
+            } catch (IOException e) {
+                log.warn("Снимок {} повреждён, пробуем предыдущий", snapshotPath(id), e);
+                index.clear();
+            }
+        }
+        if (!loaded && segments.isEmpty() && Files.exists(legacyFile) && Files.size(legacyFile) > 0) {
+            Link[] arr = LinkJson.MAPPER.readValue(legacyFile.toFile(), Link[].class);
+            for (Link l : arr) index.restore(l);
+            writeSnapshot(0, index.snapshot());
+            log.info("Журнал создан из {}: {} ссылок", legacyFile, arr.length);
+        }
+        long records = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            long id = segments.get(i);
+            if (id < snapshotId) continue;
+            records += replay(segmentPath(id), i == segments.size() - 1);
+        }
+        segmentId = segments.isEmpty() ? snapshotId : Math.max(snapshotId, segments.get(segments.size() - 1));
+        openSegment(segmentId);
+        log.info("Журнал {} восстановлен: {} ссылок, {} записей проиграно", dir, index.size(), records);
+    }
+
+    /**
+     * Проигрывает один сегмент.
+     * Запись с неверной длиной или CRC в последнем сегменте считается оборванной:
+     * сегмент обрезается по её началу. В более раннем сегменте — IllegalStateException.
+     */
+    private long replay(Path seg, boolean last) throws IOException {
+        long count = 0;
+        try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            long pos = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (pos < size) {
+                header.clear();
+                if (!readFully(ch, header, pos)) break;
+                header.flip();
+                int len = header.getInt();
+                int crc = header.getInt();
+                byte type = header.get();
+                if (len < 0 || pos + HEADER + len > size) break;
+                ByteBuffer body = ByteBuffer.allocate(len);
+                if (!readFully(ch, body, pos + HEADER)) break;
+                if (crc(type, body.array()) != crc) break;
+                apply(type, body.array());
+                pos += HEADER + len;
+                count++;
+            }
+            if (pos < size) {
+                if (!last) {
+                    throw new IllegalStateException(
+                            "Сегмент " + seg + " повреждён на позиции " + pos + " и не последний в журнале: "
+                                    + "восстановление остановлено, чтобы не проиграть следующие сегменты поверх потерянных записей");
+                }
+                log.warn("Оборванная запись в {} на позиции {}, хвост отброшен ({} байт)", seg, pos, size - pos);
+                ch.truncate(pos);
+            }
+        }
+        return count;
+    }
+
+    /** Читает буфер целиком с позиции pos; false — файл кончился раньше */
+    private static boolean readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) return false;
+        }
+        return true;
+    }
+
+    private void apply(byte type, byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        switch (type) {
+            // запись SAVE несёт уже увеличенную версию
+            case SAVE -> index.restore(LinkJson.MAPPER.readValue(body, Link.class));
+            case DELETE -> index.markDeleted(in.readUTF(), in.readUTF());
+            case CLICK -> {
+                String owner = in.readUTF();
+                String code = in.readUTF();
+                int clicks = in.readInt();
+                LinkStatus status = LinkStatus.values()[in.readByte()];
+                index.get(owner, code)
+                        .ifPresent(
+                                l -> {
+                                    l.clickCount = clicks;
+                                    l.status = status;
+                                    index.put(l);
+                                });
+            }
+            case EXPIRE -> {
+                Instant now = Instant.ofEpochMilli(in.readLong());
+                index.removeIf(l -> l.isExpired(now));
+            }
+            default -> throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+
+    // ---------- запись ----------
+
+    private synchronized void append(byte type, byte[] body) {
+        append(type, List.of(body));
+    }
+
+    /** Несколько записей одного типа одним вызовом write */
+    private synchronized void append(byte type, List<byte[]> bodies) {
+        if (closed) throw new IllegalStateException("Хранилище закрыто");
+        int size = 0;
+        for (byte[] body : bodies) size += HEADER + body.length;
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        for (byte[] body : bodies) buf.putInt(body.length).putInt(crc(type, body)).put(type).put(body);
+        buf.flip();
+        try {
+            while (buf.hasRemaining()) segment.write(buf);
+            if (segment.size() >= segmentBytes) rotate();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Закрываемый сегмент сбрасывается сразу: force группы его уже не увидит */
+    private void rotate() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.OS) segment.force(false);
+        segment.close();
+        openSegment(++segmentId);
+    }
+
+    private void openSegment(long id) throws IOException {
+        segment =
+                FileChannel.open(
+                        segmentPath(id),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+        if (fsyncPolicy != FsyncPolicy.OS) LinkJsonStream.forceDirectory(dir);
+    }
+
+    /**
+     * force текущего сегмента, без блокировки хранилища.
+     * Если rotate успел закрыть сегмент, он уже сбросил его сам.
+     */
+    private void forceSegment() throws IOException {
+        try {
+            segment.force(false);
+        } catch (ClosedChannelException e) {
+            // сегмент сброшен в rotate или close
+        }
+    }
+
+    /** Future надёжности всего, что уже записано в сегмент */
+    private CompletableFuture<Void> durable() {
+        return commit == null ? CompletableFuture.completedFuture(null) : commit.submit(null);
+    }
+
+    private static int crc(byte type, byte[] body) {
+        CRC32 c = new CRC32();
+        c.update(type);
+        c.update(body);
+        return (int) c.getValue();
+    }
+
+    private static byte[] encode(Object... fields) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            for (Object f : fields) {
+                if (f instanceof String s) out.writeUTF(s);
+                else if (f instanceof Integer i) out.writeInt(i);
+                else if (f instanceof Long l) out.writeLong(l);
+                else if (f instanceof LinkStatus st) out.writeByte(st.ordinal());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    // ---------- снимки и компакция ----------
+
+    /**
+     * Делает снимок состояния и удаляет сегменты, которые в него вошли.
+     * Под блокировкой только переключается сегмент и копируется индекс,
+     * запись снимка на диск идёт без блокировки.
+     */
+    public void compact() {
+        long id;
+        List<Link> state;
+        synchronized (this) {
+            if (closed || segmentId == snapshotId && sizeOf(segmentPath(segmentId)) == 0) return;
+            try {
+                rotate();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            id = segmentId;
+            state = index.snapshot();
+        }
+        try {
+            writeSnapshot(id, state);
+            for (long old : ids("segment-", ".log")) if (old < id) Files.deleteIfExists(segmentPath(old));
+            for (long old : ids("snapshot-", ".json")) if (old < id) Files.deleteIfExists(snapshotPath(old));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (this) {
+            snapshotId = id;
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.error("Не удалось выполнить компакцию журнала {}", dir, e);
+        }
+    }
+
+    /**
+     * Пишет снимок через временный файл. Кроме политики os, файл и каталог сбрасываются
+     * на диск до возврата: после этого компакция может удалять сегменты, вошедшие в снимок.
+     */
+    private void writeSnapshot(long id, List<Link> state) throws IOException {
+        LinkJsonStream.write(snapshotPath(id), out -> state.forEach(out), fsyncPolicy != FsyncPolicy.OS);
+    }
+
+    private List<Long> ids(String prefix, String suffix) throws IOException {
+        List<Long> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(prefix) && n.endsWith(suffix))
+                    .forEach(n -> out.add(Long.parseLong(n.substring(prefix.length(), n.length() - suffix.length()))));
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    private Path segmentPath(long id) {
+        return dir.resolve(String.format("segment-%020d.log", id));
+    }
+
+    private Path snapshotPath(long id) {
+        return dir.resolve(String.format("snapshot-%020d.json", id));
+    }
+
+    private static long sizeOf(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // ---------- LinkRepository ----------
+
+    @Override
+    public Optional<Link> findByCode(String ownerUuid, String code) {
+        return index.get(ownerUuid, code);
+    }
+
+    @Override
+    public List<Link> findAllByOwner(String ownerUuid) {
+        return index.byOwner(ownerUuid);
+    }
+
+    /**
+     * Сохраняет ссылку.
+     * Если по сравнению с сохранённой версией поменялись только счётчик и статус,
+     * в журнал пишется короткая запись CLICK вместо всей ссылки.
+     * Возвращается, когда запись надёжна по политике fsync.
+     */
+    @Override
+    public void save(Link link) {
+        GroupCommit.await(saveAsync(link));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(Link link) {
+        synchronized (this) {
+            write(link);
+        }
+        return durable();
+    }
+
+    private void write(Link link) {
+        Optional<Link> prev = index.get(link.ownerUuid, link.shortCode);
+        link.version = prev.map(l -> l.version + 1).orElse(1L);
+        byte[] body;
+        byte type;
+        if (prev.isPresent() && onlyCountersChanged(prev.get(), link)) {
+            type = CLICK;
+            body = encode(link.ownerUuid, link.shortCode, link.clickCount, link.status);
+        } else {
+            type = SAVE;
+            try {
+                body = LinkJson.MAPPER.writeValueAsBytes(link);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        append(type, body);
+        index.restore(link);
+    }
+
+    /** Пачка ссылок пишется в журнал одним буфером */
+    @Override
+    public void saveAll(Collection<Link> links) {
+        synchronized (this) {
+            writeAll(links);
+        }
+        GroupCommit.await(durable());
+    }
+
+    private void writeAll(Collection<Link> links) {
+        List<byte[]> bodies = new ArrayList<>(links.size());
+        Map<LinkKey, Long> versions = new HashMap<>();
+        try {
+            for (Link l : links) {
+                LinkKey key = new LinkKey(l.ownerUuid, l.shortCode);
+                Long prev = versions.get(key);
+                if (prev == null) prev = index.get(l.ownerUuid, l.shortCode).map(p -> p.version).orElse(0L);
+                l.version = prev + 1;
+                versions.put(key, l.version);
+                bodies.add(LinkJson.MAPPER.writeValueAsBytes(l));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        append(SAVE, bodies);
+        for (Link l : links) index.restore(l);
+    }
+
+    @Override
+    public boolean compareAndSave(Link link, long expectedVersion) {
+        synchronized (this) {
+            Optional<Link> prev = index.get(link.ownerUuid, link.shortCode);
+            if (prev.isEmpty() || prev.get().version != expectedVersion) return false;
+            write(link);
+        }
+        GroupCommit.await(durable());
+        return true;
+    }
+
+    /** Ссылки, прошедшие проверку версий, пишутся в журнал одним буфером */
+    @Override
+    public List<Link> compareAndSaveAll(Collection<Link> links) {
+        List<Link> failed = new ArrayList<>();
+        synchronized (this) {
+            List<Link> ok = new ArrayList<>(links.size());
+            Set<LinkKey> seen = new HashSet<>();
+            for (Link l : links) {
+                Optional<Link> prev = index.get(l.ownerUuid, l.shortCode);
+                boolean current = prev.isPresent() && prev.get().version == l.version;
+                if (current && seen.add(new LinkKey(l.ownerUuid, l.shortCode))) ok.add(l);
+                else failed.add(l);
+            }
+            if (ok.isEmpty()) return failed;
+            writeAll(ok);
+        }
+        GroupCommit.await(durable());
+        return failed;
+    }
+
+    private static boolean onlyCountersChanged(Link a, Link b) {
+        return a.maxClicks == b.maxClicks
+                && Objects.equals(a.originalUrl, b.originalUrl)
+                && Objects.equals(a.createdAt, b.createdAt)
+                && Objects.equals(a.expiresAt, b.expiresAt);
+    }
+
+    @Override
+    public void delete(String ownerUuid, String code) {
+        synchronized (this) {
+            if (!index.contains(ownerUuid, code)) return;
+            append(DELETE, encode(ownerUuid, code));
+            index.markDeleted(ownerUuid, code);
+        }
+        GroupCommit.await(durable());
+    }
+
+    @Override
+    public boolean existsCode(String ownerUuid, String code) {
+        return index.contains(ownerUuid, code);
+    }
+
+    @Override
+    public int deleteExpired(Instant now) {
+        int removed;
+        synchronized (this) {
+            append(EXPIRE, encode(now.toEpochMilli()));
+            removed = index.removeIf(l -> l.isExpired(now)).size();
+        }
+        GroupCommit.await(durable());
+        return removed;
+    }
+
+    @Override
+    public void forEach(Consumer<Link> action) {
+        index.forEach(action);
+    }
+
+    /**
+     * Останавливает компакцию и фиксацию, сбрасывает и закрывает текущий сегмент.
+     */
+    @Override
+    public void close() {
+        if (commit != null) commit.close();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            try {
+                segment.force(true);
+                segment.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package key.project.shortener.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.repo.LinkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Счётчики переходов по ссылкам без глобальной блокировки.
+ * На каждую ссылку заводится атомарный счётчик, переход принимается через CAS только если
+ * после него счётчик не превысит maxClicks, поэтому лимит соблюдается точно при любой конкуренции,
+ * а исход LAST (переход, исчерпавший лимит) получает ровно один поток.
+ * Обычные переходы сбрасываются в хранилище пачкой раз в flushIntervalMs,
+ * достижение лимита записывается сразу.
+ */
+public class ClickCounter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ClickCounter.class);
+
+    /** Результат попытки перехода */
+    public enum Outcome {
+        /** переход засчитан */
+        ACCEPTED,
+        /** переход засчитан и исчерпал лимит */
+        LAST,
+        /** лимит уже исчерпан, переход не засчитан */
+        REJECTED
+    }
+
+    /** Счётчик одной ссылки. Служит и монитором для чтения-изменения-записи этой ссылки. */
+    static final class Counter {
+        final String ownerUuid;
+        final String code;
+        final AtomicInteger clicks;
+        volatile int maxClicks;
+        /** Версия ссылки, из которой взят maxClicks; под монитором счётчика */
+        private long limitVersion;
+        /** Сколько записей нового лимита сейчас идёт; под монитором счётчика */
+        private int limitWrites;
+
+        Counter(Link l) {
+            this.ownerUuid = l.ownerUuid;
+            this.code = l.shortCode;
+            this.clicks = new AtomicInteger(l.clickCount);
+            this.maxClicks = l.maxClicks;
+            this.limitVersion = l.version;
+        }
+
+        Outcome tryAcquire() {
+            while (true) {
+                int c = clicks.get();
+                int max = maxClicks;
+                if (max > 0 && c >= max) return Outcome.REJECTED;
+                if (clicks.compareAndSet(c, c + 1)) {
+                    return max > 0 && c + 1 >= max ? Outcome.LAST : Outcome.ACCEPTED;
+                }
+            }
+        }
+    }
+
+    private record Key(String ownerUuid, String code) {}
+
+    private final LinkRepository repo;
+    private final Map<Key, Counter> counters = new ConcurrentHashMap<>();
+    private final Set<Counter> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * @param repo хранилище, куда сбрасываются счётчики
+     * @param flushIntervalMs период пакетного сброса; 0 — записывать каждый переход сразу
+     */
+    public ClickCounter(LinkRepository repo, long flushIntervalMs) {
+        this.repo = repo;
+        if (flushIntervalMs > 0) {
+            flusher =
+                    Executors.newSingleThreadScheduledExecutor(
+                            r -> {
+                                Thread t = new Thread(r, "click-flusher");
+                                t.setDaemon(true);
+                                return t;
+                            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /** Счётчик ссылки; создаётся по сохранённому состоянию при первом обращении */
+    Counter counter(Link l) {
+        return counters.computeIfAbsent(new Key(l.ownerUuid, l.shortCode), k -> new Counter(l));
+    }
+
+    /**
+     * Пытается засчитать переход.
+     * LAST записывается в хранилище сразу, ACCEPTED — при следующем пакетном сбросе.
+     */
+    public Outcome click(Link l) {
+        return click(counter(l));
+    }
+
+    /** Переход по уже известному счётчику (из кэша редиректов), без чтения ссылки */
+    Outcome click(Counter c) {
+        Outcome out = c.tryAcquire();
+        switch (out) {
+            case LAST -> persist(c);
+            case ACCEPTED -> {
+                if (flusher == null) persist(c);
+                else dirty.add(c);
+            }
+            default -> {}
+        }
+        return out;
+    }
+
+    /**
+     * Переход для пачки редиректов, без записи по одной ссылке.
+     * Если переход нужно записать сразу (LAST или ACCEPTED без пакетного сброса), ссылка
+     * с подставленным счётчиком добавляется в toSave: вызывающий сохраняет всю пачку сам.
+     */
+    Outcome click(Link l, List<Link> toSave) {
+        Counter c = counter(l);
+        Outcome out = c.tryAcquire();
+        if (out == Outcome.LAST || out == Outcome.ACCEPTED && flusher == null) toSave.add(overlay(l));
+        else if (out == Outcome.ACCEPTED) dirty.add(c);
+        return out;
+    }
+
+    /**
+     * Засчитывает сразу до want переходов — блок квоты, выданный другому узлу.
+     * Исчерпание лимита записывается сразу, как и для LAST.
+     * @return сколько переходов засчитано; 0 — лимит уже исчерпан
+     */
+    int reserve(Counter c, int want) {
+        while (true) {
+            int cur = c.clicks.get();
+            int max = c.maxClicks;
+            int n = max > 0 ? Math.min(want, max - cur) : want;
+            if (n <= 0) return 0;
+            if (c.clicks.compareAndSet(cur, cur + n)) {
+                if (flusher == null || max > 0 && cur + n >= max) persist(c);
+                else dirty.add(c);
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Начало записи нового лимита ссылки. Запись идёт без монитора счётчика,
+     * а до её успеха переходы проверяются по старому лимиту.
+     */
+    void beginLimit(Counter c) {
+        synchronized (c) {
+            c.limitWrites++;
+        }
+    }
+
+    /**
+     * Конец записи лимита.
+     * Лимит сохранённой ссылки передаётся счётчику, только если он новее уже принятого:
+     * параллельные setLimit, завершившиеся не по порядку, не откатывают более новый лимит.
+     * Если счётчик уже на лимите, LIMIT_REACHED дописывается сразу, а при ошибке записи —
+     * следующим сбросом.
+     * @param saved сохранённая ссылка; null — запись не удалась, лимит остаётся прежним
+     */
+    void endLimit(Counter c, Link saved) {
+        boolean reached;
+        synchronized (c) {
+            c.limitWrites--;
+            if (saved != null && saved.version > c.limitVersion) {
+                c.limitVersion = saved.version;
+                c.maxClicks = saved.maxClicks;
+            }
+            int max = c.maxClicks;
+            reached = c.limitWrites == 0 && max > 0 && c.clicks.get() >= max;
+            if (reached && saved != null && saved.maxClicks == max && saved.status == LinkStatus.LIMIT_REACHED) {
+                reached = false;
+            }
+        }
+        if (!reached) return;
+        dirty.remove(c);
+        try {
+            persist(c);
+            if (saved != null && saved.maxClicks == c.maxClicks) saved.status = LinkStatus.LIMIT_REACHED;
+        } catch (RuntimeException e) {
+            // лимит в памяти уже соблюдается; статус допишет следующий сброс
+            dirty.add(c);
+            log.error("Не удалось записать исчерпание лимита {}", c.code, e);
+        }
+    }
+
+    /** Подставляет в ссылку актуальный счётчик, если он ещё не сброшен в хранилище */
+    public Link overlay(Link l) {
+        Counter c = counters.get(new Key(l.ownerUuid, l.shortCode));
+        if (c != null) {
+            l.clickCount = c.clicks.get();
+            if (l.status == LinkStatus.ACTIVE && l.limitReached()) l.status = LinkStatus.LIMIT_REACHED;
+        }
+        return l;
+    }
+
+    /** Забывает счётчик удалённой ссылки */
+    void forget(String ownerUuid, String code) {
+        Counter c = counters.remove(new Key(ownerUuid, code));
+        if (c != null) dirty.remove(c);
+    }
+
+    /** Сразу записывает счётчик ссылки в хранилище */
+    void persist(Link l) {
+        Counter c = counter(l);
+        dirty.remove(c);
+        persist(c);
+    }
+
+    private void persist(Counter c) {
+        await(persistAsync(c));
+    }
+
+    /** Ставит запись счётчика в очередь хранилища; под монитором счётчика, чтобы записи одной ссылки шли по порядку */
+    private CompletableFuture<Void> persistAsync(Counter c) {
+        synchronized (c) {
+            int clicks = c.clicks.get();
+            int max = c.maxClicks;
+            // пока пишется новый лимит, LIMIT_REACHED по старому затёр бы его; статус допишет endLimit
+            LinkStatus status = c.limitWrites == 0 && max > 0 && clicks >= max ? LinkStatus.LIMIT_REACHED : null;
+            return repo.updateClicksAsync(c.ownerUuid, c.code, clicks, status);
+        }
+    }
+
+    /**
+     * Сбрасывает все накопленные переходы в хранилище.
+     * Сначала ставятся записи всех счётчиков, потом ожидаются, поэтому хранилище с групповой
+     * фиксацией пишет их одним проходом. Счётчик, который не удалось записать, остаётся
+     * в очереди до следующего сброса; первая ошибка пробрасывается после ожидания остальных.
+     */
+    public void flush() {
+        Map<Counter, CompletableFuture<Void>> pending = new LinkedHashMap<>();
+        for (Counter c : dirty) {
+            dirty.remove(c);
+            try {
+                pending.put(c, persistAsync(c));
+            } catch (RuntimeException e) {
+                pending.put(c, CompletableFuture.failedFuture(e));
+            }
+        }
+        RuntimeException first = null;
+        for (Map.Entry<Counter, CompletableFuture<Void>> e : pending.entrySet()) {
+            try {
+                await(e.getValue());
+            } catch (RuntimeException ex) {
+                dirty.add(e.getKey());
+                if (first == null) first = ex;
+            }
+        }
+        if (first != null) throw first;
+    }
+
+    /** Ждёт запись и пробрасывает её ошибку как есть */
+    private static void await(CompletableFuture<Void> done) {
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Не удалось сбросить счётчики переходов", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+}
@@ -0,0 +1,102 @@
+package key.project.shortener.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.UrlValidator;
+
+/**
+ * Потоковый импорт ссылок из CSV: строка "url" или "url,maxClicks".
+ * Пустые строки, строки с # и заголовок пропускаются. Файл читается построчно
+ * и создаётся пачками через ShortenerService.createAll, поэтому память
+ * не зависит от размера файла. Невалидные URL и строки с неположительным лимитом
+ * пропускаются и считаются в skipped.
+ */
+public class CsvImporter {
+    /** Итог импорта */
+    public record Result(int created, int skipped) {}
+
+    private final ShortenerService service;
+    private final int batchSize;
+
+    public CsvImporter(ShortenerService service, int batchSize) {
+        this.service = service;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @param in источник строк CSV
+     * @param ownerUuid владелец создаваемых ссылок
+     * @param onCreated вызывается для каждой созданной ссылки
+     */
+    public Result importFrom(BufferedReader in, String ownerUuid, Consumer<Link> onCreated) throws IOException {
+        int created = 0;
+        int skipped = 0;
+        // URL пачки, сгруппированные по лимиту: createAll принимает один лимит на вызов
+        Map<Integer, List<String>> batch = new LinkedHashMap<>();
+        int pending = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#") || line.equalsIgnoreCase("url") || line.regionMatches(true, 0, "url,", 0, 4)) {
+                continue;
+            }
+            Integer max = null;
+            String url = line;
+            int comma = line.lastIndexOf(',');
+            if (comma > 0) {
+                try {
+                    max = Integer.parseInt(line.substring(comma + 1).strip());
+                    url = line.substring(0, comma).strip();
+                } catch (NumberFormatException ignored) {
+                    // запятая внутри URL
+                }
+            }
+            if (max != null && max <= 0) {
+                // лимит должен быть положительным: строка отклоняется целиком
+                skipped++;
+                continue;
+            }
+            if (url.length() >= 2 && url.startsWith("\"") && url.endsWith("\"")) url = url.substring(1, url.length() - 1);
+            batch.computeIfAbsent(max, k -> new ArrayList<>()).add(url);
+            if (++pending == batchSize) {
+                int[] r = flush(batch, ownerUuid, onCreated);
+                created += r[0];
+                skipped += r[1];
+                batch.clear();
+                pending = 0;
+            }
+        }
+        int[] r = flush(batch, ownerUuid, onCreated);
+        return new Result(created + r[0], skipped + r[1]);
+    }
+
+    /** @return {создано, пропущено} */
+    private int[] flush(Map<Integer, List<String>> batch, String ownerUuid, Consumer<Link> onCreated) {
+        int created = 0;
+        int skipped = 0;
+        for (Map.Entry<Integer, List<String>> e : batch.entrySet()) {
+            List<String> urls = e.getValue();
+            List<Link> links;
+            try {
+                links = service.createAll(ownerUuid, urls, e.getKey());
+            } catch (IllegalArgumentException invalid) {
+                // в пачке есть невалидный URL: отбрасываем такие и повторяем
+                List<String> valid = new ArrayList<>(urls.size());
+                for (String url : urls) {
+                    if (UrlValidator.isValid(url)) valid.add(url);
+                    else skipped++;
+                }
+                links = valid.isEmpty() ? List.of() : service.createAll(ownerUuid, valid, e.getKey());
+            }
+            links.forEach(onCreated);
+            created += links.size();
+        }
+        return new int[] {created, skipped};
+    }
+}
@@ -0,0 +1,117 @@
+package key.project.shortener.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import key.project.shortener.util.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Фоновое истечение ссылок по индексу сроков.
+ * Ссылки лежат в упорядоченном по expiresAt множестве, поэтому каждый тик
+ * достаёт только те, чей срок уже наступил, без полного обхода хранилища.
+ * За один тик обрабатывается не больше batchSize ссылок: накопившийся хвост
+ * разбирается следующими тиками и не даёт всплеска задержки на пути редиректа.
+ */
+final class ExpiryScheduler implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ExpiryScheduler.class);
+
+    /** Ссылка, у которой в atMs наступает срок */
+    record Due(long atMs, String ownerUuid, String code) {}
+
+    private static final Comparator<Due> ORDER =
+            Comparator.comparingLong(Due::atMs).thenComparing(Due::ownerUuid).thenComparing(Due::code);
+
+    private final NavigableSet<Due> queue = new ConcurrentSkipListSet<>(ORDER);
+    private final int batchSize;
+    private final Consumer<List<Due>> handler;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param intervalMs период проверки; 0 — без фонового потока, только expireDue вручную
+     * @param batchSize максимум ссылок за один тик
+     * @param handler помечает пачку наступивших ссылок истёкшими
+     */
+    ExpiryScheduler(long intervalMs, int batchSize, Consumer<List<Due>> handler) {
+        this.batchSize = Math.max(1, batchSize);
+        this.handler = handler;
+        if (intervalMs > 0) {
+            timer =
+                    Executors.newSingleThreadScheduledExecutor(
+                            r -> {
+                                Thread t = new Thread(r, "link-expiry");
+                                t.setDaemon(true);
+                                return t;
+                            });
+            timer.scheduleWithFixedDelay(this::tickQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /** Ставит ссылку в очередь на истечение; без срока жизни ничего не делает */
+    void schedule(String ownerUuid, String code, Instant expiresAt) {
+        if (expiresAt != null) queue.add(new Due(expiresAt.toEpochMilli(), ownerUuid, code));
+    }
+
+    /**
+     * Обрабатывает одну пачку наступивших сроков.
+     * Если обработчик упал, пачка возвращается в очередь и будет взята следующим тиком.
+     * @return сколько ссылок передано обработчику
+     */
+    int expireDue(Instant now) {
+        long nowMs = now.toEpochMilli();
+        List<Due> batch = new ArrayList<>();
+        while (batch.size() < batchSize) {
+            Due first = queue.pollFirst();
+            if (first == null) break;
+            if (first.atMs() >= nowMs) {
+                // срок ещё не наступил: возвращаем и заканчиваем
+                queue.add(first);
+                break;
+            }
+            batch.add(first);
+        }
+        if (batch.isEmpty()) return 0;
+        try {
+            handler.accept(batch);
+        } catch (RuntimeException e) {
+            // пачка возвращается в очередь: иначе эти ссылки не истекли бы до перезапуска;
+            // повторная обработка уже истёкших ссылок ничего не меняет
+            queue.addAll(batch);
+            throw e;
+        }
+        return batch.size();
+    }
+
+    int pending() {
+        return queue.size();
+    }
+
+    private void tickQuietly() {
+        try {
+            expireDue(Time.now());
+        } catch (RuntimeException e) {
+            log.error("Ошибка фонового истечения ссылок", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (timer == null) return;
+        timer.shutdown();
+        try {
+            timer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
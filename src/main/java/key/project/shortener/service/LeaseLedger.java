@@ -0,0 +1,39 @@
+package key.project.shortener.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Выданные лидером аренды квот: номер → ссылка, число переходов и крайний срок возврата.
+ * Номера начинаются со случайного значения, чтобы возврат аренды, выданной до перезапуска,
+ * не попал в чужую. Просроченные записи вычищаются при выдаче каждой 256-й аренды.
+ */
+final class LeaseLedger {
+    record Granted(String ownerUuid, String code, int clicks, long deadline) {}
+
+    private final Map<Long, Granted> granted = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong(ThreadLocalRandom.current().nextLong() & 0x7fff_ffff_0000_0000L);
+
+    long grant(String ownerUuid, String code, int clicks, long deadline) {
+        long id = ids.incrementAndGet();
+        if ((id & 255) == 0) purge(System.currentTimeMillis());
+        granted.put(id, new Granted(ownerUuid, code, clicks, deadline));
+        return id;
+    }
+
+    /** Забирает аренду для возврата; null, если её нет или срок возврата прошёл */
+    Granted take(long id, long now) {
+        Granted g = granted.remove(id);
+        return g == null || g.deadline() < now ? null : g;
+    }
+
+    int size() {
+        return granted.size();
+    }
+
+    private void purge(long now) {
+        granted.values().removeIf(g -> g.deadline() < now);
+    }
+}
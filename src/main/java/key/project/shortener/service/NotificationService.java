@@ -1,20 +1,154 @@
 package key.project.shortener.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import key.project.shortener.core.*;
+import key.project.shortener.notify.ConsoleNotificationSink;
+import key.project.shortener.notify.LogNotificationSink;
+import key.project.shortener.notify.Notification;
+import key.project.shortener.notify.NotificationSink;
+import key.project.shortener.util.Time;
 import org.slf4j.*;
+
 /**
  * Сервис уведомлений
  *  информирует пользователя о событиях по его ссылкам показывая статусы:
  * срок жизни ссылки истёк (EXPIRED),
  * лимит переходов исчерпан (LIMIT_REACHED)
+ * Вызовы notify* только кладут событие в ограниченную неблокирующую очередь и сразу возвращаются.
+ * Отдельный поток доставки забирает события пачками, схлопывает повторы по одной ссылке
+ * и передаёт пачку каждому получателю (консоль, лог, файл, вебхук).
+ * Если очередь заполнена, событие отбрасывается и учитывается в счётчике dropped.
  */
-public class NotificationService {
+public class NotificationService implements AutoCloseable {
     private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
+    private static final int DEFAULT_CAPACITY = 10_000;
+    private static final int DEFAULT_BATCH = 256;
+
+    /** Счётчики очереди уведомлений */
+    public record Stats(long published, long delivered, long coalesced, long dropped, long failed, int queued) {}
+
+    private record Key(Notification.Kind kind, String ownerUuid, String shortCode) {}
+
+    private final Queue<Notification> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int capacity;
+    private final int batchMax;
+    private final List<NotificationSink> sinks;
+    private final Thread consumer;
+    private volatile boolean closed;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /** Уведомления в консоль и лог, как раньше */
+    public NotificationService() {
+        this(DEFAULT_CAPACITY, DEFAULT_BATCH, List.of(new ConsoleNotificationSink(), new LogNotificationSink()));
+    }
+
+    /**
+     * @param capacity максимум событий в очереди, остальные отбрасываются
+     * @param batchMax максимум событий в одной пачке доставки
+     * @param sinks получатели уведомлений
+     */
+    public NotificationService(int capacity, int batchMax, List<NotificationSink> sinks) {
+        this.capacity = Math.max(1, capacity);
+        this.batchMax = Math.max(1, batchMax);
+        this.sinks = List.copyOf(sinks);
+        this.consumer = new Thread(this::run, "notification-delivery");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
     public void notifyLimit(Link l) {
-        log.warn("Лимит переходов исчерпан для {} ({}).", l.shortCode, l.originalUrl);
-        System.out.println("[УВЕДОМЛЕНИЕ] Лимит переходов исчерпан: " + l.shortCode);
+        publish(Notification.of(Notification.Kind.LIMIT, l, Time.now().toEpochMilli()));
     }
+
     public void notifyExpired(Link l) {
-        log.warn("Ссылка истекла {} ({}).", l.shortCode, l.originalUrl);
-        System.out.println("[УВЕДОМЛЕНИЕ] Срок жизни истёк: " + l.shortCode);
+        publish(Notification.of(Notification.Kind.EXPIRED, l, Time.now().toEpochMilli()));
+    }
+
+    /** Пачка ссылок, истёкших в фоне */
+    public void notifyExpired(List<Link> links) {
+        long now = Time.now().toEpochMilli();
+        for (Link l : links) publish(Notification.of(Notification.Kind.EXPIRED, l, now));
+    }
+
+    /**
+     * Кладёт событие в очередь, не блокируя вызывающий поток.
+     * @return false если очередь заполнена и событие отброшено
+     */
+    public boolean publish(Notification n) {
+        if (closed || queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return false;
+        }
+        queue.offer(n);
+        published.increment();
+        LockSupport.unpark(consumer);
+        return true;
+    }
+
+    public Stats stats() {
+        return new Stats(published.sum(), delivered.sum(), coalesced.sum(), dropped.sum(), failed.sum(), queued.get());
+    }
+
+    private void run() {
+        while (!closed || !queue.isEmpty()) {
+            if (!drainOnce()) LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    /** Забирает и доставляет одну пачку; false если очередь была пуста */
+    private boolean drainOnce() {
+        Map<Key, Notification> batch = new LinkedHashMap<>();
+        int taken = 0;
+        Notification n;
+        while (taken < batchMax && (n = queue.poll()) != null) {
+            queued.decrementAndGet();
+            taken++;
+            // повтор по той же ссылке в пределах пачки не доставляется второй раз
+            if (batch.putIfAbsent(new Key(n.kind(), n.ownerUuid(), n.shortCode()), n) != null) coalesced.increment();
+        }
+        if (taken == 0) return false;
+        List<Notification> out = new ArrayList<>(batch.values());
+        for (NotificationSink sink : sinks) {
+            try {
+                sink.deliver(out);
+            } catch (RuntimeException e) {
+                failed.add(out.size());
+                log.error("Не удалось доставить уведомления через {}", sink.getClass().getSimpleName(), e);
+            }
+        }
+        delivered.add(out.size());
+        return true;
+    }
+
+    /**
+     * Доставляет всё, что уже в очереди, и останавливает поток доставки.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (NotificationSink sink : sinks) sink.close();
     }
 }
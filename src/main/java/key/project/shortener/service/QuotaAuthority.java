@@ -0,0 +1,22 @@
+package key.project.shortener.service;
+
+/**
+ * Источник квот переходов для распределённого лимита maxClicks.
+ * Узел-владелец ссылки (лидер) выдаёт другим узлам блоки переходов — аренды.
+ * Выданные переходы сразу засчитываются в счётчик ссылки, поэтому сумма переходов
+ * по всем узлам не превышает лимит. Неиспользованный остаток узел возвращает через release;
+ * остаток, не возвращённый вовремя (узел упал), так и остаётся засчитанным.
+ */
+public interface QuotaAuthority {
+
+    /** Аренда: номер, число переходов (0 — переходов больше нет) и срок в миллисекундах */
+    record Lease(long id, int clicks, long ttlMs) {
+        public static final Lease NONE = new Lease(0, 0, 0);
+    }
+
+    /** Выдаёт до want переходов по ссылке */
+    Lease acquire(String ownerUuid, String code, int want);
+
+    /** Возвращает неиспользованные переходы аренды; неизвестная или просроченная аренда игнорируется */
+    void release(long leaseId, int unused);
+}
@@ -0,0 +1,147 @@
+package key.project.shortener.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Аренды квот на узле, который сам не владеет ссылками (последователь).
+ * Переход списывается CAS с атомарного остатка аренды ссылки без обращения к лидеру;
+ * только когда остаток кончился или аренда истекла, берётся новая у QuotaAuthority
+ * (под блокировкой полосы ключа, чтобы за новой арендой ходил один поток).
+ * Истёкшие аренды фоновый поток возвращает с неиспользованным остатком, close() возвращает все.
+ */
+final class QuotaLeases implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(QuotaLeases.class);
+    private static final int STRIPES = 64;
+
+    private record Key(String ownerUuid, String code) {}
+
+    private static final class Held {
+        final long id;
+        final AtomicInteger left;
+        final long expiresAt;
+
+        Held(QuotaAuthority.Lease lease, long now) {
+            this.id = lease.id();
+            this.left = new AtomicInteger(lease.clicks());
+            this.expiresAt = now + lease.ttlMs();
+        }
+
+        boolean tryTake() {
+            while (true) {
+                int n = left.get();
+                if (n <= 0) return false;
+                if (left.compareAndSet(n, n - 1)) return true;
+            }
+        }
+    }
+
+    private final QuotaAuthority authority;
+    private final int leaseSize;
+    private final Map<Key, Held> held = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[STRIPES];
+    private final ScheduledExecutorService returner;
+
+    /**
+     * @param leaseSize сколько переходов просить за раз
+     * @param returnIntervalMs период возврата истёкших аренд
+     */
+    QuotaLeases(QuotaAuthority authority, int leaseSize, long returnIntervalMs) {
+        this.authority = authority;
+        this.leaseSize = Math.max(1, leaseSize);
+        for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+        this.returner =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "quota-return");
+                            t.setDaemon(true);
+                            return t;
+                        });
+        long period = Math.max(10, returnIntervalMs);
+        returner.scheduleWithFixedDelay(this::returnExpiredQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Списывает один переход.
+     * @return false если лидер больше не выдаёт переходов по ссылке
+     */
+    boolean tryClick(String ownerUuid, String code) {
+        Key k = new Key(ownerUuid, code);
+        while (true) {
+            Held h = held.get(k);
+            if (h != null && System.currentTimeMillis() < h.expiresAt && h.tryTake()) return true;
+            synchronized (locks[(k.hashCode() & 0x7fffffff) % STRIPES]) {
+                if (held.get(k) != h) continue; // аренду уже обновил другой поток
+                if (h != null) {
+                    held.remove(k);
+                    giveBack(h);
+                }
+                long now = System.currentTimeMillis();
+                QuotaAuthority.Lease lease = authority.acquire(ownerUuid, code, leaseSize);
+                if (lease.clicks() <= 0) return false;
+                Held fresh = new Held(lease, now);
+                fresh.left.decrementAndGet();
+                held.put(k, fresh);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Забывает аренду удалённой или истёкшей ссылки и сразу возвращает остаток,
+     * не дожидаясь конца срока аренды. Ошибка возврата только пишется в лог:
+     * невозвращённый остаток так и остаётся засчитанным у лидера.
+     */
+    void forget(String ownerUuid, String code) {
+        Held h = held.remove(new Key(ownerUuid, code));
+        if (h == null) return;
+        try {
+            giveBack(h);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось вернуть аренду {}", h.id, e);
+        }
+    }
+
+    private void giveBack(Held h) {
+        int unused = h.left.getAndSet(0);
+        if (unused > 0) authority.release(h.id, unused);
+    }
+
+    private void returnExpiredQuietly() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Key, Held> e : held.entrySet()) {
+            if (e.getValue().expiresAt > now) continue;
+            try {
+                if (held.remove(e.getKey(), e.getValue())) giveBack(e.getValue());
+            } catch (RuntimeException ex) {
+                log.warn("Не удалось вернуть аренду {}", e.getValue().id, ex);
+            }
+        }
+    }
+
+    /** Возвращает остатки всех аренд */
+    @Override
+    public void close() {
+        returner.shutdown();
+        try {
+            returner.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Key k : held.keySet()) {
+            Held h = held.remove(k);
+            if (h == null) continue;
+            try {
+                giveBack(h);
+            } catch (RuntimeException e) {
+                log.warn("Не удалось вернуть аренду {}", h.id, e);
+            }
+        }
+    }
+}
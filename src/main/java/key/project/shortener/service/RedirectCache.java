@@ -0,0 +1,149 @@
+package key.project.shortener.service;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный кэш редиректов код → (владелец, URL, счётчик переходов) перед хранилищем.
+ * Сегментированный LRU: новые записи попадают в испытательный сегмент (20% ёмкости),
+ * при повторном обращении переходят в защищённый (80%). Разовые обращения вытесняют
+ * только испытательный сегмент, поэтому горячие коды при сильно неравномерном трафике
+ * остаются в кэше. Кэш разбит на независимые шарды со своей блокировкой.
+ * Запись считается промахом и удаляется, как только наступил expiresAt ссылки;
+ * при изменении лимита, удалении и исчерпании лимита запись сбрасывается через invalidate.
+ * Каждый invalidate увеличивает поколение шарда. Заполняющий кэш читает поколение до чтения ссылки
+ * из хранилища и кладёт запись, только если поколение с тех пор не менялось: так запись,
+ * прочитанная до удаления ссылки, не попадёт в кэш после него.
+ */
+public final class RedirectCache {
+    private static final int SHARDS = 16;
+
+    /** Закэшированный редирект */
+    record Entry(String ownerUuid, String url, long expiresAtMs, ClickCounter.Counter counter) {}
+
+    /** Счётчики для подбора размера кэша */
+    public record Stats(long hits, long misses, long evictions, long expirations, long invalidations, int size, int capacity) {}
+
+    private final Shard[] shards;
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /** @param capacity максимальное число записей; 0 — кэш выключен */
+    RedirectCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        int perShard = (this.capacity + SHARDS - 1) / SHARDS;
+        shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) shards[i] = new Shard(perShard);
+    }
+
+    boolean enabled() {
+        return capacity > 0;
+    }
+
+    /** Запись для кода или null; истёкшая запись удаляется */
+    Entry get(String code, Instant now) {
+        if (!enabled()) return null;
+        Entry e = shard(code).get(code, now.toEpochMilli());
+        if (e == null) misses.increment();
+        else hits.increment();
+        return e;
+    }
+
+    /** Поколение шарда кода: читается перед чтением ссылки для put */
+    long generation(String code) {
+        return enabled() ? shard(code).generation() : 0;
+    }
+
+    /** Кладёт запись, если после generation для шарда кода не было invalidate */
+    void put(String code, Entry e, long generation) {
+        if (enabled()) shard(code).put(code, e, generation);
+    }
+
+    void invalidate(String code) {
+        if (enabled() && shard(code).remove(code)) invalidations.increment();
+    }
+
+    Stats stats() {
+        int size = 0;
+        for (Shard s : shards) size += s.size();
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), invalidations.sum(), size, capacity);
+    }
+
+    private Shard shard(String code) {
+        int h = code.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARDS - 1)];
+    }
+
+    /** Один шард: испытательный и защищённый сегменты, порядок вставки = порядок LRU */
+    private final class Shard {
+        private final int probationMax;
+        private final int protectedMax;
+        private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Entry> protectedSeg = new LinkedHashMap<>();
+        private long generation;
+
+        Shard(int capacity) {
+            this.probationMax = Math.max(1, capacity / 5);
+            this.protectedMax = Math.max(0, capacity - probationMax);
+        }
+
+        synchronized Entry get(String code, long nowMs) {
+            Entry e = protectedSeg.remove(code);
+            if (e == null) e = probation.remove(code);
+            if (e == null) return null;
+            if (e.expiresAtMs() != Long.MAX_VALUE && nowMs > e.expiresAtMs()) {
+                expirations.increment();
+                return null;
+            }
+            // повторное обращение: запись в хвост защищённого сегмента
+            protectedSeg.put(code, e);
+            if (protectedSeg.size() > protectedMax) {
+                Iterator<Map.Entry<String, Entry>> it = protectedSeg.entrySet().iterator();
+                Map.Entry<String, Entry> lru = it.next();
+                it.remove();
+                insertProbation(lru.getKey(), lru.getValue());
+            }
+            return e;
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized void put(String code, Entry e, long expected) {
+            if (generation != expected) return;
+            if (protectedSeg.containsKey(code)) {
+                protectedSeg.put(code, e);
+                return;
+            }
+            probation.remove(code);
+            insertProbation(code, e);
+        }
+
+        private void insertProbation(String code, Entry e) {
+            probation.put(code, e);
+            if (probation.size() > probationMax) {
+                Iterator<String> it = probation.keySet().iterator();
+                it.next();
+                it.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized boolean remove(String code) {
+            generation++;
+            return protectedSeg.remove(code) != null | probation.remove(code) != null;
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedSeg.size();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package key.project.shortener.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import key.project.shortener.core.Base62;
+
+/**
+ * Глобальный индекс короткий код → владелец.
+ * Нужен для редиректа, где известен только код, и для проверки уникальности кода при создании.
+ *
+ * Коды вида "8 hex-символов префикса" + "-" + "до 10 символов base-62" раскладываются по разделам
+ * по префиксу (int), внутри раздела — компактная хэш-таблица с открытой адресацией:
+ * long-ключ (длина и значение случайной части) и ссылка на строку владельца.
+ * Префикс почти всегда совпадает с началом UUID владельца, поэтому разделы маленькие,
+ * а строки владельцев в них общие. Коды другого вида хранятся в обычной ConcurrentHashMap.
+ */
+final class ShortCodeIndex {
+    private static final int PREFIX = 8;
+    private static final int MAX_SUFFIX = 10;
+
+    private final Map<Integer, Partition> partitions = new ConcurrentHashMap<>();
+    private final Map<String, String> other = new ConcurrentHashMap<>();
+
+    /**
+     * Закрепляет код за владельцем.
+     * @return true если код был свободен
+     */
+    boolean claim(String code, String ownerUuid) {
+        long key = suffixKey(code);
+        if (key == 0) return other.putIfAbsent(code, ownerUuid) == null;
+        return partitions.computeIfAbsent(prefixKey(code), k -> new Partition()).claim(key, ownerUuid);
+    }
+
+    /** Владелец кода или null */
+    String ownerOf(String code) {
+        long key = suffixKey(code);
+        if (key == 0) return other.get(code);
+        Partition p = partitions.get(prefixKey(code));
+        return p == null ? null : p.get(key);
+    }
+
+    /** Освобождает код (ссылка удалена из хранилища) */
+    void release(String code) {
+        long key = suffixKey(code);
+        if (key == 0) {
+            other.remove(code);
+            return;
+        }
+        Partition p = partitions.get(prefixKey(code));
+        if (p != null) p.remove(key);
+    }
+
+    int size() {
+        int n = other.size();
+        for (Partition p : partitions.values()) n += p.size();
+        return n;
+    }
+
+    // ---------- упаковка кода ----------
+
+    private static int prefixKey(String code) {
+        return (int) Long.parseLong(code, 0, PREFIX, 16);
+    }
+
+    /**
+     * Упакованная случайная часть кода: длина в старших 4 битах, значение base-62 в младших 60.
+     * 0 — код не подходит под формат (никогда не совпадает с настоящим ключом, т.к. длина ≥ 1).
+     */
+    private static long suffixKey(String code) {
+        int len = code.length() - PREFIX - 1;
+        if (len < 1 || len > MAX_SUFFIX || code.charAt(PREFIX) != '-') return 0;
+        for (int i = 0; i < PREFIX; i++) {
+            if (Character.digit(code.charAt(i), 16) < 0) return 0;
+        }
+        long v = Base62.decode(code, PREFIX + 1, code.length());
+        if (v < 0) return 0;
+        return (long) len << 60 | v;
+    }
+
+    // ---------- раздел ----------
+
+    /** Хэш-таблица long → владелец с линейным пробированием */
+    private static final class Partition {
+        private long[] keys = new long[8];
+        private String[] owners = new String[8];
+        private int size;
+
+        synchronized boolean claim(long key, String owner) {
+            int i = slot(key);
+            if (keys[i] == key) return false;
+            keys[i] = key;
+            owners[i] = owner;
+            if (++size * 4 > keys.length * 3) grow();
+            return true;
+        }
+
+        synchronized String get(long key) {
+            int i = slot(key);
+            return keys[i] == key ? owners[i] : null;
+        }
+
+        synchronized void remove(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key);
+            if (keys[i] != key) return;
+            // удаление со сдвигом, чтобы не оставлять надгробий
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (keys[j] == 0) break;
+                int home = home(keys[j], mask);
+                if ((j > i && (home <= i || home > j)) || (j < i && home <= i && home > j)) {
+                    keys[i] = keys[j];
+                    owners[i] = owners[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            owners[i] = null;
+            size--;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /** Ячейка с этим ключом или первая пустая на пути пробирования */
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int i = home(key, mask);
+            while (keys[i] != 0 && keys[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+
+        private static int home(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            String[] oldOwners = owners;
+            keys = new long[oldKeys.length * 2];
+            owners = new String[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int j = slot(oldKeys[i]);
+                    keys[j] = oldKeys[i];
+                    owners[j] = oldOwners[i];
+                }
+            }
+        }
+    }
+}
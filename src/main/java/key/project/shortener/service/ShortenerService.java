@@ -4,10 +4,24 @@ import java.awt.Desktop;
 import java.net.URI;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import key.project.shortener.analytics.ClickAnalytics;
 import key.project.shortener.config.AppConfig;
 import key.project.shortener.core.*;
+import key.project.shortener.metrics.Metrics;
+import key.project.shortener.metrics.Metrics.Op;
+import key.project.shortener.repo.LinkKey;
 import key.project.shortener.repo.LinkRepository;
 import key.project.shortener.util.Time;
 
@@ -19,98 +33,471 @@ import key.project.shortener.util.Time;
  * удаление,
  * открытие ссылки в браузере,
  * очистка истёкших ссылок.
+ * Переходы считает ClickCounter: лимит соблюдается точно при параллельных open,
+ * а счётчики сбрасываются в хранилище пачками (close() сбрасывает остаток).
+ * Глобальный индекс кодов строится один раз при старте: он даёт редирект по одному коду
+ * и проверку уникальности новых кодов без обращения к хранилищу.
+ * Горячие редиректы обслуживает RedirectCache, не обращаясь к хранилищу вовсе.
+ * Истёкшие ссылки помечает фоновый ExpiryScheduler по индексу сроков, уведомления идут пачками.
+ * Каждый засчитанный переход публикуется в ClickAnalytics для оконной статистики.
+ * В режиме dedupUrls повторное сокращение того же URL владельцем возвращает его активную ссылку
+ * (поиск по UrlDedupIndex, URL сравниваются в нормализованном виде), а не создаёт новую.
+ * Строки URL новых ссылок берутся из общего UrlInterner.
+ * Каждая публичная операция пишет задержку и ошибки в Metrics.global().
+ * Изменения существующей ссылки (лимит, удаление, истечение) идут через update():
+ * чтение, изменение и compareAndSave по версии ссылки с ограниченным числом повторов,
+ * поэтому параллельная запись счётчика не затирается и общая блокировка не нужна.
+ * На узле-последователе репликации (replicationRole follower) сервис только читает:
+ * изменения отклоняются IllegalStateException, фоновое истечение выключено (его делает лидер),
+ * редирект отдаёт URL доступной ссылки, не засчитывая переход. Ссылки, пришедшие от лидера,
+ * попадают в индекс кодов через onReplicated.
+ * Распределённый лимит переходов держится на арендах квот (QuotaAuthority): лидер выдаёт их через quota(),
+ * засчитывая выданные переходы в счётчик ссылки сразу; последователь, получивший authority,
+ * списывает переходы из аренды локально (QuotaLeases) и ходит к лидеру только за новой арендой.
  */
-public class ShortenerService {
+public class ShortenerService implements AutoCloseable {
+
     private final LinkRepository repo; // здесь будут ссылки
     private final AppConfig cfg;
     private final NotificationService ns;
+    private final ClickCounter clicks;
+    private final ShortCodeIndex codes = new ShortCodeIndex();
+    private final CodeGenerator generator;
+    private final RedirectCache cache;
+    private final ExpiryScheduler expiry;
+    private final ClickAnalytics analytics;
+    private final UrlDedupIndex dedup; // null, если dedupUrls выключен
+    private final boolean readOnly;
+    private final QuotaLeases leases; // null, если последователь не считает переходы
+    private final LeaseLedger ledger = new LeaseLedger();
+    private final QuotaAuthority quota = new LocalQuota();
+    private final Metrics metrics = Metrics.global();
 
     public ShortenerService(LinkRepository repo, AppConfig cfg, NotificationService ns) {
+        this(repo, cfg, ns, null);
+    }
+
+    /**
+     * @param authority лидер, у которого последователь арендует переходы; null — переходы на последователе не считаются
+     */
+    public ShortenerService(LinkRepository repo, AppConfig cfg, NotificationService ns, QuotaAuthority authority) {
         this.repo = repo;
         this.cfg = cfg;
         this.ns = ns;
+        this.readOnly = cfg.app.replicationRole.equals("follower");
+        this.leases =
+                readOnly && authority != null
+                        ? new QuotaLeases(authority, cfg.app.quotaLeaseSize, cfg.app.quotaLeaseMs / 2)
+                        : null;
+        this.clicks = new ClickCounter(repo, cfg.app.clickFlushIntervalMs);
+        this.generator = generator(cfg.app);
+        this.cache = new RedirectCache(cfg.app.cacheMaxEntries);
+        this.analytics =
+                new ClickAnalytics(cfg.app.analyticsRingSize, cfg.app.analyticsTopK, cfg.app.analyticsDrainIntervalMs);
+        this.expiry =
+                new ExpiryScheduler(readOnly ? 0 : cfg.app.expiryIntervalMs, cfg.app.expiryBatchSize, this::expireBatch);
+        this.dedup = cfg.app.dedupUrls ? new UrlDedupIndex() : null;
+        repo.forEach(
+                l -> {
+                    codes.claim(l.shortCode, l.ownerUuid);
+                    if (l.status == LinkStatus.ACTIVE || l.status == LinkStatus.LIMIT_REACHED) {
+                        expiry.schedule(l.ownerUuid, l.shortCode, l.expiresAt);
+                    }
+                    if (dedup != null && l.status == LinkStatus.ACTIVE) {
+                        String normalized = UrlValidator.normalize(l.originalUrl);
+                        if (normalized != null) dedup.put(l.ownerUuid, normalized, l.shortCode);
+                    }
+                });
     }
     /**
      * Создание новой короткой ссылки.
      *
      * @param ownerUuid UUID владельца
      * @param url оригинальный URL
-     * @param maxClicksOverride лимит переходов
+     * @param maxClicksOverride лимит переходов; null — из конфига, иначе положительный
      * @return объект Link
      */
     public Link create(String ownerUuid, String url, Integer maxClicksOverride) {
+        long t0 = System.nanoTime();
+        try {
+            return createLink(ownerUuid, url, maxClicksOverride);
+        } catch (RuntimeException e) {
+            metrics.error(Op.CREATE);
+            throw e;
+        } finally {
+            metrics.record(Op.CREATE, System.nanoTime() - t0);
+        }
+    }
+
+    private Link createLink(String ownerUuid, String url, Integer maxClicksOverride) {
+        requireWritable();
+        if (maxClicksOverride != null) Validation.requireValidLimit(maxClicksOverride);
         Validation.requireValidUrl(url);
+        Instant now = Time.now();
+        String normalized = null;
+        if (dedup != null) {
+            normalized = UrlValidator.normalize(url);
+            Link same = sameTarget(ownerUuid, normalized, maxClicksOverride, now);
+            if (same != null) return same;
+        }
+        Link l = newLink(ownerUuid, url, maxClicksOverride, now);
+        try {
+            repo.save(l);
+        } catch (RuntimeException e) {
+            codes.release(l.shortCode);
+            throw e;
+        }
+        expiry.schedule(l.ownerUuid, l.shortCode, l.expiresAt);
+        if (dedup != null) dedup.put(ownerUuid, normalized, l.shortCode);
+        return l;
+    }
+
+    /**
+     * Активная ссылка владельца на тот же нормализованный URL, которую можно вернуть вместо новой:
+     * не истекла, лимит не исчерпан и совпадает с запрошенным (если он задан).
+     * @return ссылка или null
+     */
+    private Link sameTarget(String ownerUuid, String normalized, Integer maxClicksOverride, Instant now) {
+        String code = dedup.get(ownerUuid, normalized);
+        if (code == null) return null;
+        Link l = repo.findByCode(ownerUuid, code).map(clicks::overlay).orElse(null);
+        if (l == null
+                || l.status != LinkStatus.ACTIVE
+                || l.isExpired(now)
+                || l.limitReached()
+                || (maxClicksOverride != null && maxClicksOverride != l.maxClicks)
+                || !normalized.equals(UrlValidator.normalize(l.originalUrl))) {
+            return null;
+        }
+        return l;
+    }
+
+    /** Убирает ссылку из индекса повторов, когда она перестаёт быть активной */
+    private void forgetTarget(Link l) {
+        if (dedup == null) return;
+        String normalized = UrlValidator.normalize(l.originalUrl);
+        if (normalized != null) dedup.remove(l.ownerUuid, normalized, l.shortCode);
+    }
+
+    /**
+     * Создание пачки ссылок одного владельца.
+     * URL проверяются параллельно, и первый невалидный отклоняет всю пачку.
+     * Уникальность кодов проверяется по индексу в памяти, а вся пачка сохраняется одной записью.
+     * В режиме dedupUrls повторы внутри пачки и уже существующие активные ссылки не создаются заново.
+     *
+     * @return ссылки в порядке urls
+     */
+    public List<Link> createAll(String ownerUuid, List<String> urls, Integer maxClicksOverride) {
+        long t0 = System.nanoTime();
+        try {
+            return createLinks(ownerUuid, urls, maxClicksOverride);
+        } catch (RuntimeException e) {
+            metrics.error(Op.CREATE_ALL);
+            throw e;
+        } finally {
+            metrics.record(Op.CREATE_ALL, System.nanoTime() - t0);
+        }
+    }
+
+    private List<Link> createLinks(String ownerUuid, List<String> urls, Integer maxClicksOverride) {
+        requireWritable();
+        if (maxClicksOverride != null) Validation.requireValidLimit(maxClicksOverride);
+        urls.parallelStream().forEach(Validation::requireValidUrl);
+        Instant now = Time.now();
+        List<Link> out = new ArrayList<>(urls.size());
+        List<Link> batch = new ArrayList<>(urls.size());
+        Map<String, Link> fresh = dedup == null ? null : new HashMap<>();
+        for (String url : urls) {
+            String normalized = null;
+            if (dedup != null) {
+                normalized = UrlValidator.normalize(url);
+                Link same = fresh.get(normalized);
+                if (same == null) same = sameTarget(ownerUuid, normalized, maxClicksOverride, now);
+                if (same != null) {
+                    out.add(same);
+                    continue;
+                }
+            }
+            Link l = newLink(ownerUuid, url, maxClicksOverride, now);
+            batch.add(l);
+            out.add(l);
+            if (fresh != null) fresh.put(normalized, l);
+        }
+        try {
+            repo.saveAll(batch);
+        } catch (RuntimeException e) {
+            for (Link l : batch) codes.release(l.shortCode);
+            throw e;
+        }
+        for (Link l : batch) expiry.schedule(l.ownerUuid, l.shortCode, l.expiresAt);
+        if (fresh != null) fresh.forEach((normalized, l) -> dedup.put(ownerUuid, normalized, l.shortCode));
+        return out;
+    }
+
+    /** Новая ссылка с кодом, уже закреплённым в индексе кодов */
+    private Link newLink(String ownerUuid, String url, Integer maxClicksOverride, Instant now) {
         int maxClicks =
                 (maxClicksOverride != null) ? maxClicksOverride : cfg.app.defaultMaxClicks;
 
         String prefix = ownerUuid.substring(0, 8);  // Префикс для кода первые 8 символов UUID пользователя, для уникальности
         String code;
         do {
-            code = prefix + "-" + UrlCodeGenerator.random(6);
-        } while (repo.existsCode(ownerUuid, code));
+            code = generator.next(prefix);
+        } while (!codes.claim(code, ownerUuid));
 
         Link l = new Link();
         l.ownerUuid = ownerUuid;
-        l.originalUrl = url;
+        l.originalUrl = UrlInterner.intern(url);
         l.shortCode = code;
         l.maxClicks = maxClicks;
         l.clickCount = 0;
-        l.createdAt = Time.now();
+        l.createdAt = now;
         l.expiresAt = l.createdAt.plus(Duration.ofHours(cfg.app.ttlHours));
         l.status = LinkStatus.ACTIVE;
-
-        repo.save(l);
         return l;
     }
+    /**
+     * Генератор кодов по настройке app.codeGenerator:
+     * random — случайные коды длины codeLength (детерминированные при заданном codeSeed),
+     * sequence — коды Snowflake для узла nodeId, уникальные без проверки коллизий.
+     */
+    private static CodeGenerator generator(AppConfig.App app) {
+        return switch (app.codeGenerator) {
+            case "random" -> new RandomCodeGenerator(app.codeLength, app.codeSeed);
+            case "sequence" -> new SequenceCodeGenerator(app.nodeId);
+            default -> throw new IllegalArgumentException("Неизвестный генератор кодов: " + app.codeGenerator);
+        };
+    }
     /**
      * Получение информации о ссылке по короткому коду
      * возвращает Optional<Link>, чтобы можно было безопасно проверить наличие.
      */
     public Optional<Link> info(String ownerUuid, String code) {
-        return repo.findByCode(ownerUuid, code);
+        long t0 = System.nanoTime();
+        try {
+            return repo.findByCode(ownerUuid, code).map(clicks::overlay);
+        } catch (RuntimeException e) {
+            metrics.error(Op.INFO);
+            throw e;
+        } finally {
+            metrics.record(Op.INFO, System.nanoTime() - t0);
+        }
     }
     /**
      * Возвращает все активные ссылки пользователя.
      */
     public List<Link> list(String ownerUuid) {
-        return repo.findAllByOwner(ownerUuid);
+        long t0 = System.nanoTime();
+        try {
+            List<Link> links = repo.findAllByOwner(ownerUuid);
+            links.forEach(clicks::overlay);
+            return links;
+        } catch (RuntimeException e) {
+            metrics.error(Op.LIST);
+            throw e;
+        } finally {
+            metrics.record(Op.LIST, System.nanoTime() - t0);
+        }
     }
     /**
      * Изменяет лимит переходов по ссылке,
-     * проверяет права
+     * проверяет права; лимит должен быть положительным
      *
      * @return true если найдено и обновлено, false если ссылка не найдена
      */
     public boolean setLimit(String ownerUuid, String code, int newLimit) {
+        long t0 = System.nanoTime();
+        try {
+            return updateLimit(ownerUuid, code, newLimit);
+        } catch (RuntimeException e) {
+            metrics.error(Op.SET_LIMIT);
+            throw e;
+        } finally {
+            metrics.record(Op.SET_LIMIT, System.nanoTime() - t0);
+        }
+    }
+
+    private boolean updateLimit(String ownerUuid, String code, int newLimit) {
+        requireWritable();
+        Validation.requireValidLimit(newLimit);
         Optional<Link> o = repo.findByCode(ownerUuid, code);
         if (o.isEmpty()) return false;
         Link l = o.get();
         if (!l.ownerUuid.equals(ownerUuid)) {
             throw new SecurityException("Недостаточно прав");
         }
+        ClickCounter.Counter c = clicks.counter(l);
+        // запись идёт без монитора счётчика: до её успеха редиректы работают по старому лимиту
+        clicks.beginLimit(c);
+        Optional<Link> saved = Optional.empty();
+        try {
+            saved =
+                    update(
+                            ownerUuid,
+                            code,
+                            cur -> {
+                                applyLimit(cur, newLimit, c.clicks.get());
+                                return true;
+                            });
+        } finally {
+            clicks.endLimit(c, saved.orElse(null));
+            cache.invalidate(code);
+        }
+        if (cfg.app.notifyOnLimit && saved.isPresent() && saved.get().status == LinkStatus.LIMIT_REACHED) {
+            ns.notifyLimit(saved.get());
+        }
+        return true;
+    }
+
+    /**
+     * Читает ссылку, применяет change и сохраняет её через compareAndSave.
+     * Если ссылку изменили между чтением и записью, всё повторяется на свежей копии,
+     * не больше LinkRepository.CAS_ATTEMPTS раз; change поэтому может вызываться несколько раз.
+     *
+     * @param change меняет ссылку и возвращает false, если сохранять ничего не нужно
+     * @return сохранённая ссылка; пусто, если ссылки нет или change отказался
+     * @throws IllegalStateException если конфликты не прекратились за LinkRepository.CAS_ATTEMPTS попыток
+     */
+    private Optional<Link> update(String ownerUuid, String code, Predicate<Link> change) {
+        for (int attempt = 0; attempt < LinkRepository.CAS_ATTEMPTS; attempt++) {
+            Optional<Link> o = repo.findByCode(ownerUuid, code);
+            if (o.isEmpty()) return Optional.empty();
+            Link l = o.get();
+            long version = l.version;
+            if (!change.test(l)) return Optional.empty();
+            if (repo.compareAndSave(l, version)) return Optional.of(l);
+            Thread.onSpinWait();
+        }
+        throw new IllegalStateException("Ссылку " + code + " изменяют параллельно, повторите операцию");
+    }
+    /**
+     * Изменяет лимит сразу у нескольких ссылок пользователя.
+     * Ссылки читаются одним запросом на пачку и сохраняются одной записью через compareAndSaveAll,
+     * без мониторов счётчиков: редиректы не ждут записи на диск, а новый лимит получают
+     * только после её успеха.
+     * Ссылки, изменённые после чтения (например, счётчик записал LIMIT_REACHED),
+     * не затираются, а обновляются заново по одной через update().
+     * Чужие, удалённые и несуществующие коды пропускаются.
+     *
+     * @return сколько ссылок обновлено
+     */
+    public int setLimitAll(String ownerUuid, Collection<String> codesToUpdate, int newLimit) {
+        long t0 = System.nanoTime();
+        try {
+            return setLimits(ownerUuid, codesToUpdate, newLimit);
+        } catch (RuntimeException e) {
+            metrics.error(Op.SET_LIMIT_ALL);
+            throw e;
+        } finally {
+            metrics.record(Op.SET_LIMIT_ALL, System.nanoTime() - t0);
+        }
+    }
+
+    private int setLimits(String ownerUuid, Collection<String> codesToUpdate, int newLimit) {
+        requireWritable();
+        Validation.requireValidLimit(newLimit);
+        Map<String, Link> owned = new HashMap<>();
+        for (Link l : repo.findAllByOwner(ownerUuid)) owned.put(l.shortCode, l);
+        List<Link> batch = new ArrayList<>();
+        List<ClickCounter.Counter> counters = new ArrayList<>();
+        for (String code : new LinkedHashSet<>(codesToUpdate)) {
+            Link l = owned.get(code);
+            if (l == null) continue;
+            ClickCounter.Counter c = clicks.counter(l);
+            clicks.beginLimit(c);
+            counters.add(c);
+            applyLimit(l, newLimit, c.clicks.get());
+            batch.add(l);
+        }
+        if (batch.isEmpty()) return 0;
+        // сохранённая версия каждой ссылки пачки; null — не записана
+        Link[] stored = new Link[batch.size()];
+        try {
+            Set<Link> conflicts = Collections.newSetFromMap(new IdentityHashMap<>());
+            conflicts.addAll(repo.compareAndSaveAll(batch));
+            for (int i = 0; i < batch.size(); i++) {
+                Link l = batch.get(i);
+                if (!conflicts.contains(l)) {
+                    stored[i] = l;
+                    continue;
+                }
+                // ссылку изменили после чтения (переход, удаление): повторяем по одной на свежей версии
+                ClickCounter.Counter c = counters.get(i);
+                stored[i] =
+                        update(
+                                        ownerUuid,
+                                        l.shortCode,
+                                        cur -> {
+                                            if (cur.status == LinkStatus.DELETED) return false;
+                                            applyLimit(cur, newLimit, c.clicks.get());
+                                            return true;
+                                        })
+                                .orElse(null);
+            }
+        } finally {
+            // новый лимит виден редиректам только после успешной записи
+            for (int i = 0; i < batch.size(); i++) {
+                clicks.endLimit(counters.get(i), stored[i]);
+                cache.invalidate(batch.get(i).shortCode);
+            }
+        }
+        List<Link> saved = new ArrayList<>(batch.size());
+        for (Link l : stored) if (l != null) saved.add(l);
+        if (cfg.app.notifyOnLimit) {
+            for (Link l : saved) if (l.status == LinkStatus.LIMIT_REACHED) ns.notifyLimit(l);
+        }
+        return saved.size();
+    }
+
+    /** Новый лимит и текущий счётчик; статус LIMIT_REACHED ставится или снимается по ним */
+    private static void applyLimit(Link l, int newLimit, int clickCount) {
         l.maxClicks = newLimit;
+        l.clickCount = clickCount;
         if (l.clickCount >= l.maxClicks) {
             l.status = LinkStatus.LIMIT_REACHED;
-            if (cfg.app.notifyOnLimit) ns.notifyLimit(l);
         } else if (l.status == LinkStatus.LIMIT_REACHED) {
             l.status = LinkStatus.ACTIVE;
         }
-        repo.save(l);
-        return true;
     }
     /**
      * Помечает ссылку как удалённую,
      * но реально не удаляет из файла, чтобы сохранить как лог.
      */
     public boolean delete(String ownerUuid, String code) {
+        long t0 = System.nanoTime();
+        try {
+            return markDeleted(ownerUuid, code);
+        } catch (RuntimeException e) {
+            metrics.error(Op.DELETE);
+            throw e;
+        } finally {
+            metrics.record(Op.DELETE, System.nanoTime() - t0);
+        }
+    }
+
+    private boolean markDeleted(String ownerUuid, String code) {
+        requireWritable();
         Optional<Link> o = repo.findByCode(ownerUuid, code);
         if (o.isEmpty()) return false;
         Link l = o.get();
         if (!l.ownerUuid.equals(ownerUuid)) {
             throw new SecurityException("Недостаточно прав");
         }
-        l.status = LinkStatus.DELETED;
-        repo.save(l);
+        ClickCounter.Counter c = clicks.counter(l);
+        synchronized (c) {
+            update(
+                    ownerUuid,
+                    code,
+                    cur -> {
+                        cur.clickCount = c.clicks.get();
+                        cur.status = LinkStatus.DELETED;
+                        return true;
+                    });
+            clicks.forget(ownerUuid, code);
+            // после записи: заполнение кэша, начатое до удаления, увидит новое поколение
+            cache.invalidate(code);
+        }
+        forgetTarget(l);
         return true;
     }
     /**
@@ -119,43 +506,501 @@ public class ShortenerService {
      * @return количество удалённых ссылок
      */
     public int cleanup() {
-        return repo.deleteExpired(Time.now());
+        long t0 = System.nanoTime();
+        try {
+            requireWritable();
+            return repo.deleteExpired(Time.now());
+        } catch (RuntimeException e) {
+            metrics.error(Op.CLEANUP);
+            throw e;
+        } finally {
+            metrics.record(Op.CLEANUP, System.nanoTime() - t0);
+        }
     }
 
-    public boolean open(String ownerUuid, String code) {
+    /**
+     * Помечает истёкшими ссылки, срок которых уже наступил: не больше одной пачки expiryBatchSize.
+     * Обычно вызывается фоновым потоком раз в expiryIntervalMs.
+     *
+     * @return сколько ссылок из очереди сроков было обработано
+     */
+    public int expireDue() {
+        if (readOnly) return 0;
+        return expiry.expireDue(Time.now());
+    }
+
+    private void requireWritable() {
+        if (readOnly) throw new IllegalStateException("Узел-последователь только читает, изменения делаются на лидере");
+    }
+
+    /**
+     * Ссылка пришла от лидера репликации: код попадает в индекс кодов,
+     * запись кэша редиректов сбрасывается, а аренда квоты удалённой или истёкшей ссылки
+     * возвращается лидеру сразу.
+     */
+    public void onReplicated(Link l) {
+        codes.claim(l.shortCode, l.ownerUuid);
+        cache.invalidate(l.shortCode);
+        if (leases != null && (l.status == LinkStatus.DELETED || l.status == LinkStatus.EXPIRED)) {
+            leases.forget(l.ownerUuid, l.shortCode);
+        }
+    }
+
+    /**
+     * Пачка наступивших сроков: одно чтение всех ссылок пачки, одна запись статусов EXPIRED
+     * через compareAndSaveAll, затем сброс кэша и счётчиков и одно уведомление на пачку.
+     * Мониторы счётчиков не берутся: истёкшую по времени ссылку редирект и так не засчитывает,
+     * а ссылки, изменённые после чтения, переписываются по одной через update().
+     */
+    private void expireBatch(List<ExpiryScheduler.Due> batch) {
+        long t0 = System.nanoTime();
+        Instant now = Time.now();
+        List<LinkKey> keys = new ArrayList<>(batch.size());
+        for (ExpiryScheduler.Due d : batch) keys.add(new LinkKey(d.ownerUuid(), d.code()));
+        List<Link> due = new ArrayList<>(keys.size());
+        for (Link l : repo.findAllByKey(keys)) {
+            if (l.status == LinkStatus.DELETED || l.status == LinkStatus.EXPIRED) continue;
+            if (!l.isExpired(now)) {
+                // срок продлили после постановки в очередь
+                expiry.schedule(l.ownerUuid, l.shortCode, l.expiresAt);
+                continue;
+            }
+            clicks.overlay(l);
+            l.status = LinkStatus.EXPIRED;
+            due.add(l);
+        }
+        List<Link> expired = new ArrayList<>(due.size());
+        if (!due.isEmpty()) {
+            Set<Link> conflicts = Collections.newSetFromMap(new IdentityHashMap<>());
+            conflicts.addAll(repo.compareAndSaveAll(due));
+            for (Link l : due) {
+                if (conflicts.contains(l)) expireOne(l.ownerUuid, l.shortCode, now).ifPresent(expired::add);
+                else expired.add(l);
+            }
+        }
+        for (Link l : expired) {
+            clicks.forget(l.ownerUuid, l.shortCode);
+            cache.invalidate(l.shortCode);
+            forgetTarget(l);
+        }
+        if (cfg.app.notifyOnExpire && !expired.isEmpty()) ns.notifyExpired(expired);
+        metrics.record(Op.CLEANUP, System.nanoTime() - t0);
+    }
+
+    /** Истечение одной ссылки, изменённой параллельно с пачкой */
+    private Optional<Link> expireOne(String ownerUuid, String code, Instant now) {
+        Link[] extended = new Link[1];
+        Optional<Link> saved =
+                update(
+                        ownerUuid,
+                        code,
+                        cur -> {
+                            if (cur.status == LinkStatus.DELETED || cur.status == LinkStatus.EXPIRED) return false;
+                            if (!cur.isExpired(now)) {
+                                extended[0] = cur;
+                                return false;
+                            }
+                            clicks.overlay(cur);
+                            cur.status = LinkStatus.EXPIRED;
+                            return true;
+                        });
+        if (extended[0] != null) expiry.schedule(ownerUuid, code, extended[0].expiresAt);
+        return saved;
+    }
+
+    /**
+     * Проверяет ссылку и засчитывает переход.
+     * Используется и CLI (open), и HTTP-сервером для редиректа.
+     *
+     * @return оригинальный URL или пусто, если ссылки нет, она удалена, истекла или лимит исчерпан
+     */
+    public Optional<String> resolve(String ownerUuid, String code) {
+        long t0 = System.nanoTime();
+        try {
+            RedirectCache.Entry e = cache.get(code, Time.now());
+            if (e != null && e.ownerUuid().equals(ownerUuid)) {
+                Optional<String> hit = fromCache(e, code);
+                if (hit != null) return hit;
+            }
+            return load(ownerUuid, code);
+        } catch (RuntimeException e) {
+            metrics.error(Op.OPEN);
+            throw e;
+        } finally {
+            metrics.record(Op.OPEN, System.nanoTime() - t0);
+        }
+    }
+
+    /**
+     * Переход по записи кэша.
+     * @return URL, или null если лимит уже исчерпан и нужно пройти полный путь через хранилище
+     */
+    private Optional<String> fromCache(RedirectCache.Entry e, String code) {
+        switch (clicks.click(e.counter())) {
+            case ACCEPTED -> {
+                analytics.record(e.ownerUuid(), code, System.currentTimeMillis());
+                return Optional.of(e.url());
+            }
+            case LAST -> {
+                analytics.record(e.ownerUuid(), code, System.currentTimeMillis());
+                cache.invalidate(code);
+                if (cfg.app.notifyOnLimit) {
+                    repo.findByCode(e.ownerUuid(), code).map(clicks::overlay).ifPresent(ns::notifyLimit);
+                }
+                return Optional.of(e.url());
+            }
+            default -> {
+                cache.invalidate(code);
+                return null;
+            }
+        }
+    }
+
+    /** Полный путь редиректа: чтение ссылки из хранилища, проверки, переход и заполнение кэша */
+    private Optional<String> load(String ownerUuid, String code) {
+        // поколение до чтения: invalidate после удаления или истечения не даст закэшировать старое состояние
+        long generation = cache.generation(code);
         Optional<Link> o = repo.findByCode(ownerUuid, code);
-        if (o.isEmpty()) return false;
-        Link l = o.get();
+        if (o.isEmpty()) return Optional.empty();
+        return admit(o.get(), generation);
+    }
+
+    /**
+     * Проверки и переход по прочитанной ссылке.
+     * @param generation поколение кэша, взятое до чтения ссылки
+     */
+    private Optional<String> admit(Link l, long generation) {
+        String ownerUuid = l.ownerUuid;
+        String code = l.shortCode;
+        if (l.status == LinkStatus.DELETED) return Optional.empty();
         Instant now = Time.now();
+        if (readOnly) return replicaLoad(l, now);
+        // исчерпанный лимит окончателен, пока setLimit не поднимет его и не вернёт ACTIVE
+        if (l.status == LinkStatus.LIMIT_REACHED) return Optional.empty();
 
         if (l.isExpired(now)) {
+            clicks.overlay(l);
             l.status = LinkStatus.EXPIRED;
-            repo.save(l);
+            update(
+                    ownerUuid,
+                    code,
+                    cur -> {
+                        if (cur.status == LinkStatus.DELETED || cur.status == LinkStatus.EXPIRED) return false;
+                        clicks.overlay(cur);
+                        cur.status = LinkStatus.EXPIRED;
+                        return true;
+                    });
             if (cfg.app.notifyOnExpire) ns.notifyExpired(l);
-            return false;
+            return Optional.empty();
         }
 
-        if (l.limitReached()) {
-            l.status = LinkStatus.LIMIT_REACHED;
-            repo.save(l);
-            if (cfg.app.notifyOnLimit) ns.notifyLimit(l);
-            return false;
+        switch (clicks.click(l)) {
+            case REJECTED -> {
+                // лимит исчерпан раньше, переход не засчитывается
+                if (l.status != LinkStatus.LIMIT_REACHED) clicks.persist(l);
+                if (cfg.app.notifyOnLimit) ns.notifyLimit(l);
+                return Optional.empty();
+            }
+            case LAST -> {
+                // этот переход исчерпал лимит: статус уже записан счётчиком
+                analytics.record(ownerUuid, code, System.currentTimeMillis());
+                l.status = LinkStatus.LIMIT_REACHED;
+                if (cfg.app.notifyOnLimit) ns.notifyLimit(l);
+            }
+            case ACCEPTED -> {
+                analytics.record(ownerUuid, code, System.currentTimeMillis());
+                long expires = l.expiresAt == null ? Long.MAX_VALUE : l.expiresAt.toEpochMilli();
+                cache.put(code, new RedirectCache.Entry(l.ownerUuid, l.originalUrl, expires, clicks.counter(l)), generation);
+            }
         }
-        // Увеличиваем счётчик переходов
-        l.clickCount++;
-        if (l.limitReached()) {
-            l.status = LinkStatus.LIMIT_REACHED;
-            if (cfg.app.notifyOnLimit) ns.notifyLimit(l);
+        return Optional.of(l.originalUrl);
+    }
+
+    /**
+     * Редирект на последователе.
+     * С арендами квот переход списывается из аренды: LIMIT_REACHED в реплике не окончателен,
+     * у этого узла может остаться часть уже выданных переходов. Без аренд переходы засчитывает только лидер,
+     * здесь лишь проверка по реплицированному состоянию.
+     */
+    private Optional<String> replicaLoad(Link l, Instant now) {
+        if (l.status == LinkStatus.EXPIRED || l.isExpired(now)) return Optional.empty();
+        if (leases != null) {
+            if (!leases.tryClick(l.ownerUuid, l.shortCode)) return Optional.empty();
+        } else if (l.status != LinkStatus.ACTIVE || l.limitReached()) {
+            return Optional.empty();
+        }
+        analytics.record(l.ownerUuid, l.shortCode, System.currentTimeMillis());
+        return Optional.of(l.originalUrl);
+    }
+
+    /** Выдача аренд квот другим узлам; работает только на лидере */
+    public QuotaAuthority quota() {
+        return quota;
+    }
+
+    /** Аренды, выданные этим узлом и ещё не возвращённые */
+    public int outstandingLeases() {
+        return ledger.size();
+    }
+
+    private final class LocalQuota implements QuotaAuthority {
+        @Override
+        public Lease acquire(String ownerUuid, String code, int want) {
+            requireWritable();
+            Optional<Link> o = repo.findByCode(ownerUuid, code);
+            if (o.isEmpty() || want <= 0) return Lease.NONE;
+            Link l = o.get();
+            if (l.status == LinkStatus.DELETED || l.status == LinkStatus.EXPIRED || l.isExpired(Time.now())) {
+                return Lease.NONE;
+            }
+            int n = clicks.reserve(clicks.counter(l), want);
+            if (n == 0) return Lease.NONE;
+            long ttl = cfg.app.quotaLeaseMs;
+            // возврат принимается ещё один срок аренды: узел возвращает остаток по своим часам
+            long id = ledger.grant(ownerUuid, code, n, System.currentTimeMillis() + 2 * ttl);
+            return new Lease(id, n, ttl);
+        }
+
+        @Override
+        public void release(long leaseId, int unused) {
+            LeaseLedger.Granted g = ledger.take(leaseId, System.currentTimeMillis());
+            if (g == null || unused <= 0) return;
+            int back = Math.min(unused, g.clicks());
+            Optional<Link> o = repo.findByCode(g.ownerUuid(), g.code());
+            if (o.isEmpty()) return;
+            ClickCounter.Counter c = clicks.counter(o.get());
+            synchronized (c) {
+                c.clicks.addAndGet(-back);
+                cache.invalidate(g.code());
+                update(
+                        g.ownerUuid(),
+                        g.code(),
+                        cur -> {
+                            if (cur.status == LinkStatus.DELETED || cur.status == LinkStatus.EXPIRED) return false;
+                            cur.clickCount = c.clicks.get();
+                            if (cur.status == LinkStatus.LIMIT_REACHED && !cur.limitReached()) cur.status = LinkStatus.ACTIVE;
+                            return true;
+                        });
+            }
+        }
+    }
+
+    /**
+     * Редирект по одному короткому коду, без UUID владельца.
+     * Владелец берётся из глобального индекса кодов.
+     */
+    public Optional<String> resolve(String code) {
+        long t0 = System.nanoTime();
+        try {
+            RedirectCache.Entry e = cache.get(code, Time.now());
+            if (e != null) {
+                Optional<String> hit = fromCache(e, code);
+                if (hit != null) return hit;
+            }
+            String owner = codes.ownerOf(code);
+            if (owner == null) return Optional.empty();
+            long generation = cache.generation(code);
+            Optional<Link> o = repo.findByCode(owner, code);
+            if (o.isEmpty()) {
+                // ссылку уже вычистил cleanup, код можно выдавать заново
+                codes.release(code);
+                return Optional.empty();
+            }
+            return admit(o.get(), generation);
+        } catch (RuntimeException e) {
+            metrics.error(Op.OPEN);
+            throw e;
+        } finally {
+            metrics.record(Op.OPEN, System.nanoTime() - t0);
+        }
+    }
+
+    /**
+     * Проверка редиректа без перехода: URL, если ссылка сейчас доступна.
+     * Переход, аналитика и кэш редиректов не затрагиваются — для HEAD-запросов
+     * ботов превью и проверяльщиков ссылок, которые иначе расходовали бы лимит.
+     */
+    public Optional<String> peek(String code) {
+        long t0 = System.nanoTime();
+        try {
+            String owner = codes.ownerOf(code);
+            if (owner == null) return Optional.empty();
+            Optional<Link> o = repo.findByCode(owner, code).map(clicks::overlay);
+            if (o.isEmpty()) return Optional.empty();
+            Link l = o.get();
+            if (l.status != LinkStatus.ACTIVE || l.isExpired(Time.now()) || l.limitReached()) return Optional.empty();
+            return Optional.of(l.originalUrl);
+        } catch (RuntimeException e) {
+            metrics.error(Op.INFO);
+            throw e;
+        } finally {
+            metrics.record(Op.INFO, System.nanoTime() - t0);
         }
-        repo.save(l);
+    }
+
+    /**
+     * Редирект пачки кодов с засчитыванием переходов.
+     * Коды из кэша редиректов обслуживаются без хранилища, остальные читаются одним findAllByKey,
+     * переходы засчитываются одним проходом по счётчикам, а всё, что нужно записать сразу
+     * (исчерпание лимита, истечение срока), сохраняется одним compareAndSaveAll.
+     * Ссылки, изменённые параллельно, дописываются по одной, как в resolve.
+     * Повтор кода в пачке засчитывается один раз.
+     *
+     * @return код → URL только для доступных ссылок, в порядке codes
+     */
+    public Map<String, String> resolveAll(Collection<String> codesToResolve) {
+        long t0 = System.nanoTime();
+        try {
+            return resolveLinks(codesToResolve);
+        } catch (RuntimeException e) {
+            metrics.error(Op.RESOLVE_ALL);
+            throw e;
+        } finally {
+            metrics.record(Op.RESOLVE_ALL, System.nanoTime() - t0);
+        }
+    }
+
+    private Map<String, String> resolveLinks(Collection<String> codesToResolve) {
+        Instant now = Time.now();
+        Map<String, String> urls = new HashMap<>();
+        // поколения до чтения, как в load: invalidate после чтения не даст закэшировать старое
+        Map<String, Long> generations = new LinkedHashMap<>();
+        List<LinkKey> keys = new ArrayList<>();
+        for (String code : new LinkedHashSet<>(codesToResolve)) {
+            RedirectCache.Entry e = cache.get(code, now);
+            if (e != null) {
+                Optional<String> hit = fromCache(e, code);
+                if (hit != null) {
+                    hit.ifPresent(url -> urls.put(code, url));
+                    continue;
+                }
+            }
+            String owner = codes.ownerOf(code);
+            if (owner == null) continue;
+            generations.put(code, cache.generation(code));
+            keys.add(new LinkKey(owner, code));
+        }
+        Map<String, Link> found = new HashMap<>();
+        if (!keys.isEmpty()) {
+            for (Link l : repo.findAllByKey(keys)) found.put(l.shortCode, l);
+        }
+
+        List<Link> toSave = new ArrayList<>();
+        List<Link> limited = new ArrayList<>();
+        List<Link> expired = new ArrayList<>();
+        for (Map.Entry<String, Long> g : generations.entrySet()) {
+            String code = g.getKey();
+            Link l = found.get(code);
+            if (l == null) {
+                // ссылку уже вычистил cleanup, код можно выдавать заново
+                codes.release(code);
+                continue;
+            }
+            if (l.status == LinkStatus.DELETED) continue;
+            if (readOnly) {
+                replicaLoad(l, now).ifPresent(url -> urls.put(code, url));
+                continue;
+            }
+            if (l.status == LinkStatus.LIMIT_REACHED) continue;
+            if (l.isExpired(now)) {
+                clicks.overlay(l);
+                l.status = LinkStatus.EXPIRED;
+                toSave.add(l);
+                expired.add(l);
+                continue;
+            }
+            switch (clicks.click(l, toSave)) {
+                case REJECTED -> {
+                    // счётчик исчерпан, а статус в хранилище ещё нет
+                    toSave.add(clicks.overlay(l));
+                    limited.add(l);
+                }
+                case LAST -> {
+                    analytics.record(l.ownerUuid, code, System.currentTimeMillis());
+                    l.status = LinkStatus.LIMIT_REACHED;
+                    limited.add(l);
+                    urls.put(code, l.originalUrl);
+                }
+                case ACCEPTED -> {
+                    analytics.record(l.ownerUuid, code, System.currentTimeMillis());
+                    long expires = l.expiresAt == null ? Long.MAX_VALUE : l.expiresAt.toEpochMilli();
+                    cache.put(code, new RedirectCache.Entry(l.ownerUuid, l.originalUrl, expires, clicks.counter(l)), g.getValue());
+                    urls.put(code, l.originalUrl);
+                }
+            }
+        }
+
+        if (!toSave.isEmpty()) {
+            for (Link l : repo.compareAndSaveAll(toSave)) {
+                // ссылку изменили после чтения: истечение и счётчик пишутся по одной на свежей версии
+                if (l.status == LinkStatus.EXPIRED) expireOne(l.ownerUuid, l.shortCode, now);
+                else clicks.persist(l);
+            }
+        }
+        if (cfg.app.notifyOnLimit && !limited.isEmpty()) limited.forEach(ns::notifyLimit);
+        if (cfg.app.notifyOnExpire && !expired.isEmpty()) ns.notifyExpired(expired);
+
+        Map<String, String> out = new LinkedHashMap<>();
+        for (String code : codesToResolve) {
+            String url = urls.get(code);
+            if (url != null) out.putIfAbsent(code, url);
+        }
+        return out;
+    }
+
+    /**
+     * Переходы по ссылке пользователя за текущую минуту, час и сутки.
+     * @return пусто, если у пользователя нет такой ссылки
+     */
+    public Optional<ClickAnalytics.Counts> clickStats(String ownerUuid, String code) {
+        if (!repo.existsCode(ownerUuid, code)) return Optional.empty();
+        analytics.drain();
+        return Optional.of(analytics.byCode(code, Time.now().toEpochMilli()));
+    }
+
+    /** Переходы по всем ссылкам пользователя за текущую минуту, час и сутки */
+    public ClickAnalytics.Counts ownerClickStats(String ownerUuid) {
+        analytics.drain();
+        return analytics.byOwner(ownerUuid, Time.now().toEpochMilli());
+    }
+
+    /** До n самых посещаемых ссылок за текущий час */
+    public List<ClickAnalytics.HotLink> topLinks(int n) {
+        analytics.drain();
+        return analytics.top(n, Time.now().toEpochMilli());
+    }
+
+    /** Счётчики кэша редиректов: попадания, промахи, вытеснения */
+    public RedirectCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Переход по ссылке из CLI: засчитывает переход и открывает URL в браузере.
+     */
+    public boolean open(String ownerUuid, String code) {
+        Optional<String> url = resolve(ownerUuid, code);
+        if (url.isEmpty()) return false;
         // Пытаемся открыть ссылку в браузере
         try {
             if (Desktop.isDesktopSupported()) {
-                Desktop.getDesktop().browse(new URI(l.originalUrl));
+                Desktop.getDesktop().browse(new URI(url.get()));
             }
         } catch (Exception ignored) {
         }
 
         return true;
     }
+
+    /**
+     * Сбрасывает накопленные счётчики переходов в хранилище.
+     * Само хранилище закрывает тот, кто его создал.
+     */
+    @Override
+    public void close() {
+        if (leases != null) leases.close();
+        expiry.close();
+        analytics.close();
+        clicks.close();
+    }
 }
@@ -0,0 +1,44 @@
+package key.project.shortener.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс (владелец, хэш нормализованного URL) → короткий код для режима dedupUrls.
+ * Хранит только 64-битный хэш, а не сам URL, поэтому совпадение хэша вызывающий
+ * перепроверяет по ссылке из хранилища. Устаревшие записи (ссылка удалена, истекла,
+ * исчерпала лимит) отсеиваются этой же проверкой и перезаписываются новой ссылкой.
+ */
+final class UrlDedupIndex {
+    private record Key(String ownerUuid, long urlHash) {}
+
+    private final Map<Key, String> codes = new ConcurrentHashMap<>();
+
+    /** Код ссылки владельца на этот нормализованный URL или null */
+    String get(String ownerUuid, String normalizedUrl) {
+        return codes.get(new Key(ownerUuid, hash(normalizedUrl)));
+    }
+
+    void put(String ownerUuid, String normalizedUrl, String code) {
+        codes.put(new Key(ownerUuid, hash(normalizedUrl)), code);
+    }
+
+    /** Убирает запись, только если она всё ещё указывает на code */
+    void remove(String ownerUuid, String normalizedUrl, String code) {
+        codes.remove(new Key(ownerUuid, hash(normalizedUrl)), code);
+    }
+
+    int size() {
+        return codes.size();
+    }
+
+    /** 64-битный FNV-1a по символам строки */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
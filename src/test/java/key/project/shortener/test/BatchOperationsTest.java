@@ -0,0 +1,113 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.metrics.Metrics;
+import key.project.shortener.repo.FileLinkRepository;
+import key.project.shortener.service.CsvImporter;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты пакетного создания, редиректа, изменения лимита и импорта CSV.
+ */
+public class BatchOperationsTest {
+    private static final String USER = "12121212-1212-1212-1212-121212121212";
+
+    @Test
+    void batchIsCreatedAndUpdatedInBulk() throws IOException {
+        Path file = Path.of("target/test-storage-batch.json");
+        Files.deleteIfExists(file);
+        AppConfig cfg = AppConfig.load();
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString());
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            List<String> urls = new ArrayList<>();
+            for (int i = 0; i < 500; i++) urls.add("https://example.com/campaign/" + i);
+
+            List<Link> links = svc.createAll(USER, urls, 10);
+            assertEquals(500, links.size());
+            assertEquals(500, new HashSet<>(links.stream().map(l -> l.shortCode).toList()).size(), "Коды должны быть уникальны");
+            assertEquals(500, repo.findAllByOwner(USER).size());
+
+            // Невалидный URL отклоняет всю пачку
+            assertThrows(IllegalArgumentException.class, () -> svc.createAll(USER, List.of("https://ok.example", "не url"), null));
+            assertEquals(500, repo.findAllByOwner(USER).size());
+
+            List<String> codes = List.of(links.get(0).shortCode, links.get(1).shortCode, "нет-такого");
+            Map<String, String> resolved = svc.resolveAll(codes);
+            assertEquals(List.of(links.get(0).shortCode, links.get(1).shortCode), new ArrayList<>(resolved.keySet()));
+            assertEquals(urls.get(1), resolved.get(links.get(1).shortCode));
+
+            // Лимит 1 у ссылок, по которым уже был переход, сразу исчерпан
+            assertEquals(2, svc.setLimitAll(USER, codes, 1));
+            Link updated = repo.findByCode(USER, links.get(0).shortCode).orElseThrow();
+            assertEquals(1, updated.maxClicks);
+            assertEquals(LinkStatus.LIMIT_REACHED, updated.status);
+        }
+    }
+
+    @Test
+    void batchResolveReadsAndWritesOnce() throws IOException {
+        Path file = Path.of("target/test-storage-batch-resolve.json");
+        Files.deleteIfExists(file);
+        AppConfig cfg = AppConfig.load();
+        cfg.app.notifyOnLimit = false;
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString());
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            List<String> urls = new ArrayList<>();
+            for (int i = 0; i < 20; i++) urls.add("https://example.com/once/" + i);
+            List<String> codes = svc.createAll(USER, urls, 1).stream().map(l -> l.shortCode).toList();
+
+            // Каждый переход исчерпывает лимит: вся пачка читается одним проходом и пишется одной записью
+            long reads = Metrics.global().histogram(Metrics.IoOp.READ).count();
+            long writes = Metrics.global().histogram(Metrics.IoOp.WRITE).count();
+            assertEquals(20, svc.resolveAll(codes).size());
+            assertEquals(1, Metrics.global().histogram(Metrics.IoOp.READ).count() - reads);
+            assertEquals(1, Metrics.global().histogram(Metrics.IoOp.WRITE).count() - writes);
+
+            assertEquals(20, repo.findAllByStatus(LinkStatus.LIMIT_REACHED).size());
+            assertTrue(svc.resolveAll(codes).isEmpty());
+        }
+    }
+
+    @Test
+    void csvImportSkipsInvalidRows() throws IOException {
+        Path file = Path.of("target/test-storage-import.json");
+        Files.deleteIfExists(file);
+        AppConfig cfg = AppConfig.load();
+        String csv = """
+                url,maxClicks
+                https://example.com/a,5
+                # комментарий
+                не url
+                https://example.com/b?x=1,2
+
+                https://example.com/c
+                https://example.com/d,0
+                """;
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString());
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            List<Link> created = new ArrayList<>();
+            CsvImporter.Result r = new CsvImporter(svc, 2).importFrom(new BufferedReader(new StringReader(csv)), USER, created::add);
+            assertEquals(3, r.created());
+            assertEquals(2, r.skipped());
+            Link a = created.stream().filter(l -> l.originalUrl.endsWith("/a")).findFirst().orElseThrow();
+            assertEquals(5, a.maxClicks);
+            assertEquals(3, repo.findAllByOwner(USER).size());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package key.project.shortener.test;
+
+import key.project.shortener.analytics.ClickAnalytics;
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.repo.InMemoryLinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты оконной статистики переходов.
+ */
+public class ClickAnalyticsTest {
+
+    @Test
+    void opensAreCountedPerLinkAndOwner() throws IOException {
+        Path file = Path.of("target/test-storage-analytics.json");
+        Files.deleteIfExists(file);
+        AppConfig cfg = AppConfig.load();
+        cfg.app.analyticsDrainIntervalMs = 0;
+        String user = "99999999-9999-9999-9999-999999999999";
+
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository(file.toString(), 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            Link hot = svc.create(user, "https://example.com/hot", 100);
+            Link cold = svc.create(user, "https://example.com/cold", 100);
+            for (int i = 0; i < 5; i++) assertTrue(svc.open(user, hot.shortCode));
+            for (int i = 0; i < 2; i++) assertTrue(svc.open(user, cold.shortCode));
+
+            ClickAnalytics.Counts c = svc.clickStats(user, hot.shortCode).orElseThrow();
+            assertEquals(5, c.hour());
+            assertEquals(5, c.day());
+            assertEquals(7, svc.ownerClickStats(user).day());
+            assertTrue(svc.clickStats("00000000-0000-0000-0000-000000000001", hot.shortCode).isEmpty(),
+                    "Чужую статистику смотреть нельзя");
+
+            List<ClickAnalytics.HotLink> top = svc.topLinks(2);
+            assertEquals(hot.shortCode, top.get(0).shortCode());
+            assertTrue(top.get(0).clicks() >= 5);
+        }
+    }
+
+    @Test
+    void fullRingDropsEventsInsteadOfBlocking() {
+        try (ClickAnalytics a = new ClickAnalytics(4, 10, 0)) {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < 10; i++) a.record("u", "code", now);
+            assertEquals(6, a.dropped());
+            a.drain();
+            assertEquals(4, a.byCode("code", now).minute());
+        }
+    }
+
+    @Test
+    void idleLinksReleaseTheirSlots() {
+        try (ClickAnalytics a = new ClickAnalytics(1024, 10, 0)) {
+            long day = 24 * 3_600_000L;
+            long t = System.currentTimeMillis();
+            // каждые двое суток новая порция кодов; старые за это время простаивают
+            for (int round = 0; round < 20; round++, t += 2 * day) {
+                for (int i = 0; i < 50; i++) a.record("u", "r" + round + "-" + i, t);
+                a.drain();
+                assertTrue(a.trackedLinks() <= 100, "реестр растёт: " + a.trackedLinks());
+            }
+            long last = t - 2 * day;
+            assertEquals(1, a.byCode("r19-0", last).minute());
+            assertEquals(0, a.byCode("r0-0", last).day());
+
+            // старый код после освобождения считается заново, чужие счётчики не трогает
+            a.record("u", "r0-0", last);
+            a.drain();
+            assertEquals(1, a.byCode("r0-0", last).minute());
+            assertEquals(1, a.byCode("r19-0", last).minute());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.repo.ColumnarLinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты табличного хранилища в памяти.
+ */
+public class ColumnarLinkRepositoryTest {
+
+    @Test
+    void linksSurviveRestartAndUrlsAreShared() throws IOException {
+        Path file = Path.of("target/test-storage-columnar.json");
+        Files.deleteIfExists(file);
+        AppConfig cfg = AppConfig.load();
+        String user = "33333333-3333-3333-3333-333333333333";
+        String other = "44444444-4444-4444-4444-444444444444";
+
+        Link link;
+        try (ColumnarLinkRepository repo = new ColumnarLinkRepository(file.toString(), 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            link = svc.create(user, "https://example.net/a", 5);
+            for (int i = 0; i < 2000; i++) svc.create(i % 2 == 0 ? user : other, "https://example.net/" + (i % 10), null);
+            assertTrue(svc.open(user, link.shortCode));
+
+            // Одинаковые URL хранятся один раз
+            assertEquals(11, repo.distinctUrls());
+            assertEquals(1001, repo.findAllByOwner(user).size());
+
+            // Код не в формате сервиса тоже хранится
+            Link custom = new Link();
+            custom.ownerUuid = other;
+            custom.shortCode = "custom_code";
+            custom.originalUrl = "https://example.org";
+            custom.status = LinkStatus.ACTIVE;
+            custom.createdAt = Instant.now();
+            repo.save(custom);
+            assertTrue(repo.existsCode(other, "custom_code"));
+        }
+
+        // После close() данные поднимаются новым экземпляром
+        try (ColumnarLinkRepository repo = new ColumnarLinkRepository(file.toString(), 60_000)) {
+            Link fromRepo = repo.findByCode(user, link.shortCode).orElseThrow();
+            assertEquals(1, fromRepo.clickCount, "Счётчик кликов должен сохраниться");
+            assertEquals("https://example.net/a", fromRepo.originalUrl);
+            // Время хранится с точностью до миллисекунды, как в mmap
+            assertEquals(link.expiresAt.toEpochMilli(), fromRepo.expiresAt.toEpochMilli());
+            assertEquals(1001, repo.findAllByOwner(other).size());
+
+            repo.delete(user, link.shortCode);
+            assertEquals(1000, repo.findAllByOwner(user).size());
+            // Ссылка без срока жизни остаётся
+            assertEquals(2001, repo.deleteExpired(Instant.now().plus(Duration.ofDays(365))));
+            assertEquals(List.of(), repo.findAllByOwner(user));
+            assertEquals(1, repo.findAllByOwner(other).size());
+        }
+    }
+
+    @Test
+    void flushWhileWritingKeepsEveryLink() throws Exception {
+        Path file = Path.of("target/test-storage-columnar-flush.json");
+        Files.deleteIfExists(file);
+        String user = "55555555-5555-5555-5555-555555555555";
+        try (ColumnarLinkRepository repo = new ColumnarLinkRepository(file.toString(), 60_000)) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    Link l = new Link();
+                    l.ownerUuid = user;
+                    l.shortCode = "code-" + i;
+                    l.originalUrl = "https://example.net/" + i;
+                    l.status = LinkStatus.ACTIVE;
+                    l.createdAt = Instant.now();
+                    repo.save(l);
+                }
+            });
+            writer.start();
+            // Сброс копирует столбцы и пишет файл параллельно с записью новых строк
+            while (writer.isAlive()) repo.flush();
+            writer.join();
+        }
+        try (ColumnarLinkRepository repo = new ColumnarLinkRepository(file.toString(), 60_000)) {
+            assertEquals(20_000, repo.findAllByOwner(user).size());
+            assertEquals("https://example.net/19999", repo.findByCode(user, "code-19999").orElseThrow().originalUrl);
+        }
+    }
+}
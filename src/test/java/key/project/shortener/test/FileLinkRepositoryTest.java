@@ -0,0 +1,188 @@
+package key.project.shortener.test;
+
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.metrics.Metrics;
+import key.project.shortener.repo.FileLinkRepository;
+import key.project.shortener.repo.FsyncPolicy;
+import key.project.shortener.service.ClickCounter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static key.project.shortener.test.TestSupport.link;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты потокового JSON-хранилища.
+ */
+public class FileLinkRepositoryTest {
+    private static final String USER = "34343434-3434-3434-3434-343434343434";
+
+    @Test
+    void streamingQueriesAndCompactRewrite() throws IOException {
+        Path file = Path.of("target/test-storage-stream.json");
+        Files.deleteIfExists(file);
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString())) {
+            List<Link> batch = new ArrayList<>();
+            for (int i = 0; i < 100; i++) batch.add(link(USER, "code" + i, i % 10 == 0 ? LinkStatus.EXPIRED : LinkStatus.ACTIVE));
+            repo.saveAll(batch);
+
+            long parses = Metrics.global().histogram(Metrics.IoOp.PARSE).count();
+            assertEquals(10, repo.findAllByStatus(LinkStatus.EXPIRED).size());
+            assertTrue(Metrics.global().histogram(Metrics.IoOp.PARSE).count() > parses, "Разбор JSON должен попадать в метрики");
+            assertEquals("https://example.com/code42", repo.findByCode(USER, "code42").orElseThrow().originalUrl);
+
+            // Повторное сохранение заменяет запись, а не добавляет новую
+            Link l = repo.findByCode(USER, "code7").orElseThrow();
+            l.clickCount = 3;
+            repo.save(l);
+            assertEquals(3, repo.findByCode(USER, "code7").orElseThrow().clickCount);
+            repo.delete(USER, "code8");
+            assertEquals(99, repo.findAllByOwner(USER).size());
+
+            String json = Files.readString(file);
+            assertFalse(json.contains("\n"), "Файл пишется компактно, без отступов");
+            assertFalse(Files.exists(Path.of(file + ".tmp")), "Временный файл должен быть переименован");
+        }
+    }
+
+    @Test
+    void corruptFileIsQuarantined() throws IOException {
+        Path file = Path.of("target/test-storage-stream-corrupt.json");
+        Path backup = Path.of(file + ".corrupt");
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(backup);
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString())) {
+            repo.save(link(USER, "kept"));
+        }
+        // Обрываем файл посреди второй ссылки
+        String json = Files.readString(file);
+        String corrupt = json.substring(0, json.length() - 1) + ",{\"ownerUuid\": \"" + USER + "\", \"shortCode\": ";
+        Files.writeString(file, corrupt);
+
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString())) {
+            // Оригинал сохраняется как *.corrupt, читаемое начало остаётся на месте
+            assertEquals(1, repo.findAllByOwner(USER).size());
+            assertEquals(corrupt, Files.readString(backup));
+            assertEquals(json, Files.readString(file));
+        }
+
+        // Запись поверх повреждённого файла тоже сохраняет оригинал, а не молча отбрасывает хвост
+        Files.writeString(file, corrupt);
+        Files.delete(backup);
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString())) {
+            repo.save(link(USER, "added"));
+            assertEquals(corrupt, Files.readString(backup));
+            assertEquals(2, repo.findAllByOwner(USER).size());
+        }
+    }
+
+    @Test
+    void concurrentSavesShareOneCommit() throws IOException {
+        Path file = Path.of("target/test-storage-group.json");
+        Files.deleteIfExists(file);
+        long commitsBefore = Metrics.global().histogram(Metrics.IoOp.COMMIT).count();
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString(), FsyncPolicy.INTERVAL, 300)) {
+            // Сохранения из разных потоков за одно окно попадают в одну запись файла
+            List<CompletableFuture<Void>> saves = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 5; t++) {
+                int base = t * 10;
+                Thread th = new Thread(() -> {
+                    for (int i = 0; i < 10; i++) {
+                        CompletableFuture<Void> f = repo.saveAsync(link(USER, "group" + (base + i), LinkStatus.ACTIVE));
+                        synchronized (saves) {
+                            saves.add(f);
+                        }
+                    }
+                });
+                threads.add(th);
+                th.start();
+            }
+            for (Thread th : threads) th.join();
+            CompletableFuture.allOf(saves.toArray(new CompletableFuture[0])).join();
+
+            assertEquals(50, repo.findAllByOwner(USER).size());
+            long commits = Metrics.global().histogram(Metrics.IoOp.COMMIT).count() - commitsBefore;
+            assertTrue(commits >= 1 && commits <= 2, "50 сохранений за одно окно — одна-две записи, а не " + commits);
+
+            // Обычный save ждёт своей группы
+            Link l = repo.findByCode(USER, "group7").orElseThrow();
+            l.clickCount = 5;
+            repo.save(l);
+            assertEquals(5, repo.findByCode(USER, "group7").orElseThrow().clickCount);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+    }
+
+    @Test
+    void clickFlushAndCasShareOneCommit() throws IOException {
+        Path file = Path.of("target/test-storage-group-clicks.json");
+        Files.deleteIfExists(file);
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString(), FsyncPolicy.INTERVAL, 200);
+                ClickCounter counter = new ClickCounter(repo, 60_000)) {
+            List<Link> batch = new ArrayList<>();
+            for (int i = 0; i < 20; i++) batch.add(link(USER, "clicks" + i, LinkStatus.ACTIVE));
+            repo.saveAll(batch);
+
+            // Сброс двадцати счётчиков — одна группа, а не запись на каждый счётчик
+            // (метрики общие, поэтому допускаются чужие записи параллельных тестов)
+            for (Link l : batch) counter.click(l);
+            long writes = Metrics.global().histogram(Metrics.IoOp.WRITE).count();
+            counter.flush();
+            long flushWrites = Metrics.global().histogram(Metrics.IoOp.WRITE).count() - writes;
+            assertTrue(flushWrites >= 1 && flushWrites < 5, "сброс 20 счётчиков — " + flushWrites + " записей");
+            for (Link l : repo.findAllByOwner(USER)) assertEquals(1, l.clickCount);
+
+            // compareAndSaveAll проверяет версии в проходе группы: устаревшая ссылка возвращается
+            List<Link> fresh = repo.findAllByOwner(USER);
+            Link stale = fresh.get(0).copy();
+            stale.version--;
+            List<Link> cas = new ArrayList<>(fresh.subList(1, 5));
+            cas.add(stale);
+            long version = cas.get(0).version;
+            assertEquals(List.of(stale), repo.compareAndSaveAll(cas));
+            assertEquals(version + 1, cas.get(0).version);
+            assertFalse(repo.compareAndSave(stale, stale.version));
+            assertEquals(version + 1, repo.findByCode(USER, cas.get(0).shortCode).orElseThrow().version);
+        }
+    }
+
+    @Test
+    void savesRacingCloseNeverHang() throws Exception {
+        Path file = Path.of("target/test-storage-group-close.json");
+        Files.deleteIfExists(file);
+        FileLinkRepository repo = new FileLinkRepository(file.toString(), FsyncPolicy.PER_OP, 0);
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                CompletableFuture<Void> f = repo.saveAsync(link(USER, "close" + i, LinkStatus.ACTIVE));
+                synchronized (saves) {
+                    saves.add(f);
+                }
+            }
+        });
+        writer.start();
+        Thread.sleep(5);
+        repo.close();
+        writer.join();
+        // Каждое сохранение завершается: записью до закрытия или ошибкой после
+        for (CompletableFuture<Void> f : saves) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+    }
+}
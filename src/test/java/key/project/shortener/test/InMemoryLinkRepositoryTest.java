@@ -0,0 +1,98 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.repo.InMemoryLinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты хранилища в памяти с фоновым сбросом на диск.
+ */
+public class InMemoryLinkRepositoryTest {
+
+    @Test
+    void linksSurviveRestart() throws IOException {
+        Path file = Path.of("target/test-storage-memory.json");
+        Files.deleteIfExists(file);
+        AppConfig cfg = AppConfig.load();
+        String user = "22222222-2222-2222-2222-222222222222";
+
+        Link link;
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository(file.toString(), 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            link = svc.create(user, "https://example.net", 5);
+            assertTrue(svc.open(user, link.shortCode));
+        }
+
+        // После close() данные должны лежать на диске и подниматься новым экземпляром
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository(file.toString(), 60_000)) {
+            Link fromRepo = repo.findByCode(user, link.shortCode).orElseThrow();
+            assertEquals(1, fromRepo.clickCount, "Счётчик кликов должен сохраниться");
+            assertEquals(1, repo.findAllByOwner(user).size());
+        }
+    }
+
+    @Test
+    void changesWithoutSaveAreNotVisible() {
+        try (InMemoryLinkRepository repo =
+                new InMemoryLinkRepository("target/test-storage-memory-copy.json", 60_000)) {
+            Link l = new Link();
+            l.ownerUuid = "33333333-3333-3333-3333-333333333333";
+            l.shortCode = "33333333-abcdef";
+            l.originalUrl = "https://example.com";
+            repo.save(l);
+
+            // Индекс хранит свою копию, изменение объекта без save не должно в него попадать
+            l.clickCount = 42;
+            assertEquals(0, repo.findByCode(l.ownerUuid, l.shortCode).orElseThrow().clickCount);
+        }
+    }
+
+    @Test
+    void snapshotFallsBackToJsonWhenCorruptOrStale() throws IOException {
+        Path file = Path.of("target/test-storage-snapshot.json");
+        Path snap = Path.of("target/test-storage-snapshot.json.snapshot");
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(snap);
+        AppConfig cfg = AppConfig.load();
+        String user = "55555555-5555-5555-5555-555555555555";
+
+        Link link;
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository(file.toString(), 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            link = svc.create(user, "https://example.com/snap", 7);
+            for (int i = 0; i < 100; i++) svc.create(user, "https://example.com/" + (i % 3), null);
+        }
+        assertTrue(Files.exists(snap), "При сбросе должен записываться снимок");
+
+        // Снимок поднимает ссылки без потери точности времени
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository(file.toString(), 60_000)) {
+            Link fromRepo = repo.findByCode(user, link.shortCode).orElseThrow();
+            assertEquals(link.createdAt, fromRepo.createdAt);
+            assertEquals(7, fromRepo.maxClicks);
+            assertEquals(101, repo.findAllByOwner(user).size());
+        }
+
+        // Испорченный снимок не принимается, данные берутся из JSON
+        byte[] bytes = Files.readAllBytes(snap);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(snap, bytes);
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository(file.toString(), 60_000)) {
+            assertEquals(101, repo.findAllByOwner(user).size());
+        }
+
+        // JSON изменён после снимка: снимок устарел
+        Files.writeString(file, "[]");
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository(file.toString(), 60_000)) {
+            assertEquals(0, repo.findAllByOwner(user).size());
+        }
+    }
+}
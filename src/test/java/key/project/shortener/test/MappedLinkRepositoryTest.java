@@ -0,0 +1,79 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.repo.FileLinkRepository;
+import key.project.shortener.repo.JsonToMappedMigration;
+import key.project.shortener.repo.MappedLinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты бинарного хранилища на отображаемых в память файлах.
+ */
+public class MappedLinkRepositoryTest {
+
+    private static final Path DIR = Path.of("target/test-mmap");
+    private static final String USER = "55555555-5555-5555-5555-555555555555";
+
+    @BeforeEach
+    void clean() throws IOException {
+        if (Files.exists(DIR)) {
+            try (Stream<Path> files = Files.walk(DIR)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void growsAndReopens() {
+        AppConfig cfg = AppConfig.load();
+        List<String> codes = new ArrayList<>();
+        try (MappedLinkRepository repo = new MappedLinkRepository(DIR.toString());
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            // больше начальной ёмкости файла записей и индекса
+            for (int i = 0; i < 3000; i++) codes.add(svc.create(USER, "https://example.com/" + i, 2).shortCode);
+            assertTrue(svc.open(USER, codes.get(7)));
+        }
+        try (MappedLinkRepository repo = new MappedLinkRepository(DIR.toString())) {
+            Link l = repo.findByCode(USER, codes.get(7)).orElseThrow();
+            assertEquals(1, l.clickCount);
+            assertEquals("https://example.com/7", l.originalUrl);
+            assertEquals(3000, repo.findAllByOwner(USER).size());
+            repo.delete(USER, codes.get(8));
+            assertEquals(LinkStatus.DELETED, repo.findByCode(USER, codes.get(8)).orElseThrow().status);
+        }
+    }
+
+    @Test
+    void migratesFromJson() throws IOException {
+        Path json = Path.of("target/test-storage-migrate.json");
+        Files.deleteIfExists(json);
+        Link created;
+        try (FileLinkRepository file = new FileLinkRepository(json.toString());
+                ShortenerService svc = new ShortenerService(file, AppConfig.load(), new NotificationService())) {
+            created = svc.create(USER, "https://example.org", 3);
+        }
+
+        int[] result = JsonToMappedMigration.migrate(json, DIR.toString());
+        assertEquals(1, result[0]);
+
+        try (MappedLinkRepository repo = new MappedLinkRepository(DIR.toString())) {
+            Link l = repo.findByCode(USER, created.shortCode).orElseThrow();
+            assertEquals(created.expiresAt.toEpochMilli(), l.expiresAt.toEpochMilli());
+            assertEquals(3, l.maxClicks);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.metrics.LatencyHistogram;
+import key.project.shortener.metrics.Metrics;
+import key.project.shortener.metrics.PrometheusFormat;
+import key.project.shortener.repo.FileLinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты гистограмм задержек и метрик сервиса.
+ */
+public class MetricsTest {
+
+    @Test
+    void percentilesStayWithinBucketError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) h.record(v * 1000);
+
+        assertEquals(100_000, h.count());
+        assertEquals(100_000_000, h.maxNanos());
+        // Погрешность лог-линейных корзин — не больше 1/32 значения
+        assertEquals(50_000_000, h.percentile(50), 50_000_000 / 32.0);
+        assertEquals(99_000_000, h.percentile(99), 99_000_000 / 32.0);
+        assertEquals(100_000_000, h.percentile(100));
+    }
+
+    @Test
+    void serviceOperationsAreRecorded() throws IOException {
+        Path file = Path.of("target/test-storage-metrics.json");
+        Files.deleteIfExists(file);
+        AppConfig cfg = AppConfig.load();
+        String user = "66666666-6666-6666-6666-666666666666";
+        Metrics m = Metrics.global();
+        long creates = m.histogram(Metrics.Op.CREATE).count();
+        long opens = m.histogram(Metrics.Op.OPEN).count();
+        long createErrors = m.errors(Metrics.Op.CREATE);
+        long createAll = m.histogram(Metrics.Op.CREATE_ALL).count();
+        long setLimitAll = m.histogram(Metrics.Op.SET_LIMIT_ALL).count();
+        long resolveAll = m.histogram(Metrics.Op.RESOLVE_ALL).count();
+        long written = m.bytesWritten();
+
+        try (ShortenerService svc = new ShortenerService(new FileLinkRepository(file.toString()), cfg, new NotificationService())) {
+            Link l = svc.create(user, "https://example.org/metrics", 3);
+            svc.open(user, l.shortCode);
+            assertThrows(IllegalArgumentException.class, () -> svc.create(user, "не url", 3));
+            // Пакетные операции учитываются отдельно
+            List<Link> batch = svc.createAll(user, List.of("https://example.org/b1", "https://example.org/b2"), 3);
+            svc.setLimitAll(user, List.of(batch.get(0).shortCode), 5);
+            svc.resolveAll(List.of(batch.get(1).shortCode));
+        }
+
+        assertTrue(m.histogram(Metrics.Op.CREATE).count() >= creates + 2);
+        assertTrue(m.histogram(Metrics.Op.OPEN).count() >= opens + 1);
+        assertTrue(m.errors(Metrics.Op.CREATE) >= createErrors + 1);
+        assertTrue(m.histogram(Metrics.Op.CREATE_ALL).count() >= createAll + 1);
+        assertTrue(m.histogram(Metrics.Op.SET_LIMIT_ALL).count() >= setLimitAll + 1);
+        assertTrue(m.histogram(Metrics.Op.RESOLVE_ALL).count() >= resolveAll + 1);
+        assertTrue(m.bytesWritten() > written, "Запись файла должна учитываться в байтах");
+
+        String text = PrometheusFormat.format(m);
+        assertTrue(text.contains("shortener_operation_seconds_count{op=\"create\"}"));
+        assertTrue(text.contains("shortener_operation_seconds_count{op=\"create_all\"}"));
+        assertTrue(text.contains("shortener_repository_bytes_total{direction=\"write\"}"));
+    }
+}
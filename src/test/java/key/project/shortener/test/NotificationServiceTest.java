@@ -0,0 +1,55 @@
+package key.project.shortener.test;
+
+import key.project.shortener.notify.Notification;
+import key.project.shortener.notify.NotificationSink;
+import key.project.shortener.service.NotificationService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static key.project.shortener.test.TestSupport.link;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты асинхронной доставки уведомлений.
+ */
+public class NotificationServiceTest {
+
+    private static final String USER = "88888888-8888-8888-8888-888888888888";
+
+    @Test
+    void duplicatesAreCoalescedAndOverflowIsDropped() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<Notification>> batches = new CopyOnWriteArrayList<>();
+        NotificationSink sink = batch -> {
+            batches.add(batch);
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        NotificationService ns = new NotificationService(3, 100, List.of(sink));
+        ns.notifyLimit(link(USER, "first"));
+        // Поток доставки занят первой пачкой, дальше события копятся в очереди ёмкостью 3
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        ns.notifyLimit(link(USER, "hot"));
+        ns.notifyLimit(link(USER, "hot"));
+        ns.notifyExpired(link(USER, "other"));
+        ns.notifyLimit(link(USER, "dropped"));
+        release.countDown();
+        ns.close();
+
+        NotificationService.Stats s = ns.stats();
+        assertEquals(1, s.dropped(), "Событие сверх ёмкости очереди должно быть отброшено");
+        assertEquals(1, s.coalesced(), "Повтор по той же ссылке должен схлопнуться");
+        assertEquals(2, batches.size());
+        assertEquals(List.of("hot", "other"), batches.get(1).stream().map(Notification::shortCode).toList());
+    }
+}
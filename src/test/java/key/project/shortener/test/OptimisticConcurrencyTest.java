@@ -0,0 +1,135 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.repo.*;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+import static key.project.shortener.test.TestSupport.deleteAll;
+import static key.project.shortener.test.TestSupport.link;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты версий ссылок и compareAndSave во всех хранилищах.
+ */
+public class OptimisticConcurrencyTest {
+
+    private static final String USER = "99999999-9999-9999-9999-999999999999";
+
+    @Test
+    void everyStorageChecksVersions() throws IOException {
+        Path dir = Path.of("target/test-cas");
+        deleteAll(dir);
+        List<Supplier<LinkRepository>> storages = List.of(
+                () -> new FileLinkRepository(dir.resolve("file.json").toString()),
+                () -> new InMemoryLinkRepository(dir.resolve("memory.json").toString(), 60_000),
+                () -> new WalLinkRepository(dir.resolve("wal").toString(), dir.resolve("wal.json").toString(), 1 << 20, 60_000),
+                () -> new MappedLinkRepository(dir.resolve("mmap").toString()),
+                () -> new ColumnarLinkRepository(dir.resolve("columnar.json").toString(), 60_000),
+                () -> new ShardedLinkRepository(dir.resolve("sharded"), 2,
+                        i -> new InMemoryLinkRepository(dir.resolve("sharded/" + i + ".json").toString(), 60_000)));
+
+        for (Supplier<LinkRepository> storage : storages) {
+            Link link = link(USER, "99999999-abc123");
+            try (LinkRepository repo = storage.get()) {
+                repo.save(link);
+                assertEquals(1, link.version, repo.getClass().getSimpleName());
+                Link stale = repo.findByCode(USER, link.shortCode).orElseThrow();
+
+                repo.updateClicks(USER, link.shortCode, 3, null);
+                Link fresh = repo.findByCode(USER, link.shortCode).orElseThrow();
+                assertEquals(2, fresh.version, "Запись счётчика тоже меняет версию");
+
+                // Запись поверх устаревшей версии не проходит и не затирает счётчик
+                stale.maxClicks = 100;
+                assertFalse(repo.compareAndSave(stale, stale.version));
+                assertEquals(3, repo.findByCode(USER, link.shortCode).orElseThrow().clickCount);
+
+                fresh.maxClicks = 100;
+                assertTrue(repo.compareAndSave(fresh, 2));
+                assertEquals(3, fresh.version);
+                assertFalse(repo.compareAndSave(link(USER, "99999999-zzz999"), 0), "Несуществующую ссылку CAS не создаёт");
+
+                // Пачка: ссылка со свежей версией сохраняется, устаревшая возвращается конфликтом
+                repo.save(link(USER, "99999999-def456"));
+                Link staleOther = repo.findByCode(USER, "99999999-def456").orElseThrow();
+                repo.updateClicks(USER, staleOther.shortCode, 1, LinkStatus.LIMIT_REACHED);
+                fresh.maxClicks = 200;
+                staleOther.maxClicks = 200;
+                List<Link> failed = repo.compareAndSaveAll(List.of(fresh, staleOther));
+                assertEquals(1, failed.size(), repo.getClass().getSimpleName());
+                assertSame(staleOther, failed.get(0));
+                assertEquals(4, fresh.version);
+                assertEquals(1, staleOther.version, "Версия несохранённой ссылки не меняется");
+                assertEquals(LinkStatus.LIMIT_REACHED, repo.findByCode(USER, staleOther.shortCode).orElseThrow().status);
+
+                repo.delete(USER, link.shortCode);
+            }
+            // Версия переживает перезапуск
+            try (LinkRepository repo = storage.get()) {
+                Link l = repo.findByCode(USER, link.shortCode).orElseThrow();
+                assertEquals(5, l.version, repo.getClass().getSimpleName());
+                assertEquals(LinkStatus.DELETED, l.status);
+                assertEquals(200, l.maxClicks);
+            }
+        }
+    }
+
+    @Test
+    void setLimitDoesNotLoseConcurrentClicks() throws Exception {
+        AppConfig cfg = AppConfig.load();
+        cfg.app.clickFlushIntervalMs = 0;
+        cfg.app.cacheMaxEntries = 0;
+        Path file = Path.of("target/test-storage-cas.json");
+        Files.deleteIfExists(file);
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository(file.toString(), 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            Link link = svc.create(USER, "https://example.com", 1_000_000);
+            ExecutorService pool = Executors.newFixedThreadPool(5);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) assertTrue(svc.open(USER, link.shortCode));
+                }));
+            }
+            tasks.add(pool.submit(() -> {
+                for (int i = 0; i < 200; i++) svc.setLimit(USER, link.shortCode, 1_000_000 + i);
+            }));
+            for (Future<?> f : tasks) f.get();
+            pool.shutdown();
+
+            Link fromRepo = repo.findByCode(USER, link.shortCode).orElseThrow();
+            assertEquals(2000, fromRepo.clickCount, "Переходы не должны теряться при параллельной смене лимита");
+            assertEquals(1_000_199, fromRepo.maxClicks);
+        }
+    }
+
+    @Test
+    void mappedFormatOneIsRejected() throws IOException {
+        Path dir = Path.of("target/test-cas-mmap-v1");
+        deleteAll(dir);
+        try (MappedLinkRepository repo = new MappedLinkRepository(dir.toString())) {
+            repo.save(link(USER, "99999999-abc123"));
+        }
+        // Заголовок формата 1: такой файл не переписывается молча, а отклоняется с понятной ошибкой
+        Path file = dir.resolve("links.dat");
+        byte[] data = Files.readAllBytes(file);
+        ByteBuffer.wrap(data).putInt(4, 1);
+        Files.write(file, data);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> new MappedLinkRepository(dir.toString()));
+        assertTrue(e.getMessage().contains("JsonToMappedMigration"), e.getMessage());
+    }
+}
@@ -0,0 +1,166 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.replication.*;
+import key.project.shortener.repo.InMemoryLinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.QuotaAuthority;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static key.project.shortener.test.TestSupport.replicationConfig;
+import static key.project.shortener.test.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Распределённый лимит переходов на арендах квот: лидер и последователи на localhost.
+ */
+public class QuotaLeaseTest {
+
+    private static final String USER = "88888888-8888-8888-8888-888888888888";
+
+    private static AppConfig config(String role, int leaseSize, long leaseMs) {
+        AppConfig cfg = replicationConfig(role);
+        cfg.app.quotaLeaseSize = leaseSize;
+        cfg.app.quotaLeaseMs = leaseMs;
+        cfg.app.notifyOnLimit = false;
+        return cfg;
+    }
+
+    @Test
+    void nodesTogetherNeverExceedLimit() throws Exception {
+        Path file = Path.of("target/test-quota-limit.json");
+        Files.deleteIfExists(file);
+        try (ReplicatedLinkRepository leaderRepo = new ReplicatedLinkRepository(new InMemoryLinkRepository(file.toString(), 60_000), 1000);
+                ReplicationLeader leader = new ReplicationLeader(leaderRepo, 0, 100);
+                ShortenerService svc = new ShortenerService(leaderRepo, config("leader", 0, 60_000), new NotificationService());
+                QuotaServer quotaServer = new QuotaServer(svc.quota(), 0);
+                RemoteQuotaAuthority remote = new RemoteQuotaAuthority("localhost", quotaServer.port())) {
+            Link link = svc.create(USER, "https://example.com/limited", 500);
+
+            // Один последователь арендует у лидера в процессе, второй — по TCP
+            List<ShortenerService> nodes = new ArrayList<>(List.of(svc));
+            List<AutoCloseable> followers = new ArrayList<>();
+            for (QuotaAuthority authority : List.of(svc.quota(), remote)) {
+                ReplicaLinkRepository replica = new ReplicaLinkRepository();
+                ReplicationFollower f = new ReplicationFollower(replica, "localhost", leader.port(), 100);
+                ShortenerService read = new ShortenerService(replica, config("follower", 7, 60_000), new NotificationService(), authority);
+                replica.onApply(read::onReplicated);
+                waitFor(() -> replica.existsCode(USER, link.shortCode));
+                nodes.add(read);
+                followers.add(read);
+                followers.add(f);
+            }
+
+            AtomicInteger served = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(12);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (ShortenerService node : nodes) {
+                for (int t = 0; t < 4; t++) {
+                    tasks.add(pool.submit(() -> {
+                        while (node.resolve(link.shortCode).isPresent()) served.incrementAndGet();
+                    }));
+                }
+            }
+            for (Future<?> f : tasks) f.get();
+            pool.shutdown();
+
+            assertEquals(500, served.get(), "Все узлы вместе должны отдать ровно maxClicks переходов");
+            Link l = svc.info(USER, link.shortCode).orElseThrow();
+            assertEquals(500, l.clickCount);
+            assertEquals(LinkStatus.LIMIT_REACHED, l.status);
+            for (AutoCloseable c : followers) c.close();
+        }
+    }
+
+    @Test
+    void unusedQuotaReturnsToLeader() throws Exception {
+        Path file = Path.of("target/test-quota-return.json");
+        Files.deleteIfExists(file);
+        try (ReplicatedLinkRepository leaderRepo = new ReplicatedLinkRepository(new InMemoryLinkRepository(file.toString(), 60_000), 1000);
+                ReplicationLeader leader = new ReplicationLeader(leaderRepo, 0, 100);
+                ShortenerService svc = new ShortenerService(leaderRepo, config("leader", 0, 300), new NotificationService());
+                QuotaServer quotaServer = new QuotaServer(svc.quota(), 0);
+                RemoteQuotaAuthority remote = new RemoteQuotaAuthority("localhost", quotaServer.port())) {
+            Link link = svc.create(USER, "https://example.com/returned", 20);
+            ReplicaLinkRepository replica = new ReplicaLinkRepository();
+            try (ReplicationFollower f = new ReplicationFollower(replica, "localhost", leader.port(), 100)) {
+                ShortenerService read = new ShortenerService(replica, config("follower", 10, 300), new NotificationService(), remote);
+                replica.onApply(read::onReplicated);
+                waitFor(() -> f.lastSeq() == leaderRepo.lastSeq());
+
+                // Аренда из 10 переходов засчитана лидером сразу
+                for (int i = 0; i < 3; i++) assertTrue(read.resolve(link.shortCode).isPresent());
+                assertEquals(10, svc.info(USER, link.shortCode).orElseThrow().clickCount);
+                assertEquals(1, svc.outstandingLeases());
+
+                // По истечении аренды остаток 7 возвращается
+                waitFor(() -> svc.info(USER, link.shortCode).orElseThrow().clickCount == 3);
+                assertEquals(0, svc.outstandingLeases());
+
+                // Закрытие сервиса последователя возвращает остаток текущей аренды
+                for (int i = 0; i < 2; i++) assertTrue(read.resolve(link.shortCode).isPresent());
+                read.close();
+                Link l = svc.info(USER, link.shortCode).orElseThrow();
+                assertEquals(5, l.clickCount);
+                assertEquals(LinkStatus.ACTIVE, l.status);
+                waitFor(() -> replica.findByCode(USER, link.shortCode).orElseThrow().clickCount == 5);
+            }
+        }
+    }
+
+    @Test
+    void quotaServerRejectsWrongSecret() throws Exception {
+        Path file = Path.of("target/test-quota-secret.json");
+        Files.deleteIfExists(file);
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository(file.toString(), 60_000);
+                ShortenerService svc = new ShortenerService(repo, config("leader", 0, 60_000), new NotificationService());
+                QuotaServer quotaServer = new QuotaServer(svc.quota(), "127.0.0.1", 0, "s3cret");
+                RemoteQuotaAuthority stranger = new RemoteQuotaAuthority("127.0.0.1", quotaServer.port(), "guess");
+                RemoteQuotaAuthority follower = new RemoteQuotaAuthority("127.0.0.1", quotaServer.port(), "s3cret")) {
+            Link link = svc.create(USER, "https://example.com/secret", 20);
+
+            // Без секрета аренду не выдают и лимит чужой ссылки не расходуется
+            assertThrows(UncheckedIOException.class, () -> stranger.acquire(USER, link.shortCode, 20));
+            assertEquals(0, svc.info(USER, link.shortCode).orElseThrow().clickCount);
+
+            assertEquals(5, follower.acquire(USER, link.shortCode, 5).clicks());
+            assertEquals(5, svc.info(USER, link.shortCode).orElseThrow().clickCount);
+        }
+    }
+
+    @Test
+    void leaseOfDeletedLinkReturnsAtOnce() throws Exception {
+        Path file = Path.of("target/test-quota-delete.json");
+        Files.deleteIfExists(file);
+        try (ReplicatedLinkRepository leaderRepo = new ReplicatedLinkRepository(new InMemoryLinkRepository(file.toString(), 60_000), 1000);
+                ReplicationLeader leader = new ReplicationLeader(leaderRepo, 0, 100);
+                ShortenerService svc = new ShortenerService(leaderRepo, config("leader", 0, 60_000), new NotificationService())) {
+            Link link = svc.create(USER, "https://example.com/deleted", 20);
+            ReplicaLinkRepository replica = new ReplicaLinkRepository();
+            try (ReplicationFollower f = new ReplicationFollower(replica, "localhost", leader.port(), 100);
+                    ShortenerService read = new ShortenerService(replica, config("follower", 10, 60_000), new NotificationService(), svc.quota())) {
+                replica.onApply(read::onReplicated);
+                waitFor(() -> f.lastSeq() == leaderRepo.lastSeq());
+                assertTrue(read.resolve(link.shortCode).isPresent());
+                assertEquals(1, svc.outstandingLeases());
+
+                // Аренда минутная, но удаление ссылки на лидере возвращает её сразу
+                svc.delete(USER, link.shortCode);
+                waitFor(() -> svc.outstandingLeases() == 0);
+                assertTrue(read.resolve(link.shortCode).isEmpty());
+            }
+        }
+    }
+}
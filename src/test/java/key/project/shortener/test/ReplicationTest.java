@@ -0,0 +1,191 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.replication.ReplicaLinkRepository;
+import key.project.shortener.replication.ReplicatedLinkRepository;
+import key.project.shortener.replication.ReplicationFollower;
+import key.project.shortener.replication.ReplicationLeader;
+import key.project.shortener.repo.ColumnarLinkRepository;
+import key.project.shortener.repo.InMemoryLinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static key.project.shortener.test.TestSupport.link;
+import static key.project.shortener.test.TestSupport.replicationConfig;
+import static key.project.shortener.test.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Репликация лидер → последователи на localhost.
+ */
+public class ReplicationTest {
+
+    private static final String USER = "77777777-7777-7777-7777-777777777777";
+
+    private static AppConfig config(String role) {
+        AppConfig cfg = replicationConfig(role);
+        cfg.app.clickFlushIntervalMs = 0;
+        return cfg;
+    }
+
+    @Test
+    void followersServeLeaderState() throws IOException {
+        Path file = Path.of("target/test-replication-leader.json");
+        Files.deleteIfExists(file);
+        try (ReplicatedLinkRepository leaderRepo = new ReplicatedLinkRepository(new InMemoryLinkRepository(file.toString(), 60_000), 1000);
+                ReplicationLeader leader = new ReplicationLeader(leaderRepo, 0, 100);
+                ShortenerService svc = new ShortenerService(leaderRepo, config("leader"), new NotificationService())) {
+            Link early = svc.create(USER, "https://example.com/early", 5);
+
+            // Первый последователь догоняет по снимку, второй подключается позже и получает всё
+            ReplicaLinkRepository replica1 = new ReplicaLinkRepository();
+            ReplicaLinkRepository replica2 = new ReplicaLinkRepository();
+            try (ReplicationFollower f1 = new ReplicationFollower(replica1, "localhost", leader.port(), 100);
+                    ShortenerService read1 = new ShortenerService(replica1, config("follower"), new NotificationService())) {
+                replica1.onApply(read1::onReplicated);
+                waitFor(() -> f1.lastSeq() == leaderRepo.lastSeq() && f1.connected());
+                assertEquals(Optional.of("https://example.com/early"), read1.resolve(early.shortCode));
+
+                Link later = svc.create(USER, "https://example.com/later", null);
+                svc.setLimit(USER, early.shortCode, 7);
+                assertTrue(svc.open(USER, early.shortCode));
+                svc.delete(USER, later.shortCode);
+
+                try (ReplicationFollower f2 = new ReplicationFollower(replica2, "localhost", leader.port(), 100);
+                        ShortenerService read2 = new ShortenerService(replica2, config("follower"), new NotificationService())) {
+                    replica2.onApply(read2::onReplicated);
+                    waitFor(() -> f1.lastSeq() == leaderRepo.lastSeq() && f2.lastSeq() == leaderRepo.lastSeq());
+                    assertEquals(2, leader.followers());
+
+                    for (ShortenerService read : new ShortenerService[] {read1, read2}) {
+                        Link l = read.info(USER, early.shortCode).orElseThrow();
+                        assertEquals(7, l.maxClicks);
+                        assertEquals(1, l.clickCount);
+                        assertEquals(leaderRepo.findByCode(USER, early.shortCode).orElseThrow().version, l.version);
+                        assertTrue(read.resolve(later.shortCode).isEmpty(), "Удалённая на лидере ссылка не отдаётся");
+                        assertEquals(1, read.list(USER).size());
+                        // Переход на последователе не засчитывается и не пишется
+                        assertTrue(read.resolve(early.shortCode).isPresent());
+                        assertThrows(IllegalStateException.class, () -> read.create(USER, "https://example.com/x", null));
+                        assertThrows(IllegalStateException.class, () -> read.setLimit(USER, early.shortCode, 1));
+                    }
+                    assertEquals(1, leaderRepo.findByCode(USER, early.shortCode).orElseThrow().clickCount);
+                }
+            }
+        }
+    }
+
+    @Test
+    void reconnectingFollowerResumesFromLogOrSnapshot() throws IOException {
+        Path file = Path.of("target/test-replication-snapshot.json");
+        Files.deleteIfExists(file);
+        try (ReplicatedLinkRepository leaderRepo = new ReplicatedLinkRepository(new InMemoryLinkRepository(file.toString(), 60_000), 8);
+                ShortenerService svc = new ShortenerService(leaderRepo, config("leader"), new NotificationService())) {
+            ReplicaLinkRepository replica = new ReplicaLinkRepository();
+            ReplicationLeader leader = new ReplicationLeader(leaderRepo, 0, 100);
+            int port = leader.port();
+            // один и тот же последователь переживает разрывы: эпоха и номер остаются у него
+            try (ReplicationFollower f = new ReplicationFollower(replica, "localhost", port, 100)) {
+                svc.create(USER, "https://example.com/0", null);
+                waitFor(() -> f.lastSeq() == leaderRepo.lastSeq());
+                assertEquals(1, f.snapshots(), "Первое подключение начинается со снимка");
+
+                // Разрыв, пока журнал из 8 записей покрывает пропуск: продолжение без снимка
+                leader.close();
+                waitFor(() -> !f.connected());
+                for (int i = 1; i <= 3; i++) svc.create(USER, "https://example.com/" + i, null);
+                assertTrue(leaderRepo.covers(f.lastSeq()));
+                leader = new ReplicationLeader(leaderRepo, port, 100);
+                waitFor(() -> f.lastSeq() == leaderRepo.lastSeq());
+                assertEquals(1, f.snapshots());
+                assertEquals(4, replica.size());
+
+                // Разрыв, за который журнал переполняется: догоняет по снимку
+                leader.close();
+                waitFor(() -> !f.connected());
+                for (int i = 4; i <= 50; i++) svc.create(USER, "https://example.com/" + i, null);
+                assertFalse(leaderRepo.covers(f.lastSeq()));
+                leader = new ReplicationLeader(leaderRepo, port, 100);
+                waitFor(() -> f.lastSeq() == leaderRepo.lastSeq());
+                assertEquals(2, f.snapshots());
+                assertEquals(51, replica.size());
+
+                svc.create(USER, "https://example.com/after", null);
+                waitFor(() -> f.lastSeq() == leaderRepo.lastSeq());
+                assertEquals(52, replica.findAllByOwner(USER).size());
+                assertEquals(0, f.lag());
+            } finally {
+                leader.close();
+            }
+        }
+    }
+
+    @Test
+    void followerWithoutSecretGetsNothing() throws Exception {
+        Path file = Path.of("target/test-replication-secret.json");
+        Files.deleteIfExists(file);
+        try (ReplicatedLinkRepository leaderRepo = new ReplicatedLinkRepository(new InMemoryLinkRepository(file.toString(), 60_000), 1000);
+                ReplicationLeader leader = new ReplicationLeader(leaderRepo, "127.0.0.1", 0, 100, "s3cret");
+                ShortenerService svc = new ShortenerService(leaderRepo, config("leader"), new NotificationService())) {
+            svc.create(USER, "https://example.com/secret", null);
+
+            // С неверным секретом лидер закрывает подключение, не отдав снимка
+            ReplicaLinkRepository stranger = new ReplicaLinkRepository();
+            try (ReplicationFollower f = new ReplicationFollower(stranger, "127.0.0.1", leader.port(), 100, "guess")) {
+                Thread.sleep(500);
+                assertEquals(0, stranger.size());
+                assertEquals(0, f.lastSeq());
+            }
+
+            ReplicaLinkRepository replica = new ReplicaLinkRepository();
+            try (ReplicationFollower f = new ReplicationFollower(replica, "127.0.0.1", leader.port(), 100, "s3cret")) {
+                waitFor(() -> f.lastSeq() == leaderRepo.lastSeq());
+                assertEquals(1, replica.size());
+            }
+        }
+    }
+
+    @Test
+    void stalledFollowerDoesNotBlockLeaderWrites() throws Exception {
+        Path file = Path.of("target/test-replication-stalled.json");
+        Files.deleteIfExists(file);
+        try (ReplicatedLinkRepository leaderRepo = new ReplicatedLinkRepository(new ColumnarLinkRepository(file.toString(), 60_000), 1000);
+                ReplicationLeader leader = new ReplicationLeader(leaderRepo, 0, 100)) {
+            List<Link> links = new ArrayList<>();
+            String tail = "x".repeat(200);
+            for (int i = 0; i < 50_000; i++) links.add(link(USER, "77777777-" + i + tail));
+            leaderRepo.saveAll(links);
+
+            // Последователь шлёт HELLO и не читает: снимок упирается в буферы сокета
+            try (Socket stalled = new Socket()) {
+                stalled.setReceiveBufferSize(1024);
+                stalled.connect(new InetSocketAddress("127.0.0.1", leader.port()));
+                DataOutputStream out = new DataOutputStream(stalled.getOutputStream());
+                out.writeInt(0x524C4E4B);
+                out.writeUTF("");
+                out.writeLong(0);
+                out.writeLong(0);
+                out.flush();
+                Thread.sleep(300);
+
+                CompletableFuture<Void> write = CompletableFuture.runAsync(() -> leaderRepo.save(link(USER, "77777777-late")));
+                write.get(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+}
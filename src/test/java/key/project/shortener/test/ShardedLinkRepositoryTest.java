@@ -0,0 +1,60 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.repo.LinkRepositories;
+import key.project.shortener.repo.LinkRepository;
+import key.project.shortener.repo.ShardRebalancer;
+import key.project.shortener.repo.ShardedLinkRepository;
+import key.project.shortener.service.NotificationService;
+import key.project.shortener.service.ShortenerService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static key.project.shortener.test.TestSupport.deleteAll;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты шардированного хранилища и перестройки шардов.
+ */
+public class ShardedLinkRepositoryTest {
+
+    @Test
+    void ownersAreSpreadAcrossShardsAndRebalanced() throws IOException {
+        Path dir = Path.of("target/test-shards");
+        deleteAll(dir);
+        deleteAll(Path.of("target/test-shards.bak"));
+        AppConfig cfg = AppConfig.load();
+        cfg.app.shardEngine = "file";
+
+        List<String> owners = Stream.generate(() -> UUID.randomUUID().toString()).limit(20).toList();
+        try (LinkRepository repo = LinkRepositories.sharded(cfg.app, dir, 4);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            for (String owner : owners) {
+                svc.createAll(owner, List.of("https://example.com/" + owner, "https://example.org/" + owner), null);
+            }
+        }
+        // У каждого владельца свой шард, и шарды реально заполнены
+        long used = owners.stream().mapToInt(o -> ShardedLinkRepository.shardOf(o, 4)).distinct().count();
+        assertTrue(used > 1);
+
+        // Каталог нельзя открыть с другим числом шардов
+        assertThrows(IllegalStateException.class, () -> LinkRepositories.sharded(cfg.app, dir, 7));
+
+        assertEquals(40, ShardRebalancer.rebalance(cfg.app, dir, 7));
+        assertEquals(7, ShardedLinkRepository.shardCount(dir));
+        try (LinkRepository repo = LinkRepositories.sharded(cfg.app, dir, 7)) {
+            for (String owner : owners) {
+                List<Link> links = repo.findAllByOwner(owner);
+                assertEquals(2, links.size(), "Ссылки владельца должны пережить перестройку");
+                assertTrue(repo.existsCode(owner, links.get(0).shortCode));
+            }
+        }
+    }
+}
@@ -3,12 +3,26 @@ package key.project.shortener.test;
 import key.project.shortener.config.AppConfig;
 import key.project.shortener.core.Link;
 import key.project.shortener.core.LinkStatus;
+import key.project.shortener.metrics.Metrics;
 import key.project.shortener.repo.FileLinkRepository;
+import key.project.shortener.repo.InMemoryLinkRepository;
+import key.project.shortener.repo.LinkKey;
 import key.project.shortener.service.NotificationService;
 import key.project.shortener.service.ShortenerService;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -60,4 +74,228 @@ public class ShortenerServiceLimitTest {
         Link fromRepo = repo.findByCode(user, link.shortCode).orElseThrow();
         assertEquals(LinkStatus.EXPIRED, fromRepo.status, "Статус должен быть EXPIRED");
     }
+
+    @Test
+    void dueLinksExpireInBatches() throws Exception {
+        AppConfig cfg = AppConfig.load();
+        cfg.app.ttlHours = 0;
+        cfg.app.expiryIntervalMs = 0;
+        cfg.app.expiryBatchSize = 2;
+        String user = "77777777-7777-7777-7777-777777777777";
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository("target/test-storage-expiry.json", 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            List<Link> links = new ArrayList<>();
+            for (int i = 0; i < 3; i++) links.add(svc.create(user, "https://example.com/" + i, null));
+            Thread.sleep(5);
+
+            // За один проход помечается не больше expiryBatchSize ссылок
+            assertEquals(2, svc.expireDue());
+            assertEquals(1, svc.expireDue());
+            assertEquals(0, svc.expireDue());
+
+            for (Link l : links) {
+                assertEquals(LinkStatus.EXPIRED, repo.findByCode(user, l.shortCode).orElseThrow().status);
+                assertFalse(svc.open(user, l.shortCode), "Истёкшая ссылка не должна открываться");
+            }
+        }
+    }
+
+    @Test
+    void failedExpiryBatchIsRetried() throws Exception {
+        AppConfig cfg = AppConfig.load();
+        cfg.app.ttlHours = 0;
+        cfg.app.expiryIntervalMs = 0;
+        cfg.app.notifyOnExpire = false;
+        String user = "75757575-7575-7575-7575-757575757575";
+        AtomicBoolean failReads = new AtomicBoolean();
+        try (InMemoryLinkRepository repo =
+                        new InMemoryLinkRepository("target/test-storage-expiry-retry.json", 60_000) {
+                            @Override
+                            public List<Link> findAllByKey(Collection<LinkKey> keys) {
+                                if (failReads.get()) throw new UncheckedIOException(new IOException("диск недоступен"));
+                                return super.findAllByKey(keys);
+                            }
+                        };
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            Link link = svc.create(user, "https://example.com/retry", null);
+            Thread.sleep(5);
+
+            // Упавшая пачка возвращается в очередь и истекает следующим проходом
+            failReads.set(true);
+            assertThrows(UncheckedIOException.class, svc::expireDue);
+            failReads.set(false);
+            assertEquals(1, svc.expireDue());
+            assertEquals(LinkStatus.EXPIRED, repo.findByCode(user, link.shortCode).orElseThrow().status);
+        }
+    }
+
+    @Test
+    void fileStorageExpiresBatchInOnePass() throws Exception {
+        AppConfig cfg = AppConfig.load();
+        cfg.app.ttlHours = 0;
+        cfg.app.expiryIntervalMs = 0;
+        cfg.app.expiryBatchSize = 16;
+        cfg.app.notifyOnExpire = false;
+        String user = "76767676-7676-7676-7676-767676767676";
+        Path file = Path.of("target/test-storage-expiry-file.json");
+        Files.deleteIfExists(file);
+        try (FileLinkRepository repo = new FileLinkRepository(file.toString());
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            for (int i = 0; i < 4; i++) svc.create(user, "https://example.com/" + i, null);
+            Thread.sleep(5);
+
+            // Вся пачка читается одним проходом по файлу и пишется одной перезаписью
+            long reads = Metrics.global().histogram(Metrics.IoOp.READ).count();
+            long writes = Metrics.global().histogram(Metrics.IoOp.WRITE).count();
+            assertEquals(4, svc.expireDue());
+            assertEquals(1, Metrics.global().histogram(Metrics.IoOp.READ).count() - reads);
+            assertEquals(1, Metrics.global().histogram(Metrics.IoOp.WRITE).count() - writes);
+            assertEquals(4, repo.findAllByStatus(LinkStatus.EXPIRED).size());
+        }
+    }
+
+    @Test
+    void concurrentOpensRespectLimitExactly() throws Exception {
+        AppConfig cfg = AppConfig.load();
+        String user = "66666666-6666-6666-6666-666666666666";
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository("target/test-storage-concurrent.json", 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            Link link = svc.create(user, "https://example.com", 100);
+
+            // 8 потоков по 50 переходов на ссылку с лимитом 100
+            AtomicInteger opened = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 50; i++) {
+                        if (svc.open(user, link.shortCode)) opened.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : tasks) f.get();
+            pool.shutdown();
+
+            assertEquals(100, opened.get(), "Должно пройти ровно maxClicks переходов");
+            Link fromRepo = repo.findByCode(user, link.shortCode).orElseThrow();
+            assertEquals(LinkStatus.LIMIT_REACHED, fromRepo.status);
+            assertEquals(100, fromRepo.clickCount);
+        }
+    }
+
+    @Test
+    void setLimitInvalidatesCachedRedirect() {
+        AppConfig cfg = AppConfig.load();
+        String user = "88888888-8888-8888-8888-888888888888";
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository("target/test-storage-cache.json", 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            Link link = svc.create(user, "https://example.com", 5);
+            assertTrue(svc.resolve(link.shortCode).isPresent());
+            assertTrue(svc.resolve(link.shortCode).isPresent());
+            assertTrue(svc.cacheStats().hits() > 0, "Повторный редирект должен обслуживаться из кэша");
+
+            // Лимит опускаем до уже сделанных переходов: закэшированный редирект должен перестать работать
+            assertTrue(svc.setLimit(user, link.shortCode, 2));
+            assertTrue(svc.resolve(link.shortCode).isEmpty());
+            assertEquals(2, svc.info(user, link.shortCode).orElseThrow().clickCount);
+        }
+    }
+
+    @Test
+    void nonPositiveLimitIsRejected() {
+        AppConfig cfg = AppConfig.load();
+        String user = "87878787-8787-8787-8787-878787878787";
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository("target/test-storage-bad-limit.json", 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            // 0 у счётчика значит «без лимита», отрицательный — LIMIT_REACHED, который счётчик не соблюдает
+            assertThrows(IllegalArgumentException.class, () -> svc.create(user, "https://example.com", 0));
+            assertThrows(IllegalArgumentException.class, () -> svc.createAll(user, List.of("https://example.com"), -1));
+            Link link = svc.create(user, "https://example.com", 5);
+            assertThrows(IllegalArgumentException.class, () -> svc.setLimit(user, link.shortCode, -1));
+            assertThrows(IllegalArgumentException.class, () -> svc.setLimitAll(user, List.of(link.shortCode), 0));
+
+            Link stored = svc.info(user, link.shortCode).orElseThrow();
+            assertEquals(5, stored.maxClicks);
+            assertEquals(LinkStatus.ACTIVE, stored.status);
+            assertTrue(svc.resolve(link.shortCode).isPresent());
+        }
+    }
+
+    @Test
+    void failedLimitWriteKeepsOldLimit() {
+        AppConfig cfg = AppConfig.load();
+        cfg.app.notifyOnLimit = false;
+        String user = "86868686-8686-8686-8686-868686868686";
+        AtomicBoolean failWrites = new AtomicBoolean();
+        try (InMemoryLinkRepository repo =
+                        new InMemoryLinkRepository("target/test-storage-limit-fail.json", 60_000) {
+                            @Override
+                            public boolean compareAndSave(Link link, long expectedVersion) {
+                                if (failWrites.get()) throw new UncheckedIOException(new IOException("диск недоступен"));
+                                return super.compareAndSave(link, expectedVersion);
+                            }
+                        };
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            Link link = svc.create(user, "https://example.com", 5);
+            assertTrue(svc.resolve(link.shortCode).isPresent());
+            assertTrue(svc.resolve(link.shortCode).isPresent());
+
+            // Запись нового лимита упала: редиректы продолжают работать по старому
+            failWrites.set(true);
+            assertThrows(UncheckedIOException.class, () -> svc.setLimit(user, link.shortCode, 1));
+            failWrites.set(false);
+            assertTrue(svc.resolve(link.shortCode).isPresent());
+            assertEquals(5, svc.info(user, link.shortCode).orElseThrow().maxClicks);
+
+            // Лимит ниже сделанных переходов исчерпывает ссылку, поднятый лимит возвращает её
+            assertTrue(svc.setLimit(user, link.shortCode, 1));
+            assertTrue(svc.resolve(link.shortCode).isEmpty());
+            assertEquals(LinkStatus.LIMIT_REACHED, svc.info(user, link.shortCode).orElseThrow().status);
+            assertTrue(svc.setLimit(user, link.shortCode, 10));
+            assertTrue(svc.resolve(link.shortCode).isPresent());
+            assertEquals(LinkStatus.ACTIVE, svc.info(user, link.shortCode).orElseThrow().status);
+        }
+    }
+
+    @Test
+    void deletedLinkIsNotCachedByConcurrentRedirect() throws Exception {
+        AppConfig cfg = AppConfig.load();
+        cfg.app.notifyOnLimit = false;
+        String user = "87878787-8787-8787-8787-878787878787";
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository("target/test-storage-cache-delete.json", 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            ExecutorService pool = Executors.newFixedThreadPool(2);
+            for (int i = 0; i < 200; i++) {
+                Link link = svc.create(user, "https://example.com/" + i, null);
+                // Редиректы идут мимо кэша и заполняют его, пока ссылку удаляют
+                Future<?> redirects = pool.submit(() -> {
+                    for (int r = 0; r < 50; r++) svc.resolve(link.shortCode);
+                });
+                svc.delete(user, link.shortCode);
+                redirects.get();
+                assertTrue(svc.resolve(link.shortCode).isEmpty(), "Удалённая ссылка не должна отдаваться из кэша");
+            }
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void peekDoesNotSpendClicks() {
+        AppConfig cfg = AppConfig.load();
+        cfg.app.notifyOnLimit = false;
+        String user = "86868686-8686-8686-8686-868686868686";
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository("target/test-storage-peek.json", 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            Link link = svc.create(user, "https://example.com", 1);
+            // Проверка ссылки (HEAD) не расходует единственный переход
+            for (int i = 0; i < 5; i++) assertEquals(Optional.of("https://example.com"), svc.peek(link.shortCode));
+            assertEquals(0, svc.info(user, link.shortCode).orElseThrow().clickCount);
+            assertTrue(svc.resolve(link.shortCode).isPresent());
+            assertTrue(svc.peek(link.shortCode).isEmpty(), "После исчерпания лимита проверка тоже даёт 404");
+        }
+    }
 }
@@ -2,11 +2,19 @@ package key.project.shortener.test;
 
 import key.project.shortener.config.AppConfig;
 import key.project.shortener.core.Link;
+import key.project.shortener.metrics.Metrics;
 import key.project.shortener.repo.FileLinkRepository;
+import key.project.shortener.repo.InMemoryLinkRepository;
 import key.project.shortener.service.NotificationService;
 import key.project.shortener.service.ShortenerService;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -35,4 +43,60 @@ public class ShortenerServiceUserTest {
         assertEquals(url, link1.originalUrl);
         assertEquals(url, link2.originalUrl);
     }
+
+    @Test
+    void redirectResolvesOwnerByCode() {
+        AppConfig cfg = AppConfig.load();
+        String user1 = "11111111-1111-1111-1111-111111111111";
+        String user2 = "00000000-0000-0000-0000-000000000000";
+        try (FileLinkRepository repo = new FileLinkRepository("target/test-storage-global.json")) {
+            Link link1;
+            try (ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+                link1 = svc.create(user1, "https://example.com/a", null);
+                Link link2 = svc.create(user2, "https://example.com/b", null);
+
+                // Редирект знает только код, владелец находится по глобальному индексу; мимо кэша — одно чтение
+                long reads = Metrics.global().histogram(Metrics.IoOp.READ).count();
+                assertEquals(Optional.of("https://example.com/a"), svc.resolve(link1.shortCode));
+                assertEquals(1, Metrics.global().histogram(Metrics.IoOp.READ).count() - reads);
+                assertEquals(Optional.of("https://example.com/b"), svc.resolve(link2.shortCode));
+                assertTrue(svc.resolve("ffffffff-000000").isEmpty());
+            }
+
+            // Индекс строится и из уже сохранённых ссылок
+            try (ShortenerService restarted = new ShortenerService(repo, cfg, new NotificationService())) {
+                assertEquals(Optional.of("https://example.com/a"), restarted.resolve(link1.shortCode));
+            }
+        }
+    }
+
+    @Test
+    void dedupReturnsActiveLinkForSameTarget() throws IOException {
+        Files.deleteIfExists(Path.of("target/test-storage-dedup.json"));
+        AppConfig cfg = AppConfig.load();
+        cfg.app.dedupUrls = true;
+        String user1 = "11111111-1111-1111-1111-111111111111";
+        String user2 = "00000000-0000-0000-0000-000000000000";
+        try (InMemoryLinkRepository repo = new InMemoryLinkRepository("target/test-storage-dedup.json", 60_000);
+                ShortenerService svc = new ShortenerService(repo, cfg, new NotificationService())) {
+            Link link = svc.create(user1, "https://example.com/page", null);
+
+            // Тот же адрес в другой записи даёт ту же ссылку, у другого владельца — свою
+            assertEquals(link.shortCode, svc.create(user1, "HTTPS://Example.com:443/page", null).shortCode);
+            Link other = svc.create(user2, "https://example.com/page", null);
+            assertNotEquals(link.shortCode, other.shortCode);
+            assertSame(link.originalUrl, other.originalUrl, "Одинаковые URL должны храниться одной строкой");
+
+            // В пачке повтор тоже не создаётся заново
+            List<Link> batch = svc.createAll(user1, List.of("https://example.com/page", "https://example.com/x", "https://example.com/x"), null);
+            assertEquals(link.shortCode, batch.get(0).shortCode);
+            assertEquals(batch.get(1).shortCode, batch.get(2).shortCode);
+            assertEquals(2, repo.findAllByOwner(user1).size());
+
+            // Другой лимит и удалённая ссылка дают новую
+            assertNotEquals(link.shortCode, svc.create(user1, "https://example.com/page", 3).shortCode);
+            svc.delete(user1, link.shortCode);
+            assertNotEquals(link.shortCode, svc.create(user1, "https://example.com/page", null).shortCode);
+        }
+    }
 }
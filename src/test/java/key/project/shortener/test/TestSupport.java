@@ -0,0 +1,71 @@
+package key.project.shortener.test;
+
+import key.project.shortener.config.AppConfig;
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Общие заготовки тестов: ссылки, конфиг узла репликации, ожидание условия и очистка каталогов.
+ */
+final class TestSupport {
+
+    private TestSupport() {}
+
+    /** Активная ссылка с лимитом 10 и сроком жизни час */
+    static Link link(String ownerUuid, String code) {
+        return link(ownerUuid, code, LinkStatus.ACTIVE);
+    }
+
+    static Link link(String ownerUuid, String code, LinkStatus status) {
+        Link l = new Link();
+        l.ownerUuid = ownerUuid;
+        l.shortCode = code;
+        l.originalUrl = "https://example.com/" + code;
+        l.maxClicks = 10;
+        l.createdAt = Instant.now();
+        l.expiresAt = l.createdAt.plusSeconds(3600);
+        l.status = status;
+        return l;
+    }
+
+    /** Конфиг узла с ролью репликации, без кэша редиректов и фонового истечения */
+    static AppConfig replicationConfig(String role) {
+        AppConfig cfg = AppConfig.load();
+        cfg.app.replicationRole = role;
+        cfg.app.cacheMaxEntries = 0;
+        cfg.app.expiryIntervalMs = 0;
+        return cfg;
+    }
+
+    /** Ждёт условие до 10 секунд, иначе тест падает */
+    static void waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Условие не выполнилось за 10 секунд");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Удаляет каталог со всем содержимым, если он есть */
+    static void deleteAll(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> s = Files.walk(dir)) {
+            for (Path p : s.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+}
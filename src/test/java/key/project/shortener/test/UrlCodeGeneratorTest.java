@@ -1,8 +1,14 @@
 package key.project.shortener.test;
 
+import key.project.shortener.core.Base62;
+import key.project.shortener.core.RandomCodeGenerator;
+import key.project.shortener.core.SequenceCodeGenerator;
 import key.project.shortener.core.UrlCodeGenerator;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -23,4 +29,34 @@ public class UrlCodeGeneratorTest {
         String b = UrlCodeGenerator.random(8);
         assertNotEquals(a, b, "Два кода подряд не должны совпадать");
     }
+
+    @Test
+    void base62RoundTrip() {
+        long v = Base62.capacity(6) - 1;
+        String s = Base62.encode(v, 6);
+        assertEquals("zzzzzz", s);
+        assertEquals(v, Base62.decode(s, 0, s.length()));
+        assertEquals("abcd1234-000001", Base62.code("abcd1234", 1, 6));
+        assertEquals(-1, Base62.decode("ab-c", 0, 4), "Чужой символ должен давать -1");
+    }
+
+    @Test
+    void seededGeneratorIsDeterministic() {
+        RandomCodeGenerator a = new RandomCodeGenerator(6, 42L);
+        RandomCodeGenerator b = new RandomCodeGenerator(6, 42L);
+        for (int i = 0; i < 100; i++) {
+            long v = a.next();
+            assertEquals(v, b.next(), "Генераторы с одним зерном должны выдавать одинаковые коды");
+            assertTrue(v >= 0 && v < Base62.capacity(6));
+        }
+    }
+
+    @Test
+    void sequenceGeneratorNeverRepeats() {
+        SequenceCodeGenerator gen = new SequenceCodeGenerator(3);
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(seen.add(gen.next("abcd1234")), "Коды Snowflake не должны повторяться");
+        }
+    }
 }
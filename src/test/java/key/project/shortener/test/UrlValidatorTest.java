@@ -0,0 +1,65 @@
+package key.project.shortener.test;
+
+import key.project.shortener.core.UrlValidator;
+import key.project.shortener.core.UrlValidator.Result;
+import key.project.shortener.core.Validation;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты однопроходной проверки и нормализации URL.
+ */
+public class UrlValidatorTest {
+
+    @Test
+    void agreesWithUriOnAsciiUrls() {
+        String[] urls = {
+            "https://example.com", "http://example.com/path?q=1#top", "ftp://user:pw@files.example.org:2121/a",
+            "http://127.0.0.1:8080/", "http://[::1]/x", "HTTP://Example.COM/%41", "https://example.com./",
+            "example.com", "mailto:a@example.com", "http://", "http:///path", "http://exa_mple.com",
+            "http://example.com/a b", "http://example.com:8o", "http://a..b",
+            "http://-a.com", "http://example.com/%zz", "http://example.com/#a#b", "1http://example.com", ""
+        };
+        for (String url : urls) {
+            assertEquals(uriAccepts(url), UrlValidator.isValid(url), url);
+        }
+        assertEquals(Result.BAD_SCHEME, UrlValidator.check("example.com"));
+        assertEquals(Result.NO_HOST, UrlValidator.check("mailto:a@example.com"));
+        // Порт вне диапазона URI пропускает, здесь он отклоняется
+        assertEquals(Result.BAD_PORT, UrlValidator.check("http://example.com:99999"));
+        assertEquals(Result.EMPTY, UrlValidator.check(null));
+
+        // Контракт requireValidUrl не меняется
+        IllegalArgumentException e =
+                assertThrows(IllegalArgumentException.class, () -> Validation.requireValidUrl("not a url"));
+        assertEquals("Невалидный URL: not a url", e.getMessage());
+        Validation.requireValidUrl("https://example.com");
+    }
+
+    @Test
+    void normalizesEquivalentTargets() {
+        String canonical = "https://example.com/";
+        assertSame(canonical, UrlValidator.normalize(canonical), "Канонический адрес возвращается без копии");
+        assertEquals(canonical, UrlValidator.normalize("HTTPS://Example.COM"));
+        assertEquals(canonical, UrlValidator.normalize("https://example.com:443/"));
+        assertEquals("http://example.com:8080/a?B=1", UrlValidator.normalize("http://EXAMPLE.com:8080/a?B=1"));
+        assertEquals("http://example.com/?q", UrlValidator.normalize("http://example.com:80?q"));
+
+        // Домен не в ASCII переводится в punycode
+        assertEquals(Result.OK, UrlValidator.check("https://пример.рф/путь"));
+        assertEquals("https://xn--e1afmkfd.xn--p1ai/", UrlValidator.normalize("https://Пример.РФ"));
+        assertNull(UrlValidator.normalize("http://exa mple.com"));
+    }
+
+    private static boolean uriAccepts(String url) {
+        try {
+            URI u = new URI(url);
+            return u.getScheme() != null && u.getHost() != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package key.project.shortener.test;
+
+import key.project.shortener.core.Link;
+import key.project.shortener.core.LinkStatus;
+import key.project.shortener.repo.FsyncPolicy;
+import key.project.shortener.repo.WalLinkRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import static key.project.shortener.test.TestSupport.link;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты журнального хранилища: восстановление, оборванная запись, компакция.
+ */
+public class WalLinkRepositoryTest {
+
+    private static final Path DIR = Path.of("target/test-wal");
+    private static final String USER = "44444444-4444-4444-4444-444444444444";
+
+    @BeforeEach
+    void clean() throws IOException {
+        if (Files.exists(DIR)) {
+            try (Stream<Path> files = Files.walk(DIR)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static WalLinkRepository open() {
+        return new WalLinkRepository(DIR.toString(), "target/no-such-storage.json", 1 << 20, 3_600_000);
+    }
+
+    @Test
+    void replaysJournalAndDropsTornTail() throws IOException {
+        try (WalLinkRepository repo = open()) {
+            Link l = link(USER, "44444444-aaaaaa");
+            repo.save(l);
+            l.clickCount = 3;
+            repo.save(l);
+            repo.save(link(USER, "44444444-bbbbbb"));
+            repo.delete(USER, "44444444-bbbbbb");
+        }
+
+        // Имитируем сбой посреди записи: дописываем обрывок заголовка
+        Path segment;
+        try (Stream<Path> files = Files.list(DIR)) {
+            segment = files.filter(p -> p.toString().endsWith(".log")).max(Comparator.naturalOrder()).orElseThrow();
+        }
+        long before = Files.size(segment);
+        Files.write(segment, new byte[] {0, 0, 1}, StandardOpenOption.APPEND);
+
+        try (WalLinkRepository repo = open()) {
+            assertEquals(3, repo.findByCode(USER, "44444444-aaaaaa").orElseThrow().clickCount);
+            assertEquals(LinkStatus.DELETED, repo.findByCode(USER, "44444444-bbbbbb").orElseThrow().status);
+            assertEquals(1, repo.findAllByOwner(USER).size());
+        }
+        assertEquals(before, Files.size(segment), "Оборванный хвост должен быть отрезан");
+    }
+
+    @Test
+    void corruptEarlierSegmentStopsRecovery() throws IOException {
+        // маленькие сегменты: записи расходятся по нескольким файлам
+        try (WalLinkRepository repo = new WalLinkRepository(DIR.toString(), "target/no-such-storage.json", 512, 3_600_000)) {
+            for (int i = 0; i < 20; i++) repo.save(link(USER, "44444444-" + String.format("%06d", i)));
+        }
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(DIR)) {
+            segments = files.filter(p -> p.toString().endsWith(".log")).sorted().toList();
+        }
+        assertTrue(segments.size() > 2);
+
+        // Портим байт данных в первом сегменте: это не оборванный хвост, а потеря записей
+        Path first = segments.get(0);
+        byte[] bytes = Files.readAllBytes(first);
+        bytes[bytes.length / 2] ^= 0x7f;
+        Files.write(first, bytes);
+
+        assertThrows(IllegalStateException.class, WalLinkRepositoryTest::open);
+        assertEquals(bytes.length, Files.size(first), "Повреждённый сегмент не должен обрезаться");
+    }
+
+    @Test
+    void compactionKeepsState() {
+        try (WalLinkRepository repo = open()) {
+            for (int i = 0; i < 100; i++) repo.save(link(USER, "44444444-" + String.format("%06d", i)));
+            repo.compact();
+            repo.save(link(USER, "44444444-zzzzzz"));
+        }
+        try (WalLinkRepository repo = open()) {
+            assertEquals(101, repo.findAllByOwner(USER).size());
+        }
+    }
+
+    @Test
+    void perOpFsyncCompletesEverySave() throws Exception {
+        try (WalLinkRepository repo =
+                new WalLinkRepository(DIR.toString(), "target/no-such-storage.json", 4096, 3_600_000, FsyncPolicy.PER_OP, 0)) {
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int base = t * 50;
+                // маленькие сегменты: force группы идёт и во время смены сегмента
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < 50; i++) repo.save(link(USER, "44444444-" + String.format("%06d", base + i)));
+                }));
+            }
+            for (Future<?> f : tasks) f.get();
+            pool.shutdown();
+            repo.saveAsync(link(USER, "44444444-zzzzzz")).get(5, TimeUnit.SECONDS);
+        }
+        try (WalLinkRepository repo = open()) {
+            assertEquals(401, repo.findAllByOwner(USER).size());
+        }
+    }
+}